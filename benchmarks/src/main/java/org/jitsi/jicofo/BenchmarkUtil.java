@@ -0,0 +1,147 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import java.util.logging.*;
+
+/**
+ * Utility methods used to create the benchmark data.
+ *
+ * @author agent
+ */
+class BenchmarkUtil
+{
+    /**
+     * The number of video SSRCs signalled by every participant (simulcast).
+     */
+    static final int SIMULCAST_LAYERS = 3;
+
+    /**
+     * Raises the logging level, so that the benchmarks do not measure
+     * the logging of INFO messages printed on the hot paths.
+     */
+    static void silenceLogging()
+    {
+        Logger rootLogger = Logger.getLogger("");
+
+        rootLogger.setLevel(Level.SEVERE);
+        for (Handler handler : rootLogger.getHandlers())
+        {
+            handler.setLevel(Level.SEVERE);
+        }
+    }
+
+    /**
+     * Returns the MUC JID of the participant with given index.
+     */
+    static String getParticipantJid(int idx)
+    {
+        return "testroom@conference.example.com/participant" + idx;
+    }
+
+    /**
+     * Returns the first SSRC value used by the participant with given index.
+     */
+    static long getFirstSSRC(int idx)
+    {
+        return 1000L + idx * 10L;
+    }
+
+    /**
+     * Creates a SSRC with 'cname' and 'msid' parameters and the owner set.
+     */
+    static SourcePacketExtension createSSRC(
+            long ssrc, String owner, String streamId, String trackId)
+    {
+        SourcePacketExtension ssrcPe = new SourcePacketExtension();
+
+        ssrcPe.setSSRC(ssrc);
+        ssrcPe.addParameter(new ParameterPacketExtension("cname", streamId));
+        ssrcPe.addParameter(
+                new ParameterPacketExtension("msid", streamId + " " + trackId));
+
+        SSRCSignaling.setSSRCOwner(ssrcPe, owner);
+
+        return ssrcPe;
+    }
+
+    /**
+     * Creates the SSRCs of a participant: one audio and
+     * {@link #SIMULCAST_LAYERS} video SSRCs.
+     *
+     * @param idx the index of the participant.
+     */
+    static MediaSSRCMap createParticipantSSRCs(int idx)
+    {
+        MediaSSRCMap ssrcs = new MediaSSRCMap();
+        String owner = getParticipantJid(idx);
+        String streamId = "stream" + idx;
+        long firstSSRC = getFirstSSRC(idx);
+
+        ssrcs.addSSRC(
+            "audio", createSSRC(firstSSRC, owner, streamId, "audio" + idx));
+
+        for (int layer = 1; layer <= SIMULCAST_LAYERS; layer++)
+        {
+            ssrcs.addSSRC(
+                "video",
+                createSSRC(
+                    firstSSRC + layer, owner, streamId, "video" + idx));
+        }
+        return ssrcs;
+    }
+
+    /**
+     * Creates the simulcast group for the SSRCs created with
+     * {@link #createParticipantSSRCs(int)}.
+     */
+    static MediaSSRCGroupMap createParticipantGroups(MediaSSRCMap ssrcs)
+    {
+        SourceGroupPacketExtension groupPe = new SourceGroupPacketExtension();
+
+        groupPe.setSemantics(SourceGroupPacketExtension.SEMANTICS_SIMULCAST);
+        groupPe.addSources(ssrcs.getSSRCsForMedia("video"));
+
+        MediaSSRCGroupMap groups = new MediaSSRCGroupMap();
+
+        groups.addSSRCGroup("video", new SSRCGroup(groupPe));
+
+        return groups;
+    }
+
+    /**
+     * Creates the SSRCs of all participants of a conference.
+     *
+     * @param participantCount how many participants are in the conference.
+     */
+    static MediaSSRCMap createConferenceSSRCs(int participantCount)
+    {
+        MediaSSRCMap ssrcs = new MediaSSRCMap();
+
+        for (int i = 0; i < participantCount; i++)
+        {
+            ssrcs.add(createParticipantSSRCs(i));
+        }
+        return ssrcs;
+    }
+}
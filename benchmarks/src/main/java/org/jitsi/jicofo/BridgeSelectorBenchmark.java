@@ -0,0 +1,176 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.eventadmin.*;
+import org.jitsi.protocol.xmpp.*;
+
+import org.jivesoftware.smackx.pubsub.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Measures {@link BridgeSelector#selectVideobridge(JitsiMeetConference)} with
+ * N bridges, alone and with concurrent stats and video stream updates.
+ *
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BridgeSelectorBenchmark
+{
+    @Param({ "1", "10", "50", "200" })
+    public int bridgeCount;
+
+    private BridgeSelector selector;
+
+    private String[] bridgeJids;
+
+    private ColibriStatsExtension[] bridgeStats;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        BenchmarkUtil.silenceLogging();
+
+        selector = new BridgeSelector(new NoOpSubscriptionOpSet());
+
+        // BridgeSelector.init() requires OSGi, so only inject what's needed
+        Field eventAdminField
+            = BridgeSelector.class.getDeclaredField("eventAdmin");
+        eventAdminField.setAccessible(true);
+        eventAdminField.set(selector, new NoOpEventAdmin());
+
+        Random random = new Random(12345);
+        bridgeJids = new String[bridgeCount];
+        bridgeStats = new ColibriStatsExtension[bridgeCount];
+        for (int i = 0; i < bridgeCount; i++)
+        {
+            bridgeJids[i] = "jvb" + i + ".example.com";
+            selector.addJvbAddress(bridgeJids[i]);
+
+            bridgeStats[i] = new ColibriStatsExtension();
+            bridgeStats[i].addStat(
+                new ColibriStatsExtension.Stat(
+                        "videostreams", "" + random.nextInt(1000)));
+            bridgeStats[i].addStat(
+                new ColibriStatsExtension.Stat(
+                        "conferences", "" + random.nextInt(50)));
+
+            selector.onSubscriptionUpdate(null, bridgeJids[i], bridgeStats[i]);
+        }
+    }
+
+    @Benchmark
+    public BridgeState select()
+    {
+        return selector.selectVideobridge(null);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public BridgeState contendedSelect()
+    {
+        return selector.selectVideobridge(null);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedUpdate(UpdaterState updater)
+    {
+        int idx = updater.next(bridgeCount);
+
+        if (updater.counter % 2 == 0)
+        {
+            selector.onSubscriptionUpdate(
+                    null, bridgeJids[idx], bridgeStats[idx]);
+        }
+        else
+        {
+            selector.onVideoStreamsChanged(
+                    bridgeJids[idx], updater.counter % 4 == 1 ? 3 : -3);
+        }
+    }
+
+    /**
+     * Per thread state of the updater thread.
+     */
+    @State(Scope.Thread)
+    public static class UpdaterState
+    {
+        int counter;
+
+        int next(int bound)
+        {
+            return (++counter) % bound;
+        }
+    }
+
+    /**
+     * Subscription operation set which does nothing.
+     */
+    private static class NoOpSubscriptionOpSet
+        implements OperationSetSubscription
+    {
+        @Override
+        public void subscribe(String node, SubscriptionListener listener)
+        {
+        }
+
+        @Override
+        public void unSubscribe(String node, SubscriptionListener listener)
+        {
+        }
+
+        @Override
+        public List<PayloadItem> getItems(String node)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Event admin which drops all events.
+     */
+    private static class NoOpEventAdmin
+        implements EventAdmin
+    {
+        @Override
+        public void postEvent(Event event)
+        {
+        }
+
+        @Override
+        public void sendEvent(Event event)
+        {
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.jicofo.event.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Measures {@link EventFactory#splitProperties(String)} used to decode
+ * the properties of the authentication events.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventFactoryBenchmark
+{
+    @Param({ "2", "10" })
+    public int propertyCount;
+
+    private String mergedProperties;
+
+    @Setup
+    public void setUp()
+    {
+        Map<String, String> properties = new HashMap<>();
+        for (int i = 0; i < propertyCount; i++)
+        {
+            properties.put(
+                "property" + i, "some.value.of.the.property:" + i);
+        }
+        mergedProperties = EventFactory.mergeProperties(properties);
+    }
+
+    @Benchmark
+    public Map<String, String> splitProperties()
+    {
+        return EventFactory.splitProperties(mergedProperties);
+    }
+}
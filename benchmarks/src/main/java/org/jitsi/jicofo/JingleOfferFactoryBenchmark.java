@@ -0,0 +1,69 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.jicofo.util.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Measures the creation of the offer contents done for every participant
+ * invited to the conference.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JingleOfferFactoryBenchmark
+{
+    @Param({ "true", "false" })
+    public boolean useRtx;
+
+    private JingleOfferFactory offerFactory;
+
+    @Setup
+    public void setUp()
+    {
+        BenchmarkUtil.silenceLogging();
+
+        // Will use the default values
+        offerFactory = new JingleOfferFactory(null);
+    }
+
+    @Benchmark
+    public ContentPacketExtension createVideoContent()
+    {
+        return offerFactory.createVideoContent(
+                false /* disable ICE */, true /* DTLS */, useRtx, 600, 800);
+    }
+
+    @Benchmark
+    public ContentPacketExtension createAudioContent()
+    {
+        return offerFactory.createAudioContent(
+                false /* disable ICE */, true /* DTLS */, false /* stereo */);
+    }
+}
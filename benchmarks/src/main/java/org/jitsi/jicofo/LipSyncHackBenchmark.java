@@ -0,0 +1,94 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Measures the stream merging done by {@link LipSyncHack} on the offer which
+ * contains the sources of the whole conference: per owner split with
+ * {@link SSRCSignaling#ownerMapping(List)} followed by
+ * {@link SSRCSignaling#mergeVideoIntoAudio(MediaSSRCMap)} for every owner.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LipSyncHackBenchmark
+{
+    @Param({ "10", "60" })
+    public int participantCount;
+
+    private List<ContentPacketExtension> offer;
+
+    @Setup
+    public void setUp()
+    {
+        BenchmarkUtil.silenceLogging();
+
+        MediaSSRCMap conferenceSSRCs
+            = BenchmarkUtil.createConferenceSSRCs(participantCount);
+
+        offer = new ArrayList<>();
+        offer.add(createContent("audio", conferenceSSRCs));
+        offer.add(createContent("video", conferenceSSRCs));
+    }
+
+    private static ContentPacketExtension createContent(
+            String media, MediaSSRCMap ssrcs)
+    {
+        ContentPacketExtension content = new ContentPacketExtension();
+        content.setName(media);
+
+        RtpDescriptionPacketExtension rtpDesc
+            = new RtpDescriptionPacketExtension();
+        rtpDesc.setMedia(media);
+        for (SourcePacketExtension ssrc : ssrcs.getSSRCsForMedia(media))
+        {
+            rtpDesc.addChildExtension(ssrc);
+        }
+        content.addChildExtension(rtpDesc);
+
+        return content;
+    }
+
+    @Benchmark
+    public void mergeAllParticipants(Blackhole blackhole)
+    {
+        Map<String, MediaSSRCMap> perOwnerMapping
+            = SSRCSignaling.ownerMapping(offer);
+
+        for (MediaSSRCMap ownerSSRCs : perOwnerMapping.values())
+        {
+            blackhole.consume(SSRCSignaling.mergeVideoIntoAudio(ownerSSRCs));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Measures the operations of {@link MediaSSRCMap} used on every source
+ * change, for the SSRCs of a whole conference.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaSSRCMapBenchmark
+{
+    @Param({ "10", "60", "200" })
+    public int participantCount;
+
+    private MediaSSRCMap conferenceSSRCs;
+
+    private MediaSSRCMap lastParticipantSSRCs;
+
+    private long lastVideoSSRC;
+
+    private long missingSSRC;
+
+    @Setup
+    public void setUp()
+    {
+        BenchmarkUtil.silenceLogging();
+
+        conferenceSSRCs
+            = BenchmarkUtil.createConferenceSSRCs(participantCount);
+
+        int lastIdx = participantCount - 1;
+        lastParticipantSSRCs = findParticipantSSRCs(conferenceSSRCs, lastIdx);
+
+        lastVideoSSRC
+            = BenchmarkUtil.getFirstSSRC(lastIdx)
+                + BenchmarkUtil.SIMULCAST_LAYERS;
+        missingSSRC = 7L;
+    }
+
+    /**
+     * Finds the instances stored in the conference map which belong to
+     * the participant with given index.
+     */
+    private static MediaSSRCMap findParticipantSSRCs(
+            MediaSSRCMap conferenceSSRCs, int idx)
+    {
+        MediaSSRCMap result = new MediaSSRCMap();
+        long firstSSRC = BenchmarkUtil.getFirstSSRC(idx);
+
+        result.addSSRC(
+            "audio", conferenceSSRCs.findSSRC("audio", firstSSRC));
+        for (int layer = 1; layer <= BenchmarkUtil.SIMULCAST_LAYERS; layer++)
+        {
+            result.addSSRC(
+                "video", conferenceSSRCs.findSSRC("video", firstSSRC + layer));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public MediaSSRCMap copyDeep()
+    {
+        return conferenceSSRCs.copyDeep();
+    }
+
+    @Benchmark
+    public Object findSSRC()
+    {
+        return conferenceSSRCs.findSSRC("video", lastVideoSSRC);
+    }
+
+    @Benchmark
+    public String findSSRCsMediaTypeMissing()
+    {
+        return conferenceSSRCs.findSSRCsMediaType(missingSSRC);
+    }
+
+    @Benchmark
+    public MediaSSRCMap removeAndAdd()
+    {
+        MediaSSRCMap removed = conferenceSSRCs.remove(lastParticipantSSRCs);
+
+        conferenceSSRCs.add(removed);
+
+        return removed;
+    }
+}
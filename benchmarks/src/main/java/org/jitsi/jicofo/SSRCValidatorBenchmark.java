@@ -0,0 +1,95 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.util.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Measures {@link SSRCValidator#tryAddSSRCsAndGroups(MediaSSRCMap,
+ * MediaSSRCGroupMap)} for a participant who signals the simulcast sources.
+ *
+ * @author agent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SSRCValidatorBenchmark
+{
+    /**
+     * How many sources are signalled already by the participant (the sources
+     * of other screen/camera streams).
+     */
+    @Param({ "0", "4", "16" })
+    public int existingStreamCount;
+
+    private final Logger logger
+        = Logger.getLogger(SSRCValidatorBenchmark.class);
+
+    private MediaSSRCMap existingSSRCs;
+
+    private MediaSSRCGroupMap existingGroups;
+
+    private MediaSSRCMap newSSRCs;
+
+    private MediaSSRCGroupMap newGroups;
+
+    @Setup
+    public void setUp()
+    {
+        BenchmarkUtil.silenceLogging();
+
+        existingSSRCs = new MediaSSRCMap();
+        existingGroups = new MediaSSRCGroupMap();
+        // Use the indexes other than 0 for the existing streams
+        for (int i = 1; i <= existingStreamCount; i++)
+        {
+            MediaSSRCMap streamSSRCs = BenchmarkUtil.createParticipantSSRCs(i);
+
+            existingSSRCs.add(streamSSRCs);
+            existingGroups.add(
+                BenchmarkUtil.createParticipantGroups(streamSSRCs));
+        }
+
+        newSSRCs = BenchmarkUtil.createParticipantSSRCs(0);
+        newGroups = BenchmarkUtil.createParticipantGroups(newSSRCs);
+    }
+
+    @Benchmark
+    public Object[] tryAddSSRCsAndGroups()
+        throws InvalidSSRCsException
+    {
+        SSRCValidator validator
+            = new SSRCValidator(
+                    "endpoint0",
+                    existingSSRCs,
+                    existingGroups,
+                    // No limit, so that we always validate all sources
+                    Integer.MAX_VALUE,
+                    logger);
+
+        return validator.tryAddSSRCsAndGroups(newSSRCs, newGroups);
+    }
+}
@@ -69,6 +69,12 @@
      */
     private String memberJid = null;
 
+    /**
+     * The region advertised by this member in the presence or <tt>null</tt>
+     * if unknown.
+     */
+    private String region;
+
     /**
      * Stores the last <tt>Presence</tt> processed by this
      * <tt>ChatMemberImpl</tt>.
@@ -209,6 +215,15 @@ public boolean isRobot()
         return robot;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getRegion()
+    {
+        return region;
+    }
+
     /**
      * Does presence processing.
      *
@@ -262,6 +277,22 @@ void processPresence(Presence presence)
                 this.robot = newStatus;
             }
         }
+
+        RegionPacketExtension regionExt
+            = (RegionPacketExtension)
+                presence.getExtension(
+                        RegionPacketExtension.ELEMENT_NAME,
+                        RegionPacketExtension.NAMESPACE);
+        if (regionExt != null)
+        {
+            String newRegion = regionExt.getRegionId();
+            if (newRegion != null && !newRegion.equals(region))
+            {
+                logger.debug(getContactAddress() + " region: " + newRegion);
+
+                this.region = newRegion;
+            }
+        }
     }
 
     /**
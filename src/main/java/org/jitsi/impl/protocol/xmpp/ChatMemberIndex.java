@@ -0,0 +1,170 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Indexes the members of a {@link ChatRoomImpl} by their full MUC JID, so
+ * that they can be looked up in constant time without taking a lock or
+ * copying the member list. It also holds the presences which have been
+ * received for the occupants who have not joined yet (from our point of view).
+ *
+ * Modifications are serialized on the index instance, but the readers never
+ * block. The member list is kept in a <tt>CopyOnWriteArrayList</tt>, because
+ * the members join and leave way less often than the list is iterated.
+ *
+ * @author agent
+ */
+class ChatMemberIndex
+{
+    /**
+     * Full MUC JID to member map.
+     */
+    private final ConcurrentMap<String, ChatMemberImpl> byMucJid
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The members in the join order.
+     */
+    private final List<ChatRoomMember> members
+        = new CopyOnWriteArrayList<>();
+
+    /**
+     * The read only view of {@link #members} given out to the callers.
+     */
+    private final List<ChatRoomMember> membersView
+        = Collections.unmodifiableList(members);
+
+    /**
+     * Caches early presence packets triggered by Smack, before there was
+     * member joined event (MUC JID to presence map).
+     */
+    private final ConcurrentMap<String, Presence> presenceCache
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Adds new member to the index.
+     *
+     * @param member the <tt>ChatMemberImpl</tt> to be added.
+     *
+     * @return <tt>false</tt> if there is a member with the same MUC JID
+     * in the index already (the index is not modified in such case).
+     */
+    synchronized boolean add(ChatMemberImpl member)
+    {
+        String mucJid = member.getContactAddress();
+
+        if (byMucJid.putIfAbsent(mucJid, member) != null)
+        {
+            return false;
+        }
+
+        members.add(member);
+
+        return true;
+    }
+
+    /**
+     * Removes the member from the index together with the presence cached for
+     * it.
+     *
+     * @param mucJid the full MUC JID of the member to be removed.
+     *
+     * @return the removed <tt>ChatMemberImpl</tt> or <tt>null</tt> if there
+     * was no member for given MUC JID.
+     */
+    synchronized ChatMemberImpl remove(String mucJid)
+    {
+        presenceCache.remove(mucJid);
+
+        ChatMemberImpl removed = byMucJid.remove(mucJid);
+        if (removed != null)
+        {
+            members.remove(removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Finds the member for given full MUC JID.
+     *
+     * @param mucJid the full MUC JID, eg. room@muc.server.net/nickname
+     *
+     * @return <tt>ChatMemberImpl</tt> or <tt>null</tt> if not found.
+     */
+    ChatMemberImpl findByMucJid(String mucJid)
+    {
+        return mucJid == null ? null : byMucJid.get(mucJid);
+    }
+
+    /**
+     * Returns the read only view of the members. The iteration does not lock
+     * the index and is not affected by the concurrent modifications.
+     */
+    List<ChatRoomMember> getMembers()
+    {
+        return membersView;
+    }
+
+    /**
+     * Returns the number of members in the index.
+     */
+    int size()
+    {
+        return members.size();
+    }
+
+    /**
+     * Stores the presence received for an occupant who is not a member yet.
+     * The presence is dropped if the occupant has joined in the meantime.
+     *
+     * @param mucJid the full MUC JID of the occupant.
+     * @param presence the <tt>Presence</tt> to be cached.
+     *
+     * @return <tt>true</tt> if the presence has been cached or <tt>false</tt>
+     * if there is a member for given MUC JID already.
+     */
+    synchronized boolean cachePresence(String mucJid, Presence presence)
+    {
+        if (byMucJid.containsKey(mucJid))
+        {
+            return false;
+        }
+
+        presenceCache.put(mucJid, presence);
+        return true;
+    }
+
+    /**
+     * Removes and returns the presence cached for given MUC JID.
+     *
+     * @param mucJid the full MUC JID of the occupant.
+     *
+     * @return the cached <tt>Presence</tt> or <tt>null</tt>.
+     */
+    Presence takeCachedPresence(String mucJid)
+    {
+        return presenceCache.remove(mucJid);
+    }
+}
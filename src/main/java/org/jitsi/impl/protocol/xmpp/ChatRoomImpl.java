@@ -63,12 +63,6 @@
      */
     private final OperationSetMultiUserChatImpl opSet;
 
-    /**
-     * Caches early presence packets triggered by Smack, before there was member
-     * joined event.
-     */
-    private Map<String, Presence> presenceCache = new HashMap<>();
-
     /**
      * Chat room name.
      */
@@ -111,9 +105,10 @@
         localUserRoleListeners = new CopyOnWriteArrayList<>();
 
     /**
-     * Nickname to member impl class map.
+     * Indexes the members by MUC JID and caches early presence packets
+     * triggered by Smack, before there was member joined event.
      */
-    private final Map<String, ChatMemberImpl> members = new HashMap<>();
+    private final ChatMemberIndex members = new ChatMemberIndex();
 
     /**
      * The list of <tt>ChatRoomMemberPropertyChangeListener</tt>.
@@ -380,7 +375,7 @@ private void resetRoleForParticipant(String participant)
         }
         else
         {
-            ChatMemberImpl member = members.get(participant);
+            ChatMemberImpl member = members.findByMucJid(participant);
             if (member != null)
             {
                 member.resetCachedRole();
@@ -520,30 +515,13 @@ public void invite(String userAddress, String reason)
     @Override
     public List<ChatRoomMember> getMembers()
     {
-        synchronized (members)
-        {
-            return new ArrayList<ChatRoomMember>(members.values());
-        }
+        return members.getMembers();
     }
 
     @Override
     public XmppChatMember findChatMember(String mucJid)
     {
-        ArrayList<ChatMemberImpl> copy;
-        synchronized (members)
-        {
-            copy = new ArrayList<>(members.values());
-        }
-
-        for (ChatMemberImpl member : copy)
-        {
-            if (member.getContactAddress().equals(mucJid))
-            {
-                return member;
-            }
-        }
-
-        return null;
+        return members.findByMucJid(mucJid);
     }
 
     @Override
@@ -979,7 +957,7 @@ private ChatMemberImpl addMember(String participant)
 
         synchronized (members)
         {
-            if (members.containsKey(participant))
+            if (members.findByMucJid(participant) != null)
             {
                 logger.error(participant + " already in " + roomName);
                 return null;
@@ -994,7 +972,7 @@ private ChatMemberImpl addMember(String participant)
                 = new ChatMemberImpl(participant, ChatRoomImpl.this,
                         participantNumber);
 
-            members.put(participant, newMember);
+            members.add(newMember);
         }
 
         return newMember;
@@ -1045,7 +1023,7 @@ public void joined(String mucJid)
 
                 // Process presence cached in the roster to init fields
                 // like video muted etc.
-                Presence cachedPresence = presenceCache.get(mucJid);
+                Presence cachedPresence = members.takeCachedPresence(mucJid);
                 if (cachedPresence != null)
                 {
                     member.processPresence(cachedPresence);
@@ -1066,6 +1044,7 @@ private ChatMemberImpl removeMember(String participant)
         {
             synchronized (members)
             {
+                // Also clears the presence cached for the participant
                 ChatMemberImpl removed = members.remove(participant);
 
                 if (removed == null)
@@ -1099,9 +1078,6 @@ public void left(String participant)
                         "Member left event for non-existing participant: "
                                     + participant);
                 }
-
-                // Clear cached Presence
-                presenceCache.remove(participant);
             }
         }
 
@@ -1359,10 +1335,18 @@ private void processOtherPresence(Presence presence)
                             "Presence for not existing member: "
                                 + presence.toXML());
 
-                    // Note that this access to #presenceCache is not protected
-                    // by a lock on #members (as opposed to the other places
-                    // where #precenceCache is accessed).
-                    presenceCache.put(presence.getFrom(), presence);
+                    if (!members.cachePresence(presence.getFrom(), presence))
+                    {
+                        // The member has joined in the meantime
+                        chatMember
+                            = members.findByMucJid(presence.getFrom());
+                        if (chatMember != null)
+                        {
+                            chatMember.processPresence(presence);
+
+                            notifyMemberPropertyChanged(chatMember);
+                        }
+                    }
                 }
             }
         }
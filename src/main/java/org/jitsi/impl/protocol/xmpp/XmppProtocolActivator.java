@@ -72,6 +72,12 @@ static public void registerXmppExtensions()
                 UserInfoPacketExt.ELEMENT_NAME,
                 UserInfoPacketExt.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(UserInfoPacketExt.class));
+        // Participant's region
+        smackInterOp.addExtensionProvider(
+                RegionPacketExtension.ELEMENT_NAME,
+                RegionPacketExtension.NAMESPACE,
+                new DefaultPacketExtensionProvider<>(
+                        RegionPacketExtension.class));
         // <videomuted> element from jitsi-meet presence
         smackInterOp.addExtensionProvider(
                 VideoMutedExtension.ELEMENT_NAME,
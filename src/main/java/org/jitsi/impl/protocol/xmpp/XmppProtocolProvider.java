@@ -23,8 +23,9 @@
 import net.java.sip.communicator.service.protocol.jabber.*;
 import net.java.sip.communicator.util.*;
 
-import org.jitsi.eventadmin.*;
 import org.jitsi.impl.protocol.xmpp.colibri.*;
+import org.jitsi.jicofo.*;
+import org.jitsi.jicofo.util.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.colibri.*;
 import org.jitsi.retry.*;
@@ -224,12 +225,7 @@ synchronized private boolean doConnect()
                 connection.login(login, pass, resource);
             }
 
-            EventAdmin eventAdmin
-                = ServiceUtils.getService(
-                    XmppProtocolActivator.bundleContext,
-                    EventAdmin.class);
-
-            colibriTools.initialize(getConnectionAdapter(), eventAdmin);
+            colibriTools.initialize(getConnectionAdapter());
 
             jingleOpSet.initialize();
 
@@ -593,14 +589,22 @@ public void reconnectionFailed(Exception e)
     /**
      * Implements {@link XmppConnection}.
      */
-    private static class XmppConnectionAdapter
+    static class XmppConnectionAdapter
         implements XmppConnection
     {
         private final XMPPConnection connection;
 
+        /**
+         * Matches the responses with the requests sent asynchronously through
+         * this adapter. It advances the timeouts on a thread of it's own.
+         */
+        private final ReplyCorrelator replyCorrelator = new ReplyCorrelator();
+
         XmppConnectionAdapter(XMPPConnection connection)
         {
             this.connection = Objects.requireNonNull(connection, "connection");
+
+            connection.addPacketListener(replyCorrelator, replyCorrelator);
         }
 
         /**
@@ -620,6 +624,13 @@ public void sendPacket(Packet packet)
 
         /**
          * {@inheritDoc}
+         *
+         * The response is received with a <tt>PacketCollector</tt>, which is
+         * fed by the thread reading the packets. The {@link ReplyCorrelator}
+         * is a packet listener and as such it can not be used here: the
+         * packet listeners are notified one after another by a single thread,
+         * so the response would not be delivered to a caller which is
+         * executing a packet listener itself, before the wait has timed out.
          */
         @Override
         public Packet sendPacketAndGetReply(Packet packet)
@@ -631,21 +642,64 @@ public Packet sendPacketAndGetReply(Packet packet)
                 = connection.createPacketCollector(
                         new PacketIDFilter(packet.getPacketID()));
 
-            if (connection.isConnected())
-                connection.sendPacket(packet);
-            else
-                throw new OperationFailedException(
-                    "No connection - unable to send packet: " + packet.toXML(),
-                    OperationFailedException.PROVIDER_NOT_REGISTERED);
-
-            //FIXME: retry allocation on timeout
-            Packet response
-                = packetCollector.nextResult(
+            try
+            {
+                if (connection.isConnected())
+                    connection.sendPacket(packet);
+                else
+                    throw new OperationFailedException(
+                        "No connection - unable to send packet: "
+                            + packet.toXML(),
+                        OperationFailedException.PROVIDER_NOT_REGISTERED);
+
+                //FIXME: retry allocation on timeout
+                return packetCollector.nextResult(
                         SmackConfiguration.getPacketReplyTimeout());
+            }
+            finally
+            {
+                packetCollector.cancel();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * The request is registered with the {@link ReplyCorrelator} of this
+         * connection, so that no thread is blocked while waiting and no
+         * packet listener is added for the time of the request. The future is
+         * completed by the packet listener thread of the connection (or by
+         * the timeout thread of the correlator), so the callbacks registered
+         * without an executor hold up the other packet listeners for as long
+         * as they run.
+         */
+        @Override
+        public SettableFuture<Packet> sendPacketAndGetReplyAsync(
+                Packet packet)
+        {
+            Objects.requireNonNull(packet, "packet");
+
+            String packetId = packet.getPacketID();
+            SettableFuture<Packet> reply
+                = replyCorrelator.register(
+                        packetId, SmackConfiguration.getPacketReplyTimeout());
+
+            if (!connection.isConnected())
+            {
+                replyCorrelator.unregister(packetId);
+
+                reply.setException(
+                        new OperationFailedException(
+                                "No connection - unable to send packet: "
+                                    + packet.toXML(),
+                                OperationFailedException
+                                    .PROVIDER_NOT_REGISTERED));
+                return reply;
+            }
 
-            packetCollector.cancel();
+            connection.sendPacket(packet);
 
-            return response;
+            return reply;
         }
 
         /**
@@ -0,0 +1,385 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.colibri;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import java.util.*;
+
+/**
+ * Remembers which sources and source groups have been sent to the bridge for
+ * every channel, so that the channels which already know their current sources
+ * are left out of the update requests.
+ *
+ * Colibri expects the full list of sources of a channel in every update (it
+ * replaces what the bridge had before), so the channels are either sent in
+ * full or not at all. The lists passed to the builder are these stored in
+ * the given maps and they are not copied, which means that the maps must not be
+ * modified after they have been given to this cache.
+ *
+ * The changes selected for a request are collected in an {@link Update} and
+ * remembered as sent only when {@link #commit(Update)} is called after
+ * the bridge has accepted the request. Until then, and for as long as
+ * the request has failed, the channels are included in every update.
+ *
+ * The class is not thread safe.
+ *
+ * @author agent
+ */
+class ChannelSourcesCache
+{
+    /**
+     * The SSRCs sent to the bridge stored by the channel ID. The values are
+     * sorted, so that the order in which the sources are listed does not
+     * matter.
+     */
+    private final Map<String, SentValue<long[]>> sentSources
+        = new HashMap<>();
+
+    /**
+     * The SSRC groups sent to the bridge stored by the channel ID.
+     */
+    private final Map<String, SentValue<List<String>>> sentGroups
+        = new HashMap<>();
+
+    /**
+     * The sequence number of the last {@link Update} created by this
+     * instance.
+     */
+    private long lastUpdateSeq;
+
+    /**
+     * Starts a new update request.
+     *
+     * @return the <tt>Update</tt> to be passed to
+     * {@link #getChangedSources(MediaSSRCMap, ColibriConferenceIQ, Update)}
+     * and {@link #getChangedGroups(MediaSSRCGroupMap, ColibriConferenceIQ,
+     * Update)} and to be committed once the request has been accepted.
+     */
+    Update createUpdate()
+    {
+        return new Update(++lastUpdateSeq);
+    }
+
+    /**
+     * Selects the sources of these channels which have been modified since
+     * the last accepted update and adds them to given update.
+     *
+     * @param ssrcs the current sources of the endpoint.
+     * @param localChannelsInfo the channels of the endpoint.
+     * @param update the update request being built.
+     *
+     * @return the map of Colibri content names to the lists of sources which
+     * should be sent to the bridge. Empty if none of the channels has changed.
+     */
+    Map<String, List<SourcePacketExtension>> getChangedSources(
+            MediaSSRCMap           ssrcs,
+            ColibriConferenceIQ    localChannelsInfo,
+            Update                 update)
+    {
+        Map<String, List<SourcePacketExtension>> changed = new HashMap<>();
+
+        for (String media : ssrcs.getMediaTypes())
+        {
+            List<SourcePacketExtension> sources
+                = ssrcs.getSSRCsForMedia(media);
+            String channelId = getChannelId(localChannelsInfo, media);
+
+            if (channelId == null)
+            {
+                // Let ColibriBuilder deal with it like it always did
+                changed.put(media, sources);
+                continue;
+            }
+
+            long[] values = new long[sources.size()];
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = sources.get(i).getSSRC();
+            }
+            Arrays.sort(values);
+
+            SentValue<long[]> sent = sentSources.get(channelId);
+            if (sent == null
+                    || !sent.isAccepted()
+                    || !Arrays.equals(values, sent.value))
+            {
+                changed.put(media, sources);
+                update.sources.put(channelId, values);
+                sentSources.put(
+                    channelId, SentValue.requested(sent, update.seq));
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Selects the source groups of these channels which have been modified
+     * since the last accepted update and adds them to given update.
+     *
+     * @param ssrcGroups the current source groups of the endpoint.
+     * @param localChannelsInfo the channels of the endpoint.
+     * @param update the update request being built.
+     *
+     * @return the map of Colibri content names to the lists of source groups
+     * which should be sent to the bridge. Empty if none of the channels has
+     * changed.
+     */
+    Map<String, List<SourceGroupPacketExtension>> getChangedGroups(
+            MediaSSRCGroupMap      ssrcGroups,
+            ColibriConferenceIQ    localChannelsInfo,
+            Update                 update)
+    {
+        Map<String, List<SourceGroupPacketExtension>> changed
+            = new HashMap<>();
+
+        for (String media : ssrcGroups.getMediaTypes())
+        {
+            List<SSRCGroup> groups = ssrcGroups.getSSRCGroupsForMedia(media);
+            List<SourceGroupPacketExtension> extensions
+                = new ArrayList<>(groups.size());
+            List<String> keys = new ArrayList<>(groups.size());
+
+            for (SSRCGroup group : groups)
+            {
+                extensions.add(group.getPacketExtension());
+                keys.add(getGroupKey(group));
+            }
+
+            String channelId = getChannelId(localChannelsInfo, media);
+            if (channelId == null)
+            {
+                changed.put(media, extensions);
+                continue;
+            }
+
+            Collections.sort(keys);
+
+            SentValue<List<String>> sent = sentGroups.get(channelId);
+            if (sent == null
+                    || !sent.isAccepted()
+                    || !keys.equals(sent.value))
+            {
+                changed.put(media, extensions);
+                update.groups.put(channelId, keys);
+                sentGroups.put(
+                    channelId, SentValue.requested(sent, update.seq));
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Remembers the sources and the source groups of given update as sent,
+     * unless they have been overridden by an update which has been accepted
+     * already. Should be called once the bridge has accepted the request.
+     *
+     * @param update the update which has been accepted.
+     */
+    void commit(Update update)
+    {
+        for (Map.Entry<String, long[]> entry : update.sources.entrySet())
+        {
+            SentValue<long[]> sent = sentSources.get(entry.getKey());
+            // The channel might have been expired in the meantime
+            if (sent != null)
+            {
+                sent.accept(entry.getValue(), update.seq);
+            }
+        }
+        for (Map.Entry<String, List<String>> entry
+                : update.groups.entrySet())
+        {
+            SentValue<List<String>> sent = sentGroups.get(entry.getKey());
+            if (sent != null)
+            {
+                sent.accept(entry.getValue(), update.seq);
+            }
+        }
+    }
+    /**
+     * Forgets what has been sent to given channels. Should be called when
+     * the channels are expired.
+     *
+     * @param channelsInfo the description of the channels.
+     */
+    void remove(ColibriConferenceIQ channelsInfo)
+    {
+        for (ColibriConferenceIQ.Content content : channelsInfo.getContents())
+        {
+            for (ColibriConferenceIQ.Channel channel : content.getChannels())
+            {
+                sentSources.remove(channel.getID());
+                sentGroups.remove(channel.getID());
+            }
+        }
+    }
+
+    /**
+     * Forgets everything that has been sent.
+     */
+    void clear()
+    {
+        sentSources.clear();
+        sentGroups.clear();
+    }
+
+    /**
+     * Finds the ID of the channel for given media type.
+     *
+     * @param localChannelsInfo the channels of the endpoint.
+     * @param media the name of Colibri content.
+     *
+     * @return the ID of the first channel in the content or <tt>null</tt> if
+     * there isn't any.
+     */
+    private static String getChannelId(
+            ColibriConferenceIQ localChannelsInfo, String media)
+    {
+        ColibriConferenceIQ.Content content
+            = localChannelsInfo.getContent(media);
+
+        if (content == null || content.getChannelCount() == 0)
+        {
+            return null;
+        }
+
+        return content.getChannels().get(0).getID();
+    }
+
+    /**
+     * Describes given SSRC group as a string which contains it's semantics and
+     * the SSRCs in the order in which they appear in the group.
+     */
+    private static String getGroupKey(SSRCGroup group)
+    {
+        StringBuilder key = new StringBuilder().append(group.getSemantics());
+
+        for (SourcePacketExtension source : group.getSources())
+        {
+            key.append(' ').append(source.getSSRC());
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * The sources and the source groups selected for one update request.
+     */
+    static class Update
+    {
+        /**
+         * The sequence number which orders the updates.
+         */
+        private final long seq;
+
+        /**
+         * The sorted SSRCs included in the request stored by the channel ID.
+         */
+        private final Map<String, long[]> sources = new HashMap<>();
+
+        /**
+         * The SSRC group keys included in the request stored by the channel
+         * ID.
+         */
+        private final Map<String, List<String>> groups = new HashMap<>();
+
+        private Update(long seq)
+        {
+            this.seq = seq;
+        }
+
+        /**
+         * Checks if the request includes the sources or the source groups of
+         * any channel, in which case it has to be committed once accepted.
+         */
+        boolean isEmpty()
+        {
+            return sources.isEmpty() && groups.isEmpty();
+        }
+    }
+
+    /**
+     * What has been sent to a channel.
+     *
+     * @param <T> the type of the value sent.
+     */
+    private static class SentValue<T>
+    {
+        /**
+         * The value last accepted by the bridge or <tt>null</tt> if none has
+         * been accepted yet.
+         */
+        private T value;
+
+        /**
+         * The sequence number of the update which has sent {@link #value}.
+         */
+        private long acceptedSeq;
+
+        /**
+         * The sequence number of the last update which has included
+         * the channel.
+         */
+        private long requestedSeq;
+
+        /**
+         * Marks the channel as included in an update.
+         *
+         * @param sent the current state of the channel or <tt>null</tt>.
+         * @param seq the sequence number of the update.
+         *
+         * @return the state to be stored for the channel.
+         */
+        static <T> SentValue<T> requested(SentValue<T> sent, long seq)
+        {
+            if (sent == null)
+            {
+                sent = new SentValue<>();
+            }
+            sent.requestedSeq = seq;
+            return sent;
+        }
+
+        /**
+         * Stores the value sent by an accepted update, unless a later update
+         * has been accepted already.
+         */
+        void accept(T value, long seq)
+        {
+            if (seq > acceptedSeq)
+            {
+                this.value = value;
+                this.acceptedSeq = seq;
+            }
+        }
+
+        /**
+         * Checks if the bridge has accepted the last update which has
+         * included the channel. If not, the value it has is unknown.
+         */
+        boolean isAccepted()
+        {
+            return acceptedSeq == requestedSeq;
+        }
+    }
+}
@@ -22,9 +22,7 @@
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.Logger;
 
-import org.jitsi.eventadmin.*;
 import org.jitsi.jicofo.*;
-import org.jitsi.jicofo.event.*;
 import org.jitsi.jicofo.util.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.colibri.*;
@@ -36,6 +34,7 @@
 import org.jivesoftware.smack.packet.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Default implementation of {@link ColibriConference} that uses Smack for
@@ -57,10 +56,10 @@
     private final XmppConnection connection;
 
     /**
-     * The {@link EventAdmin} instance used to emit video stream estimation
-     * events.
+     * The {@link BridgeSelector} notified about the video stream count
+     * changes or <tt>null</tt> if they're not tracked.
      */
-    private final EventAdmin eventAdmin;
+    private volatile BridgeSelector bridgeSelector;
 
     /**
      * XMPP address of videobridge component.
@@ -118,6 +117,14 @@
     private final ColibriBuilder colibriBuilder
         = new ColibriBuilder(conferenceState);
 
+    /**
+     * Remembers the sources sent to the bridge, so that the channels which
+     * have not changed are not included in the updates. Synchronized on
+     * {@link #syncRoot}.
+     */
+    private final ChannelSourcesCache sourcesCache
+        = new ChannelSourcesCache();
+
     /**
      * Flag used to figure out if Colibri conference has been allocated during
      * last {@link #createColibriChannels(boolean, String, boolean, List)} call.
@@ -141,18 +148,26 @@
      */
     private String gid;
 
+    /**
+     * For how long the asynchronous allocation requests are collected before
+     * they are sent to the bridge in a single Colibri IQ (in milliseconds).
+     */
+    private long allocationBatchWindow;
+
+    /**
+     * The batch of asynchronous allocation requests which is collected at
+     * the moment or <tt>null</tt> if there is none.
+     */
+    private AsyncChannelAllocation pendingAllocation;
+
     /**
      * Creates new instance of <tt>ColibriConferenceImpl</tt>.
      * @param connection XMPP connection object that wil be used by the new
      *        instance to communicate.
-     * @param eventAdmin {@link EventAdmin} instance which will be used to post
-     *        {@link BridgeEvent#VIDEOSTREAMS_CHANGED}.
      */
-    public ColibriConferenceImpl(XmppConnection    connection,
-                                 EventAdmin        eventAdmin)
+    public ColibriConferenceImpl(XmppConnection connection)
     {
         this.connection = Objects.requireNonNull(connection, "connection");
-        this.eventAdmin = Objects.requireNonNull(eventAdmin, "eventAdmin");
     }
 
     /**
@@ -358,6 +373,124 @@ public ColibriConferenceIQ createColibriChannels(
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SettableFuture<ColibriConferenceIQ> createColibriChannelsAsync(
+            boolean useBundle,
+            String endpointName,
+            boolean peerIsInitiator,
+            List<ContentPacketExtension> contents)
+    {
+        ChannelRequest request
+            = new ChannelRequest(
+                    useBundle, endpointName, peerIsInitiator, contents);
+        AsyncChannelAllocation toStart = null;
+        boolean cancelled;
+
+        synchronized (syncRoot)
+        {
+            // Only if not in 'disposed' state
+            cancelled = checkIfDisposed("createColibriChannelsAsync");
+            if (!cancelled)
+            {
+                synchronized (stateEstimationSync)
+                {
+                    trackVideoChannelsAddedRemoved(
+                            request.newVideoChannelsCount);
+                }
+
+                if (allocationBatchWindow <= 0)
+                {
+                    toStart = new AsyncChannelAllocation();
+                    toStart.add(request);
+                }
+                else
+                {
+                    if (pendingAllocation != null
+                        && pendingAllocation.hasEndpoint(endpointName))
+                    {
+                        // The same endpoint can not be allocated twice in one
+                        // IQ, so we send what we have and start a new batch
+                        toStart = pendingAllocation;
+                        pendingAllocation = null;
+                    }
+                    if (pendingAllocation == null)
+                    {
+                        pendingAllocation = new AsyncChannelAllocation();
+
+                        schedulePendingAllocation(pendingAllocation);
+                    }
+                    pendingAllocation.add(request);
+                }
+            }
+        }
+
+        if (cancelled)
+        {
+            request.result.set(null);
+        }
+        else if (toStart != null)
+        {
+            toStart.start();
+        }
+
+        return request.result;
+    }
+
+    /**
+     * Schedules given batch of allocations to be sent once the batch window
+     * expires.
+     *
+     * @param allocation the batch to be sent.
+     */
+    private void schedulePendingAllocation(
+            final AsyncChannelAllocation allocation)
+    {
+        FocusBundleActivator.getSharedThreadPool().schedule(
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        synchronized (syncRoot)
+                        {
+                            if (pendingAllocation != allocation)
+                            {
+                                // Sent already
+                                return;
+                            }
+                            pendingAllocation = null;
+                        }
+                        allocation.start();
+                    }
+                },
+                allocationBatchWindow,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAllocationBatchWindow(long window)
+    {
+        synchronized (syncRoot)
+        {
+            this.allocationBatchWindow = window;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setBridgeSelector(BridgeSelector bridgeSelector)
+    {
+        this.bridgeSelector = bridgeSelector;
+    }
+
     /**
      * Verifies the JVB's response to allocate channel request and sets
      * {@link #allocChannelsErrorCode} and {@link #allocChannelsErrorMsg}.
@@ -477,6 +610,25 @@ protected Packet sendAllocRequest(String endpointName,
         return connection.sendPacketAndGetReply(request);
     }
 
+    /**
+     * Sends Colibri packet without waiting for the response in
+     * {@link #createColibriChannelsAsync(boolean, String, boolean, List)}
+     * call.
+     *
+     * @param endpointName Colibri endpoint name(participant) or <tt>null</tt>
+     * if the request allocates channels for multiple endpoints.
+     * @param request Colibri IQ to be send towards the bridge.
+     *
+     * @return <tt>SettableFuture</tt> completed with JVB response or with
+     * <tt>null</tt> if the request timed out.
+     */
+    protected SettableFuture<Packet> sendAllocRequestAsync(
+            String                 endpointName,
+            ColibriConferenceIQ    request)
+    {
+        return connection.sendPacketAndGetReplyAsync(request);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -529,6 +681,8 @@ public void expireChannels(ColibriConferenceIQ channelInfo)
 
             colibriBuilder.addExpireChannelsReq(channelInfo);
 
+            sourcesCache.remove(channelInfo);
+
             iq = colibriBuilder.getRequest(jitsiVideobridge);
         }
 
@@ -619,6 +773,7 @@ public void updateSourcesInfo(MediaSSRCMap ssrcs,
                                   ColibriConferenceIQ localChannelsInfo)
     {
         ColibriConferenceIQ iq;
+        ChannelSourcesCache.Update sourcesUpdate;
 
         synchronized (syncRoot)
         {
@@ -634,20 +789,27 @@ public void updateSourcesInfo(MediaSSRCMap ssrcs,
             }
 
             colibriBuilder.reset();
+            sourcesUpdate = sourcesCache.createUpdate();
 
             boolean send = false;
 
             // ssrcs
             if (ssrcs != null
                     && colibriBuilder.addSSSRCInfo(
-                            ssrcs.toMap(), localChannelsInfo))
+                            sourcesCache.getChangedSources(
+                                    ssrcs, localChannelsInfo, sourcesUpdate),
+                            localChannelsInfo))
             {
                 send = true;
             }
             // ssrcGroups
             if (ssrcGroups != null
                     && colibriBuilder.addSSSRCGroupsInfo(
-                            ssrcGroups.toMap(), localChannelsInfo))
+                            sourcesCache.getChangedGroups(
+                                    ssrcGroups,
+                                    localChannelsInfo,
+                                    sourcesUpdate),
+                            localChannelsInfo))
             {
                 send = true;
             }
@@ -659,8 +821,61 @@ public void updateSourcesInfo(MediaSSRCMap ssrcs,
         {
             logRequest("Sending SSRC update: ", iq);
 
+            sendSourcesUpdate(iq, sourcesUpdate);
+        }
+    }
+
+    /**
+     * Sends the request which updates the sources of the channels. If it
+     * includes any sources or source groups, they're remembered as sent only
+     * after the bridge has accepted the request, so that they'll be sent
+     * again if it has not.
+     *
+     * @param iq the request to be sent to the bridge.
+     * @param sourcesUpdate the sources and the groups included in
+     * the request.
+     */
+    private void sendSourcesUpdate(
+            final ColibriConferenceIQ           iq,
+            final ChannelSourcesCache.Update    sourcesUpdate)
+    {
+        if (sourcesUpdate.isEmpty())
+        {
             connection.sendPacket(iq);
+            return;
         }
+
+        connection.sendPacketAndGetReplyAsync(iq).addCallback(
+            new SettableFuture.Callback<Packet>()
+            {
+                @Override
+                public void onSuccess(Packet response)
+                {
+                    if (response instanceof IQ
+                        && IQ.Type.RESULT.equals(((IQ) response).getType()))
+                    {
+                        synchronized (syncRoot)
+                        {
+                            sourcesCache.commit(sourcesUpdate);
+                        }
+                    }
+                    else
+                    {
+                        logger.error(
+                            "Sources update not accepted by "
+                                + iq.getTo() + ": "
+                                + IQUtils.responseToXML(response));
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    logger.error(
+                        "Failed to send sources update to " + iq.getTo(),
+                        error);
+                }
+            });
     }
 
     /**
@@ -730,6 +945,7 @@ public void expireConference()
 
             // Reset conference state
             conferenceState = new ColibriConferenceIQ();
+            sourcesCache.clear();
 
             // Mark instance as 'disposed'
             dispose();
@@ -742,7 +958,29 @@ public void expireConference()
     @Override
     public void dispose()
     {
-        this.disposed = true;
+        AsyncChannelAllocation cancelled;
+
+        synchronized (syncRoot)
+        {
+            this.disposed = true;
+
+            // The batch which has not been sent yet will never be, so
+            // the video streams it has reported must be taken back
+            cancelled = pendingAllocation;
+            pendingAllocation = null;
+            if (cancelled != null)
+            {
+                synchronized (stateEstimationSync)
+                {
+                    cancelled.revertVideoChannels();
+                }
+            }
+        }
+
+        if (cancelled != null)
+        {
+            cancelled.cancel();
+        }
     }
 
     /**
@@ -850,6 +1088,7 @@ public void updateChannelsInfo(
             Map<String, IceUdpTransportPacketExtension>    transportMap)
     {
         ColibriConferenceIQ iq;
+        ChannelSourcesCache.Update sourcesUpdate;
 
         synchronized (syncRoot)
         {
@@ -857,6 +1096,7 @@ public void updateChannelsInfo(
                 return;
 
             colibriBuilder.reset();
+            sourcesUpdate = sourcesCache.createUpdate();
 
             boolean send = false;
 
@@ -870,14 +1110,20 @@ public void updateChannelsInfo(
             // SSRCs
             if (ssrcs != null
                     && colibriBuilder.addSSSRCInfo(
-                            ssrcs.toMap(), localChannelsInfo))
+                            sourcesCache.getChangedSources(
+                                    ssrcs, localChannelsInfo, sourcesUpdate),
+                            localChannelsInfo))
             {
                 send = true;
             }
             // SSRC groups
             if (ssrcGroups != null
                     && colibriBuilder.addSSSRCGroupsInfo(
-                            ssrcGroups.toMap(), localChannelsInfo))
+                            sourcesCache.getChangedGroups(
+                                    ssrcGroups,
+                                    localChannelsInfo,
+                                    sourcesUpdate),
+                            localChannelsInfo))
             {
                 send = true;
             }
@@ -903,7 +1149,7 @@ else if (transportMap != null
         {
             logRequest("Sending channel info update: ", iq);
 
-            connection.sendPacket(iq);
+            sendSourcesUpdate(iq, sourcesUpdate);
         }
     }
 
@@ -935,7 +1181,8 @@ static private int calcVideoStreamDiff(int currentChannels,
     /**
      * Method called whenever video channels are about to be allocated/expired,
      * but before the actual request is sent. It will track the current video
-     * channel count and emit {@link BridgeEvent#VIDEOSTREAMS_CHANGED}.
+     * channel count and report the video stream count change to
+     * the {@link #bridgeSelector}.
      *
      * @param channelsDiff how many new video channels are to be
      *        allocated/expired.
@@ -952,9 +1199,12 @@ private void trackVideoChannelsAddedRemoved(int channelsDiff)
 
         if (streamDiff != 0)
         {
-            eventAdmin.postEvent(
-                    BridgeEvent.createVideoStreamsChanged(
-                            jitsiVideobridge, streamDiff));
+            BridgeSelector bridgeSelector = this.bridgeSelector;
+            if (bridgeSelector != null)
+            {
+                bridgeSelector.onVideoStreamsChanged(
+                        jitsiVideobridge, streamDiff);
+            }
         }
         else
         {
@@ -963,6 +1213,473 @@ private void trackVideoChannelsAddedRemoved(int channelsDiff)
         }
     }
 
+    /**
+     * Single request made with
+     * {@link #createColibriChannelsAsync(boolean, String, boolean, List)}.
+     */
+    private static class ChannelRequest
+    {
+        private final boolean useBundle;
+
+        private final String endpointName;
+
+        private final boolean peerIsInitiator;
+
+        private final List<ContentPacketExtension> contents;
+
+        /**
+         * How many new video channels will be allocated.
+         */
+        private final int newVideoChannelsCount;
+
+        /**
+         * The result of this request.
+         */
+        private final SettableFuture<ColibriConferenceIQ> result
+            = new SettableFuture<>();
+
+        ChannelRequest(boolean                         useBundle,
+                       String                          endpointName,
+                       boolean                         peerIsInitiator,
+                       List<ContentPacketExtension>    contents)
+        {
+            this.useBundle = useBundle;
+            this.endpointName = endpointName;
+            this.peerIsInitiator = peerIsInitiator;
+            this.contents = contents;
+            this.newVideoChannelsCount
+                = JingleOfferFactory.containsVideoContent(contents) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Channel allocation done by
+     * {@link #createColibriChannelsAsync(boolean, String, boolean, List)}.
+     * All {@link ChannelRequest}s collected during the batch window are sent to
+     * the bridge in a single Colibri IQ and the response is split back per
+     * endpoint. The request is sent without blocking any thread and
+     * the response is processed by the thread which delivers it. When run,
+     * the instance sends the request which has been waiting for
+     * the conference to be created.
+     */
+    private class AsyncChannelAllocation
+        implements Runnable, SettableFuture.Callback<Packet>
+    {
+        /**
+         * The requests merged into this allocation.
+         */
+        private final List<ChannelRequest> requests = new ArrayList<>();
+
+        /**
+         * Adds a request to this batch. Must be called with
+         * {@link #syncRoot} held, before the allocation is started.
+         *
+         * @param request the request to be added.
+         */
+        void add(ChannelRequest request)
+        {
+            requests.add(request);
+        }
+
+        /**
+         * Checks if this batch contains a request for given endpoint. Must be
+         * called with {@link #syncRoot} held.
+         *
+         * @param endpointName the name of the Colibri endpoint.
+         */
+        boolean hasEndpoint(String endpointName)
+        {
+            for (ChannelRequest request : requests)
+            {
+                if (request.endpointName.equals(endpointName))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Sends the request or queues it if the conference is being created.
+         */
+        void start()
+        {
+            boolean cancelled;
+
+            synchronized (syncRoot)
+            {
+                cancelled = disposed;
+                if (!cancelled && !createConfSemaphore.acquireAsync(this))
+                {
+                    if (logger.isDebugEnabled())
+                        logger.debug(
+                            "Allocation for " + requests.size() + " endpoints"
+                                + " will wait until the conference is created");
+                    return;
+                }
+            }
+
+            if (cancelled)
+            {
+                cancel();
+            }
+            else
+            {
+                send();
+            }
+        }
+
+        /**
+         * Completes all the requests with <tt>null</tt> result, because
+         * the conference has been disposed before the batch was sent.
+         */
+        void cancel()
+        {
+            for (ChannelRequest request : requests)
+            {
+                request.result.set(null);
+            }
+        }
+
+        /**
+         * Takes back the video channels reported by the requests of this
+         * batch. Must be called with {@link #stateEstimationSync} held.
+         */
+        void revertVideoChannels()
+        {
+            for (ChannelRequest request : requests)
+            {
+                trackVideoChannelsAddedRemoved(
+                    -request.newVideoChannelsCount);
+            }
+        }
+
+        /**
+         * Called when the conference creator has released the semaphore.
+         */
+        @Override
+        public void run()
+        {
+            OperationFailedException creatorFailure = null;
+
+            synchronized (syncRoot)
+            {
+                if (conferenceState.getID() == null)
+                {
+                    creatorFailure
+                        = new OperationFailedException(
+                                "Creator has failed to allocate channels on: "
+                                    + jitsiVideobridge
+                                    + ", msg: " + allocChannelsErrorMsg,
+                                allocChannelsErrorCode);
+                }
+            }
+
+            if (creatorFailure != null)
+            {
+                fail(creatorFailure);
+            }
+            else
+            {
+                send();
+            }
+        }
+
+        /**
+         * Sends the allocate request.
+         */
+        private void send()
+        {
+            ColibriConferenceIQ allocateRequest;
+
+            try
+            {
+                synchronized (syncRoot)
+                {
+                    colibriBuilder.reset();
+
+                    for (ChannelRequest request : requests)
+                    {
+                        colibriBuilder.addAllocateChannelsReq(
+                            request.useBundle,
+                            request.endpointName,
+                            request.peerIsInitiator,
+                            request.contents);
+                    }
+
+                    allocateRequest
+                        = colibriBuilder.getRequest(jitsiVideobridge);
+                }
+
+                logRequest("Channel allocate request", allocateRequest);
+
+                sendAllocRequestAsync(
+                        requests.size() == 1
+                            ? requests.get(0).endpointName : null,
+                        allocateRequest)
+                    .addCallback(this);
+            }
+            catch (Exception e)
+            {
+                fail(e);
+            }
+        }
+
+        /**
+         * Processes the response of the bridge.
+         *
+         * @param response the response packet or <tt>null</tt> on timeout.
+         */
+        @Override
+        public void onSuccess(Packet response)
+        {
+            logResponse("Channel allocate response", response);
+
+            List<ColibriConferenceIQ> peerChannels
+                = new ArrayList<>(requests.size());
+            try
+            {
+                maybeThrowOperationFailed(response);
+
+                ColibriConferenceIQ colibriResponse
+                    = (ColibriConferenceIQ) response;
+
+                synchronized (syncRoot)
+                {
+                    boolean conferenceExisted = conferenceState.getID() != null;
+
+                    ColibriAnalyser analyser
+                        = new ColibriAnalyser(conferenceState);
+
+                    analyser.processChannelAllocResp(colibriResponse);
+
+                    if (!conferenceExisted && conferenceState.getID() != null)
+                    {
+                        justAllocated = true;
+                    }
+                }
+
+                if (requests.size() == 1)
+                {
+                    peerChannels.add(
+                        ColibriAnalyser.getResponseContents(
+                                colibriResponse, requests.get(0).contents));
+                }
+                else
+                {
+                    for (ChannelRequest request : requests)
+                    {
+                        peerChannels.add(
+                            getEndpointContents(
+                                    colibriResponse, request, requests));
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                fail(e);
+                return;
+            }
+
+            createConfSemaphore.release(this);
+
+            for (int i = 0; i < requests.size(); i++)
+            {
+                requests.get(i).result.set(peerChannels.get(i));
+            }
+        }
+
+        /**
+         * Fails the allocation if the request could not be sent.
+         *
+         * @param error the cause of the failure.
+         */
+        @Override
+        public void onFailure(Throwable error)
+        {
+            if (error instanceof OperationFailedException)
+            {
+                synchronized (syncRoot)
+                {
+                    allocChannelsErrorCode
+                        = ((OperationFailedException) error).getErrorCode();
+                    allocChannelsErrorMsg = error.getMessage();
+                }
+            }
+            fail(error);
+        }
+
+        /**
+         * Reverts the video channel count, releases the semaphore if this
+         * allocation is the conference creator and fails all the requests.
+         *
+         * @param error the cause of the failure.
+         */
+        private void fail(Throwable error)
+        {
+            try
+            {
+                synchronized (syncRoot)
+                {
+                    // Emit channels expired
+                    if (!checkIfDisposed("post channels expired on failure"))
+                    {
+                        synchronized (stateEstimationSync)
+                        {
+                            revertVideoChannels();
+                        }
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                logger.error(e.getMessage(), e);
+            }
+
+            createConfSemaphore.release(this);
+
+            for (ChannelRequest request : requests)
+            {
+                request.result.setException(error);
+            }
+        }
+    }
+
+    /**
+     * Extracts from the response to a batched allocation request the channels
+     * and channel bundles allocated for given endpoint.
+     *
+     * @param response the response of the bridge to the allocation request.
+     * @param request the request of the endpoint.
+     * @param batch all the requests sent in the batch, in the order in which
+     * they were added to the allocation request.
+     *
+     * @return <tt>ColibriConferenceIQ</tt> which describes the channels of
+     * the endpoint only, just like the one returned by
+     * {@link ColibriAnalyser#getResponseContents(ColibriConferenceIQ, List)}
+     * for a request made for a single endpoint.
+     */
+    private static ColibriConferenceIQ getEndpointContents(
+            ColibriConferenceIQ     response,
+            ChannelRequest          request,
+            List<ChannelRequest>    batch)
+    {
+        ColibriConferenceIQ endpointChannels = new ColibriConferenceIQ();
+
+        endpointChannels.setFrom(response.getFrom());
+        endpointChannels.setID(response.getID());
+        endpointChannels.setName(response.getName());
+
+        String endpointName = request.endpointName;
+        Set<String> bundleIds = new HashSet<>();
+
+        for (ContentPacketExtension cpe : request.contents)
+        {
+            String contentName = cpe.getName();
+            ColibriConferenceIQ.Content responseContent
+                = response.getContent(contentName);
+
+            if (responseContent == null)
+                continue;
+
+            // The endpoints which have requested this content, in the order
+            // in which their channels have been added to the request
+            List<String> contentEndpoints = new ArrayList<>(batch.size());
+            for (ChannelRequest batchRequest : batch)
+            {
+                for (ContentPacketExtension requested : batchRequest.contents)
+                {
+                    if (contentName.equals(requested.getName()))
+                    {
+                        contentEndpoints.add(batchRequest.endpointName);
+                        break;
+                    }
+                }
+            }
+
+            ColibriConferenceIQ.Content content
+                = new ColibriConferenceIQ.Content(contentName);
+
+            List<ColibriConferenceIQ.Channel> channels
+                = responseContent.getChannels();
+            for (int i = 0; i < channels.size(); i++)
+            {
+                ColibriConferenceIQ.Channel channel = channels.get(i);
+                if (isEndpointChannel(
+                        channel, endpointName, i, contentEndpoints))
+                {
+                    content.addChannel(channel);
+                    if (channel.getChannelBundleId() != null)
+                    {
+                        bundleIds.add(channel.getChannelBundleId());
+                    }
+                }
+            }
+
+            List<ColibriConferenceIQ.SctpConnection> sctpConnections
+                = responseContent.getSctpConnections();
+            for (int i = 0; i < sctpConnections.size(); i++)
+            {
+                ColibriConferenceIQ.SctpConnection sctpConn
+                    = sctpConnections.get(i);
+                if (isEndpointChannel(
+                        sctpConn, endpointName, i, contentEndpoints))
+                {
+                    content.addSctpConnection(sctpConn);
+                    if (sctpConn.getChannelBundleId() != null)
+                    {
+                        bundleIds.add(sctpConn.getChannelBundleId());
+                    }
+                }
+            }
+
+            endpointChannels.addContent(content);
+        }
+
+        for (ColibriConferenceIQ.ChannelBundle bundle
+                : response.getChannelBundles())
+        {
+            if (bundleIds.contains(bundle.getId()))
+            {
+                endpointChannels.addChannelBundle(bundle);
+            }
+        }
+
+        return endpointChannels;
+    }
+
+    /**
+     * Checks if given channel belongs to the endpoint. Channel bundles are
+     * named after the endpoints, so the bundle ID is checked when the bridge
+     * has not included the endpoint in the response. A channel which has
+     * neither is matched by its position, as the bridge describes
+     * the channels in the order in which they were requested.
+     *
+     * @param channel the channel found in the response.
+     * @param endpointName the name of the Colibri endpoint.
+     * @param index the position of the channel in its content.
+     * @param contentEndpoints the endpoints which have requested the content
+     * of the channel, in the order of the request.
+     */
+    private static boolean isEndpointChannel(
+            ColibriConferenceIQ.ChannelCommon    channel,
+            String                               endpointName,
+            int                                  index,
+            List<String>                         contentEndpoints)
+    {
+        String endpoint = channel.getEndpoint();
+        if (endpoint == null)
+        {
+            endpoint = channel.getChannelBundleId();
+        }
+        if (endpoint == null && index < contentEndpoints.size())
+        {
+            endpoint = contentEndpoints.get(index);
+        }
+
+        return endpointName.equals(endpoint);
+    }
+
     /**
      * Custom type of semaphore that allows only 1 thread to send initial
      * Colibri IQ that creates the conference.
@@ -972,13 +1689,23 @@ private void trackVideoChannelsAddedRemoved(int channelsDiff)
      * conference ID). Error response to create request will cause
      * <tt>OperationFailedException</tt> on the threads waiting on this
      * semaphore.
+     *
+     * Asynchronous requests never wait on the semaphore. They are queued
+     * instead and sent (or failed) when the creator releases it.
      */
     class ConferenceCreationSemaphore
     {
         /**
-         * Stores reference to conference creator thread instance.
+         * Stores reference to conference creator which is either the thread
+         * or the {@link AsyncChannelAllocation} which has sent the "create"
+         * request.
+         */
+        private Object creator;
+
+        /**
+         * Asynchronous allocations waiting for the conference to be created.
          */
-        private Thread creatorThread;
+        private final List<Runnable> waitingAllocations = new LinkedList<>();
 
         /**
          * Acquires conference creation semaphore. If we don't have conference
@@ -1002,9 +1729,9 @@ public boolean acquire()
             {
                 String jvbInUse = jitsiVideobridge;
 
-                if (conferenceState.getID() == null && creatorThread == null)
+                if (conferenceState.getID() == null && creator == null)
                 {
-                    creatorThread = Thread.currentThread();
+                    creator = Thread.currentThread();
 
                     if (logger.isDebugEnabled())
                         logger.debug("I'm the conference creator - " +
@@ -1019,7 +1746,7 @@ public boolean acquire()
                             "Will have to wait until the conference " +
                             "is created - " + Thread.currentThread().getName());
 
-                    while (creatorThread != null)
+                    while (creator != null)
                     {
                         try
                         {
@@ -1050,24 +1777,79 @@ public boolean acquire()
             return false;
         }
 
+        /**
+         * Acquires conference creation semaphore without blocking. The given
+         * allocation becomes the conference creator if there is no conference
+         * ID yet and no one else is creating it. If the conference is being
+         * created at the moment the allocation is queued and it will be run
+         * once the creator releases the semaphore.
+         *
+         * @param allocation the allocation which wants to send it's request.
+         *
+         * @return <tt>true</tt> if the allocation can send it's request right
+         * away or <tt>false</tt> if it has been queued.
+         */
+        boolean acquireAsync(Runnable allocation)
+        {
+            synchronized (syncRoot)
+            {
+                if (conferenceState.getID() == null && creator == null)
+                {
+                    creator = allocation;
+                    return true;
+                }
+                else if (creator != null)
+                {
+                    waitingAllocations.add(allocation);
+                    return false;
+                }
+                return true;
+            }
+        }
+
         /**
          * Releases this semaphore instance. If we're a conference creator then
          * all waiting thread will be woken up.
          */
         public void release()
         {
+            release(Thread.currentThread());
+        }
+
+        /**
+         * Releases this semaphore instance if it is held by given owner. All
+         * waiting threads are woken up and the queued allocations are run by
+         * the calling thread.
+         *
+         * @param owner the thread or the allocation which is releasing
+         * the semaphore.
+         */
+        void release(Object owner)
+        {
+            List<Runnable> toRun;
+
             synchronized (syncRoot)
             {
-                if (creatorThread == Thread.currentThread())
+                if (creator != owner)
                 {
-                    if (logger.isDebugEnabled())
-                        logger.debug(
-                            "Conference creator is releasing " +
-                            "the lock - " + Thread.currentThread().getName());
-
-                    creatorThread = null;
-                    syncRoot.notifyAll();
+                    return;
                 }
+
+                if (logger.isDebugEnabled())
+                    logger.debug(
+                        "Conference creator is releasing " +
+                        "the lock - " + owner);
+
+                creator = null;
+                syncRoot.notifyAll();
+
+                toRun = new ArrayList<>(waitingAllocations);
+                waitingAllocations.clear();
+            }
+
+            for (Runnable allocation : toRun)
+            {
+                allocation.run();
             }
         }
     }
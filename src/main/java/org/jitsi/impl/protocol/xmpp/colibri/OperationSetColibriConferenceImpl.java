@@ -21,7 +21,6 @@
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 import net.java.sip.communicator.util.Logger;
 
-import org.jitsi.eventadmin.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.colibri.*;
 
@@ -42,20 +41,15 @@
 
     private XmppConnection connection;
 
-    private EventAdmin eventAdmin;
-
     /**
      * Initializes this operation set.
      *
      * @param connection Smack XMPP connection impl that will be used to send
      *                   and receive XMPP packets.
-     * @param eventAdmin the <tt>EventAdmin</tt> which will be used by
-     *                   the underlying components to emit events.
      */
-    public void initialize(XmppConnection connection, EventAdmin eventAdmin)
+    public void initialize(XmppConnection connection)
     {
         this.connection = connection;
-        this.eventAdmin = eventAdmin;
 
         // FIXME: Register Colibri
         ProviderManager.getInstance().addIQProvider(
@@ -77,7 +71,7 @@ public void initialize(XmppConnection connection, EventAdmin eventAdmin)
     public ColibriConference createNewConference()
     {
         ColibriConference conf
-            = new ColibriConferenceImpl(connection, eventAdmin);
+            = new ColibriConferenceImpl(connection);
         logger.info("Conference created: " + conf);
         return conf;
     }
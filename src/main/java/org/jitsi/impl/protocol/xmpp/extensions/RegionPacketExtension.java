@@ -0,0 +1,72 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.extensions;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+
+/**
+ * Packet extension included in Jitsi-Meet MUC presence to signal the region
+ * of the participant, eg. &lt;region id="us-east-1"/&gt;. The value is used
+ * by region aware bridge selection.
+ *
+ * @author agent
+ */
+public class RegionPacketExtension
+    extends AbstractPacketExtension
+{
+    /**
+     * XML element name of this packet extension.
+     */
+    public static final String ELEMENT_NAME = "region";
+
+    /**
+     * Name space of region packet extension.
+     */
+    public static final String NAMESPACE = "http://jitsi.org/jitsi-meet";
+
+    /**
+     * The name of the attribute which holds the region ID.
+     */
+    public static final String ID_ATTRIBUTE_NAME = "id";
+
+    /**
+     * Creates an {@link RegionPacketExtension} instance.
+     */
+    public RegionPacketExtension()
+    {
+        super(NAMESPACE, ELEMENT_NAME);
+    }
+
+    /**
+     * Returns the region ID or <tt>null</tt> if not specified.
+     */
+    public String getRegionId()
+    {
+        return getAttributeAsString(ID_ATTRIBUTE_NAME);
+    }
+
+    /**
+     * Sets new region ID.
+     * @param regionId the region ID to set or <tt>null</tt> to remove
+     * the attribute.
+     */
+    public void setRegionId(String regionId)
+    {
+        setAttribute(ID_ATTRIBUTE_NAME, regionId);
+    }
+}
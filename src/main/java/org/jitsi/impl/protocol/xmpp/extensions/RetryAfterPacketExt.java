@@ -0,0 +1,82 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.extensions;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+
+/**
+ * Custom packet extension included in the error response to
+ * {@link ConferenceIq} which has been rejected, because too many conferences
+ * are being created. Tells after how many seconds the request should be
+ * retried.
+ *
+ * @author agent
+ */
+public class RetryAfterPacketExt
+    extends AbstractPacketExtension
+{
+    /**
+     * XML namespace of this packet extension.
+     */
+    public static final String NAMESPACE = ConferenceIq.NAMESPACE;
+
+    /**
+     * XML element name of this packet extension.
+     */
+    public static final String ELEMENT_NAME = "retry-after";
+
+    /**
+     * The name of XML attribute which holds the number of seconds after which
+     * the request should be retried.
+     */
+    public static final String SECONDS_ATTR_NAME = "seconds";
+
+    /**
+     * Creates new instance of <tt>RetryAfterPacketExt</tt>.
+     */
+    public RetryAfterPacketExt()
+    {
+        super(NAMESPACE, ELEMENT_NAME);
+    }
+
+    /**
+     * Sets the number of seconds after which the request should be retried.
+     * @param seconds the number of seconds or <tt>-1</tt> to remove
+     *                the attribute.
+     */
+    public void setSeconds(int seconds)
+    {
+        if (seconds == -1)
+        {
+            setAttribute(SECONDS_ATTR_NAME, null);
+        }
+        else
+        {
+            setAttribute(SECONDS_ATTR_NAME, seconds);
+        }
+    }
+
+    /**
+     * Returns the number of seconds after which the request should be retried
+     * or <tt>-1</tt> if unspecified.
+     */
+    public int getSeconds()
+    {
+        return getAttributeAsInt(SECONDS_ATTR_NAME, -1);
+    }
+}
@@ -63,7 +63,20 @@ public void start(BundleContext context)
 
         logger.info("REST reservation API will use base URL: " + apiBaseUrl);
 
-        restReservations = new RESTReservations(apiBaseUrl);
+        restReservations
+            = new RESTReservations(
+                    apiBaseUrl,
+                    config.getInt(
+                        RESTReservations.MAX_CONNECTIONS_PNAME,
+                        RESTReservations.DEFAULT_MAX_CONNECTIONS),
+                    config.getLong(
+                        RESTReservations.CONFIRMED_CACHE_TTL_PNAME,
+                        RESTReservations.DEFAULT_CONFIRMED_CACHE_TTL),
+                    config.getBoolean(
+                        RESTReservations.ASYNC_REQUESTS_PNAME, true),
+                    config.getInt(
+                        RESTReservations.API_TIMEOUT_PNAME,
+                        RESTReservations.DEFAULT_API_TIMEOUT));
 
         serviceRegistration = context.registerService(
             ReservationSystem.class, restReservations, null);
@@ -22,8 +22,11 @@
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.*;
 import org.apache.http.client.methods.*;
+import org.apache.http.client.params.*;
 import org.apache.http.impl.client.*;
+import org.apache.http.impl.conn.*;
 import org.apache.http.message.*;
+import org.apache.http.params.*;
 import org.jitsi.impl.reservation.rest.json.*;
 import org.json.simple.parser.*;
 import org.json.simple.parser.ParseException;
@@ -51,34 +54,78 @@
     private final String baseUrl;
 
     /**
-     * HTTP client used for sending requests.
+     * The pool of keep-alive connections to the API endpoint shared by
+     * the requests executed concurrently.
      */
-    private final DefaultHttpClient client = new DefaultHttpClient();
+    private final PoolingClientConnectionManager connectionManager
+        = new PoolingClientConnectionManager();
 
     /**
-     * <tt>JSONParser</tt> instance used for parsing JSON.
+     * HTTP client used for sending requests.
      */
-    private final JSONParser jsonParser = new JSONParser();
+    private final DefaultHttpClient client
+        = new DefaultHttpClient(connectionManager);
 
     /**
-     * JSON handler for <tt>Conference</tt> objects.
+     * Creates new instance of <tt>ApiHandler</tt> which uses a single
+     * connection.
+     *
+     * @param baseUrl the base URL of REST API.
      */
-    private final ConferenceJsonHandler conferenceJson
-            = new ConferenceJsonHandler();
+    public ApiHandler(String baseUrl)
+    {
+        this(baseUrl, 1);
+    }
 
     /**
-     * JSON handler for error responses.
+     * Creates new instance of <tt>ApiHandler</tt> with the default timeout
+     * {@link RESTReservations#DEFAULT_API_TIMEOUT}.
+     *
+     * @param baseUrl the base URL of REST API.
+     * @param maxConnections the maximum number of connections kept open to
+     * the API endpoint, which is also the number of requests that can be
+     * executed at the same time.
      */
-    private final ErrorJsonHandler errorJson = new ErrorJsonHandler();
+    public ApiHandler(String baseUrl, int maxConnections)
+    {
+        this(baseUrl, maxConnections, RESTReservations.DEFAULT_API_TIMEOUT);
+    }
 
     /**
      * Creates new instance of <tt>ApiHandler</tt>.
      *
      * @param baseUrl the base URL of REST API.
+     * @param maxConnections the maximum number of connections kept open to
+     * the API endpoint, which is also the number of requests that can be
+     * executed at the same time.
+     * @param timeout the timeout (in milliseconds) of connecting to the API
+     * endpoint, of waiting for the data of the response and of waiting for
+     * a free connection from the pool.
      */
-    public ApiHandler(String baseUrl)
+    public ApiHandler(String baseUrl, int maxConnections, int timeout)
     {
         this.baseUrl = baseUrl;
+
+        // All requests go to the same host, so the per route limit is
+        // the total limit
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        // A reservation system which does not respond must not hold
+        // the threads waiting for the reservations forever
+        HttpParams params = client.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, timeout);
+        HttpConnectionParams.setSoTimeout(params, timeout);
+        params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, timeout);
+    }
+
+    /**
+     * Closes all connections. This instance must not be used after it has
+     * been shut down.
+     */
+    public void shutdown()
+    {
+        connectionManager.shutdown();
     }
 
     /**
@@ -264,8 +311,11 @@ private ErrorResponse readErrorResponse(HttpResponse response)
         BufferedReader rd
             = new BufferedReader(
                 new InputStreamReader(response.getEntity().getContent()));
+        ErrorJsonHandler errorJson = new ErrorJsonHandler();
 
-        jsonParser.parse(rd, errorJson);
+        // The parser and the handlers are not thread safe, so every request
+        // has it's own
+        new JSONParser().parse(rd, errorJson);
 
         return errorJson.getResult();
     }
@@ -291,13 +341,14 @@ private Conference readConferenceResponse(Conference conference,
         BufferedReader rd
             = new BufferedReader(
                 new InputStreamReader(response.getEntity().getContent()));
+        ConferenceJsonHandler conferenceJson = new ConferenceJsonHandler();
 
         if (conference != null)
         {
             conferenceJson.setForUpdate(conference);
         }
 
-        jsonParser.parse(rd, conferenceJson);
+        new JSONParser().parse(rd, conferenceJson);
 
         if (conference == null)
         {
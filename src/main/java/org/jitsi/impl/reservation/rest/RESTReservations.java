@@ -21,16 +21,28 @@
 import org.jitsi.assertions.*;
 import org.jitsi.jicofo.*;
 import org.jitsi.jicofo.reservation.*;
+import org.jitsi.jicofo.util.*;
 import org.json.simple.parser.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Implements {@link ReservationSystem} in order to integrate with REST API of
  * the reservation system.<br/> Creates/destroys conferences via API endpoint
  * and also enforces scheduled conference duration.
  *
+ * The requests for different rooms are executed concurrently over a pool of
+ * keep-alive connections and the concurrent requests for the same room are
+ * merged into one API call. The reservations of the conferences which have
+ * ended can be kept for {@link #CONFIRMED_CACHE_TTL_PNAME} before they're
+ * deleted from the reservation system, so that the conferences recreated in
+ * the meantime (eg. when the participants reconnect) reuse them without
+ * querying the API. They're deleted immediately by default. A room is not
+ * reserved again before the deletion of it's previous reservation has
+ * finished.
+ *
  * @author Pawel Domas
  */
 public class RESTReservations
@@ -48,6 +60,56 @@
     public static final String API_BASE_URL_PNAME
         = "org.jitsi.impl.reservation.rest.BASE_URL";
 
+    /**
+     * The name of the property which specifies the maximum number of
+     * connections to the API endpoint and the number of requests that can be
+     * executed at the same time.
+     */
+    public static final String MAX_CONNECTIONS_PNAME
+        = "org.jitsi.impl.reservation.rest.MAX_CONNECTIONS";
+
+    /**
+     * The name of the property which specifies for how long (in milliseconds)
+     * the reservation of a conference which has ended is kept, before it's
+     * deleted from the reservation system. <tt>0</tt> deletes
+     * the reservations immediately.
+     */
+    public static final String CONFIRMED_CACHE_TTL_PNAME
+        = "org.jitsi.impl.reservation.rest.CONFIRMED_CACHE_TTL";
+
+    /**
+     * The name of the property which can be set to <tt>false</tt> in order to
+     * execute the API requests on the threads which are asking for
+     * the reservations, instead of on the request pool.
+     */
+    public static final String ASYNC_REQUESTS_PNAME
+        = "org.jitsi.impl.reservation.rest.ASYNC_REQUESTS";
+
+    /**
+     * The name of the property which specifies the timeout (in milliseconds)
+     * of connecting to the API endpoint and of waiting for the data of
+     * the response.
+     */
+    public static final String API_TIMEOUT_PNAME
+        = "org.jitsi.impl.reservation.rest.API_TIMEOUT";
+
+    /**
+     * The default value of {@link #MAX_CONNECTIONS_PNAME}.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+
+    /**
+     * The default value of {@link #CONFIRMED_CACHE_TTL_PNAME}. The reservation
+     * system may expect the DELETE as soon as the conference ends, so keeping
+     * the reservations has to be enabled explicitly.
+     */
+    public static final long DEFAULT_CONFIRMED_CACHE_TTL = 0;
+
+    /**
+     * The default value of {@link #API_TIMEOUT_PNAME}.
+     */
+    public static final int DEFAULT_API_TIMEOUT = 10000;
+
     /**
      * Focus manager instance.
      */
@@ -64,24 +126,135 @@
     private Timer confDurationGuard;
 
     /**
-     * Active conferences known to our side.
+     * Active conferences known to our side, including these which have ended
+     * recently and are waiting in {@link #releasedConferences}.
      */
     private final Map<String, Conference> conferenceMap = new HashMap<>();
 
+    /**
+     * Maps the names of the rooms of the conferences which have ended to
+     * the time when their reservations are to be deleted.
+     */
+    private final Map<String, Long> releasedConferences = new HashMap<>();
+
+    /**
+     * The API requests being executed, mapped by the room names.
+     */
+    private final ConcurrentMap<String, SettableFuture<Conference>>
+        pendingRequests = new ConcurrentHashMap<>();
+
+    /**
+     * The reservations being deleted, mapped by the room names. The requests
+     * for these rooms wait until the deletion has finished, otherwise
+     * the DELETE could remove the reservation which the reservation system
+     * returns for the new conference. Guarded by this instance.
+     */
+    private final Map<String, SettableFuture<Void>> pendingDeletes
+        = new HashMap<>();
+
     /**
      * Utility class that deals with API REST request processing.
      */
     private final ApiHandler api;
 
     /**
-     * Creates new instance of <tt>RESTReservations</tt> instance.
+     * The maximum number of API requests executed at the same time.
+     */
+    private final int maxConnections;
+
+    /**
+     * How long the reservations of the conferences which have ended are kept
+     * (in milliseconds).
+     */
+    private final long confirmedCacheTtl;
+
+    /**
+     * How long {@link #createConference(String, String)} waits for
+     * the reservation (in milliseconds).
+     */
+    private final long reservationTimeout;
+
+    /**
+     * Whether the API requests are executed on {@link #requestExecutor}.
+     */
+    private final boolean asyncRequests;
+
+    /**
+     * The executor which runs the API requests or <tt>null</tt> if they're
+     * executed by the calling threads.
+     */
+    private ExecutorService requestExecutor;
+
+    /**
+     * Creates new instance of <tt>RESTReservations</tt> instance with
+     * the default settings.
      * @param baseUrl base URL for RESP API endpoint.
      */
     public RESTReservations(String baseUrl)
+    {
+        this(baseUrl, DEFAULT_MAX_CONNECTIONS,
+             DEFAULT_CONFIRMED_CACHE_TTL, true);
+    }
+
+    /**
+     * Creates new instance of <tt>RESTReservations</tt> instance with
+     * the default API timeout.
+     * @param baseUrl base URL for RESP API endpoint.
+     * @param maxConnections the maximum number of API requests executed at
+     * the same time.
+     * @param confirmedCacheTtl how long the reservations of the conferences
+     * which have ended are kept (in milliseconds).
+     * @param asyncRequests <tt>true</tt> to execute the API requests on
+     * a dedicated pool or <tt>false</tt> to execute them on the threads which
+     * are asking for the reservations.
+     */
+    public RESTReservations(String     baseUrl,
+                            int        maxConnections,
+                            long       confirmedCacheTtl,
+                            boolean    asyncRequests)
+    {
+        this(baseUrl, maxConnections, confirmedCacheTtl, asyncRequests,
+             DEFAULT_API_TIMEOUT);
+    }
+
+    /**
+     * Creates new instance of <tt>RESTReservations</tt> instance.
+     * @param baseUrl base URL for RESP API endpoint.
+     * @param maxConnections the maximum number of API requests executed at
+     * the same time.
+     * @param confirmedCacheTtl how long the reservations of the conferences
+     * which have ended are kept (in milliseconds).
+     * @param asyncRequests <tt>true</tt> to execute the API requests on
+     * a dedicated pool or <tt>false</tt> to execute them on the threads which
+     * are asking for the reservations.
+     * @param apiTimeout the timeout of connecting to the API endpoint and of
+     * waiting for the data of the response (in milliseconds).
+     */
+    public RESTReservations(String     baseUrl,
+                            int        maxConnections,
+                            long       confirmedCacheTtl,
+                            boolean    asyncRequests,
+                            int        apiTimeout)
     {
         Assert.notNullNorEmpty(baseUrl, "baseUrl: " + baseUrl);
 
-        this.api = new ApiHandler(baseUrl);
+        if (maxConnections <= 0)
+        {
+            throw new IllegalArgumentException(
+                "maxConnections: " + maxConnections);
+        }
+        if (apiTimeout <= 0)
+        {
+            throw new IllegalArgumentException("apiTimeout: " + apiTimeout);
+        }
+
+        this.maxConnections = maxConnections;
+        this.confirmedCacheTtl = Math.max(0, confirmedCacheTtl);
+        this.asyncRequests = asyncRequests;
+        // The POST and the GET of the conflicting reservation can take
+        // the timeout each, plus the time spent waiting for a connection
+        this.reservationTimeout = 3L * apiTimeout;
+        this.api = new ApiHandler(baseUrl, maxConnections, apiTimeout);
     }
 
     /**
@@ -100,6 +273,19 @@ public void start(FocusManager focusManager)
 
         this.focusManager = Objects.requireNonNull(focusManager, "focusManager");
 
+        if (asyncRequests)
+        {
+            ThreadPoolExecutor executor
+                = new ThreadPoolExecutor(
+                        maxConnections, maxConnections,
+                        60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new DaemonThreadFactory("reservation"));
+            executor.allowCoreThreadTimeOut(true);
+
+            requestExecutor = executor;
+        }
+
         focusManager.setFocusAllocationListener(this);
 
         confDurationGuard = new Timer("ConferenceDurationGuard");
@@ -122,83 +308,227 @@ public void stop()
             confDurationGuard.cancel();
             confDurationGuard = null;
         }
+        if (requestExecutor != null)
+        {
+            requestExecutor.shutdownNow();
+            requestExecutor = null;
+        }
+        api.shutdown();
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Blocks until the reservation system responds, but not longer than
+     * three times {@link #API_TIMEOUT_PNAME}. Use
+     * {@link #createConferenceAsync(String, String)} in order not to block
+     * the calling thread.
      */
-    public synchronized Result createConference(String creator,
-                                                String mucRoomName)
+    public Result createConference(String creator, String mucRoomName)
     {
-        Conference conference = conferenceMap.get(mucRoomName);
-        if (conference == null)
+        SettableFuture<Result> future
+            = createConferenceAsync(creator, mucRoomName);
+        try
         {
-            // Create new conference
-            try
+            return future.get(reservationTimeout, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            logger.error(
+                "Reservation of " + mucRoomName + " timed out after "
+                    + reservationTimeout + " ms");
+            return new Result(RESULT_INTERNAL_ERROR, "Timeout");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return new Result(RESULT_INTERNAL_ERROR, "Interrupted");
+        }
+        catch (ExecutionException e)
+        {
+            // Never happens, the failures are converted to results
+            logger.error(e, e);
+            return new Result(RESULT_INTERNAL_ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #createConference(String, String)}.
+     * The future is completed with the result once the reservation system
+     * responds. If there is a request for the same room in progress already,
+     * the reservation returned for it will be used. If the previous
+     * reservation of the room is being deleted, the request is made once
+     * the deletion has finished.
+     *
+     * Note that {@link org.jitsi.jicofo.xmpp.FocusComponent} still calls
+     * the blocking {@link #createConference(String, String)}, because its IQ
+     * handlers must return the response to the caller. The thread waits for
+     * the request, but the requests of other rooms are not delayed and
+     * the requests for the same room are still merged into one API call.
+     *
+     * @param creator the identity of the user who's creating the room or
+     * <tt>null</tt> if there is no authentication.
+     * @param mucRoomName the full name of the MUC room.
+     *
+     * @return the future which is never failed, the errors are reported with
+     * one of {@link ReservationSystem} "result" constants.
+     */
+    public SettableFuture<Result> createConferenceAsync(
+            final String creator, final String mucRoomName)
+    {
+        final SettableFuture<Result> future = new SettableFuture<>();
+
+        Conference conference;
+        SettableFuture<Void> deletion;
+        SettableFuture<Conference> request = null;
+        SettableFuture<Conference> pending = null;
+        synchronized (this)
+        {
+            deletion = pendingDeletes.get(mucRoomName);
+            conference
+                = deletion == null ? conferenceMap.get(mucRoomName) : null;
+
+            if (conference != null
+                    && releasedConferences.remove(mucRoomName) != null)
+            {
+                logger.info(
+                    "Reusing the reservation of " + mucRoomName
+                        + ", id: " + conference.getId());
+            }
+            else if (deletion == null && conference == null)
             {
-                ApiHandler.ApiResult result
-                    = api.createNewConference(creator, mucRoomName);
+                // Under the lock, so that the reservation can not be deleted
+                // after it has been checked and before the request is made
+                request = new SettableFuture<>();
+                pending = pendingRequests.putIfAbsent(mucRoomName, request);
+            }
+        }
+
+        if (deletion != null)
+        {
+            logger.info(
+                "Waiting for the reservation of " + mucRoomName
+                    + " to be deleted");
 
-                if (result.error == null)
+            deletion.addCallback(new SettableFuture.Callback<Void>()
+            {
+                @Override
+                public void onSuccess(Void result)
                 {
-                    conference = result.conference;
-                    conferenceMap.put(mucRoomName, conference);
+                    retry();
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    retry();
                 }
-                else if (result.statusCode == 409
-                        && result.error.getConflictId() != null)
+
+                private void retry()
                 {
-                    Number conflictId = result.error.getConflictId();
+                    createConferenceAsync(creator, mucRoomName).addCallback(
+                        new SettableFuture.Callback<Result>()
+                        {
+                            @Override
+                            public void onSuccess(Result result)
+                            {
+                                future.set(result);
+                            }
+
+                            @Override
+                            public void onFailure(Throwable error)
+                            {
+                                future.set(
+                                    new Result(
+                                        RESULT_INTERNAL_ERROR,
+                                        error.getMessage()));
+                            }
+                        });
+                }
+            });
+            return future;
+        }
 
-                    // Conference already exists(check if we have it locally)
-                    conference = findConferenceForId(conflictId);
+        if (conference != null)
+        {
+            future.set(verifyOwner(creator, mucRoomName, conference));
+            return future;
+        }
 
-                    logger.info(
-                        "Conference '" + mucRoomName + "' already "
-                            + "allocated, id: " + conflictId);
+        if (pending == null)
+        {
+            pending = request;
+            executeRequest(
+                new AllocateConferenceTask(creator, mucRoomName, request));
+        }
 
-                    // do GET conflict conference
-                    if (conference == null)
-                    {
-                        ApiHandler.ApiResult getResult
-                            = api.getConference(conflictId);
-                        if (getResult.conference != null)
-                        {
-                            conference = getResult.conference;
-                            // Fill full room name as it is not transferred
-                            // over REST API
-                            conference.setMucRoomName(mucRoomName);
+        pending.addCallback(new SettableFuture.Callback<Conference>()
+        {
+            @Override
+            public void onSuccess(Conference conference)
+            {
+                future.set(verifyOwner(creator, mucRoomName, conference));
+            }
 
-                            conferenceMap.put(mucRoomName, conference);
-                        }
-                        else
-                        {
-                            logger.error("API error: " + result);
-                            return new Result(
-                                RESULT_INTERNAL_ERROR,
-                                result.error.getMessage());
-                        }
-                    }
+            @Override
+            public void onFailure(Throwable error)
+            {
+                if (error instanceof ReservationFailure)
+                {
+                    future.set(((ReservationFailure) error).result);
                 }
                 else
                 {
-                    // Other error
-                    logger.error("API error: " + result);
-                    return new Result(
-                            RESULT_INTERNAL_ERROR, result.error.getMessage());
+                    logger.error(error, error);
+                    future.set(
+                        new Result(RESULT_INTERNAL_ERROR, error.getMessage()));
                 }
             }
-            catch (IOException e)
+        });
+
+        return future;
+    }
+
+    /**
+     * Executes the request on {@link #requestExecutor} or on the calling
+     * thread if the requests are not asynchronous.
+     *
+     * @param task the task which executes the request.
+     */
+    private void executeRequest(Runnable task)
+    {
+        ExecutorService executor = this.requestExecutor;
+        if (executor != null)
+        {
+            try
             {
-                logger.error(e, e);
-                return new Result(RESULT_INTERNAL_ERROR, e.getMessage());
+                executor.execute(task);
+                return;
             }
-            catch (ParseException e)
+            catch (RejectedExecutionException e)
             {
-                logger.error(e, e);
-                return new Result(RESULT_INTERNAL_ERROR, e.getMessage());
+                logger.warn(
+                    "Request pool unavailable, executing the request"
+                        + " on the calling thread");
             }
         }
+        task.run();
+    }
 
+    /**
+     * Checks if the conference reserved for given room belongs to the user.
+     *
+     * @param creator the identity of the user or <tt>null</tt> if there is
+     * no authentication.
+     * @param mucRoomName the name of the room.
+     * @param conference the reserved <tt>Conference</tt>.
+     *
+     * @return the <tt>Result</tt> to be returned to the user.
+     */
+    private Result verifyOwner(String        creator,
+                               String        mucRoomName,
+                               Conference    conference)
+    {
         // If there is no authAuthority, creator is null
         if (creator == null)
         {
@@ -222,29 +552,80 @@ else if (result.statusCode == 409
     }
 
     /**
-     * Deletes conference for given <tt>mucRoomName</tt> through the API.
+     * Allocates the conference through the API.
+     *
+     * @param creator the identity of the owner.
+     * @param mucRoomName the full name of the MUC room.
+     *
+     * @return the <tt>Conference</tt> allocated by the reservation system.
+     *
+     * @throws ReservationFailure if the API has responded with an error.
      */
-    private synchronized Result deleteConference(String mucRoomName)
+    private Conference allocateConference(String creator, String mucRoomName)
+        throws ReservationFailure
     {
-        Conference conference = conferenceMap.get(mucRoomName);
-        if (conference != null)
+        try
         {
-            // Delete conference
-            Number id = conference.getId();
-
-            int result = deleteConference(id);
+            ApiHandler.ApiResult result
+                = api.createNewConference(creator, mucRoomName);
 
-            if (result == RESULT_OK)
+            if (result.error == null)
+            {
+                return result.conference;
+            }
+            else if (result.statusCode == 409
+                    && result.error.getConflictId() != null)
             {
-                conferenceMap.remove(mucRoomName);
+                Number conflictId = result.error.getConflictId();
+
+                // Conference already exists(check if we have it locally)
+                Conference conference = findConferenceForId(conflictId);
+
+                logger.info(
+                    "Conference '" + mucRoomName + "' already "
+                        + "allocated, id: " + conflictId);
+
+                if (conference != null)
+                {
+                    return conference;
+                }
+
+                // do GET conflict conference
+                ApiHandler.ApiResult getResult = api.getConference(conflictId);
+                if (getResult.conference != null)
+                {
+                    conference = getResult.conference;
+                    // Fill full room name as it is not transferred
+                    // over REST API
+                    conference.setMucRoomName(mucRoomName);
+
+                    return conference;
+                }
+                else
+                {
+                    logger.error("API error: " + result);
+                    throw new ReservationFailure(
+                        RESULT_INTERNAL_ERROR, result.error.getMessage());
+                }
             }
             else
             {
                 // Other error
-                return new Result(result);
+                logger.error("API error: " + result);
+                throw new ReservationFailure(
+                    RESULT_INTERNAL_ERROR, result.error.getMessage());
             }
         }
-        return new Result(RESULT_OK);
+        catch (IOException e)
+        {
+            logger.error(e, e);
+            throw new ReservationFailure(RESULT_INTERNAL_ERROR, e.getMessage());
+        }
+        catch (ParseException e)
+        {
+            logger.error(e, e);
+            throw new ReservationFailure(RESULT_INTERNAL_ERROR, e.getMessage());
+        }
     }
 
     /**
@@ -282,6 +663,39 @@ private int deleteConference(Number id)
         return RESULT_INTERNAL_ERROR;
     }
 
+    /**
+     * Blocks the room until {@link #finishDeletion(String)} is called for it.
+     * Must be called with the lock of this instance held, together with
+     * the removal of the reservation from {@link #conferenceMap}.
+     *
+     * @param roomName the name of the room which reservation is to be
+     * deleted.
+     */
+    private void startDeletion(String roomName)
+    {
+        pendingDeletes.put(roomName, new SettableFuture<Void>());
+    }
+
+    /**
+     * Unblocks the room blocked by {@link #startDeletion(String)} and makes
+     * the requests waiting for it.
+     *
+     * @param roomName the name of the room which reservation has been
+     * deleted.
+     */
+    private void finishDeletion(String roomName)
+    {
+        SettableFuture<Void> deletion;
+        synchronized (this)
+        {
+            deletion = pendingDeletes.remove(roomName);
+        }
+        if (deletion != null)
+        {
+            deletion.set(null);
+        }
+    }
+
     /**
      * Finds conference for given ID assigned by the reservation system.
      *
@@ -309,49 +723,183 @@ private synchronized Conference findConferenceForId(Number id)
      * {@inheritDoc}
      */
     @Override
-    synchronized public void onFocusDestroyed(String roomName)
+    public void onFocusDestroyed(String roomName)
     {
         //roomName = MucUtil.extractName(roomName);
 
-        // Focus destroyed
-        Conference conference = conferenceMap.get(roomName);
-        if (conference == null)
+        Conference conference;
+        synchronized (this)
         {
-            logger.info("Conference " + roomName +" already destroyed");
-            return;
+            conference = conferenceMap.get(roomName);
+            if (conference == null)
+            {
+                logger.info("Conference " + roomName +" already destroyed");
+                return;
+            }
+            if (confirmedCacheTtl > 0)
+            {
+                // The reservation will be deleted by ConferenceExpireTask
+                // unless the conference is created again
+                releasedConferences.put(
+                    roomName, System.currentTimeMillis() + confirmedCacheTtl);
+                return;
+            }
+            conferenceMap.remove(roomName);
+            startDeletion(roomName);
         }
 
-        Result result = deleteConference(roomName);
-        if (result.getCode() == RESULT_OK)
+        try
         {
-            logger.info(
-                "Deleted conference from the reservation system: " + roomName);
+            // Focus destroyed
+            int result = deleteConference(conference.getId());
+            if (result == RESULT_OK)
+            {
+                logger.info(
+                    "Deleted conference from the reservation system: "
+                        + roomName);
+            }
+            else
+            {
+                logger.error(
+                    "Failed to delete room: " + roomName
+                        + ", error code: " + result);
+
+                // Keep it, so that it will be deleted once it expires (or
+                // reused by the next conference in the room)
+                synchronized (this)
+                {
+                    if (!conferenceMap.containsKey(roomName))
+                    {
+                        conferenceMap.put(roomName, conference);
+                    }
+                }
+            }
         }
-        else
+        finally
         {
-            logger.error(
-                "Failed to delete room: " + roomName+", error code: " + result);
+            finishDeletion(roomName);
+        }
+    }
+
+    /**
+     * Allocates the conference through the API and completes the request
+     * future.
+     */
+    private class AllocateConferenceTask
+        implements Runnable
+    {
+        /**
+         * The identity of the owner.
+         */
+        private final String creator;
+
+        /**
+         * The full name of the MUC room.
+         */
+        private final String mucRoomName;
+
+        /**
+         * The future to be completed with the allocated <tt>Conference</tt>.
+         */
+        private final SettableFuture<Conference> request;
+
+        AllocateConferenceTask(String                        creator,
+                               String                        mucRoomName,
+                               SettableFuture<Conference>    request)
+        {
+            this.creator = creator;
+            this.mucRoomName = mucRoomName;
+            this.request = request;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                Conference conference
+                    = allocateConference(creator, mucRoomName);
+
+                // Stored before the request is removed from pending, so that
+                // the requests which come next will find it
+                synchronized (RESTReservations.this)
+                {
+                    conferenceMap.put(mucRoomName, conference);
+                }
+
+                request.set(conference);
+            }
+            catch (ReservationFailure failure)
+            {
+                request.setException(failure);
+            }
+            catch (Throwable t)
+            {
+                request.setException(t);
+            }
+            finally
+            {
+                pendingRequests.remove(mucRoomName, request);
+            }
+        }
+    }
+
+    /**
+     * Fails the request future with the <tt>Result</tt> to be returned to
+     * the users waiting for the reservation.
+     */
+    private static class ReservationFailure
+        extends Exception
+    {
+        /**
+         * The <tt>Result</tt> which describes the failure.
+         */
+        private final Result result;
+
+        ReservationFailure(int code, String message)
+        {
+            super(message);
+
+            this.result = new Result(code, message);
         }
     }
 
     /**
      * Timer task that enforces scheduled conference duration and destroys
-     * conferences which exceed assigned time limit. Run in
-     * {@link #EXPIRE_INTERVAL} time intervals.
+     * conferences which exceed assigned time limit. It also deletes
+     * the reservations which have been kept for longer than
+     * {@link #confirmedCacheTtl}. Run in {@link #EXPIRE_INTERVAL} time
+     * intervals.
      */
     class ConferenceExpireTask extends TimerTask
     {
         @Override
         public void run()
         {
+            List<Conference> expired = new ArrayList<>();
+            List<Conference> released = new ArrayList<>();
+
             synchronized (RESTReservations.this)
             {
                 Iterator<Conference> conferenceIterator
                     = conferenceMap.values().iterator();
+                long now = System.currentTimeMillis();
 
                 while (conferenceIterator.hasNext())
                 {
                     Conference conference = conferenceIterator.next();
+                    String mucRoomName = conference.getMucRoomName();
+                    Long releaseTime = releasedConferences.get(mucRoomName);
+
+                    if (releaseTime != null && now >= releaseTime)
+                    {
+                        releasedConferences.remove(mucRoomName);
+                        conferenceIterator.remove();
+                        startDeletion(mucRoomName);
+                        released.add(conference);
+                        continue;
+                    }
+
                     Date startTimeDate = conference.getStartTime();
                     if (startTimeDate == null)
                     {
@@ -364,22 +912,60 @@ public void run()
                     long duration = conference.getDuration();
                     // Convert duration to millis
                     duration = duration * 1000L;
-                    long now = System.currentTimeMillis();
                     if (now - startTime > duration - EXPIRE_INTERVAL)
                     {
-                        // Destroy the conference
-                        String mucRoomName = conference.getMucRoomName();
-
-                        deleteConference(conference.getId());
-
                         conferenceIterator.remove();
+                        startDeletion(mucRoomName);
 
-                        focusManager.destroyConference(
-                            mucRoomName,
-                            "Scheduled conference duration exceeded.");
+                        if (releasedConferences.remove(mucRoomName) != null)
+                        {
+                            released.add(conference);
+                        }
+                        else
+                        {
+                            expired.add(conference);
+                        }
                     }
                 }
             }
+
+            // The API is called outside of the lock, so that the reservations
+            // of other rooms are not blocked
+            for (Conference conference : released)
+            {
+                delete(conference);
+            }
+
+            for (Conference conference : expired)
+            {
+                // Destroy the conference
+                delete(conference);
+
+                FocusManager focusManager
+                    = RESTReservations.this.focusManager;
+                if (focusManager != null)
+                {
+                    focusManager.destroyConference(
+                        conference.getMucRoomName(),
+                        "Scheduled conference duration exceeded.");
+                }
+            }
+        }
+
+        /**
+         * Deletes the reservation and unblocks the room blocked when it was
+         * removed from {@link #conferenceMap}.
+         */
+        private void delete(Conference conference)
+        {
+            try
+            {
+                deleteConference(conference.getId());
+            }
+            finally
+            {
+                finishDeletion(conference.getMucRoomName());
+            }
         }
     }
 }
@@ -0,0 +1,238 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.util.*;
+
+/**
+ * The policy used by {@link BridgeSelector} to pick the videobridge for
+ * a conference and/or a participant. The implementation is selected with
+ * {@link BridgeSelector#BRIDGE_SELECTION_STRATEGY_PNAME} property.
+ *
+ * Implementations are given the operational bridges ordered from the least
+ * loaded one. A bridge is selected only when the conference is not using any
+ * yet or the one it's been using has failed, so there is no current bridge of
+ * the conference to consider. Every strategy respects the capacity ceiling
+ * configured with {@link #MAX_BRIDGE_CONFERENCES_PNAME} and
+ * {@link #MAX_BRIDGE_VIDEO_STREAMS_PNAME} - a bridge which reached any of
+ * the limits will never be selected.
+ *
+ * @author agent
+ */
+public abstract class BridgeSelectionStrategy
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(BridgeSelectionStrategy.class);
+
+    /**
+     * The name of the property which specifies the maximum number of
+     * conferences (as reported by the bridge) allowed on a single bridge.
+     * Disabled by default.
+     */
+    public static final String MAX_BRIDGE_CONFERENCES_PNAME
+        = "org.jitsi.jicofo.BridgeSelector.MAX_BRIDGE_CONFERENCES";
+
+    /**
+     * The name of the property which specifies the maximum estimated number of
+     * video streams allowed on a single bridge. Disabled by default.
+     */
+    public static final String MAX_BRIDGE_VIDEO_STREAMS_PNAME
+        = "org.jitsi.jicofo.BridgeSelector.MAX_BRIDGE_VIDEO_STREAMS";
+
+    /**
+     * The maximum number of conferences allowed on a bridge or <tt>-1</tt> if
+     * there is no limit.
+     */
+    private int maxConferences = -1;
+
+    /**
+     * The maximum estimated number of video streams allowed on a bridge or
+     * <tt>-1</tt> if there is no limit.
+     */
+    private int maxVideoStreams = -1;
+
+    /**
+     * Creates the strategy for given class name. The name can be either fully
+     * qualified or the simple name of one of the strategies nested in this
+     * class (eg. "RegionBased").
+     *
+     * @param className the name of the <tt>BridgeSelectionStrategy</tt> class.
+     *
+     * @return new instance of the strategy or <tt>null</tt> if failed to
+     * instantiate given class.
+     */
+    static BridgeSelectionStrategy create(String className)
+    {
+        if (!className.contains("."))
+        {
+            className
+                = BridgeSelectionStrategy.class.getName() + "$" + className;
+        }
+        try
+        {
+            Class<?> clazz = Class.forName(className);
+
+            return (BridgeSelectionStrategy) clazz.newInstance();
+        }
+        catch (ClassNotFoundException
+                | InstantiationException
+                | IllegalAccessException
+                | ClassCastException e)
+        {
+            logger.error(
+                "Failed to create bridge selection strategy: " + className, e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads the capacity limits from the config.
+     *
+     * @param config <tt>ConfigurationService</tt> instance.
+     */
+    void init(ConfigurationService config)
+    {
+        setCapacity(
+                config.getInt(MAX_BRIDGE_CONFERENCES_PNAME, -1),
+                config.getInt(MAX_BRIDGE_VIDEO_STREAMS_PNAME, -1));
+
+        logger.info(
+            getClass().getSimpleName() + " max conferences per bridge: "
+                + maxConferences + ", max video streams per bridge: "
+                + maxVideoStreams);
+    }
+
+    /**
+     * Sets the capacity ceiling of a single bridge.
+     *
+     * @param maxConferences the maximum number of conferences or <tt>-1</tt>
+     * for no limit.
+     * @param maxVideoStreams the maximum estimated number of video streams or
+     * <tt>-1</tt> for no limit.
+     */
+    void setCapacity(int maxConferences, int maxVideoStreams)
+    {
+        this.maxConferences = maxConferences;
+        this.maxVideoStreams = maxVideoStreams;
+    }
+
+    /**
+     * Selects the bridge.
+     *
+     * @param bridges the operational bridges ordered from the least loaded.
+     * @param conference the conference for which a bridge is to be selected.
+     * Can be <tt>null</tt>.
+     * @param participant the participant for which a bridge is to be selected.
+     * Can be <tt>null</tt>.
+     *
+     * @return the selected bridge or <tt>null</tt> if there are no bridges
+     * that could be used.
+     */
+    abstract BridgeState select(Iterable<BridgeState>  bridges,
+                                JitsiMeetConference    conference,
+                                Participant            participant);
+
+    /**
+     * Checks whether given bridge has reached the capacity ceiling.
+     *
+     * @param bridge the <tt>BridgeState</tt> to check.
+     *
+     * @return <tt>true</tt> if the bridge can not take more load.
+     */
+    boolean isFull(BridgeState bridge)
+    {
+        return (maxConferences > 0
+                    && bridge.getConferenceCount() >= maxConferences)
+            || (maxVideoStreams > 0
+                    && bridge.getEstimatedVideoStreamCount()
+                            >= maxVideoStreams);
+    }
+
+    /**
+     * Finds the least loaded bridge which is not full.
+     *
+     * @param bridges the operational bridges ordered from the least loaded.
+     * @param region if not <tt>null</tt> only the bridges located in this
+     * region will be taken into account.
+     *
+     * @return <tt>BridgeState</tt> or <tt>null</tt> if none found.
+     */
+    BridgeState findLeastLoaded(Iterable<BridgeState> bridges, String region)
+    {
+        for (BridgeState bridge : bridges)
+        {
+            if (!isFull(bridge)
+                && (region == null || region.equals(bridge.getRegion())))
+            {
+                return bridge;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Selects the least loaded bridge which has not reached the capacity
+     * ceiling. This is the default strategy.
+     */
+    public static class LeastLoaded
+        extends BridgeSelectionStrategy
+    {
+        @Override
+        BridgeState select(Iterable<BridgeState>  bridges,
+                           JitsiMeetConference    conference,
+                           Participant            participant)
+        {
+            return findLeastLoaded(bridges, null);
+        }
+    }
+
+    /**
+     * Selects the least loaded bridge in the region of the participant. Falls
+     * back to the least loaded bridge if the region is unknown or there are no
+     * bridges available in it.
+     */
+    public static class RegionBased
+        extends BridgeSelectionStrategy
+    {
+        @Override
+        BridgeState select(Iterable<BridgeState>  bridges,
+                           JitsiMeetConference    conference,
+                           Participant            participant)
+        {
+            String region
+                = participant != null
+                        && participant.getChatMember() != null
+                    ? participant.getChatMember().getRegion() : null;
+
+            if (region != null)
+            {
+                BridgeState bridge = findLeastLoaded(bridges, region);
+                if (bridge != null)
+                {
+                    return bridge;
+                }
+            }
+
+            return findLeastLoaded(bridges, null);
+        }
+    }
+}
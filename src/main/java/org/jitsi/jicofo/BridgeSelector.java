@@ -29,9 +29,8 @@
 
 import org.jivesoftware.smack.packet.*;
 
-import org.osgi.framework.*;
-
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Class exposes methods for selecting best videobridge from all currently
@@ -41,8 +40,7 @@
  * @author Pawel Domas
  */
 public class BridgeSelector
-    implements SubscriptionListener,
-               EventHandler
+    implements SubscriptionListener
 {
     /**
      * The logger.
@@ -74,6 +72,15 @@
     public static final String BRIDGE_FAILURE_RESET_THRESHOLD_PNAME
         = "org.jitsi.focus.BRIDGE_FAILURE_RESET_THRESHOLD";
 
+    /**
+     * Configuration property which specifies the class name of
+     * the {@link BridgeSelectionStrategy} to be used. The simple name of one
+     * of the strategies nested in {@link BridgeSelectionStrategy} can be used,
+     * eg. "RegionBased".
+     */
+    public static final String BRIDGE_SELECTION_STRATEGY_PNAME
+        = "org.jitsi.jicofo.BridgeSelector.BRIDGE_SELECTION_STRATEGY";
+
     /**
      * Five minutes.
      */
@@ -106,12 +113,6 @@ private static Integer getInt(Object obj)
         return null;
     }
 
-    /**
-     * Stores reference to <tt>EventHandler</tt> registration, so that it can be
-     * unregistered on {@link #dispose()}.
-     */
-    private ServiceRegistration<EventHandler> handlerRegistration;
-
     /**
      * The amount of time we will wait after bridge instance failure before it
      * will get another chance.
@@ -126,7 +127,19 @@ private static Integer getInt(Object obj)
     /**
      * The map of bridge JID to <tt>BridgeState</tt>.
      */
-    private final Map<String, BridgeState> bridges = new HashMap<>();
+    private final Map<String, BridgeState> bridges = new ConcurrentHashMap<>();
+
+    /**
+     * The operational bridges ordered by their load, used to select
+     * the videobridge without locking this instance.
+     */
+    private final RankedBridgeIndex rankedBridges = new RankedBridgeIndex();
+
+    /**
+     * The strategy used to select the bridge.
+     */
+    private volatile BridgeSelectionStrategy selectionStrategy
+        = new BridgeSelectionStrategy.LeastLoaded();
 
     /**
      * The <tt>EventAdmin</tt> used by this instance to fire/send
@@ -197,6 +210,7 @@ synchronized public void addJvbAddress(String bridgeJid, Version version)
         BridgeState newBridge = new BridgeState(this, bridgeJid, version);
 
         bridges.put(bridgeJid, newBridge);
+        rankedBridges.add(newBridge);
 
         notifyBridgeUp(newBridge);
     }
@@ -210,7 +224,7 @@ synchronized public void addJvbAddress(String bridgeJid, Version version)
      * @return <tt>true</tt> if given JVB XMPP address is already known to this
      * <tt>BridgeSelector</tt>.
      */
-    synchronized boolean isJvbOnTheList(String jvbJid)
+    boolean isJvbOnTheList(String jvbJid)
     {
         return bridges.containsKey(jvbJid);
     }
@@ -239,7 +253,10 @@ synchronized public void removeJvbAddress(String bridgeJid)
         }
 
         if (bridge != null)
+        {
+            rankedBridges.remove(bridge);
             notifyBridgeDown(bridge);
+        }
     }
 
     /**
@@ -250,17 +267,13 @@ synchronized public void removeJvbAddress(String bridgeJid)
      * @param conference the conference for which a bridge is to be selected.
      * @param participant the participant for which a bridge is to be selected.
      */
-    synchronized public BridgeState selectVideobridge(
+    public BridgeState selectVideobridge(
             JitsiMeetConference conference, Participant participant)
     {
-        List<BridgeState> bridges = getPrioritizedBridgesList();
-        if (bridges.size() == 0)
-        {
-            return null;
-        }
-
-        BridgeState bridge = bridges.get(0);
-        return bridge.isOperational() ? bridge : null;
+        return selectionStrategy.select(
+                rankedBridges.getOperationalBridges(),
+                conference,
+                participant);
     }
 
     /**
@@ -276,31 +289,6 @@ public BridgeState selectVideobridge(
         return selectVideobridge(conference, null);
     }
 
-    /**
-     * Returns the list of all known videobridges JIDs ordered by load and
-     * *operational* status. Not operational bridges are at the end of the list.
-     */
-    private List<BridgeState> getPrioritizedBridgesList()
-    {
-        ArrayList<BridgeState> bridgeList;
-        synchronized (this)
-        {
-            bridgeList = new ArrayList<>(bridges.values());
-        }
-        Collections.sort(bridgeList);
-
-        Iterator<BridgeState> bridgesIter = bridgeList.iterator();
-
-        while (bridgesIter.hasNext())
-        {
-            BridgeState bridge = bridgesIter.next();
-            if (!bridge.isOperational())
-                bridgesIter.remove();
-        }
-
-        return bridgeList;
-    }
-
     /**
      * Updates given *operational* status of the videobridge identified by given
      * <tt>bridgeJid</tt> address.
@@ -309,13 +297,14 @@ private List<BridgeState> getPrioritizedBridgesList()
      * @param isWorking <tt>true</tt> if bridge successfully allocated
      *                  the channels which means it is in *operational* state.
      */
-    synchronized public void updateBridgeOperationalStatus(String bridgeJid,
+    public void updateBridgeOperationalStatus(String bridgeJid,
                                               boolean isWorking)
     {
         BridgeState bridge = bridges.get(bridgeJid);
         if (bridge != null)
         {
             bridge.setIsOperational(isWorking);
+            rankedBridges.update(bridge);
         }
         else
         {
@@ -393,9 +382,9 @@ void onSharedNodeUpdate(String itemId, PacketExtension payload)
      * {@inheritDoc}
      */
     @Override
-    synchronized public void onSubscriptionUpdate(String          node,
-                                                  String          itemId,
-                                                  PacketExtension payload)
+    public void onSubscriptionUpdate(String          node,
+                                     String          itemId,
+                                     PacketExtension payload)
     {
         if (!(payload instanceof ColibriStatsExtension))
         {
@@ -459,7 +448,17 @@ else if ("videostreams".equals(stat.getName()))
                     bridgeState.setVideoStreamCount(videoStreamCount);
                 }
             }
+            else if ("region".equals(stat.getName()))
+            {
+                Object region = stat.getValue();
+                if (region != null)
+                {
+                    bridgeState.setRegion(region.toString());
+                }
+            }
         }
+
+        rankedBridges.update(bridgeState);
     }
 
     /**
@@ -498,7 +497,7 @@ public void setFailureResetThreshold(long failureResetThreshold)
      * Returns the number of JVBs known to this bridge selector. Not all of them
      * have to be operational.
      */
-    synchronized public int getKnownBridgesCount()
+    public int getKnownBridgesCount()
     {
         return bridges.size();
     }
@@ -509,7 +508,7 @@ synchronized public int getKnownBridgesCount()
      *
      * @return a <tt>List</tt> of <tt>String</tt> with bridges JIDs.
      */
-    synchronized public List<String> listActiveJVBs()
+    public List<String> listActiveJVBs()
     {
         ArrayList<String> listing = new ArrayList<>(bridges.size());
         for (BridgeState bridge : bridges.values())
@@ -537,42 +536,31 @@ private void notifyBridgeDown(BridgeState bridge)
     }
 
     /**
-     * Handles {@link BridgeEvent#VIDEOSTREAMS_CHANGED}.
-     * @param event <tt>BridgeEvent</tt>
+     * Accounts for the video streams being added to or removed from a bridge.
+     * It is called directly by the Colibri conferences whenever the video
+     * channels are about to be allocated or expired, which happens way too
+     * often to go through the <tt>EventAdmin</tt>. The change is accumulated
+     * by {@link BridgeState} until the bridge reports the actual stream count.
+     *
+     * @param bridgeJid the JID of the bridge.
+     * @param videoStreamDiff how many video streams are being added (positive)
+     * or removed (negative).
      */
-    @Override
-    synchronized public void handleEvent(Event event)
+    public void onVideoStreamsChanged(String bridgeJid, int videoStreamDiff)
     {
-        String topic = event.getTopic();
-        BridgeState bridgeState;
-        BridgeEvent bridgeEvent;
-        String bridgeJid;
-
-        if (!BridgeEvent.isBridgeEvent(event))
-        {
-            logger.warn("Received non-bridge event: " + event);
-            return;
-        }
-
-        bridgeEvent = (BridgeEvent) event;
-        bridgeJid = bridgeEvent.getBridgeJid();
-
-        bridgeState = bridges.get(bridgeEvent.getBridgeJid());
+        BridgeState bridgeState = bridges.get(bridgeJid);
         if (bridgeState == null)
         {
-            logger.warn("Unable to handle bridge event for: " + bridgeJid);
+            logger.warn(
+                "Unable to track video streams of unknown bridge: "
+                    + bridgeJid);
             return;
         }
 
-        switch (topic)
-        {
-        case BridgeEvent.VIDEOSTREAMS_CHANGED:
-            bridgeState.onVideoStreamsChanged(bridgeEvent.getVideoStreamCount());
-            break;
-        }
+        bridgeState.onVideoStreamsChanged(videoStreamDiff);
+        rankedBridges.update(bridgeState);
     }
 
-
     /**
      * Initializes this instance by loading the config and obtaining required
      * service references.
@@ -611,18 +599,28 @@ public void init()
         logger.info(
             "Bridge failure reset threshold: " + getFailureResetThreshold());
 
+        String strategyName
+            = config.getString(BRIDGE_SELECTION_STRATEGY_PNAME);
+        if (!StringUtils.isNullOrEmpty(strategyName))
+        {
+            BridgeSelectionStrategy strategy
+                = BridgeSelectionStrategy.create(strategyName);
+            if (strategy != null)
+            {
+                selectionStrategy = strategy;
+            }
+        }
+        selectionStrategy.init(config);
+
+        logger.info(
+            "Bridge selection strategy: "
+                + selectionStrategy.getClass().getSimpleName());
+
         this.eventAdmin = FocusBundleActivator.getEventAdmin();
         if (eventAdmin == null)
         {
             throw new IllegalStateException("EventAdmin service not found");
         }
-
-        this.handlerRegistration = EventUtil.registerEventHandler(
-            FocusBundleActivator.bundleContext,
-            new String[] {
-                BridgeEvent.VIDEOSTREAMS_CHANGED
-            },
-            this);
     }
 
     /**
@@ -635,22 +633,10 @@ public void init()
      * @return {@link Version} instance which holds the details about JVB
      *         version or <tt>null</tt> if unknown.
      */
-    synchronized public Version getBridgeVersion(String bridgeJid)
+    public Version getBridgeVersion(String bridgeJid)
     {
         BridgeState bridgeState = bridges.get(bridgeJid);
 
         return bridgeState != null ? bridgeState.getVersion() : null;
     }
-
-    /**
-     * Unregisters any event listeners.
-     */
-    public void dispose()
-    {
-        if (handlerRegistration != null)
-        {
-            handlerRegistration.unregister();
-            handlerRegistration = null;
-        }
-    }
 }
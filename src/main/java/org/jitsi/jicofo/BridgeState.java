@@ -19,12 +19,15 @@
 
 import org.jitsi.assertions.*;
 import org.jitsi.jicofo.discovery.*;
-import org.jitsi.jicofo.event.*;
 import org.jitsi.util.*;
 
+import java.util.concurrent.atomic.*;
+
 /**
  * Class holds videobridge state and implements {@link Comparable}
- * interface to find least loaded bridge.
+ * interface to find least loaded bridge. State modifications are
+ * synchronized on the instance, which is also the lock used by
+ * {@link RankedBridgeIndex} to keep the rank of the bridge up to date.
  *
  * @author Pawel Domas
  * @author Boris Grozev
@@ -48,37 +51,37 @@
      * How many conferences are there on the bridge (as reported by the bridge
      * itself).
      */
-    private int conferenceCount = 0;
+    private volatile int conferenceCount = 0;
 
     /**
      * How many video channels are there on the bridge (as reported by the
      * bridge itself).
      */
-    private int videoChannelCount = 0;
+    private volatile int videoChannelCount = 0;
 
     /**
      * How many video streams are there on the bridge (as reported by the bridge
      * itself).
      */
-    private int videoStreamCount = 0;
+    private volatile int videoStreamCount = 0;
 
     /**
-     * The relay ID advertised by the bridge, or {@code null} if none was
+     * The region advertised by the bridge, or {@code null} if none was
      * advertised.
      */
-    private String relayId = null;
+    private volatile String region = null;
 
     /**
-     * Accumulates video stream count changes coming from
-     * {@link BridgeEvent#VIDEOSTREAMS_CHANGED} in order to estimate video
-     * stream count on the bridge. The value is included in the result
-     * returned by {@link #getEstimatedVideoStreamCount()} if not
-     * <tt>null</tt>.
+     * Accumulates video stream count changes reported by the Colibri
+     * conferences through {@link BridgeSelector#onVideoStreamsChanged(String,
+     * int)} in order to estimate video stream count on the bridge. The value is
+     * included in the result returned by
+     * {@link #getEstimatedVideoStreamCount()}. It is updated without locking,
+     * as it changes on every channel allocation and expiry.
      *
-     * Is is set back to <tt>null</tt> when new value from the bridge
-     * arrives.
+     * Is is set back to zero when new value from the bridge arrives.
      */
-    private int videoStreamCountDiff = 0;
+    private final AtomicInteger videoStreamCountDiff = new AtomicInteger();
 
     /**
      * Holds bridge version (if known - not all bridge version are capable of
@@ -94,12 +97,13 @@
      * working bridges go down and might eventually get elevated back to
      * {@code true}.
      */
-    private boolean isOperational = true /* we assume it is operational */;
+    private volatile boolean isOperational
+        = true /* we assume it is operational */;
 
     /**
      * The time when this instance has failed.
      */
-    private long failureTimestamp;
+    private volatile long failureTimestamp;
 
     BridgeState(BridgeSelector bridgeSelector, String bridgeJid,
                 Version version)
@@ -111,7 +115,7 @@
         this.version = version;
     }
 
-    public void setConferenceCount(int conferenceCount)
+    public synchronized void setConferenceCount(int conferenceCount)
     {
         if (this.conferenceCount != conferenceCount)
         {
@@ -135,30 +139,30 @@ public int getVideoChannelCount()
     }
 
     /**
-     * @return the relay ID advertised by the bridge, or {@code null} if
+     * @return the region advertised by the bridge, or {@code null} if
      * none was advertised.
      */
-    public String getRelayId()
+    public String getRegion()
     {
-        return relayId;
+        return region;
     }
 
     /**
-     * Sets the number of channels used.
-     * @param channelCount the number of channels used.
+     * Sets the region advertised by the bridge.
+     * @param region the value to set.
      */
-    public void setVideoChannelCount(int channelCount)
+    public synchronized void setRegion(String region)
     {
-        this.videoChannelCount = channelCount;
+        this.region = region;
     }
 
     /**
-     * Sets the relay ID advertised by the bridge.
-     * @param relayId the value to set.
+     * Sets the number of channels used.
+     * @param channelCount the number of channels used.
      */
-    public void setRelayId(String relayId)
+    public synchronized void setVideoChannelCount(int channelCount)
     {
-        this.relayId = relayId;
+        this.videoChannelCount = channelCount;
     }
 
     /**
@@ -174,7 +178,7 @@ public int getVideoStreamCount()
      * Sets the stream count currently used.
      * @param streamCount the stream count currently used.
      */
-    public void setVideoStreamCount(int streamCount)
+    public synchronized void setVideoStreamCount(int streamCount)
     {
         if (this.videoStreamCount != streamCount)
         {
@@ -185,14 +189,12 @@ public void setVideoStreamCount(int streamCount)
 
         this.videoStreamCount = streamCount;
 
-        // The event for video streams count diff are processed on
-        // a single threaded queue and those will pile up during conference
-        // burst. Because of that "videoStreamCountDiff" must be cleared
-        // even if the was no change to the actual value.
-        // FIXME eventually add a timestamp and reject old events
-        if (videoStreamCountDiff != 0)
+        // The changes accumulated so far are expected to be included in
+        // the value reported by the bridge. Because of that
+        // "videoStreamCountDiff" must be cleared even if the was no change to
+        // the actual value.
+        if (videoStreamCountDiff.getAndSet(0) != 0)
         {
-            videoStreamCountDiff = 0;
             logger.info(
                 "Reset video stream diff on " + this.jid
                     + " video channels: " + this.videoChannelCount
@@ -205,7 +207,7 @@ public void setVideoStreamCount(int streamCount)
         }
     }
 
-    public void setIsOperational(boolean isOperational)
+    public synchronized void setIsOperational(boolean isOperational)
     {
         this.isOperational = isOperational;
 
@@ -216,7 +218,7 @@ public void setIsOperational(boolean isOperational)
         }
     }
 
-    public boolean isOperational()
+    public synchronized boolean isOperational()
     {
         // Check if we should give this bridge another try
         verifyFailureThreshold();
@@ -267,29 +269,37 @@ else if (!meOperational && otherOperational)
             - o.getEstimatedVideoStreamCount();
     }
 
-    private int getEstimatedVideoStreamCount()
+    int getEstimatedVideoStreamCount()
     {
-        return videoStreamCount + videoStreamCountDiff;
+        return videoStreamCount + videoStreamCountDiff.get();
     }
 
-    void onVideoStreamsChanged(Integer videoStreamCount)
+    /**
+     * Accumulates the change of the video stream count.
+     *
+     * @param videoStreamCount how many video streams are being added (positive)
+     * or removed (negative).
+     */
+    void onVideoStreamsChanged(int videoStreamCount)
     {
-        if (videoStreamCount == null || videoStreamCount == 0)
+        if (videoStreamCount == 0)
         {
-            logger.error("videoStreamCount is " + videoStreamCount);
+            logger.error("videoStreamCount is 0");
             return;
         }
 
-        boolean adding = videoStreamCount > 0;
+        int diff = videoStreamCountDiff.addAndGet(videoStreamCount);
 
-        videoStreamCountDiff += videoStreamCount;
-        logger.info(
-            (adding ? "Adding " : "Removing ") + Math.abs(videoStreamCount)
-                + " video streams on " + this.jid
-                + " video channels: " + this.videoChannelCount
-                + " video streams: " + this.videoStreamCount
-                + " diff: " + videoStreamCountDiff
-                + " (estimated: " + getEstimatedVideoStreamCount() + ")");
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                (videoStreamCount > 0 ? "Adding " : "Removing ")
+                    + Math.abs(videoStreamCount)
+                    + " video streams on " + this.jid
+                    + " video channels: " + this.videoChannelCount
+                    + " video streams: " + this.videoStreamCount
+                    + " diff: " + diff);
+        }
     }
 
     public String getJid()
@@ -37,6 +37,12 @@
  * the bridge and invites participant with Jingle 'session-initiate'. Also
  * bridge election happens here with some help of {@link BridgeSelector}.
  *
+ * The allocation request is sent asynchronously and no thread is held while
+ * waiting for the bridge. The rest of the work is continued on the channel
+ * allocation lane of the conference once the response arrives. Note that
+ * the feature discovery and the Jingle invite are still blocking calls, so
+ * the lane thread waits for the participant's responses to those.
+ *
  * @author Pawel Domas
  */
 public class ChannelAllocator implements Runnable
@@ -132,7 +138,7 @@ public void run()
     {
         try
         {
-            discoverFeaturesAndInvite();
+            discoverFeaturesAndAllocate();
         }
         catch (Throwable e)
         {
@@ -141,15 +147,14 @@ public void run()
     }
 
     /**
-     * Method does feature discovery and channel allocation for participant.
-     *
-     * @throws OperationFailedException if the XMPP connection is broken.
-     * The thread should end it's work.
+     * Method does feature discovery and starts channel allocation for
+     * participant. The invite is sent by the channel allocation lane of
+     * the conference once the channels are allocated, so that no thread is
+     * held while waiting for the bridge.
      */
-    private void discoverFeaturesAndInvite()
-        throws OperationFailedException
+    private void discoverFeaturesAndAllocate()
     {
-        String address = newParticipant.getMucJid();
+        final String address = newParticipant.getMucJid();
 
         // Feature discovery
         List<String> features = DiscoveryUtil.discoverParticipantFeatures(
@@ -160,27 +165,72 @@ private void discoverFeaturesAndInvite()
         logger.info(
             address + " has bundle ? " + newParticipant.hasBundleSupport());
 
-        List<ContentPacketExtension> offer;
-        try
-        {
-            offer = createOffer();
-            if (offer == null)
+        final List<ContentPacketExtension> offer = createOffer();
+
+        allocateChannels(offer).addCallback(
+            new SettableFuture.Callback<ColibriConferenceIQ>()
             {
-                logger.info("Channel allocation cancelled for " + address);
-                return;
-            }
-        }
-        catch (OperationFailedException e)
-        {
-            //FIXME: retry ? sometimes it's just timeout
-            logger.error("Failed to allocate channels for " + address, e);
+                @Override
+                public void onSuccess(ColibriConferenceIQ peerChannels)
+                {
+                    if (peerChannels == null)
+                    {
+                        logger.info(
+                            "Channel allocation cancelled for " + address);
+                        return;
+                    }
 
-            // Notify conference about failure
-            meetConference.onChannelAllocationFailed(this, e);
+                    try
+                    {
+                        newParticipant.setColibriChannelsInfo(peerChannels);
+
+                        craftOffer(offer, peerChannels);
+
+                        invite(offer);
+                    }
+                    catch (Throwable e)
+                    {
+                        logger.error("Exception on participant invite", e);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    if (!(error instanceof OperationFailedException))
+                    {
+                        logger.error("Exception on participant invite", error);
+                        return;
+                    }
+
+                    //FIXME: retry ? sometimes it's just timeout
+                    logger.error(
+                        "Failed to allocate channels for " + address, error);
+
+                    // Notify conference about failure
+                    meetConference.onChannelAllocationFailed(
+                            ChannelAllocator.this,
+                            (OperationFailedException) error);
+                }
+            });
+    }
+
+    /**
+     * Invites the participant with the offer which describes the channels
+     * allocated on the bridge. The call blocks the lane thread until
+     * the participant acknowledges the offer (or the reply timeout expires),
+     * because {@link OperationSetJingle} has no asynchronous variant of
+     * the 'session-initiate' and 'transport-replace' requests.
+     *
+     * @param offer the Jingle offer to be sent to the participant.
+     *
+     * @throws OperationFailedException if the XMPP connection is broken.
+     */
+    private void invite(List<ContentPacketExtension> offer)
+        throws OperationFailedException
+    {
+        String address = newParticipant.getMucJid();
 
-            // Cancel this thread - nothing to be done after failure
-            return;
-        }
         /*
            This check makes sure that when we're trying to invite
            new participant:
@@ -263,13 +313,12 @@ else if (reInvite)
     }
 
     /**
-     * Creates Jingle offer for given {@link Participant}.
-     *
-     * @throws OperationFailedException if we fail to allocate channels
-     * or something goes wrong.
+     * Creates Jingle offer for given {@link Participant}. The transport
+     * information is filled in by
+     * {@link #craftOffer(List, ColibriConferenceIQ)} once the channels are
+     * allocated.
      */
     private List<ContentPacketExtension> createOffer()
-        throws OperationFailedException
     {
         List<ContentPacketExtension> contents = new ArrayList<>();
 
@@ -307,15 +356,6 @@ private List<ContentPacketExtension> createOffer()
                     jingleOfferFactory.createDataContent(disableIce, useDtls));
         }
 
-        ColibriConferenceIQ peerChannels = allocateChannels(contents);
-
-        if (peerChannels == null)
-            return null;
-
-        newParticipant.setColibriChannelsInfo(peerChannels);
-
-        craftOffer(contents, peerChannels);
-
         return contents;
     }
 
@@ -323,22 +363,24 @@ private List<ContentPacketExtension> createOffer()
      * Allocates Colibri channels for given {@link Participant} by trying all
      * available bridges returned by {@link BridgeSelector}.
      *
-     * @return {@link ColibriConferenceIQ} that describes channels allocated for
-     * given <tt>peer</tt>. <tt>null</tt> is returned if conference is disposed
-     * before we manage to allocate the channels.
-     *
-     * @throws OperationFailedException if we have failed to allocate channels
+     * @return <tt>SettableFuture</tt> completed with
+     * {@link ColibriConferenceIQ} that describes channels allocated for given
+     * <tt>peer</tt>. It's completed with <tt>null</tt> if conference is
+     * disposed before we manage to allocate the channels. It fails with
+     * <tt>OperationFailedException</tt> if we have failed to allocate channels
      * using existing bridge and we can not switch to another bridge.
      */
-    private ColibriConferenceIQ allocateChannels(
+    private SettableFuture<ColibriConferenceIQ> allocateChannels(
             List<ContentPacketExtension> contents)
-        throws OperationFailedException
     {
+        SettableFuture<ColibriConferenceIQ> result = new SettableFuture<>();
+
         if (colibriConference.isDisposed())
         {
             // Nope - the conference has been disposed, before the thread got
             // the chance to do anything
-            return null;
+            result.set(null);
+            return result;
         }
 
         JitsiMeetConfig config = meetConference.getConfig();
@@ -375,122 +417,195 @@ private ColibriConferenceIQ allocateChannels(
 
                 if (StringUtils.isNullOrEmpty(bridge))
                 {
-                    throw new OperationFailedException(
-                        "Failed to allocate channels - no bridge configured",
-                        NO_BRIDGE_AVAILABLE_ERR_CODE);
+                    result.setException(
+                        new OperationFailedException(
+                                "Failed to allocate channels"
+                                    + " - no bridge configured",
+                                NO_BRIDGE_AVAILABLE_ERR_CODE));
+                    return result;
                 }
 
                 colibriConference.setJitsiVideobridge(bridge);
             }
         }
 
-        String jvb = null;
+        tryAllocateChannels(contents, result);
 
-        // We keep trying until the conference is disposed
-        // This can happen either when this JitsiMeetConference is being
-        // disposed or if the bridge already set on ColibriConference by other
-        // allocator thread dies before this thread get the chance to allocate
-        // anything, then it will cancel and channels for this Participant will
-        // be allocated from 'restartConference'
-        while (!colibriConference.isDisposed())
-        {
-            try
-            {
-                synchronized (colibriConference)
-                {
-                    jvb = colibriConference.getJitsiVideobridge();
-                }
-
-                logger.info(
-                        "Using " + jvb + " to allocate channels for: "
-                                 + newParticipant.getMucJid());
-
-                ColibriConferenceIQ peerChannels
-                    = colibriConference.createColibriChannels(
-                            newParticipant.hasBundleSupport(),
-                            newParticipant.getEndpointId(),
-                            true /* initiator */, contents);
-
-                // null means cancelled, because colibriConference has been
-                // disposed by another thread
-                if (peerChannels == null)
-                {
-                    return null;
-                }
+        return result;
+    }
 
-                bridgeSelector.updateBridgeOperationalStatus(jvb, true);
+    /**
+     * Sends the allocation request to the bridge currently used by
+     * the conference. On failure switches to another bridge and tries again.
+     *
+     * We keep trying until the conference is disposed. This can happen either
+     * when this JitsiMeetConference is being disposed or if the bridge already
+     * set on ColibriConference by other allocator dies before this one gets
+     * the chance to allocate anything, then it will cancel and channels for
+     * this Participant will be allocated from 'restartConference'.
+     *
+     * @param contents the Jingle contents which describe the participant's
+     * media.
+     * @param result the future to be completed with the outcome of
+     * the allocation.
+     */
+    private void tryAllocateChannels(
+            final List<ContentPacketExtension>           contents,
+            final SettableFuture<ColibriConferenceIQ>    result)
+    {
+        if (colibriConference.isDisposed())
+        {
+            // If we reach this point it means that the conference has been
+            // disposed before we've managed to allocate anything
+            result.set(null);
+            return;
+        }
 
-                if (colibriConference.hasJustAllocated())
-                {
-                    meetConference.onColibriConferenceAllocated(
-                            colibriConference, jvb);
-                }
-                return peerChannels;
-            }
-            catch (OperationFailedException exc)
-            {
-                logger.error(
-                        "Failed to allocate channels using bridge: " + jvb,
-                        exc);
-
-                // ILLEGAL_ARGUMENT == BAD_REQUEST(XMPP)
-                // It usually means that Jicofo's conference state got out of
-                // sync with the one of the bridge. The easiest thing to do here
-                // is to restart the conference. It does not mean that
-                // the bridge is faulty though.
-                if (OperationFailedException.ILLEGAL_ARGUMENT
-                        != exc.getErrorCode())
-                {
-                    bridgeSelector.updateBridgeOperationalStatus(jvb, false);
-                }
+        final String jvb;
+        synchronized (colibriConference)
+        {
+            jvb = colibriConference.getJitsiVideobridge();
+        }
 
-                // Check if the conference is in progress
-                if (!StringUtils.isNullOrEmpty(
-                            colibriConference.getConferenceId()))
-                {
-                    // Restart the conference
-                    meetConference.onBridgeDown(jvb);
+        logger.info(
+                "Using " + jvb + " to allocate channels for: "
+                         + newParticipant.getMucJid());
 
-                    // This thread will end after returning null here
-                    return null;
-                }
+        final BridgeSelector bridgeSelector
+            = meetConference.getServices().getBridgeSelector();
 
-                // Try next bridge - synchronize on conference instance
-                synchronized (colibriConference)
+        colibriConference.createColibriChannelsAsync(
+                newParticipant.hasBundleSupport(),
+                newParticipant.getEndpointId(),
+                true /* initiator */, contents)
+            .addCallback(
+                new SettableFuture.Callback<ColibriConferenceIQ>()
                 {
-                    if (StringUtils.isNullOrEmpty(
-                                config.getEnforcedVideobridge()))
-                    {
-                        BridgeState bridgeState
-                            = bridgeSelector.selectVideobridge(
-                                    meetConference, newParticipant);
-                        jvb = bridgeState == null ? null : bridgeState.getJid();
-                    }
-                    else
+                    @Override
+                    public void onSuccess(ColibriConferenceIQ peerChannels)
                     {
-                        // If the "enforced" bridge has failed we do not try
-                        // any other bridges, but fail immediately
-                        jvb = null;
+                        // null means cancelled, because colibriConference has
+                        // been disposed by another thread
+                        if (peerChannels == null)
+                        {
+                            result.set(null);
+                            return;
+                        }
+
+                        bridgeSelector.updateBridgeOperationalStatus(jvb, true);
+
+                        if (colibriConference.hasJustAllocated())
+                        {
+                            meetConference.onColibriConferenceAllocated(
+                                    colibriConference, jvb);
+                        }
+                        result.set(peerChannels);
                     }
 
-                    if (!StringUtils.isNullOrEmpty(jvb))
+                    @Override
+                    public void onFailure(Throwable error)
                     {
-                        colibriConference.setJitsiVideobridge(jvb);
+                        if (!(error instanceof OperationFailedException))
+                        {
+                            result.setException(error);
+                            return;
+                        }
+
+                        try
+                        {
+                            if (switchBridge(
+                                    jvb, (OperationFailedException) error))
+                            {
+                                tryAllocateChannels(contents, result);
+                            }
+                            else
+                            {
+                                result.set(null);
+                            }
+                        }
+                        catch (OperationFailedException e)
+                        {
+                            result.setException(e);
+                        }
                     }
-                    else
-                    {
-                        // No more bridges to try
-                        throw new OperationFailedException(
-                                "Failed to allocate channels "
-                                    + "- all bridges are faulty",
-                                NO_BRIDGE_AVAILABLE_ERR_CODE);
-                    }
-                }
+                },
+                meetConference.getChannelAllocationLane());
+    }
+
+    /**
+     * Handles the failure of channel allocation on given bridge by either
+     * restarting the conference or selecting another bridge.
+     *
+     * @param jvb the bridge which has failed to allocate the channels.
+     * @param exc the <tt>OperationFailedException</tt> which describes
+     * the failure.
+     *
+     * @return <tt>true</tt> if another bridge has been set on
+     * the <tt>ColibriConference</tt> and the allocation should be retried or
+     * <tt>false</tt> if the allocation has been cancelled, because
+     * the conference is being restarted.
+     *
+     * @throws OperationFailedException if there are no more bridges to try.
+     */
+    private boolean switchBridge(String jvb, OperationFailedException exc)
+        throws OperationFailedException
+    {
+        logger.error("Failed to allocate channels using bridge: " + jvb, exc);
+
+        BridgeSelector bridgeSelector
+            = meetConference.getServices().getBridgeSelector();
+
+        // ILLEGAL_ARGUMENT == BAD_REQUEST(XMPP)
+        // It usually means that Jicofo's conference state got out of
+        // sync with the one of the bridge. The easiest thing to do here
+        // is to restart the conference. It does not mean that
+        // the bridge is faulty though.
+        if (OperationFailedException.ILLEGAL_ARGUMENT != exc.getErrorCode())
+        {
+            bridgeSelector.updateBridgeOperationalStatus(jvb, false);
+        }
+
+        // Check if the conference is in progress
+        if (!StringUtils.isNullOrEmpty(colibriConference.getConferenceId()))
+        {
+            // Restart the conference
+            meetConference.onBridgeDown(jvb);
+
+            // This allocation will end after returning false here
+            return false;
+        }
+
+        // Try next bridge - synchronize on conference instance
+        synchronized (colibriConference)
+        {
+            String nextJvb;
+            if (StringUtils.isNullOrEmpty(
+                        meetConference.getConfig().getEnforcedVideobridge()))
+            {
+                BridgeState bridgeState
+                    = bridgeSelector.selectVideobridge(
+                            meetConference, newParticipant);
+                nextJvb = bridgeState == null ? null : bridgeState.getJid();
+            }
+            else
+            {
+                // If the "enforced" bridge has failed we do not try
+                // any other bridges, but fail immediately
+                nextJvb = null;
             }
+
+            if (StringUtils.isNullOrEmpty(nextJvb))
+            {
+                // No more bridges to try
+                throw new OperationFailedException(
+                        "Failed to allocate channels "
+                            + "- all bridges are faulty",
+                        NO_BRIDGE_AVAILABLE_ERR_CODE);
+            }
+
+            colibriConference.setJitsiVideobridge(nextJvb);
         }
-        // If we reach this point it means that the conference has been disposed
-        // before we've managed to allocate anything
-        return null;
+        return true;
     }
 
     /**
@@ -507,12 +622,8 @@ private void craftOffer(List<ContentPacketExtension>    contents,
     {
         boolean useBundle = newParticipant.hasBundleSupport();
 
-        MediaSSRCMap conferenceSSRCs
-            = meetConference.getAllSSRCs(
-                    reInvite ? newParticipant : null);
-
-        MediaSSRCGroupMap conferenceSSRCGroups
-            = meetConference.getAllSSRCGroups(
+        ConferenceSourceRegistry.View conferenceSources
+            = meetConference.getSourcesView(
                     reInvite ? newParticipant : null);
 
         for (ContentPacketExtension cpe : contents)
@@ -684,8 +795,8 @@ private void craftOffer(List<ContentPacketExtension>    contents,
                 }
 
                 // Include all peers SSRCs
-                List<SourcePacketExtension> mediaSources
-                    = conferenceSSRCs.getSSRCsForMedia(contentName);
+                Iterable<SourcePacketExtension> mediaSources
+                    = conferenceSources.getSSRCsForMedia(contentName);
 
                 for (SourcePacketExtension ssrc : mediaSources)
                 {
@@ -700,8 +811,8 @@ private void craftOffer(List<ContentPacketExtension>    contents,
                 }
 
                 // Include SSRC groups
-                List<SSRCGroup> sourceGroups
-                    = conferenceSSRCGroups.getSSRCGroupsForMedia(contentName);
+                Iterable<SSRCGroup> sourceGroups
+                    = conferenceSources.getSSRCGroupsForMedia(contentName);
 
                 for(SSRCGroup ssrcGroup : sourceGroups)
                 {
@@ -65,6 +65,18 @@
     private final static String REDISCOVERY_INTERVAL_PNAME
         = "org.jitsi.jicofo.SERVICE_REDISCOVERY_INTERVAL";
 
+    /**
+     * The name of configuration property which specifies how long we wait for
+     * the components to respond to the discovery requests. Time in millis.
+     */
+    private final static String DISCOVERY_TIMEOUT_PNAME
+        = "org.jitsi.jicofo.SERVICE_DISCOVERY_TIMEOUT";
+
+    /**
+     * The default value for {@link #DISCOVERY_TIMEOUT_PNAME} - 5 seconds.
+     */
+    private static final long DEFAULT_DISCOVERY_TIMEOUT = 5000L;
+
     /**
      * {@link JitsiMeetServices} which is notified about new components
      * discovered or when one of currently running goes offline.
@@ -76,6 +88,31 @@
      */
     private Map<String, List<String>> itemMap = new ConcurrentHashMap<>();
 
+    /**
+     * Caches the feature lists by their entity capabilities verification
+     * string (the sorted features, see XEP-0115), so that the components of
+     * the same kind share one list instance and the changes can be detected
+     * by comparing references.
+     */
+    private final ConcurrentMap<String, List<String>> featureCache
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The discoveries which did not complete before the deadline of
+     * the round in which they were started, mapped by the node. They are
+     * picked up by the next round instead of being started again, so that
+     * the nodes queued behind the ones which do not respond are eventually
+     * discovered. Also used to serialize the discovery rounds.
+     */
+    private final Map<String, Future<NodeInfo>> discoveriesInProgress
+        = new HashMap<>();
+
+    /**
+     * How long we wait for the components to respond to the discovery
+     * requests (in milliseconds).
+     */
+    private long discoveryTimeout = DEFAULT_DISCOVERY_TIMEOUT;
+
     /**
      * Timer which runs re-discovery task.
      */
@@ -154,6 +191,11 @@ public void start(String                  xmppDomain,
 
         this.statsPubSubNode = statsPubSubNode;
 
+        this.discoveryTimeout
+            = FocusBundleActivator.getConfigService()
+                    .getLong(
+                        DISCOVERY_TIMEOUT_PNAME, DEFAULT_DISCOVERY_TIMEOUT);
+
         this.capsOpSet
             = protocolProviderHandler.getOperationSet(
                     OperationSetSimpleCaps.class);
@@ -205,7 +247,7 @@ private void scheduleRediscovery()
             pubSubBridgeDiscovery
                 = new ThroughPubSubDiscovery(
                         subOpSet, capsOpSet,
-                        FocusBundleActivator.getSharedThreadPool());
+                        FocusBundleActivator.getDiscoveryPool());
 
             pubSubBridgeDiscovery.start(
                     FocusBundleActivator.bundleContext);
@@ -229,8 +271,30 @@ private void cancelRediscovery()
 
     /**
      * Initializes this instance and discovers Jitsi Meet services.
+     *
+     * The feature lists of all components are queried in parallel on
+     * the discovery pool and the version of every new component is discovered
+     * by the same task right after. The round waits for the results for at
+     * most {@link #discoveryTimeout}, so that a dead node does not delay
+     * the detection of the other ones. A component is considered offline only
+     * when it's discovery has actually failed or when it's no longer listed
+     * by the server. The components which have not responded in time keep
+     * their current state and their discoveries are picked up by the next
+     * round.
      */
     public void discoverServices()
+    {
+        synchronized (discoveriesInProgress)
+        {
+            discoverServicesLocked();
+        }
+    }
+
+    /**
+     * Implements {@link #discoverServices()}. Must be called with the lock on
+     * {@link #discoveriesInProgress} held.
+     */
+    private void discoverServicesLocked()
     {
         Set<String> nodes = capsOpSet.getItems(xmppDomain);
         if (nodes == null)
@@ -239,53 +303,100 @@ public void discoverServices()
             return;
         }
 
-        List<String> onlineNodes = new ArrayList<>();
+        ExecutorService discoveryPool = FocusBundleActivator.getDiscoveryPool();
+        Map<String, Future<NodeInfo>> pending = new HashMap<>();
+
         for (String node : nodes)
         {
-            List<String> features = capsOpSet.getFeatures(node);
-
-            if (features == null)
+            Future<NodeInfo> discovery = discoveriesInProgress.remove(node);
+            if (discovery == null)
             {
-                // Component unavailable
-                continue;
+                discovery
+                    = discoveryPool.submit(
+                            new NodeDiscovery(
+                                    node, !itemMap.containsKey(node)));
             }
+            pending.put(node, discovery);
+        }
 
-            // Node is considered online when we get its feature list
-            onlineNodes.add(node);
+        // The nodes which are no longer listed
+        for (Future<NodeInfo> discovery : discoveriesInProgress.values())
+        {
+            discovery.cancel(false);
+        }
+        discoveriesInProgress.clear();
 
-            if (!itemMap.containsKey(node))
+        long deadline = System.currentTimeMillis() + discoveryTimeout;
+        List<String> offlineNodes = new ArrayList<>();
+        for (String node : itemMap.keySet())
+        {
+            if (!nodes.contains(node))
             {
-                itemMap.put(node, features);
-
-                // Try discovering version
-                Version version
-                    = DiscoveryUtil.discoverVersion(connection, node, features);
-
-                logger.info(
-                        "New component discovered: " + node + ", " + version);
-
-                meetServices.newNodeDiscovered(node, features, version);
+                offlineNodes.add(node);
             }
-            else
+        }
+
+        try
+        {
+            for (Map.Entry<String, Future<NodeInfo>> discovery
+                    : pending.entrySet())
             {
-                // Check if there are changes in feature list
-                if (!DiscoveryUtil.areTheSame(itemMap.get(node), features))
+                String node = discovery.getKey();
+                long timeout
+                    = Math.max(0, deadline - System.currentTimeMillis());
+                NodeInfo nodeInfo;
+                try
                 {
-                    // FIXME: we do not care for feature list change yet, as
-                    // components should have constant addresses configured,
-                    // but want to detect eventual problems here
-
-                    logger.error("Feature list changed for: " + node);
+                    nodeInfo
+                        = discovery.getValue().get(
+                                timeout, TimeUnit.MILLISECONDS);
+                }
+                catch (TimeoutException e)
+                {
+                    // Keep the current state and check again next time
+                    discoveriesInProgress.put(node, discovery.getValue());
+                    continue;
+                }
+                catch (ExecutionException e)
+                {
+                    logger.error(
+                        "Component discovery failed: " + node, e.getCause());
+                    nodeInfo = null;
+                }
 
-                    //meetServices.nodeFeaturesChanged(item, features);
+                if (nodeInfo == null || nodeInfo.features == null)
+                {
+                    // Component unavailable
+                    if (itemMap.containsKey(node))
+                    {
+                        offlineNodes.add(node);
+                    }
+                    continue;
                 }
+
+                processNodeInfo(nodeInfo);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            logger.warn("Service discovery interrupted");
+            Thread.currentThread().interrupt();
+
+            for (Future<NodeInfo> discovery : pending.values())
+            {
+                discovery.cancel(false);
             }
+            discoveriesInProgress.clear();
+            return;
         }
 
-        // Find disconnected nodes
-        List<String> offlineNodes = new ArrayList<>(itemMap.keySet());
+        if (!discoveriesInProgress.isEmpty())
+        {
+            logger.warn(
+                "Discovery timed out for " + discoveriesInProgress.size()
+                    + " component(s): " + discoveriesInProgress.keySet());
+        }
 
-        offlineNodes.removeAll(onlineNodes);
         itemMap.keySet().removeAll(offlineNodes);
 
         if (offlineNodes.size() > 0)
@@ -300,6 +411,64 @@ public void discoverServices()
         }
     }
 
+    /**
+     * Updates {@link #itemMap} and notifies {@link #meetServices} about new
+     * component.
+     *
+     * @param nodeInfo the result of discovering a component which is online.
+     */
+    private void processNodeInfo(NodeInfo nodeInfo)
+    {
+        String node = nodeInfo.node;
+        List<String> features = nodeInfo.features;
+
+        if (!itemMap.containsKey(node))
+        {
+            itemMap.put(node, features);
+
+            logger.info(
+                    "New component discovered: " + node + ", "
+                        + nodeInfo.version);
+
+            meetServices.newNodeDiscovered(node, features, nodeInfo.version);
+        }
+        // Lists with the same features are cached as the same instance
+        else if (itemMap.get(node) != features)
+        {
+            // FIXME: we do not care for feature list change yet, as
+            // components should have constant addresses configured,
+            // but want to detect eventual problems here
+
+            logger.error("Feature list changed for: " + node);
+
+            //meetServices.nodeFeaturesChanged(item, features);
+        }
+    }
+
+    /**
+     * Returns the feature list stored in {@link #featureCache} for the same
+     * features as given list or caches the list if there isn't any.
+     *
+     * @param features the list of features discovered for a component.
+     */
+    private List<String> getCachedFeatures(List<String> features)
+    {
+        List<String> sorted = new ArrayList<>(features);
+        Collections.sort(sorted);
+
+        // Entity capabilities verification string (without the identities)
+        StringBuilder ver = new StringBuilder();
+        for (String feature : sorted)
+        {
+            ver.append(feature).append('<');
+        }
+
+        List<String> cached
+            = featureCache.putIfAbsent(ver.toString(), features);
+
+        return cached != null ? cached : features;
+    }
+
     private void firstTimeDiscovery()
     {
         this.connection
@@ -326,6 +495,15 @@ public void stop()
 
     private void setAllNodesOffline()
     {
+        synchronized (discoveriesInProgress)
+        {
+            for (Future<NodeInfo> discovery : discoveriesInProgress.values())
+            {
+                discovery.cancel(false);
+            }
+            discoveriesInProgress.clear();
+        }
+
         for (String node : itemMap.keySet())
         {
             logger.info("Connection lost - component offline: " + node);
@@ -334,6 +512,7 @@ private void setAllNodesOffline()
         }
 
         itemMap.clear();
+        featureCache.clear();
     }
 
     @Override
@@ -352,6 +531,79 @@ else if (RegistrationState.UNREGISTERED.equals(evt.getNewState())
         }
     }
 
+    /**
+     * The result of discovering single component.
+     */
+    private static class NodeInfo
+    {
+        /**
+         * The XMPP address of the component.
+         */
+        final String node;
+
+        /**
+         * The features of the component or <tt>null</tt> if it's unavailable.
+         */
+        final List<String> features;
+
+        /**
+         * The version of the component or <tt>null</tt> if unknown or not
+         * discovered, because the component is not new.
+         */
+        final Version version;
+
+        NodeInfo(String node, List<String> features, Version version)
+        {
+            this.node = node;
+            this.features = features;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Discovers the features of a component and its version if the component
+     * is new. The task does not modify the state of {@link ComponentsDiscovery}
+     * as it may complete after the discovery round has timed out.
+     */
+    private class NodeDiscovery
+        implements Callable<NodeInfo>
+    {
+        /**
+         * The XMPP address of the component.
+         */
+        private final String node;
+
+        /**
+         * Whether or not the version of the component should be discovered.
+         */
+        private final boolean discoverVersion;
+
+        NodeDiscovery(String node, boolean discoverVersion)
+        {
+            this.node = node;
+            this.discoverVersion = discoverVersion;
+        }
+
+        @Override
+        public NodeInfo call()
+        {
+            List<String> features = capsOpSet.getFeatures(node);
+            if (features == null)
+            {
+                return new NodeInfo(node, null, null);
+            }
+
+            features = getCachedFeatures(features);
+
+            Version version
+                = discoverVersion
+                    ? DiscoveryUtil.discoverVersion(connection, node, features)
+                    : null;
+
+            return new NodeInfo(node, features, version);
+        }
+    }
+
     class RediscoveryTask extends TimerTask
     {
 
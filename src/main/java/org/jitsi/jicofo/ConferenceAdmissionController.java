@@ -0,0 +1,568 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Limits the rate at which new conferences are created, so that a storm of
+ * conference requests (eg. all clients reconnecting after an XMPP server
+ * failover) does not make Jicofo allocate hundreds of conferences on
+ * the bridges at once.
+ *
+ * The rate is limited with token buckets, one shared by all conferences and
+ * one for each MUC domain (which identifies the tenant), so that a single
+ * tenant can not take the capacity of the others. The admission never blocks,
+ * as it's done on the thread which handles the conference IQs. A request which
+ * does not get a token is rejected straight away, but the token it will need is
+ * reserved for its room in advance (the buckets go into debt). The request is
+ * told to retry when the reserved token becomes available, so the consecutive
+ * rejected requests are given the times of the consecutive tokens and are
+ * spread over time instead of all coming back at once. The new requests can not
+ * take the reserved tokens from the rooms which are retrying. A reservation
+ * which is not used within {@link #RESERVATION_TIMEOUT} after its time is
+ * cancelled and the tokens are returned.
+ *
+ * Only the requests which create new conferences are subject to the admission
+ * control - requests for the rooms which already exist are never limited.
+ *
+ * The admission control is disabled unless any of the rates is configured.
+ *
+ * @author agent
+ */
+public class ConferenceAdmissionController
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(ConferenceAdmissionController.class);
+
+    /**
+     * The name of the property which specifies how many new conferences per
+     * second are allowed. Disabled by default.
+     */
+    public static final String RATE_PNAME
+        = "org.jitsi.jicofo.admission.CONFERENCE_RATE";
+
+    /**
+     * The name of the property which specifies how many new conferences can be
+     * created at once above {@link #RATE_PNAME}. Equal to the rate by default.
+     */
+    public static final String BURST_PNAME
+        = "org.jitsi.jicofo.admission.CONFERENCE_BURST";
+
+    /**
+     * The name of the property which specifies how many new conferences per
+     * second are allowed in a single MUC domain. Disabled by default.
+     */
+    public static final String DOMAIN_RATE_PNAME
+        = "org.jitsi.jicofo.admission.DOMAIN_CONFERENCE_RATE";
+
+    /**
+     * The name of the property which specifies how many new conferences can be
+     * created at once in a single MUC domain above {@link #DOMAIN_RATE_PNAME}.
+     * Equal to the rate by default.
+     */
+    public static final String DOMAIN_BURST_PNAME
+        = "org.jitsi.jicofo.admission.DOMAIN_CONFERENCE_BURST";
+
+    /**
+     * The number of domain buckets above which the buckets which have been
+     * refilled are discarded.
+     */
+    private static final int DOMAIN_BUCKETS_PRUNE_THRESHOLD = 1000;
+
+    /**
+     * How long (in nanoseconds) the reserved tokens are held for the room
+     * after the time it was told to retry at.
+     */
+    static final long RESERVATION_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * The bucket shared by all conferences or <tt>null</tt> if the global rate
+     * is not limited.
+     */
+    private TokenBucket globalBucket;
+
+    /**
+     * The rate of the domain buckets (per second) or <tt>0</tt> if the domain
+     * rate is not limited.
+     */
+    private double domainRate;
+
+    /**
+     * The capacity of the domain buckets.
+     */
+    private int domainBurst;
+
+    /**
+     * The token buckets mapped to the MUC domains.
+     */
+    private final Map<String, TokenBucket> domainBuckets = new HashMap<>();
+
+    /**
+     * The reservations made for the rejected requests mapped to the rooms, in
+     * the order they were made.
+     */
+    private final Map<String, Reservation> reservations
+        = new LinkedHashMap<>();
+
+    /**
+     * The number of admitted requests.
+     */
+    private long admitted;
+
+    /**
+     * The number of requests rejected, because the domain was out of tokens.
+     */
+    private long rejectedDomain;
+
+    /**
+     * The number of requests rejected, because the global bucket was out of
+     * tokens.
+     */
+    private long rejectedGlobal;
+
+    /**
+     * Loads the limits from the config.
+     *
+     * @param config <tt>ConfigurationService</tt> instance.
+     */
+    void init(ConfigurationService config)
+    {
+        double rate = config.getDouble(RATE_PNAME, 0d);
+        double domainRate = config.getDouble(DOMAIN_RATE_PNAME, 0d);
+
+        configure(
+            rate,
+            config.getInt(BURST_PNAME, (int) Math.ceil(rate)),
+            domainRate,
+            config.getInt(DOMAIN_BURST_PNAME, (int) Math.ceil(domainRate)));
+
+        if (isEnabled())
+        {
+            logger.info(
+                "Conference admission control - rate: " + rate
+                    + "/s, domain rate: " + domainRate + "/s");
+        }
+    }
+
+    /**
+     * Sets the limits.
+     *
+     * @param rate how many new conferences per second are allowed or
+     * <tt>0</tt> for no limit.
+     * @param burst how many new conferences can be created at once.
+     * @param domainRate how many new conferences per second are allowed in
+     * a single MUC domain or <tt>0</tt> for no limit.
+     * @param domainBurst how many new conferences can be created at once in
+     * a single MUC domain.
+     */
+    synchronized void configure(double    rate,
+                                int       burst,
+                                double    domainRate,
+                                int       domainBurst)
+    {
+        this.globalBucket
+            = rate > 0
+                ? new TokenBucket(rate, burst, System.nanoTime()) : null;
+        this.domainRate = Math.max(0d, domainRate);
+        this.domainBurst = domainBurst;
+
+        domainBuckets.clear();
+        reservations.clear();
+    }
+
+    /**
+     * Checks whether any of the rates is limited.
+     */
+    public synchronized boolean isEnabled()
+    {
+        return globalBucket != null || domainRate > 0;
+    }
+
+    /**
+     * Asks for the permission to create a new conference. The method does not
+     * block.
+     *
+     * @param room the full MUC JID of the conference room.
+     *
+     * @return <tt>0</tt> if the conference can be created or the number of
+     * seconds after which the request should be retried.
+     */
+    public synchronized int admit(String room)
+    {
+        long now = System.nanoTime();
+
+        expireReservations(now);
+
+        Reservation reservation = reservations.get(room);
+        if (reservation != null)
+        {
+            if (!reservation.isDue(now))
+            {
+                // Retried too early, the tokens remain reserved
+                return toRetrySeconds(reservation.time - now);
+            }
+
+            reservations.remove(room);
+            admitted++;
+            return 0;
+        }
+
+        TokenBucket domainBucket = getDomainBucket(room, now);
+        long wait = 0;
+
+        if (domainBucket != null && !domainBucket.tryTake(now))
+        {
+            rejectedDomain++;
+            wait = domainBucket.reserve(now);
+
+            if (globalBucket != null)
+            {
+                wait = Math.max(wait, globalBucket.reserve(now));
+            }
+        }
+        else if (globalBucket != null && !globalBucket.tryTake(now))
+        {
+            rejectedGlobal++;
+            wait = globalBucket.reserve(now);
+        }
+        else
+        {
+            admitted++;
+            return 0;
+        }
+
+        reservations.put(
+            room, new Reservation(now + wait, domainBucket, globalBucket));
+
+        return toRetrySeconds(wait);
+    }
+
+    /**
+     * Returns the token taken by {@link #admit(String)} for a conference which
+     * did not need to be created, because it has been created by another
+     * request in the meantime.
+     *
+     * @param room the full MUC JID of the conference room.
+     */
+    public synchronized void release(String room)
+    {
+        long now = System.nanoTime();
+
+        refund(getDomainBucket(room, now));
+        if (globalBucket != null)
+        {
+            globalBucket.refund();
+        }
+    }
+
+    /**
+     * Cancels the reservations which have not been used in time and returns
+     * their tokens. The reservations are checked in the order they were made
+     * and the check stops at the first one which has not expired, so that
+     * the cost is not proportional to the number of the reservations.
+     *
+     * @param now the current time in nanoseconds.
+     */
+    private void expireReservations(long now)
+    {
+        Iterator<Reservation> iterator = reservations.values().iterator();
+
+        while (iterator.hasNext())
+        {
+            Reservation reservation = iterator.next();
+            if (now - reservation.time - RESERVATION_TIMEOUT < 0)
+            {
+                break;
+            }
+
+            iterator.remove();
+            refund(reservation.domainBucket);
+            refund(reservation.globalBucket);
+        }
+    }
+
+    /**
+     * Returns the bucket for the MUC domain of given room.
+     *
+     * @param room the full MUC JID of the conference room.
+     * @param now the current time in nanoseconds.
+     *
+     * @return the <tt>TokenBucket</tt> or <tt>null</tt> if the domain rate is
+     * not limited.
+     */
+    private TokenBucket getDomainBucket(String room, long now)
+    {
+        if (domainRate <= 0)
+        {
+            return null;
+        }
+
+        int atIdx = room.indexOf('@');
+        String domain = atIdx != -1 ? room.substring(atIdx + 1) : "";
+
+        TokenBucket bucket = domainBuckets.get(domain);
+        if (bucket == null)
+        {
+            if (domainBuckets.size() >= DOMAIN_BUCKETS_PRUNE_THRESHOLD)
+            {
+                pruneDomainBuckets(now);
+            }
+
+            bucket = new TokenBucket(domainRate, domainBurst, now);
+            domainBuckets.put(domain, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Removes the domain buckets which have been refilled. These are no
+     * different from the buckets which would be created for the domains.
+     *
+     * @param now the current time in nanoseconds.
+     */
+    private void pruneDomainBuckets(long now)
+    {
+        Iterator<TokenBucket> buckets = domainBuckets.values().iterator();
+
+        while (buckets.hasNext())
+        {
+            if (buckets.next().isFull(now))
+            {
+                buckets.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns a token to given bucket.
+     *
+     * @param bucket the <tt>TokenBucket</tt> or <tt>null</tt>.
+     */
+    private static void refund(TokenBucket bucket)
+    {
+        if (bucket != null)
+        {
+            bucket.refund();
+        }
+    }
+
+    /**
+     * Converts given time to the number of seconds to be returned as retry
+     * hint (which is at least one second).
+     *
+     * @param nanos the time in nanoseconds.
+     */
+    private static int toRetrySeconds(long nanos)
+    {
+        long seconds = (nanos + TimeUnit.SECONDS.toNanos(1) - 1)
+            / TimeUnit.SECONDS.toNanos(1);
+
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1L, seconds));
+    }
+
+    /**
+     * Returns the snapshot of the statistics of the admission control.
+     *
+     * @return a map of the statistic names to their values.
+     */
+    public synchronized Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+
+        stats.put("enabled", isEnabled());
+        stats.put("admitted", admitted);
+        stats.put("rejected", rejectedDomain + rejectedGlobal);
+        stats.put("rejected_domain_rate", rejectedDomain);
+        stats.put("rejected_rate", rejectedGlobal);
+        stats.put("reserved", reservations.size());
+
+        return stats;
+    }
+
+    /**
+     * The tokens reserved for a rejected request.
+     */
+    private static class Reservation
+    {
+        /**
+         * The time (in nanoseconds) the request has been told to retry at.
+         */
+        final long time;
+
+        /**
+         * The domain bucket the token has been reserved in or <tt>null</tt>.
+         */
+        final TokenBucket domainBucket;
+
+        /**
+         * The global bucket the token has been reserved in or <tt>null</tt>.
+         */
+        final TokenBucket globalBucket;
+
+        Reservation(long time,
+                    TokenBucket domainBucket,
+                    TokenBucket globalBucket)
+        {
+            this.time = time;
+            this.domainBucket = domainBucket;
+            this.globalBucket = globalBucket;
+        }
+
+        /**
+         * Checks whether the reserved tokens can be used. That's when
+         * the time of the reservation has come or earlier, if the tokens
+         * returned in the meantime have paid off the debt of the buckets.
+         *
+         * @param now the current time in nanoseconds.
+         */
+        boolean isDue(long now)
+        {
+            return now - time >= 0
+                || ((domainBucket == null || !domainBucket.isInDebt(now))
+                        && (globalBucket == null
+                                || !globalBucket.isInDebt(now)));
+        }
+    }
+
+    /**
+     * A token bucket which is refilled continuously at the given rate.
+     * The class is not thread safe.
+     */
+    static class TokenBucket
+    {
+        /**
+         * The number of nanoseconds it takes to refill one token.
+         */
+        private final double nanosPerToken;
+
+        /**
+         * The maximum number of tokens.
+         */
+        private final double capacity;
+
+        /**
+         * The number of tokens currently available (fractions included).
+         */
+        private double tokens;
+
+        /**
+         * The time when {@link #tokens} has been refilled the last time.
+         */
+        private long lastRefill;
+
+        /**
+         * Creates new full <tt>TokenBucket</tt>.
+         *
+         * @param rate the number of tokens added per second.
+         * @param capacity the maximum number of tokens, at least one.
+         * @param now the current time in nanoseconds.
+         */
+        TokenBucket(double rate, int capacity, long now)
+        {
+            this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / rate;
+            this.capacity = Math.max(1, capacity);
+            this.tokens = this.capacity;
+            this.lastRefill = now;
+        }
+
+        private void refill(long now)
+        {
+            tokens
+                = Math.min(
+                        capacity, tokens + (now - lastRefill) / nanosPerToken);
+            lastRefill = now;
+        }
+
+        /**
+         * Takes a token if there's one available.
+         *
+         * @param now the current time in nanoseconds.
+         *
+         * @return <tt>true</tt> if the token has been taken.
+         */
+        boolean tryTake(long now)
+        {
+            refill(now);
+            if (tokens >= 1d)
+            {
+                tokens -= 1d;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Takes a token in advance, even if there is none available, in which
+         * case the bucket goes into debt.
+         *
+         * @param now the current time in nanoseconds.
+         *
+         * @return the number of nanoseconds until the debt, including the token
+         * taken, is paid off.
+         */
+        long reserve(long now)
+        {
+            refill(now);
+            tokens -= 1d;
+
+            return tokens >= 0d
+                ? 0L : (long) Math.ceil(-tokens * nanosPerToken);
+        }
+
+        /**
+         * Checks whether more tokens have been reserved than there are
+         * available.
+         *
+         * @param now the current time in nanoseconds.
+         */
+        boolean isInDebt(long now)
+        {
+            refill(now);
+
+            return tokens < 0d;
+        }
+
+        /**
+         * Returns the token which has been taken.
+         */
+        void refund()
+        {
+            tokens = Math.min(capacity, tokens + 1d);
+        }
+
+        /**
+         * Checks whether the bucket has been refilled completely.
+         *
+         * @param now the current time in nanoseconds.
+         */
+        boolean isFull(long now)
+        {
+            refill(now);
+
+            return tokens >= capacity;
+        }
+    }
+}
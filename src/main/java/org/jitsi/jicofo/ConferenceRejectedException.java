@@ -0,0 +1,56 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+/**
+ * This exception is thrown when a request to create new conference has been
+ * rejected by the {@link ConferenceAdmissionController}, because too many
+ * conferences are being created.
+ *
+ * @author agent
+ */
+public class ConferenceRejectedException extends Exception
+{
+    /**
+     * The number of seconds after which the request should be retried.
+     */
+    private final int retryAfter;
+
+    /**
+     * Creates new <tt>ConferenceRejectedException</tt>
+     * @param room the name of the MUC room of the rejected conference.
+     * @param retryAfter the number of seconds after which the request should
+     * be retried.
+     */
+    public ConferenceRejectedException(String room, int retryAfter)
+    {
+        super(
+            "Conference request for " + room + " rejected, retry after "
+                + retryAfter + " s");
+
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns the number of seconds after which the request should be retried.
+     */
+    public int getRetryAfter()
+    {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps the sources of all participants of a conference, so that the offers
+ * sent to new participants do not have to collect them from every
+ * {@link Participant} again.
+ *
+ * The sources are stored per {@link Participant} instance as snapshots of
+ * the participant's {@link MediaSSRCMap} and {@link MediaSSRCGroupMap}, which
+ * index them by the media type and the SSRC value. The snapshots are replaced
+ * whenever the participant's sources change and they are never modified, so
+ * the readers do not need any locking.
+ *
+ * The instance, not the MUC JID, is the key, because a participant who
+ * rejoins gets a new instance with the same JID while the old one may still
+ * be in the process of being removed. The old instance must neither remove
+ * nor overwrite the sources of the new one.
+ *
+ * @author agent
+ */
+class ConferenceSourceRegistry
+{
+    /**
+     * The sources stored by their owner.
+     */
+    private final ConcurrentMap<Participant, OwnerSources> owners
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The participants which have been removed, so that their late updates
+     * are ignored. Weak, so that the participants are not kept in memory
+     * longer than needed.
+     */
+    private final Set<Participant> removed
+        = Collections.newSetFromMap(new WeakHashMap<Participant, Boolean>());
+
+    /**
+     * Stores current sources of given participant. Must be called every time
+     * the participant's SSRCs or SSRC groups change. Does nothing if
+     * the participant has been removed already.
+     *
+     * @param participant the <tt>Participant</tt> whose sources have been
+     * modified.
+     */
+    synchronized void update(Participant participant)
+    {
+        if (removed.contains(participant))
+        {
+            return;
+        }
+
+        // The snapshot is taken under the lock, so that the last update stored
+        // is the most recent one
+        owners.put(
+                participant,
+                new OwnerSources(
+                        participant.getSSRCsCopy(),
+                        participant.getSSRCGroupsCopy()));
+    }
+
+    /**
+     * Removes the sources of given participant. Should be called when
+     * the participant leaves the conference.
+     *
+     * @param participant the <tt>Participant</tt> which has been removed.
+     */
+    synchronized void remove(Participant participant)
+    {
+        owners.remove(participant);
+        removed.add(participant);
+    }
+
+    /**
+     * Returns the sources of given participant.
+     *
+     * @param participant the <tt>Participant</tt>.
+     *
+     * @return read-only <tt>MediaSSRCMap</tt> of the participant or
+     * <tt>null</tt> if there are no sources stored for it.
+     */
+    MediaSSRCMap getSSRCs(Participant participant)
+    {
+        OwnerSources sources = owners.get(participant);
+
+        return sources != null ? sources.ssrcs : null;
+    }
+
+    /**
+     * Returns the view of the sources of all participants except the given
+     * one. The view includes the sources stored at the time when this method
+     * is called and it is not affected by later updates.
+     *
+     * @param except the <tt>Participant</tt> whose sources are to be excluded
+     * or <tt>null</tt> to include everyone.
+     *
+     * @return new <tt>View</tt> instance.
+     */
+    View getView(Participant except)
+    {
+        List<OwnerSources> sources = new ArrayList<>(owners.size());
+
+        for (Map.Entry<Participant, OwnerSources> e : owners.entrySet())
+        {
+            if (e.getKey() != except)
+            {
+                sources.add(e.getValue());
+            }
+        }
+
+        return new View(sources);
+    }
+
+    /**
+     * The snapshot of the sources of a single participant.
+     */
+    private static class OwnerSources
+    {
+        /**
+         * The SSRCs which must not be modified.
+         */
+        final MediaSSRCMap ssrcs;
+
+        /**
+         * The SSRC groups which must not be modified.
+         */
+        final MediaSSRCGroupMap ssrcGroups;
+
+        OwnerSources(MediaSSRCMap ssrcs, MediaSSRCGroupMap ssrcGroups)
+        {
+            this.ssrcs = ssrcs;
+            this.ssrcGroups = ssrcGroups;
+        }
+    }
+
+    /**
+     * A view of the sources of a group of participants, which iterates over
+     * the participants' snapshots without copying their sources.
+     */
+    static class View
+    {
+        /**
+         * The snapshots of the participants included in the view.
+         */
+        private final List<OwnerSources> sources;
+
+        private View(List<OwnerSources> sources)
+        {
+            this.sources = sources;
+        }
+
+        /**
+         * Returns the SSRCs of given media type of all participants included
+         * in this view. The <tt>SourcePacketExtension</tt>s must not be
+         * modified.
+         *
+         * @param media the media type.
+         */
+        Iterable<SourcePacketExtension> getSSRCsForMedia(final String media)
+        {
+            return new Iterable<SourcePacketExtension>()
+            {
+                @Override
+                public Iterator<SourcePacketExtension> iterator()
+                {
+                    return new ConcatIterator<SourcePacketExtension>()
+                    {
+                        @Override
+                        Iterator<SourcePacketExtension> next(
+                                OwnerSources owner)
+                        {
+                            return owner.ssrcs
+                                .getSSRCsForMedia(media).iterator();
+                        }
+                    };
+                }
+            };
+        }
+
+        /**
+         * Returns the SSRC groups of given media type of all participants
+         * included in this view. The <tt>SSRCGroup</tt>s must not be modified.
+         *
+         * @param media the media type.
+         */
+        Iterable<SSRCGroup> getSSRCGroupsForMedia(final String media)
+        {
+            return new Iterable<SSRCGroup>()
+            {
+                @Override
+                public Iterator<SSRCGroup> iterator()
+                {
+                    return new ConcatIterator<SSRCGroup>()
+                    {
+                        @Override
+                        Iterator<SSRCGroup> next(OwnerSources owner)
+                        {
+                            return owner.ssrcGroups
+                                .getSSRCGroupsForMedia(media).iterator();
+                        }
+                    };
+                }
+            };
+        }
+
+        /**
+         * Iterates over the items of all participants included in the view.
+         *
+         * @param <T> the type of the items.
+         */
+        private abstract class ConcatIterator<T>
+            implements Iterator<T>
+        {
+            private final Iterator<OwnerSources> owners = sources.iterator();
+
+            private Iterator<T> current = Collections.<T>emptyIterator();
+
+            /**
+             * Returns the iterator over the items of given participant.
+             */
+            abstract Iterator<T> next(OwnerSources owner);
+
+            @Override
+            public boolean hasNext()
+            {
+                while (!current.hasNext())
+                {
+                    if (!owners.hasNext())
+                    {
+                        return false;
+                    }
+                    current = next(owners.next());
+                }
+                return true;
+            }
+
+            @Override
+            public T next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException("remove");
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@
 
 import org.osgi.framework.*;
 
+import java.util.*;
 import java.util.concurrent.*;
 
 /**
@@ -41,6 +42,58 @@
      */
     private static final int SHARED_POOL_SIZE = 20;
 
+    /**
+     * The name of the property which overrides {@link #SHARED_POOL_SIZE}.
+     */
+    public static final String SHARED_POOL_SIZE_PNAME
+        = "org.jitsi.jicofo.SHARED_POOL_SIZE";
+
+    /**
+     * The default number of threads in {@link #channelAllocationPool}.
+     */
+    private static final int CHANNEL_ALLOCATION_POOL_SIZE = 20;
+
+    /**
+     * The name of the property which specifies the number of threads in
+     * {@link #channelAllocationPool}.
+     */
+    public static final String CHANNEL_ALLOCATION_POOL_SIZE_PNAME
+        = "org.jitsi.jicofo.CHANNEL_ALLOCATION_POOL_SIZE";
+
+    /**
+     * The default number of threads in {@link #healthCheckPool}.
+     */
+    private static final int HEALTH_CHECK_POOL_SIZE = 10;
+
+    /**
+     * The name of the property which specifies the number of threads in
+     * {@link #healthCheckPool}.
+     */
+    public static final String HEALTH_CHECK_POOL_SIZE_PNAME
+        = "org.jitsi.jicofo.HEALTH_CHECK_POOL_SIZE";
+
+    /**
+     * The default number of threads in {@link #discoveryPool}.
+     */
+    private static final int DISCOVERY_POOL_SIZE = 10;
+
+    /**
+     * The name of the property which specifies the number of threads in
+     * {@link #discoveryPool}.
+     */
+    public static final String DISCOVERY_POOL_SIZE_PNAME
+        = "org.jitsi.jicofo.DISCOVERY_POOL_SIZE";
+
+    /**
+     * The name of the property which enables the elastic mode of the thread
+     * pools (see {@link InstrumentedExecutor}). In that mode the tasks which
+     * block while waiting for XMPP responses do not occupy the threads of
+     * the pool, so the pool sizes do not limit how many of them can be in
+     * progress at the same time. Disabled by default.
+     */
+    public static final String ELASTIC_THREAD_POOLS_PNAME
+        = "org.jitsi.jicofo.ELASTIC_THREAD_POOLS";
+
     /**
      * OSGi bundle context held by this activator.
      */
@@ -65,7 +118,26 @@
      * Shared thread pool available through OSGi for other components that do
      * not like to manage their own pool.
      */
-    private static ScheduledExecutorService sharedThreadPool;
+    private static InstrumentedExecutor sharedThreadPool;
+
+    /**
+     * The pool which runs Colibri channel allocation. The tasks can block for
+     * a long time when the bridge is slow, so they do not share the threads
+     * with anything else. Conferences submit their tasks through
+     * a {@link LaneExecutor}, so that a single conference can not take all of
+     * the threads.
+     */
+    private static InstrumentedExecutor channelAllocationPool;
+
+    /**
+     * The pool which runs videobridge health checks.
+     */
+    private static InstrumentedExecutor healthCheckPool;
+
+    /**
+     * The pool used by the components discovery.
+     */
+    private static InstrumentedExecutor discoveryPool;
 
     /**
      * {@link org.jitsi.jicofo.FocusManager} instance created by this activator.
@@ -90,17 +162,44 @@ public void start(BundleContext context)
 
         EntityCapsManager.setBundleContext(context);
 
-        // Make threads daemon, so that they won't prevent from doing shutdown
-        sharedThreadPool
-            = Executors.newScheduledThreadPool(
-                    SHARED_POOL_SIZE, new DaemonThreadFactory());
-
         eventAdminRef = new OSGIServiceRef<>(context, EventAdmin.class);
 
         configServiceRef
             = new OSGIServiceRef<>(context, ConfigurationService.class);
 
-        jingleOfferFactory = new JingleOfferFactory(configServiceRef.get());
+        ConfigurationService config = configServiceRef.get();
+
+        boolean elastic = config.getBoolean(ELASTIC_THREAD_POOLS_PNAME, false);
+
+        // The pools run daemon threads, so that they won't prevent from doing
+        // shutdown
+        sharedThreadPool
+            = new InstrumentedExecutor(
+                    "shared",
+                    config.getInt(SHARED_POOL_SIZE_PNAME, SHARED_POOL_SIZE),
+                    elastic);
+        channelAllocationPool
+            = new InstrumentedExecutor(
+                    "channel-allocation",
+                    config.getInt(
+                            CHANNEL_ALLOCATION_POOL_SIZE_PNAME,
+                            CHANNEL_ALLOCATION_POOL_SIZE),
+                    elastic);
+        healthCheckPool
+            = new InstrumentedExecutor(
+                    "health-check",
+                    config.getInt(
+                            HEALTH_CHECK_POOL_SIZE_PNAME,
+                            HEALTH_CHECK_POOL_SIZE),
+                    elastic);
+        discoveryPool
+            = new InstrumentedExecutor(
+                    "discovery",
+                    config.getInt(
+                            DISCOVERY_POOL_SIZE_PNAME, DISCOVERY_POOL_SIZE),
+                    elastic);
+
+        jingleOfferFactory = new JingleOfferFactory(config);
 
         context.registerService(
             ExecutorService.class, sharedThreadPool, null);
@@ -133,6 +232,15 @@ public void stop(BundleContext context)
         sharedThreadPool.shutdownNow();
         sharedThreadPool = null;
 
+        channelAllocationPool.shutdownNow();
+        channelAllocationPool = null;
+
+        healthCheckPool.shutdownNow();
+        healthCheckPool = null;
+
+        discoveryPool.shutdownNow();
+        discoveryPool = null;
+
         configServiceRef = null;
         eventAdminRef = null;
 
@@ -179,4 +287,53 @@ public static ScheduledExecutorService getSharedThreadPool()
     {
         return sharedThreadPool;
     }
+
+    /**
+     * Returns the pool dedicated to Colibri channel allocation.
+     */
+    public static ScheduledExecutorService getChannelAllocationPool()
+    {
+        return channelAllocationPool;
+    }
+
+    /**
+     * Returns the pool dedicated to videobridge health checks.
+     */
+    public static ScheduledExecutorService getHealthCheckPool()
+    {
+        return healthCheckPool;
+    }
+
+    /**
+     * Returns the pool dedicated to the components discovery.
+     */
+    public static ScheduledExecutorService getDiscoveryPool()
+    {
+        return discoveryPool;
+    }
+
+    /**
+     * Returns all thread pools managed by this activator. Used to export
+     * the statistics of the pools.
+     *
+     * @return the list of pools which is empty if the bundle is not running.
+     */
+    public static List<InstrumentedExecutor> getThreadPools()
+    {
+        List<InstrumentedExecutor> pools = new ArrayList<>(4);
+
+        for (InstrumentedExecutor pool
+                : new InstrumentedExecutor[] {
+                        sharedThreadPool,
+                        channelAllocationPool,
+                        healthCheckPool,
+                        discoveryPool })
+        {
+            if (pool != null)
+            {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
 }
@@ -128,11 +128,6 @@
      */
     private String focusUserName;
 
-    /**
-     * The thread that expires {@link JitsiMeetConference}s.
-     */
-    private final FocusExpireThread expireThread = new FocusExpireThread();
-
     /**
      * Jitsi Meet conferences mapped by MUC room names.
      *
@@ -195,6 +190,12 @@
      */
     private MeetExtensionsHandler meetExtensionsHandler;
 
+    /**
+     * Limits the rate at which new conferences are created.
+     */
+    private final ConferenceAdmissionController admissionController
+        = new ConferenceAdmissionController();
+
     /**
      * Starts this manager for given <tt>hostName</tt>.
      */
@@ -203,8 +204,6 @@ public void start()
     {
         BundleContext bundleContext = FocusBundleActivator.bundleContext;
 
-        expireThread.start();
-
         ConfigurationService config = FocusBundleActivator.getConfigService();
         String hostName = config.getString(HOSTNAME_PNAME);
         String xmppDomain = config.getString(XMPP_DOMAIN_PNAME);
@@ -214,6 +213,8 @@ public void start()
 
         String focusUserPassword = config.getString(FOCUS_USER_PASSWORD_PNAME);
 
+        admissionController.init(config);
+
         protocolProviderHandler.start(
             hostName, focusUserDomain, focusUserPassword, focusUserName);
 
@@ -246,8 +247,6 @@ public void start()
      */
     public void stop()
     {
-        expireThread.stop();
-
         if (componentsDiscovery != null)
         {
             componentsDiscovery.stop();
@@ -313,12 +312,61 @@ public boolean conferenceRequest(
             Map<String, String>    properties,
             Level                  loggingLevel)
         throws Exception
+    {
+        return conferenceRequest(room, properties, loggingLevel, true);
+    }
+
+    /**
+     * Allocates new focus for given MUC room.
+     *
+     * @param room the name of MUC room for which new conference has to be
+     *             allocated.
+     * @param properties configuration properties map included in the request.
+     * @param loggingLevel the logging level which should be used by the new
+     * {@link JitsiMeetConference}
+     * @param admissionControl <tt>true</tt> if the creation of new conference
+     * is subject to {@link ConferenceAdmissionController}. Should be
+     * <tt>false</tt> only for the conferences created by Jicofo itself.
+     *
+     * @return <tt>true</tt> if conference focus is in the room and ready to
+     *         handle session participants.
+     * @throws ConferenceRejectedException if the conference did not exist and
+     * it could not be created, because too many conferences are being created.
+     * @throws Exception if for any reason we have failed to create
+     *                   the conference
+     */
+    public boolean conferenceRequest(
+            String                 room,
+            Map<String, String>    properties,
+            Level                  loggingLevel,
+            boolean                admissionControl)
+        throws Exception
     {
         if (StringUtils.isNullOrEmpty(room))
             return false;
 
         room = room.toLowerCase();
 
+        // The requests for the rooms which exist already are not subject to
+        // the admission
+        boolean admitted = false;
+        if (admissionControl
+                && admissionController.isEnabled()
+                && !conferences.containsKey(room)
+                && !shutdownInProgress)
+        {
+            int retryAfter = admissionController.admit(room);
+            if (retryAfter > 0)
+            {
+                logger.warn(
+                    "Conference request for " + room + " rejected, retry"
+                        + " after " + retryAfter + " s");
+
+                throw new ConferenceRejectedException(room, retryAfter);
+            }
+            admitted = true;
+        }
+
         JitsiMeetConferenceImpl conference;
         synchronized (conferencesSyncRoot)
         {
@@ -326,11 +374,20 @@ public boolean conferenceRequest(
             {
                 if (shutdownInProgress)
                 {
+                    if (admitted)
+                    {
+                        admissionController.release(room);
+                    }
                     return false;
                 }
 
                 createConference(room, properties, loggingLevel);
             }
+            else if (admitted)
+            {
+                // Created by another request while we were being admitted
+                admissionController.release(room);
+            }
 
             conference = conferences.get(room);
         }
@@ -592,6 +649,24 @@ public void setFocusAllocationListener(FocusAllocationListener l)
         this.focusAllocListener = l;
     }
 
+    /**
+     * Returns the <tt>MeetExtensionsHandler</tt> which handles Jitsi Meet
+     * extensions sent by conference participants.
+     */
+    public MeetExtensionsHandler getMeetExtensionsHandler()
+    {
+        return meetExtensionsHandler;
+    }
+
+    /**
+     * Returns the <tt>ConferenceAdmissionController</tt> which limits the rate
+     * at which new conferences are created.
+     */
+    public ConferenceAdmissionController getAdmissionController()
+    {
+        return admissionController;
+    }
+
     /**
      * Returns instance of <tt>JitsiMeetServices</tt> used in conferences.
      */
@@ -649,133 +724,4 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
             meetExtensionsHandler.init();
         }
     }
-
-    /**
-     * Class takes care of stopping {@link JitsiMeetConference} if there is no
-     * active session for too long.
-     */
-    private class FocusExpireThread
-    {
-        private static final long POLL_INTERVAL = 5000;
-
-        private final long timeout;
-
-        private Thread timeoutThread;
-
-        private final Object sleepLock = new Object();
-
-        private boolean enabled;
-
-        public FocusExpireThread()
-        {
-            timeout = FocusBundleActivator.getConfigService()
-                        .getLong(IDLE_TIMEOUT_PNAME, DEFAULT_IDLE_TIMEOUT);
-        }
-
-        void start()
-        {
-            if (timeoutThread != null)
-            {
-                throw new IllegalStateException();
-            }
-
-            timeoutThread = new Thread(new Runnable()
-            {
-                @Override
-                public void run()
-                {
-                    expireLoop();
-                }
-            }, "FocusExpireThread");
-
-            enabled = true;
-
-            timeoutThread.start();
-        }
-
-        void stop()
-        {
-            if (timeoutThread == null)
-            {
-                return;
-            }
-
-            enabled = false;
-
-            synchronized (sleepLock)
-            {
-                sleepLock.notifyAll();
-            }
-
-            try
-            {
-                if (Thread.currentThread() != timeoutThread)
-                {
-                    timeoutThread.join();
-                }
-                timeoutThread = null;
-            }
-            catch (InterruptedException e)
-            {
-                throw new RuntimeException(e);
-            }
-        }
-
-        private void expireLoop()
-        {
-            while (enabled)
-            {
-                // Sleep
-                try
-                {
-                    synchronized (sleepLock)
-                    {
-                        sleepLock.wait(POLL_INTERVAL);
-                    }
-                }
-                catch (InterruptedException e)
-                {
-                    // Continue to check the enabled flag
-                    // if we're still supposed to run
-                }
-
-                if (!enabled)
-                    break;
-
-                try
-                {
-                    ArrayList<JitsiMeetConferenceImpl> conferenceCopy;
-                    synchronized (FocusManager.this.conferencesSyncRoot)
-                    {
-                        conferenceCopy = new ArrayList<>(conferences.values());
-                    }
-
-                    // Loop over conferences
-                    for (JitsiMeetConferenceImpl conference : conferenceCopy)
-                    {
-                        long idleStamp = conference.getIdleTimestamp();
-                        // Is active ?
-                        if (idleStamp == -1)
-                        {
-                            continue;
-                        }
-                        if (System.currentTimeMillis() - idleStamp > timeout)
-                        {
-                            if (conference.getLogger().isInfoEnabled())
-                                logger.info(
-                                        "Focus idle timeout for "
-                                            + conference.getRoomName());
-
-                            conference.stop();
-                        }
-                    }
-                }
-                catch (Exception ex)
-                {
-                    logger.warn(
-                        "Error while checking for timed out conference", ex);
-                }
-            }
-        }
-    }
 }
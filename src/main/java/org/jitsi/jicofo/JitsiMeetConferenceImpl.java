@@ -26,6 +26,7 @@
 import org.jitsi.impl.protocol.xmpp.extensions.*;
 import org.jitsi.jicofo.event.*;
 import org.jitsi.jicofo.recording.jibri.*;
+import org.jitsi.jicofo.util.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.colibri.*;
 import org.jitsi.protocol.xmpp.util.*;
@@ -157,6 +158,12 @@
      */
     private final List<Participant> participants = new CopyOnWriteArrayList<>();
 
+    /**
+     * The sources of all conference participants.
+     */
+    private final ConferenceSourceRegistry sourceRegistry
+        = new ConferenceSourceRegistry();
+
     /**
      * This lock is used to synchronise write access to {@link #participants}.
      */
@@ -200,7 +207,21 @@
      * System.currentTimeMillis() is set when focus becomes idle.
      * Used to detect idle session and expire it if idle time limit is exceeded.
      */
-    private long idleTimestamp = -1;
+    private volatile long idleTimestamp = -1;
+
+    /**
+     * The task which will stop this conference once it has been idle for
+     * longer than {@link JitsiMeetGlobalConfig#getIdleTimeout()}.
+     */
+    private IdleTimeout idleTimeout;
+
+    /**
+     * The lock used to synchronize access to {@link #idleTimestamp} and
+     * {@link #idleTimeout}. It is never held while calling other methods,
+     * because the timeout is (re)scheduled from both {@link #start()} and
+     * the member events.
+     */
+    private final Object idleSyncRoot = new Object();
 
     /**
      * A timeout task which will terminate media session of the user who is
@@ -232,6 +253,15 @@
      */
     private ScheduledExecutorService executor;
 
+    /**
+     * Runs Colibri channel allocations of this conference on the shared
+     * channel allocation pool, but on no more than
+     * {@link JitsiMeetGlobalConfig#getMaxThreadsPerConference()} threads at
+     * a time, so that a slow bridge used by this conference does not block
+     * the other ones.
+     */
+    private LaneExecutor channelAllocationLane;
+
     /**
      * Creates new instance of {@link JitsiMeetConferenceImpl}.
      *
@@ -318,6 +348,11 @@ public synchronized void start()
                 = ServiceUtils.getService(
                         osgiCtx, ScheduledExecutorService.class);
 
+            channelAllocationLane
+                = new LaneExecutor(
+                        FocusBundleActivator.getChannelAllocationPool(),
+                        globalConfig.getMaxThreadsPerConference());
+
             services
                 = ServiceUtils.getService(osgiCtx, JitsiMeetServices.class);
 
@@ -336,7 +371,7 @@ public synchronized void start()
 
             protocolProviderHandler.addRegistrationListener(this);
 
-            idleTimestamp = System.currentTimeMillis();
+            scheduleIdleTimeout();
 
             // Register for bridge events
             eventHandlerRegistration
@@ -393,6 +428,8 @@ synchronized void stop()
 
         started = false;
 
+        cancelIdleTimeout();
+
         if (jibriSipGateway != null)
         {
             jibriSipGateway.dispose();
@@ -417,6 +454,11 @@ synchronized void stop()
 
         leaveTheRoom();
 
+        for (Participant participant : participants)
+        {
+            disposeSSRCUpdateQueue(participant);
+        }
+
         if (jingle != null)
         {
             jingle.terminateHandlersSessions(this);
@@ -510,7 +552,7 @@ protected void onMemberJoined(final ChatRoomMember chatRoomMember)
 
             if (!isFocusMember(chatRoomMember))
             {
-                idleTimestamp = -1;
+                cancelIdleTimeout();
             }
 
             // Are we ready to start ?
@@ -564,6 +606,9 @@ private void initNewColibriConference()
             colibriConference.setGID(id);
 
             colibriConference.setConfig(config);
+            colibriConference.setAllocationBatchWindow(
+                    globalConfig.getAllocationBatchWindow());
+            colibriConference.setBridgeSelector(services.getBridgeSelector());
 
             String roomName = MucUtil.extractName(chatRoom.getName());
             colibriConference.setName(roomName);
@@ -612,13 +657,22 @@ private void inviteChatMember(final ChatRoomMember       chatRoomMember,
                 (XmppChatMember) chatRoomMember,
                 globalConfig.getMaxSSRCsPerUser());
 
+            long ssrcUpdateWindow = globalConfig.getSSRCUpdateWindow();
+            if (ssrcUpdateWindow > 0)
+            {
+                newParticipant.setSSRCUpdateQueue(
+                        new SSRCUpdateQueue(
+                                newParticipant, jingle,
+                                executor, ssrcUpdateWindow));
+            }
+
             participants.add(newParticipant);
 
             logger.info("Added participant for: " + address);
 
             // Invite peer takes time because of channel allocation, so schedule
             // this on separate thread.
-            FocusBundleActivator.getSharedThreadPool().submit(
+            channelAllocationLane.execute(
                 new ChannelAllocator(
                     this, colibriConference, newParticipant,
                     startMuted, false /* re-invite */));
@@ -886,12 +940,31 @@ private void terminateParticipant(Participant    participant,
                 expireParticipantChannels(colibriConference, participant);
             }
 
+            disposeSSRCUpdateQueue(participant);
+
             boolean removed = participants.remove(participant);
+            sourceRegistry.remove(participant);
             logger.info(
                 "Removed participant: " + removed + ", " + contactAddress);
         }
     }
 
+    /**
+     * Discards the SSRC updates which have not been sent to given participant
+     * yet.
+     *
+     * @param participant the <tt>Participant</tt> whose
+     * <tt>SSRCUpdateQueue</tt> is to be disposed.
+     */
+    private void disposeSSRCUpdateQueue(Participant participant)
+    {
+        SSRCUpdateQueue updateQueue = participant.getSSRCUpdateQueue();
+        if (updateQueue != null)
+        {
+            updateQueue.dispose();
+        }
+    }
+
     /**
      * Expires channels for given {@link Participant} unless there are some
      * circumstances that prevents us from doing it.
@@ -1045,6 +1118,7 @@ public XMPPError onSessionAccept( JingleSession peerJingleSession,
         try
         {
             participant.addSSRCsAndGroupsFromContent(answer);
+            sourceRegistry.update(participant);
         }
         catch (InvalidSSRCsException e)
         {
@@ -1138,8 +1212,16 @@ private void propagateNewSSRCs(Participant          ssrcOwner,
                 continue;
             }
 
-            jingle.sendAddSourceIQ(
-                    ssrcsToAdd, ssrcGroupsToAdd, jingleSessionToNotify);
+            SSRCUpdateQueue updateQueue = peerToNotify.getSSRCUpdateQueue();
+            if (updateQueue != null)
+            {
+                updateQueue.scheduleAdd(ssrcsToAdd, ssrcGroupsToAdd);
+            }
+            else
+            {
+                jingle.sendAddSourceIQ(
+                        ssrcsToAdd, ssrcGroupsToAdd, jingleSessionToNotify);
+            }
         }
     }
 
@@ -1262,6 +1344,7 @@ public XMPPError onAddSource(JingleSession jingleSession,
         try
         {
             added = participant.addSSRCsAndGroupsFromContent(contents);
+            sourceRegistry.update(participant);
         }
         catch (InvalidSSRCsException e)
         {
@@ -1358,6 +1441,8 @@ private void removeSSRCs(JingleSession        sourceJingleSession,
             return;
         }
 
+        sourceRegistry.update(sourcePeer);
+
         // This prevents from removing SSRCs which do not belong to this peer
         ssrcsToRemove = removedSSRCs;
         ssrcGroupsToRemove = removedGroups;
@@ -1368,7 +1453,7 @@ private void removeSSRCs(JingleSession        sourceJingleSession,
         // Some params might get out of sync for various reasons like for
         // example Chrome coming up with 'default' value for missing 'mslabel'
         // or when we'll be doing lip-sync stream merge
-        SSRCSignaling.deleteSSRCParams(ssrcsToRemove);
+        ssrcsToRemove = SSRCSignaling.copyWithoutParams(ssrcsToRemove);
 
         // Updates SSRC Groups on the bridge
         ColibriConference colibriConference = this.colibriConference;
@@ -1405,64 +1490,34 @@ private void removeSSRCs(JingleSession        sourceJingleSession,
                 continue;
             }
 
-            jingle.sendRemoveSourceIQ(
-                    ssrcsToRemove, ssrcGroupsToRemove, jingleSessionToNotify);
-        }
-    }
-
-    /**
-     * Gathers the list of all SSRCs that exist in the current conference state.
-     *
-     * @param except optional <tt>Participant</tt> instance whose SSRCs will be
-     *               excluded from the list
-     *
-     * @return <tt>MediaSSRCMap</tt> of all SSRCs of given media type that exist
-     * in the current conference state.
-     */
-    MediaSSRCMap getAllSSRCs(Participant except)
-    {
-        MediaSSRCMap mediaSSRCs = new MediaSSRCMap();
-
-        for (Participant peer : participants)
-        {
-            // We want to exclude this one
-            if (peer == except)
+            SSRCUpdateQueue updateQueue = peer.getSSRCUpdateQueue();
+            if (updateQueue != null)
             {
-                continue;
+                updateQueue.scheduleRemove(ssrcsToRemove, ssrcGroupsToRemove);
+            }
+            else
+            {
+                jingle.sendRemoveSourceIQ(
+                        ssrcsToRemove,
+                        ssrcGroupsToRemove,
+                        jingleSessionToNotify);
             }
-
-            mediaSSRCs.add(peer.getSSRCsCopy());
         }
-
-        return mediaSSRCs;
     }
 
     /**
-     * Gathers the list of all SSRC groups that exist in the current conference
-     * state.
+     * Returns the view of all SSRCs and SSRC groups that exist in the current
+     * conference state.
      *
-     * @param except optional <tt>Participant</tt> instance whose SSRC groups
-     *               will be excluded from the list
+     * @param except optional <tt>Participant</tt> instance whose SSRCs and
+     *               SSRC groups will be excluded from the view
      *
-     * @return the list of all SSRC groups of given media type that exist in
-     *         current conference state.
+     * @return <tt>ConferenceSourceRegistry.View</tt> of the conference
+     * sources.
      */
-    MediaSSRCGroupMap getAllSSRCGroups(Participant except)
+    ConferenceSourceRegistry.View getSourcesView(Participant except)
     {
-        MediaSSRCGroupMap ssrcGroups = new MediaSSRCGroupMap();
-
-        for (Participant peer : participants)
-        {
-            // Excluded this participant groups
-            if (peer == except)
-            {
-                continue;
-            }
-
-            ssrcGroups.add(peer.getSSRCGroupsCopy());
-        }
-
-        return ssrcGroups;
+        return sourceRegistry.getView(except);
     }
 
     /**
@@ -1719,7 +1774,7 @@ private void restartConference()
         {
             // Invite peer takes time because of channel allocation, so schedule
             // this on separate thread.
-            FocusBundleActivator.getSharedThreadPool().submit(
+            channelAllocationLane.execute(
                     new ChannelAllocator(
                             this, colibriConference,
                             p, startMuted, true /* re-invite */));
@@ -1774,6 +1829,15 @@ public JitsiMeetConfig getConfig()
         return config;
     }
 
+    /**
+     * Returns the executor which runs the channel allocations of this
+     * conference.
+     */
+    LaneExecutor getChannelAllocationLane()
+    {
+        return channelAllocationLane;
+    }
+
     /**
      * Returns the <tt>Logger</tt> used by this instance.
      */
@@ -1887,6 +1951,46 @@ private void rescheduleSinglePeerTimeout()
         }
     }
 
+    /**
+     * Marks this conference as idle and (re)schedules {@link IdleTimeout}.
+     */
+    private void scheduleIdleTimeout()
+    {
+        synchronized (idleSyncRoot)
+        {
+            cancelIdleTimeout();
+
+            idleTimestamp = System.currentTimeMillis();
+
+            if (executor != null)
+            {
+                idleTimeout = new IdleTimeout();
+                idleTimeout.future
+                    = executor.schedule(
+                            idleTimeout,
+                            globalConfig.getIdleTimeout(),
+                            TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Marks this conference as active and cancels {@link IdleTimeout}.
+     */
+    private void cancelIdleTimeout()
+    {
+        synchronized (idleSyncRoot)
+        {
+            idleTimestamp = -1;
+
+            if (idleTimeout != null)
+            {
+                idleTimeout.future.cancel(false);
+                idleTimeout = null;
+            }
+        }
+    }
+
     /**
      * Cancels {@link SinglePersonTimeout}.
      */
@@ -1904,6 +2008,37 @@ private void cancelSinglePeerTimeout()
         }
     }
 
+    /**
+     * The task is scheduled when the conference becomes idle and stops it
+     * unless someone joins before the idle timeout expires.
+     */
+    private class IdleTimeout
+        implements Runnable
+    {
+        /**
+         * The <tt>Future</tt> of this task used to cancel it.
+         */
+        private Future<?> future;
+
+        @Override
+        public void run()
+        {
+            synchronized (idleSyncRoot)
+            {
+                // Cancelled or re-scheduled in the meantime ?
+                if (idleTimeout != this)
+                {
+                    return;
+                }
+                idleTimeout = null;
+            }
+
+            logger.info("Focus idle timeout for " + getRoomName());
+
+            stop();
+        }
+    }
+
     /**
      * The task is scheduled with some delay when we end up with single
      * <tt>Participant</tt> in the room to terminate its media session. There
@@ -54,6 +54,26 @@
     private final static String SINGLE_PARTICIPANT_TIMEOUT_CONFIG_PNAME
         = "org.jitsi.jicofo.SINGLE_PARTICIPANT_TIMEOUT";
 
+    /**
+     * The name of configuration property that sets {@link #ssrcUpdateWindow}.
+     */
+    private final static String SSRC_UPDATE_WINDOW_PNAME
+        = "org.jitsi.jicofo.SSRC_UPDATE_WINDOW";
+
+    /**
+     * The name of configuration property that sets
+     * {@link #maxThreadsPerConference}.
+     */
+    private final static String MAX_THREADS_PER_CONFERENCE_PNAME
+        = "org.jitsi.jicofo.MAX_THREADS_PER_CONFERENCE";
+
+    /**
+     * The name of configuration property that sets
+     * {@link #allocationBatchWindow}.
+     */
+    private final static String ALLOCATION_BATCH_WINDOW_PNAME
+        = "org.jitsi.jicofo.ALLOCATION_BATCH_WINDOW";
+
     /**
      * The default value for {@link #maxSSRCsPerUser}.
      */
@@ -64,6 +84,21 @@
      */
     private final static long DEFAULT_SINGLE_PARTICIPANT_TIMEOUT = 20000;
 
+    /**
+     * The default value for {@link #ssrcUpdateWindow}.
+     */
+    private final static long DEFAULT_SSRC_UPDATE_WINDOW = 100;
+
+    /**
+     * The default value for {@link #maxThreadsPerConference}.
+     */
+    private final static int DEFAULT_MAX_THREADS_PER_CONFERENCE = 5;
+
+    /**
+     * The default value for {@link #allocationBatchWindow}.
+     */
+    private final static long DEFAULT_ALLOCATION_BATCH_WINDOW = 20;
+
     /**
      * The name of the config property which specifies how long we're going to
      * wait for Jibri to start recording from the time it accepted START request
@@ -106,6 +141,33 @@
      */
     private long singleParticipantTimeout;
 
+    /**
+     * Tells for how long 'source-add' and 'source-remove' notifications are
+     * collected before they're sent to a participant as a single batch. The
+     * value is measured in milliseconds. Zero or negative value disables
+     * batching, so that every notification is sent immediately.
+     */
+    private long ssrcUpdateWindow;
+
+    /**
+     * The maximum number of threads of the channel allocation pool which can
+     * be used by a single conference at the same time.
+     */
+    private int maxThreadsPerConference;
+
+    /**
+     * Tells for how long Colibri channel allocation requests are collected
+     * before they're sent to the bridge in a single conference IQ. The value is
+     * measured in milliseconds. Zero or negative value disables batching.
+     */
+    private long allocationBatchWindow;
+
+    /**
+     * Tells for how long a conference is kept alive when there are no
+     * participants in the room. The value is measured in milliseconds.
+     */
+    private long idleTimeout;
+
     /**
      * OSGi service registration instance.
      */
@@ -197,6 +259,43 @@ private void init(ConfigurationService configService)
         logger.info(
                 "Lonely participants will be \"terminated\" after "
                     + singleParticipantTimeout +" milliseconds");
+
+        ssrcUpdateWindow
+            = configService.getLong(
+                    SSRC_UPDATE_WINDOW_PNAME, DEFAULT_SSRC_UPDATE_WINDOW);
+
+        logger.info(
+                "SSRC updates will be batched every "
+                    + ssrcUpdateWindow + " milliseconds");
+
+        maxThreadsPerConference
+            = Math.max(
+                    1,
+                    configService.getInt(
+                            MAX_THREADS_PER_CONFERENCE_PNAME,
+                            DEFAULT_MAX_THREADS_PER_CONFERENCE));
+
+        logger.info(
+                "Max channel allocation threads per conference: "
+                    + maxThreadsPerConference);
+
+        allocationBatchWindow
+            = configService.getLong(
+                    ALLOCATION_BATCH_WINDOW_PNAME,
+                    DEFAULT_ALLOCATION_BATCH_WINDOW);
+
+        logger.info(
+                "Channel allocations will be batched every "
+                    + allocationBatchWindow + " milliseconds");
+
+        idleTimeout
+            = configService.getLong(
+                    FocusManager.IDLE_TIMEOUT_PNAME,
+                    FocusManager.DEFAULT_IDLE_TIMEOUT);
+
+        logger.info(
+                "Idle conferences will be expired after "
+                    + idleTimeout + " milliseconds");
     }
 
     /**
@@ -232,6 +331,45 @@ public long getSingleParticipantTimeout()
         return singleParticipantTimeout;
     }
 
+    /**
+     * Gets the value for "SSRC update window".
+     * @return the value in milliseconds.
+     * @see #ssrcUpdateWindow
+     */
+    public long getSSRCUpdateWindow()
+    {
+        return ssrcUpdateWindow;
+    }
+
+    /**
+     * Returns the maximum number of threads of the channel allocation pool
+     * which can be used by a single conference at the same time.
+     */
+    public int getMaxThreadsPerConference()
+    {
+        return maxThreadsPerConference;
+    }
+
+    /**
+     * Gets the value for "allocation batch window".
+     * @return the value in milliseconds.
+     * @see #allocationBatchWindow
+     */
+    public long getAllocationBatchWindow()
+    {
+        return allocationBatchWindow;
+    }
+
+    /**
+     * Gets the value for "idle timeout".
+     * @return the value in milliseconds.
+     * @see #idleTimeout
+     */
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
     /**
      * Tells how many seconds we're going to wait for the Jibri to start
      * recording. If set to <tt>-1</tt> it means that these timeouts are
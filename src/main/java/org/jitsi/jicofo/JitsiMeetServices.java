@@ -443,8 +443,6 @@ public void stop(BundleContext bundleContext)
             sipJibriDetector = null;
         }
 
-        bridgeSelector.dispose();
-
         super.stop(bundleContext);
     }
 
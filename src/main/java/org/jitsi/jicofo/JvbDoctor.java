@@ -25,6 +25,7 @@
 import org.jitsi.jicofo.discovery.*;
 import org.jitsi.jicofo.event.*;
 import org.jitsi.jicofo.osgi.*;
+import org.jitsi.jicofo.util.*;
 import org.jitsi.osgi.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.util.Logger;
@@ -36,6 +37,7 @@
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * The class is responsible for doing health checks of currently known
@@ -45,6 +47,12 @@
  * and schedules/cancels new health check jobs. When a health check task fails
  * <tt>BridgeEvent#HEALTH_CHECK_FAILED</tt> is triggered.
  *
+ * The health checks are sent asynchronously, so that no thread is held while
+ * waiting for the response. The response timeouts, the second chance delays
+ * and the check intervals are all scheduled on the health check pool. The
+ * round trip times are collected per bridge and exported with
+ * {@link #getHealthCheckStats()}.
+ *
  * Class is started by listing on OSGi activator list in
  * {@link JicofoBundleConfig}
  *
@@ -106,14 +114,13 @@
     /**
      * Health check tasks map.
      */
-    private final Map<String, ScheduledFuture> tasks
+    private final Map<String, HealthCheckTask> tasks
         = new ConcurrentHashMap<>();
 
     /**
-     * <tt>ScheduledExecutorService</tt> reference used to schedule periodic
-     * health check tasks.
+     * The registration of this instance as an OSGi service.
      */
-    private OSGIServiceRef<ScheduledExecutorService> executorServiceRef;
+    private ServiceRegistration<JvbDoctor> serviceRegistration;
 
     /**
      * <tt>EventAdmin</tt> reference.
@@ -175,9 +182,6 @@ synchronized public void start(BundleContext bundleContext)
 
         this.eventAdminRef = new OSGIServiceRef<>(osgiBc, EventAdmin.class);
 
-        this.executorServiceRef
-            = new OSGIServiceRef<>(osgiBc, ScheduledExecutorService.class);
-
         // We assume that in Jicofo there is only one XMPP provider running at a
         // time.
         protocolProvider
@@ -206,6 +210,9 @@ synchronized public void start(BundleContext bundleContext)
         Objects.requireNonNull(capsOpSet, "capsOpSet");
 
         super.start(bundleContext);
+
+        serviceRegistration
+            = bundleContext.registerService(JvbDoctor.class, this, null);
     }
 
     /**
@@ -218,6 +225,12 @@ synchronized public void stop(BundleContext bundleContext)
         if (this.osgiBc == null)
             return;
 
+        if (serviceRegistration != null)
+        {
+            serviceRegistration.unregister();
+            serviceRegistration = null;
+        }
+
         super.stop(bundleContext);
 
         try
@@ -232,7 +245,6 @@ synchronized public void stop(BundleContext bundleContext)
         finally
         {
             this.eventAdminRef = null;
-            this.executorServiceRef = null;
             this.protocolProvider = null;
             this.osgiBc = null;
         }
@@ -273,16 +285,19 @@ private void addBridge(String bridgeJid)
             return;
         }
 
-        ScheduledExecutorService executorService = executorServiceRef.get();
+        ScheduledExecutorService executorService
+            = FocusBundleActivator.getHealthCheckPool();
         if (executorService == null)
         {
             throw new IllegalStateException(
                     "No ScheduledExecutorService running!");
         }
 
-        ScheduledFuture healthTask
+        HealthCheckTask healthTask = new HealthCheckTask(bridgeJid);
+
+        healthTask.future
             = executorService.scheduleAtFixedRate(
-                    new HealthCheckTask(bridgeJid),
+                    healthTask,
                     healthCheckInterval,
                     healthCheckInterval,
                     TimeUnit.MILLISECONDS);
@@ -294,7 +309,7 @@ private void addBridge(String bridgeJid)
 
     private void removeBridge(String bridgeJid)
     {
-        ScheduledFuture healthTask = tasks.remove(bridgeJid);
+        HealthCheckTask healthTask = tasks.remove(bridgeJid);
         if (healthTask == null)
         {
             logger.warn(
@@ -305,7 +320,24 @@ private void removeBridge(String bridgeJid)
 
         logger.info("Stopping health-check task for: " + bridgeJid);
 
-        healthTask.cancel(true);
+        healthTask.future.cancel(true);
+    }
+
+    /**
+     * Returns the health check statistics of every bridge: the number of
+     * passed and failed checks and the histogram of the round trip times.
+     *
+     * @return a map of bridge JIDs to their statistics.
+     */
+    public Map<String, Map<String, Object>> getHealthCheckStats()
+    {
+        Map<String, Map<String, Object>> stats = new TreeMap<>();
+
+        for (HealthCheckTask task : tasks.values())
+        {
+            stats.put(task.bridgeJid, task.getStats());
+        }
+        return stats;
     }
 
     private void notifyHealthCheckFailed(String bridgeJid, XMPPError error)
@@ -329,6 +361,11 @@ private class HealthCheckTask implements Runnable
     {
         private final String bridgeJid;
 
+        /**
+         * The <tt>ScheduledFuture</tt> of this task used to cancel it.
+         */
+        private ScheduledFuture<?> future;
+
         /**
          * Indicates whether or not the bridge has health-check support.
          * If set to <tt>null</tt> it means that we don't know that yet
@@ -336,6 +373,27 @@ private class HealthCheckTask implements Runnable
          */
         private Boolean hasHealthCheckSupport;
 
+        /**
+         * Set while a health check (including the second chance) is waiting
+         * for the response. The periodic runs are skipped until it completes.
+         */
+        private final AtomicBoolean inProgress = new AtomicBoolean();
+
+        /**
+         * The round trip times of the health checks responded by the bridge.
+         */
+        private final RttHistogram rttHistogram = new RttHistogram();
+
+        /**
+         * The number of health checks which have passed.
+         */
+        private final AtomicLong passedChecks = new AtomicLong();
+
+        /**
+         * The number of health checks which have failed.
+         */
+        private final AtomicLong failedChecks = new AtomicLong();
+
         public HealthCheckTask(String bridgeJid)
         {
             this.bridgeJid = bridgeJid;
@@ -344,9 +402,18 @@ public HealthCheckTask(String bridgeJid)
         @Override
         public void run()
         {
+            if (!inProgress.compareAndSet(false, true))
+            {
+                logger.debug(
+                        "Previous health check still in progress for: "
+                            + bridgeJid);
+                return;
+            }
+
+            boolean sent = false;
             try
             {
-                doHealthCheck();
+                sent = doHealthCheck();
             }
             catch (Exception e)
             {
@@ -354,6 +421,27 @@ public void run()
                         "Error when doing health-check on: " + bridgeJid,
                         e);
             }
+            finally
+            {
+                if (!sent)
+                {
+                    inProgress.set(false);
+                }
+            }
+        }
+
+        /**
+         * Returns the health check statistics of the bridge.
+         */
+        Map<String, Object> getStats()
+        {
+            Map<String, Object> stats = new LinkedHashMap<>();
+
+            stats.put("passed", passedChecks.get());
+            stats.put("failed", failedChecks.get());
+            stats.put("rtt", rttHistogram.getStats());
+
+            return stats;
         }
 
         private boolean checkTaskStillValid()
@@ -405,12 +493,12 @@ private HealthCheckIQ newHealthCheckIQ(String bridgeJid)
         }
 
         /**
-         * Performs a health check.
-         * @throws OperationFailedException when XMPP got disconnected -
-         * the task should terminate.
+         * Starts a health check.
+         *
+         * @return <tt>true</tt> if the health check request has been sent and
+         * {@link #inProgress} will be cleared once it completes.
          */
-        private void doHealthCheck()
-            throws OperationFailedException
+        private boolean doHealthCheck()
         {
             // If XMPP is currently not connected skip the health-check
             if (!protocolProvider.isRegistered())
@@ -418,14 +506,14 @@ private void doHealthCheck()
                 logger.debug(
                         "XMPP disconnected - skipping health check for: "
                             + bridgeJid);
-                return;
+                return false;
             }
 
             // Sync on start/stop and bridges state
             synchronized (JvbDoctor.this)
             {
                 if (!checkTaskStillValid())
-                    return;
+                    return false;
 
                 // Check for health-check support
                 verifyHealthCheckSupport();
@@ -433,43 +521,147 @@ private void doHealthCheck()
                 if (!Boolean.TRUE.equals(hasHealthCheckSupport))
                 {
                     // This JVB does not support health-checks
-                    return;
+                    return false;
                 }
 
                 logger.debug("Sending health-check request to: " + bridgeJid);
             }
 
-            Packet response
-                = connection.sendPacketAndGetReply(
-                        newHealthCheckIQ(bridgeJid));
+            sendHealthCheck(true);
+
+            return true;
+        }
+
+        /**
+         * Sends the health check request and processes the response on
+         * the health check pool once it arrives or times out.
+         *
+         * @param firstAttempt <tt>true</tt> if the check is to be given
+         * a second chance if it times out.
+         */
+        private void sendHealthCheck(final boolean firstAttempt)
+        {
+            final long sentTimestamp = System.currentTimeMillis();
 
+            connection.sendPacketAndGetReplyAsync(newHealthCheckIQ(bridgeJid))
+                .addCallback(
+                    new SettableFuture.Callback<Packet>()
+                    {
+                        @Override
+                        public void onSuccess(Packet response)
+                        {
+                            try
+                            {
+                                onResponse(
+                                        response,
+                                        firstAttempt,
+                                        System.currentTimeMillis()
+                                            - sentTimestamp);
+                            }
+                            catch (Exception e)
+                            {
+                                logger.error(
+                                        "Error when doing health-check on: "
+                                            + bridgeJid, e);
+
+                                inProgress.set(false);
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable error)
+                        {
+                            // XMPP got disconnected
+                            logger.error(
+                                    "Failed to send health-check to: "
+                                        + bridgeJid, error);
+
+                            inProgress.set(false);
+                        }
+                    },
+                    FocusBundleActivator.getHealthCheckPool());
+        }
+
+        /**
+         * Handles the response to the health check request. On timeout
+         * the second chance is scheduled if it's the first attempt.
+         *
+         * @param response the response or <tt>null</tt> on timeout.
+         * @param firstAttempt whether or not it's the first attempt.
+         * @param rtt the time between sending the request and receiving
+         * the response in milliseconds.
+         */
+        private void onResponse(Packet     response,
+                                boolean    firstAttempt,
+                                long       rtt)
+        {
             // On timeout we'll give it one more try
-            if (response == null && secondChanceDelay > 0)
+            if (response == null && firstAttempt && secondChanceDelay > 0)
             {
-                try
+                if (!checkTaskStillValid())
                 {
-                    if (!checkTaskStillValid())
-                        return;
-
-                    logger.warn(bridgeJid + " health-check timed out,"
-                            + " but will give it another try after: "
-                            + secondChanceDelay);
+                    inProgress.set(false);
+                    return;
+                }
 
-                    Thread.sleep(secondChanceDelay);
+                logger.warn(bridgeJid + " health-check timed out,"
+                        + " but will give it another try after: "
+                        + secondChanceDelay);
+
+                FocusBundleActivator.getHealthCheckPool().schedule(
+                        new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                secondChance();
+                            }
+                        },
+                        secondChanceDelay,
+                        TimeUnit.MILLISECONDS);
+                return;
+            }
 
-                    if (!checkTaskStillValid())
-                        return;
+            try
+            {
+                processResponse(response, rtt);
+            }
+            finally
+            {
+                inProgress.set(false);
+            }
+        }
 
-                    response
-                        = connection.sendPacketAndGetReply(
-                                newHealthCheckIQ(bridgeJid));
-                }
-                catch (InterruptedException e)
+        /**
+         * Sends the health check again after the first one has timed out.
+         */
+        private void secondChance()
+        {
+            try
+            {
+                if (checkTaskStillValid())
                 {
-                    logger.error("Second chance delay wait interrupted", e);
+                    sendHealthCheck(false);
+                    return;
                 }
             }
+            catch (Exception e)
+            {
+                logger.error(
+                        "Error when doing health-check on: " + bridgeJid, e);
+            }
+            inProgress.set(false);
+        }
 
+        /**
+         * Checks the health check response and triggers the failure event if
+         * the check has failed.
+         *
+         * @param response the response or <tt>null</tt> on timeout.
+         * @param rtt the round trip time of the request in milliseconds.
+         */
+        private void processResponse(Packet response, long rtt)
+        {
             // Sync on start/stop and bridges state
             synchronized (JvbDoctor.this)
             {
@@ -488,17 +680,21 @@ private void doHealthCheck()
                     }
                     else
                     {
+                        failedChecks.incrementAndGet();
                         notifyHealthCheckFailed(bridgeJid, null);
                     }
                     return;
                 }
 
+                rttHistogram.record(rtt);
+
                 IQ responseIQ = (IQ) response;
                 IQ.Type responseType = responseIQ.getType();
 
                 if (IQ.Type.RESULT.equals(responseType))
                 {
                     // OK
+                    passedChecks.incrementAndGet();
                     return;
                 }
 
@@ -513,6 +709,7 @@ private void doHealthCheck()
                             .equals(condition))
                     {
                         // Health check failure
+                        failedChecks.incrementAndGet();
                         notifyHealthCheckFailed(bridgeJid, error);
                     }
                     else
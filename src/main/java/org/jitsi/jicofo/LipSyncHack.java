@@ -117,6 +117,41 @@ private MediaSSRCMap getParticipantSSRCMap(String mucJid)
         return p.getSSRCsCopy();
     }
 
+    /**
+     * Creates a copy of given map in which the video SSRCs are copied, so that
+     * they can be modified by the merge.
+     *
+     * @param ssrcMap the <tt>MediaSSRCMap</tt> to be copied.
+     *
+     * @return new <tt>MediaSSRCMap</tt> or the given one if it does not
+     * contain any video SSRCs.
+     */
+    private static MediaSSRCMap copyVideoSSRCs(MediaSSRCMap ssrcMap)
+    {
+        if (ssrcMap.getSSRCsForMedia("video").isEmpty())
+        {
+            return ssrcMap;
+        }
+
+        MediaSSRCMap copy = new MediaSSRCMap();
+        for (String media : ssrcMap.getMediaTypes())
+        {
+            List<SourcePacketExtension> ssrcs = ssrcMap.getSSRCsForMedia(media);
+            if ("video".equals(media))
+            {
+                for (SourcePacketExtension ssrc : ssrcs)
+                {
+                    copy.addSSRC(media, ssrc.copy());
+                }
+            }
+            else
+            {
+                copy.addSSRCs(media, ssrcs);
+            }
+        }
+        return copy;
+    }
+
     /**
      * Decides whether or not it's ok to merge streams sent from one participant
      * to another.
@@ -288,6 +323,9 @@ public void sendAddSourceIQ(
             JingleSession       session)
     {
         String mucJid = session.getAddress();
+        // The merge modifies video SSRCs, which are shared with the conference
+        // state and the notifications sent to the other participants
+        ssrcMap = copyVideoSSRCs(ssrcMap);
         // If this is source add for video only then add audio for merge process
         for (SourcePacketExtension videoSSRC
                 : ssrcMap.getSSRCsForMedia("video"))
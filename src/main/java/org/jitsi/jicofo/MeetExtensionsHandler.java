@@ -32,6 +32,7 @@
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.colibri.*;
 import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.configuration.*;
 import org.jitsi.util.*;
 import org.jitsi.eventadmin.*;
 import org.jivesoftware.smack.*;
@@ -57,6 +58,35 @@
     private final static Logger logger
         = Logger.getLogger(MeetExtensionsHandler.class);
 
+    /**
+     * The name of the property which specifies the number of lanes on which
+     * the packets are processed. Packets sent from the same room are always
+     * processed by the same lane in the order of arrival. Defaults to
+     * the number of available processors.
+     */
+    public static final String PACKET_PROCESSING_LANES_PNAME
+        = "org.jitsi.jicofo.PACKET_PROCESSING_LANES";
+
+    /**
+     * The name of the property which specifies how many packets can be waiting
+     * in the queue of a single lane.
+     */
+    public static final String PACKET_QUEUE_CAPACITY_PNAME
+        = "org.jitsi.jicofo.PACKET_QUEUE_CAPACITY";
+
+    /**
+     * The name of the property which specifies the
+     * {@link QueuePacketProcessor.OverflowPolicy} applied to the packets which
+     * do not fit in the queue (either "DROP_NEWEST" or "DROP_OLDEST").
+     */
+    public static final String PACKET_QUEUE_OVERFLOW_POLICY_PNAME
+        = "org.jitsi.jicofo.PACKET_QUEUE_OVERFLOW_POLICY";
+
+    /**
+     * The default value for {@link #PACKET_QUEUE_CAPACITY_PNAME}.
+     */
+    private static final int DEFAULT_PACKET_QUEUE_CAPACITY = 1000;
+
     /**
      * <tt>FocusManager</tt> instance for accessing info about all active
      * conferences.
@@ -107,12 +137,68 @@ public void init()
 
         if (this.packetProcessor == null)
         {
+            ConfigurationService config
+                = FocusBundleActivator.getConfigService();
+
+            int lanes
+                = config.getInt(
+                        PACKET_PROCESSING_LANES_PNAME,
+                        Runtime.getRuntime().availableProcessors());
+            int capacity
+                = config.getInt(
+                        PACKET_QUEUE_CAPACITY_PNAME,
+                        DEFAULT_PACKET_QUEUE_CAPACITY);
+            QueuePacketProcessor.OverflowPolicy overflowPolicy
+                = QueuePacketProcessor.OverflowPolicy.DROP_NEWEST;
+            String policyName
+                = config.getString(PACKET_QUEUE_OVERFLOW_POLICY_PNAME);
+            if (!StringUtils.isNullOrEmpty(policyName))
+            {
+                try
+                {
+                    overflowPolicy
+                        = QueuePacketProcessor.OverflowPolicy.valueOf(
+                                policyName);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    logger.error(
+                        "Invalid " + PACKET_QUEUE_OVERFLOW_POLICY_PNAME
+                            + ": " + policyName);
+                }
+            }
+
+            logger.info(
+                "Processing packets on " + lanes + " lanes, queue capacity: "
+                    + capacity + ", on overflow: " + overflowPolicy);
+
             this.packetProcessor
-                = new QueuePacketProcessor(connection, this, this);
+                = new QueuePacketProcessor(
+                        connection, this, this,
+                        Math.max(1, lanes),
+                        Math.max(1, capacity),
+                        overflowPolicy,
+                        // All the IQs we accept are ours to respond to
+                        true);
             this.packetProcessor.start();
         }
     }
 
+    /**
+     * Returns the statistics of the packet processing queue.
+     *
+     * @return a map of the statistic names to their values. The map is empty
+     * if this instance has not been initialized.
+     */
+    public Map<String, Object> getPacketProcessingStats()
+    {
+        QueuePacketProcessor packetProcessor = this.packetProcessor;
+
+        return packetProcessor != null
+            ? packetProcessor.getStats()
+            : new HashMap<String, Object>();
+    }
+
     /**
      * Disposes this instance and stop listening for extensions packets.
      */
@@ -121,6 +121,12 @@ public static String getEndpointId(ChatRoomMember chatRoomMember)
      */
     private MediaSSRCGroupMap ssrcGroupsToRemove = new MediaSSRCGroupMap();
 
+    /**
+     * The queue which batches SSRC updates sent to this participant or
+     * <tt>null</tt> if the updates are to be sent immediately.
+     */
+    private SSRCUpdateQueue ssrcUpdateQueue;
+
     /**
      * Stores information about bundled transport if {@link #hasBundleSupport()}
      * returns <tt>true</tt>.
@@ -193,6 +199,27 @@ public void setJingleSession(JingleSession jingleSession)
         this.jingleSession = jingleSession;
     }
 
+    /**
+     * Returns the queue which batches SSRC updates sent to this participant or
+     * <tt>null</tt> if the updates are not batched.
+     */
+    SSRCUpdateQueue getSSRCUpdateQueue()
+    {
+        return ssrcUpdateQueue;
+    }
+
+    /**
+     * Sets the queue which will be used to batch SSRC updates sent to this
+     * participant.
+     *
+     * @param ssrcUpdateQueue the <tt>SSRCUpdateQueue</tt> instance or
+     * <tt>null</tt> to send the updates immediately.
+     */
+    void setSSRCUpdateQueue(SSRCUpdateQueue ssrcUpdateQueue)
+    {
+        this.ssrcUpdateQueue = ssrcUpdateQueue;
+    }
+
     /**
      * Returns {@link XmppChatMember} that represents this participant in
      * conference multi-user chat room.
@@ -248,19 +275,23 @@ public MediaSSRCMap removeSSRCs(MediaSSRCMap ssrcMap)
     }
 
     /**
-     * Returns deep copy of this peer's media SSRC map.
+     * Returns a snapshot of this peer's media SSRC map. The map can be modified
+     * without affecting this peer, but the <tt>SourcePacketExtension</tt>s
+     * are shared and must not be modified.
      */
     public MediaSSRCMap getSSRCsCopy()
     {
-        return ssrcs.copyDeep();
+        return ssrcs.snapshot();
     }
 
     /**
-     * Returns deep copy of this peer's media SSRC group map.
+     * Returns a snapshot of this peer's media SSRC group map. The map can be
+     * modified without affecting this peer, but the <tt>SSRCGroup</tt>s are
+     * shared and must not be modified.
      */
     public MediaSSRCGroupMap getSSRCGroupsCopy()
     {
-        return ssrcGroups.copy();
+        return ssrcGroups.snapshot();
     }
 
     /**
@@ -0,0 +1,268 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps operational bridges ordered by their estimated video stream count, so
+ * that the least loaded ones can be read without taking a global lock, copying
+ * or sorting the list of bridges.
+ *
+ * Each bridge is re-ranked by removing it's previous entry from the skip list
+ * and inserting a new one. The operation is serialized on the monitor of
+ * the {@link BridgeState} being updated, so that updates of different bridges
+ * do not contend with each other nor with the readers.
+ *
+ * Bridges which are not operational are kept aside and are checked on every
+ * selection whether it's time to give them another chance (see
+ * {@link BridgeSelector#getFailureResetThreshold()}).
+ *
+ * @author agent
+ */
+class RankedBridgeIndex
+{
+    /**
+     * The operational bridges ordered from the least loaded.
+     */
+    private final ConcurrentSkipListSet<Rank> ranked
+        = new ConcurrentSkipListSet<>();
+
+    /**
+     * Current rank of every operational bridge known to this index.
+     */
+    private final ConcurrentMap<BridgeState, Rank> ranks
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The bridges which are not operational and are waiting for their failure
+     * reset threshold to expire. Every bridge known to this index is either
+     * here or in {@link #ranks}.
+     */
+    private final Set<BridgeState> failed
+        = Collections.newSetFromMap(
+                new ConcurrentHashMap<BridgeState, Boolean>());
+
+    /**
+     * The view of {@link #ranked} which iterates over the bridges.
+     */
+    private final Iterable<BridgeState> operationalBridges
+        = new Iterable<BridgeState>()
+        {
+            @Override
+            public Iterator<BridgeState> iterator()
+            {
+                final Iterator<Rank> rankIterator = ranked.iterator();
+
+                return new Iterator<BridgeState>()
+                {
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return rankIterator.hasNext();
+                    }
+
+                    @Override
+                    public BridgeState next()
+                    {
+                        return rankIterator.next().bridge;
+                    }
+
+                    @Override
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException("remove");
+                    }
+                };
+            }
+        };
+
+    /**
+     * Adds new bridge to this index.
+     *
+     * @param bridge the <tt>BridgeState</tt> to be ranked.
+     */
+    void add(BridgeState bridge)
+    {
+        synchronized (bridge)
+        {
+            if (!isKnown(bridge))
+            {
+                rerank(bridge, null);
+            }
+        }
+    }
+
+    /**
+     * Removes a bridge from this index.
+     *
+     * @param bridge the <tt>BridgeState</tt> to be removed.
+     */
+    void remove(BridgeState bridge)
+    {
+        synchronized (bridge)
+        {
+            Rank rank = ranks.remove(bridge);
+            if (rank != null)
+            {
+                ranked.remove(rank);
+            }
+            failed.remove(bridge);
+        }
+    }
+
+    /**
+     * Updates the position of given bridge in the index. Must be called after
+     * the operational status or the video stream count of the bridge has
+     * changed.
+     *
+     * @param bridge the <tt>BridgeState</tt> which has been modified.
+     */
+    void update(BridgeState bridge)
+    {
+        synchronized (bridge)
+        {
+            // The bridge might have been removed in the meantime
+            if (isKnown(bridge))
+            {
+                rerank(bridge, ranks.get(bridge));
+            }
+        }
+    }
+
+    /**
+     * Returns the view of the operational bridges ordered from the least
+     * loaded one. The iteration is weakly consistent - a bridge re-ranked
+     * during the iteration may be either missed or returned twice.
+     */
+    Iterable<BridgeState> getOperationalBridges()
+    {
+        if (!failed.isEmpty())
+        {
+            reviveFailed();
+        }
+
+        return operationalBridges;
+    }
+
+    /**
+     * Moves back to the ranked set these of {@link #failed} bridges, which
+     * have been given another chance.
+     */
+    private void reviveFailed()
+    {
+        for (BridgeState bridge : failed)
+        {
+            // isOperational() resets the flag if the threshold has expired
+            if (bridge.isOperational())
+            {
+                update(bridge);
+            }
+        }
+    }
+
+    /**
+     * Tells whether given bridge has been added to this index and not removed
+     * since. Must be called with the lock of the <tt>bridge</tt> held.
+     */
+    private boolean isKnown(BridgeState bridge)
+    {
+        return ranks.containsKey(bridge) || failed.contains(bridge);
+    }
+
+    /**
+     * Replaces current rank of the bridge with the up to date one. Must be
+     * called with the lock of the <tt>bridge</tt> held.
+     *
+     * @param bridge the <tt>BridgeState</tt> to be re-ranked.
+     * @param current the rank currently stored for the bridge or
+     * <tt>null</tt> if the bridge is new or not operational.
+     */
+    private void rerank(BridgeState bridge, Rank current)
+    {
+        if (!bridge.isOperational())
+        {
+            if (current != null)
+            {
+                ranked.remove(current);
+                ranks.remove(bridge);
+            }
+            failed.add(bridge);
+            return;
+        }
+
+        int streamCount = bridge.getEstimatedVideoStreamCount();
+        if (current != null)
+        {
+            if (current.streamCount == streamCount)
+            {
+                // Nothing has changed
+                return;
+            }
+            ranked.remove(current);
+        }
+
+        Rank rank = new Rank(bridge, streamCount);
+
+        ranked.add(rank);
+        ranks.put(bridge, rank);
+        failed.remove(bridge);
+    }
+
+    /**
+     * An immutable snapshot of the bridge load stored in the skip list.
+     */
+    private static class Rank
+        implements Comparable<Rank>
+    {
+        /**
+         * The ranked bridge.
+         */
+        final BridgeState bridge;
+
+        /**
+         * The estimated video stream count of the bridge at the time when
+         * this rank was created.
+         */
+        final int streamCount;
+
+        Rank(BridgeState bridge, int streamCount)
+        {
+            this.bridge = bridge;
+            this.streamCount = streamCount;
+        }
+
+        /**
+         * Orders by the stream count first and then by the bridge JID, so
+         * that the ranks of different bridges are never equal.
+         * <p>
+         * {@inheritDoc}
+         */
+        @Override
+        public int compareTo(Rank o)
+        {
+            int result = Integer.compare(streamCount, o.streamCount);
+            if (result != 0)
+            {
+                return result;
+            }
+            return bridge.getJid().compareTo(o.bridge.getJid());
+        }
+    }
+}
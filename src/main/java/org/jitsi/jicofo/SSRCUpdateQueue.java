@@ -0,0 +1,339 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Collects 'source-add' and 'source-remove' notifications which are to be sent
+ * to a single conference participant and sends them in batches. The first
+ * change queued starts the window (see
+ * {@link JitsiMeetGlobalConfig#getSSRCUpdateWindow()}) and everything queued
+ * until it expires is sent as one 'source-remove' followed by one 'source-add'.
+ *
+ * SSRCs and SSRC groups which are removed before their addition has been sent
+ * cancel out and are never sent to the participant.
+ *
+ * @author agent
+ */
+class SSRCUpdateQueue
+{
+    /**
+     * The logger used by this class.
+     */
+    private final static Logger logger
+        = Logger.getLogger(SSRCUpdateQueue.class);
+
+    /**
+     * The participant to which the notifications are sent.
+     */
+    private final Participant participant;
+
+    /**
+     * The Jingle operation set used to send the notifications.
+     */
+    private final OperationSetJingle jingle;
+
+    /**
+     * The executor which runs the flush task.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * How long the changes are being collected before they're sent (in
+     * milliseconds).
+     */
+    private final long window;
+
+    /**
+     * Serializes sending of the batches, so that they're delivered in
+     * the same order in which they have been collected.
+     */
+    private final Object sendLock = new Object();
+
+    /**
+     * The task which sends the batch.
+     */
+    private final Runnable flushTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                flush();
+            }
+            catch (Exception e)
+            {
+                logger.error(
+                    "Failed to send SSRC update to "
+                        + participant.getMucJid(), e);
+            }
+        }
+    };
+
+    /**
+     * SSRCs to be sent in the next 'source-add'.
+     */
+    private MediaSSRCMap ssrcsToAdd = new MediaSSRCMap();
+
+    /**
+     * SSRC groups to be sent in the next 'source-add'.
+     */
+    private MediaSSRCGroupMap ssrcGroupsToAdd = new MediaSSRCGroupMap();
+
+    /**
+     * SSRCs to be sent in the next 'source-remove'.
+     */
+    private MediaSSRCMap ssrcsToRemove = new MediaSSRCMap();
+
+    /**
+     * SSRC groups to be sent in the next 'source-remove'.
+     */
+    private MediaSSRCGroupMap ssrcGroupsToRemove = new MediaSSRCGroupMap();
+
+    /**
+     * The scheduled flush or <tt>null</tt> if there are no changes waiting.
+     */
+    private ScheduledFuture<?> flushFuture;
+
+    /**
+     * Set once the queue has been disposed, after which all changes are
+     * discarded.
+     */
+    private boolean disposed;
+
+    /**
+     * Creates new <tt>SSRCUpdateQueue</tt>.
+     *
+     * @param participant the participant to be notified.
+     * @param jingle the Jingle operation set which will be used to send
+     * the notifications.
+     * @param executor the executor used to schedule flushes.
+     * @param window how long the changes are collected (in milliseconds).
+     */
+    SSRCUpdateQueue(Participant                 participant,
+                    OperationSetJingle          jingle,
+                    ScheduledExecutorService    executor,
+                    long                        window)
+    {
+        this.participant = Objects.requireNonNull(participant, "participant");
+        this.jingle = Objects.requireNonNull(jingle, "jingle");
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.window = window;
+    }
+
+    /**
+     * Queues SSRCs and groups to be advertised with 'source-add'.
+     *
+     * @param ssrcs the SSRCs to be added.
+     * @param ssrcGroups the SSRC groups to be added.
+     */
+    synchronized void scheduleAdd(MediaSSRCMap         ssrcs,
+                                  MediaSSRCGroupMap    ssrcGroups)
+    {
+        if (disposed)
+        {
+            return;
+        }
+
+        for (String media : ssrcs.getMediaTypes())
+        {
+            for (SourcePacketExtension ssrc : ssrcs.getSSRCsForMedia(media))
+            {
+                if (ssrcsToAdd.findSSRC(media, ssrc.getSSRC()) == null)
+                {
+                    ssrcsToAdd.addSSRC(media, ssrc);
+                }
+            }
+        }
+
+        for (String media : ssrcGroups.getMediaTypes())
+        {
+            for (SSRCGroup group : ssrcGroups.getSSRCGroupsForMedia(media))
+            {
+                if (!ssrcGroupsToAdd.containsGroup(media, group))
+                {
+                    ssrcGroupsToAdd.addSSRCGroup(media, group);
+                }
+            }
+        }
+
+        scheduleFlush();
+    }
+
+    /**
+     * Queues SSRCs and groups to be removed with 'source-remove'. These which
+     * are still waiting to be added are dropped from the queue instead.
+     *
+     * @param ssrcs the SSRCs to be removed.
+     * @param ssrcGroups the SSRC groups to be removed.
+     */
+    synchronized void scheduleRemove(MediaSSRCMap         ssrcs,
+                                     MediaSSRCGroupMap    ssrcGroups)
+    {
+        if (disposed)
+        {
+            return;
+        }
+
+        for (String media : ssrcs.getMediaTypes())
+        {
+            for (SourcePacketExtension ssrc : ssrcs.getSSRCsForMedia(media))
+            {
+                long ssrcValue = ssrc.getSSRC();
+                SourcePacketExtension notSent
+                    = ssrcsToAdd.findSSRC(media, ssrcValue);
+
+                if (notSent != null)
+                {
+                    // Add and remove cancel out
+                    ssrcsToAdd.remove(media, notSent);
+                }
+                else if (ssrcsToRemove.findSSRC(media, ssrcValue) == null)
+                {
+                    ssrcsToRemove.addSSRC(media, ssrc);
+                }
+            }
+        }
+
+        for (String media : ssrcGroups.getMediaTypes())
+        {
+            for (SSRCGroup group : ssrcGroups.getSSRCGroupsForMedia(media))
+            {
+                MediaSSRCGroupMap groupToRemove = new MediaSSRCGroupMap();
+                groupToRemove.addSSRCGroup(media, group);
+
+                if (ssrcGroupsToAdd.remove(groupToRemove).isEmpty()
+                        && !ssrcGroupsToRemove.containsGroup(media, group))
+                {
+                    ssrcGroupsToRemove.addSSRCGroup(media, group);
+                }
+            }
+        }
+
+        scheduleFlush();
+    }
+
+    /**
+     * Schedules the flush task unless it is scheduled already.
+     */
+    private void scheduleFlush()
+    {
+        if (flushFuture == null)
+        {
+            flushFuture
+                = executor.schedule(
+                        flushTask, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends all queued changes to the participant.
+     */
+    void flush()
+    {
+        synchronized (sendLock)
+        {
+            MediaSSRCMap addSSRCs;
+            MediaSSRCGroupMap addGroups;
+            MediaSSRCMap removeSSRCs;
+            MediaSSRCGroupMap removeGroups;
+
+            synchronized (this)
+            {
+                flushFuture = null;
+
+                if (disposed)
+                {
+                    return;
+                }
+
+                addSSRCs = ssrcsToAdd;
+                addGroups = ssrcGroupsToAdd;
+                removeSSRCs = ssrcsToRemove;
+                removeGroups = ssrcGroupsToRemove;
+
+                ssrcsToAdd = new MediaSSRCMap();
+                ssrcGroupsToAdd = new MediaSSRCGroupMap();
+                ssrcsToRemove = new MediaSSRCMap();
+                ssrcGroupsToRemove = new MediaSSRCGroupMap();
+            }
+
+            boolean hasRemove = !removeSSRCs.isEmpty()
+                || !removeGroups.isEmpty();
+            boolean hasAdd = !addSSRCs.isEmpty() || !addGroups.isEmpty();
+
+            JingleSession jingleSession = participant.getJingleSession();
+            if (jingleSession == null)
+            {
+                logger.warn(
+                    "No jingle session for " + participant.getMucJid()
+                        + " - SSRC update will be sent on session-accept");
+
+                if (hasRemove)
+                {
+                    participant.scheduleSSRCsToRemove(removeSSRCs);
+                    participant.scheduleSSRCGroupsToRemove(removeGroups);
+                }
+                if (hasAdd)
+                {
+                    participant.scheduleSSRCsToAdd(addSSRCs);
+                    participant.scheduleSSRCGroupsToAdd(addGroups);
+                }
+                return;
+            }
+
+            if (hasRemove)
+            {
+                jingle.sendRemoveSourceIQ(
+                        removeSSRCs, removeGroups, jingleSession);
+            }
+            if (hasAdd)
+            {
+                jingle.sendAddSourceIQ(addSSRCs, addGroups, jingleSession);
+            }
+        }
+    }
+
+    /**
+     * Discards all queued changes and stops accepting new ones.
+     */
+    synchronized void dispose()
+    {
+        disposed = true;
+
+        if (flushFuture != null)
+        {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+
+        ssrcsToAdd = new MediaSSRCMap();
+        ssrcGroupsToAdd = new MediaSSRCGroupMap();
+        ssrcsToRemove = new MediaSSRCMap();
+        ssrcGroupsToRemove = new MediaSSRCGroupMap();
+    }
+}
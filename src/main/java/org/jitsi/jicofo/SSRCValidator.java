@@ -87,8 +87,8 @@ public SSRCValidator(String               endpointId,
                          Logger               logLevelDelegate)
     {
         this.endpointId = endpointId;
-        this.ssrcs = ssrcMap.copyDeep();
-        this.ssrcGroups = ssrcGroups.copy();
+        this.ssrcs = ssrcMap.snapshot();
+        this.ssrcGroups = ssrcGroups.snapshot();
         this.maxSSRCCount = maxSSRCCount;
         this.logger = Logger.getLogger(classLogger, logLevelDelegate);
     }
@@ -277,7 +277,7 @@ else if (!groupMSID.equals(msid))
             }
         }
 
-        MediaSSRCMap notGroupedSSRCs = this.ssrcs.copyDeep();
+        MediaSSRCMap notGroupedSSRCs = this.ssrcs.snapshot();
         notGroupedSSRCs.remove(groupedSSRCs);
 
         // Check for duplicated 'MSID's across each media type in
@@ -49,6 +49,14 @@
      */
     private final static long EXPIRE_POLLING_INTERVAL = 10000L;
 
+    /**
+     * The number of locks used to serialize the processing of
+     * the authentication requests. The requests which belong to the same
+     * session (or machine if there is no session yet) always use the same
+     * lock.
+     */
+    private final static int AUTH_LOCK_STRIPES = 64;
+
     /**
      * Authentication session lifetime in milliseconds.
      */
@@ -76,24 +84,46 @@
     private FocusManager focusManager;
 
     /**
-     * Synchronization root.
+     * Synchronization root which serializes the creation and the removal of
+     * the sessions. The lookups do not use it.
      */
     protected final Object syncRoot = new Object();
 
     /**
-     * The map of user JIDs to {@link AuthenticationSession}.
-     *
-     * Note that access to this field is almost always protected by a lock on
-     * {@link #syncRoot}. However, {@link #getSession(String)} executes
-     * {@link Map#get(Object)} on it, which wouldn't be safe with a
-     * {@link HashMap} (as opposed to a {@link ConcurrentHashMap}.
-     * I've chosen this solution, because I don't know whether the cleaner
-     * solution of synchronizing on {@link #syncRoot} in
-     * {@link #getSession(String)} is safe.
+     * The locks used to serialize the processing of the authentication
+     * requests, see {@link #AUTH_LOCK_STRIPES}.
+     */
+    private final Object[] authLocks = new Object[AUTH_LOCK_STRIPES];
+
+    /**
+     * The map of session identifiers to {@link AuthenticationSession}.
      */
     private final Map<String, AuthenticationSession> authenticationSessions
             = new ConcurrentHashMap<>();
 
+    /**
+     * The index of the sessions by the JIDs recently bound to them. It is
+     * updated without locking, so every session found in it must be checked
+     * with {@link #isActive(AuthenticationSession)}.
+     */
+    private final ConcurrentMap<String, AuthenticationSession> sessionsByJid
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The index of the sessions by the user identities and machine UIDs (see
+     * {@link #getIdentityKey(String, String)}).
+     */
+    private final ConcurrentMap<String, AuthenticationSession>
+        sessionsByIdentity = new ConcurrentHashMap<>();
+
+    /**
+     * The sessions ordered by the time at which they will expire unless they
+     * are used before. The session's entry is moved back when it's found to
+     * be renewed, so the expire task only looks at the sessions which are
+     * due.
+     */
+    private final DelayQueue<SessionExpiry> expiryQueue = new DelayQueue<>();
+
     /**
      * The list of registered {@link AuthenticationListener}s.
      */
@@ -120,6 +150,11 @@ public AbstractAuthAuthority(boolean disableAutoLogin,
         }
 
         logger.info("Authentication lifetime: " + authenticationLifetime);
+
+        for (int i = 0; i < authLocks.length; i++)
+        {
+            authLocks[i] = new Object();
+        }
     }
 
     /**
@@ -165,6 +200,9 @@ protected AuthenticationSession createNewSession(
                         roomName);
 
             authenticationSessions.put(session.getSessionId(), session);
+            sessionsByIdentity.put(
+                    getIdentityKey(machineUID, authIdentity), session);
+            expiryQueue.offer(new SessionExpiry(session));
 
             logger.info(
                 "Authentication session created for "
@@ -235,19 +273,30 @@ protected AuthenticationSession findSessionForIdentity(
         {
             return null;
         }
-        synchronized (syncRoot)
-        {
-            for (AuthenticationSession session
-                    : authenticationSessions.values())
-            {
-                if (session.getUserIdentity().equals(authIdentity)
-                        && session.getMachineUID().equals(machineUID))
-                {
-                    return session;
-                }
-            }
-            return null;
-        }
+        AuthenticationSession session
+            = sessionsByIdentity.get(getIdentityKey(machineUID, authIdentity));
+
+        return session != null && isActive(session) ? session : null;
+    }
+
+    /**
+     * Creates the key of {@link #sessionsByIdentity} index. The length of
+     * the machine UID is included, so that no two different pairs will map
+     * to the same key.
+     */
+    private static String getIdentityKey(String machineUID, String authIdentity)
+    {
+        return machineUID.length() + ":" + machineUID + authIdentity;
+    }
+
+    /**
+     * Checks if given session has not been removed from the store. The indexes
+     * are updated without locking, so they can briefly point to the sessions
+     * which have been removed.
+     */
+    private boolean isActive(AuthenticationSession session)
+    {
+        return authenticationSessions.get(session.getSessionId()) == session;
     }
 
     /**
@@ -265,17 +314,22 @@ protected AuthenticationSession findSessionForJabberId(String jabberId)
         {
             return null;
         }
-        synchronized (syncRoot)
+        AuthenticationSession session = sessionsByJid.get(jabberId);
+        if (session == null)
         {
-            for(AuthenticationSession session : authenticationSessions.values())
-            {
-                if (jabberId.equals(session.getUserJabberId()))
-                {
-                    return session;
-                }
-            }
+            return null;
+        }
+        else if (isActive(session)
+                    && jabberId.equals(session.getUserJabberId()))
+        {
+            return session;
+        }
+        else
+        {
+            // Removed or bound to another JID in the meantime
+            sessionsByJid.remove(jabberId, session);
+            return null;
         }
-        return null;
     }
 
     /**
@@ -325,7 +379,7 @@ public void destroySession(String sessionId)
             if (session == null)
                 return;
 
-            if (authenticationSessions.remove(sessionId) != null)
+            if (removeSession(session))
             {
                 logger.info("Authentication removed: " + session);
 
@@ -336,6 +390,37 @@ public void destroySession(String sessionId)
         }
     }
 
+    /**
+     * Removes given session from the store and from the indexes. Must be
+     * called with {@link #syncRoot} lock held.
+     *
+     * @param session the <tt>AuthenticationSession</tt> to be removed.
+     *
+     * @return <tt>true</tt> if the session has been removed or
+     * <tt>false</tt> if it was removed already.
+     */
+    private boolean removeSession(AuthenticationSession session)
+    {
+        if (!authenticationSessions.remove(session.getSessionId(), session))
+        {
+            return false;
+        }
+
+        sessionsByIdentity.remove(
+                getIdentityKey(
+                        session.getMachineUID(), session.getUserIdentity()),
+                session);
+
+        String jabberId = session.getUserJabberId();
+        if (jabberId != null)
+        {
+            sessionsByJid.remove(jabberId, session);
+        }
+
+        // The expiry queue entry is dropped when it becomes due
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -349,17 +434,14 @@ public void onFocusDestroyed(String roomName)
 
         synchronized (syncRoot)
         {
-            Iterator<AuthenticationSession> sessionIterator
-                    = authenticationSessions.values().iterator();
-
-            while (sessionIterator.hasNext())
+            for (AuthenticationSession session
+                    : authenticationSessions.values())
             {
-                AuthenticationSession session = sessionIterator.next();
                 if (roomName.equals(session.getRoomName()))
                 {
                     logger.info(
                         "Removing session for ended conference, S: " + session);
-                    sessionIterator.remove();
+                    removeSession(session);
                 }
             }
         }
@@ -409,16 +491,47 @@ protected void notifyUserAuthenticated(String userJid,
     public IQ processAuthentication(
             ConferenceIq query, ConferenceIq response)
     {
-        synchronized (syncRoot)
+        synchronized (getAuthLock(query))
         {
             return processAuthLocked(query, response);
         }
     }
 
+    /**
+     * Selects the lock which serializes the processing of given request.
+     * The requests are distinguished by the session ID or by the machine UID
+     * if there is no session yet, so that the requests of the same user are
+     * processed one by one, but do not wait for other users.
+     *
+     * @param query the <tt>ConferenceIq</tt> to be processed.
+     *
+     * @return the lock object.
+     */
+    private Object getAuthLock(ConferenceIq query)
+    {
+        String key = query.getSessionId();
+        if (StringUtils.isNullOrEmpty(key))
+        {
+            key = query.getMachineUID();
+        }
+        if (StringUtils.isNullOrEmpty(key))
+        {
+            key = query.getFrom();
+        }
+
+        int hash = key != null ? key.hashCode() : 0;
+
+        // Spread the bits, as the stripe is selected by the lowest ones
+        hash ^= (hash >>> 16);
+
+        return authLocks[hash & (authLocks.length - 1)];
+    }
+
     /**
      * Implements {@link AuthenticationAuthority#
      * processAuthentication(ConferenceIq, ConferenceIq, boolean)}. Runs in
-     * synchronized section of authentication sessions storage lock.
+     * synchronized section of the lock selected for the session (or machine)
+     * of the request, which is not shared with all other requests.
      */
     protected abstract IQ processAuthLocked(
             ConferenceIq query, ConferenceIq response);
@@ -482,8 +595,16 @@ protected IQ verifySession(ConferenceIq query)
     protected void authenticateJidWithSession(
         AuthenticationSession session, String peerJid, ConferenceIq response)
     {
+        String previousJid = session.getUserJabberId();
+
         session.setUserJabberId(peerJid);
 
+        sessionsByJid.put(peerJid, session);
+        if (previousJid != null && !previousJid.equals(peerJid))
+        {
+            sessionsByJid.remove(previousJid, session);
+        }
+
         logger.info(
             "Authenticated jid: " + peerJid + " with session: " + session);
 
@@ -573,29 +694,82 @@ public void stop()
     }
 
     /**
-     * Task expires tokens and authentications.
+     * Task expires tokens and authentications. Only the sessions which are due
+     * according to {@link #expiryQueue} are checked.
      */
     private class ExpireTask extends TimerTask
     {
         @Override
         public void run()
         {
-            synchronized (syncRoot)
+            SessionExpiry expiry;
+
+            while ((expiry = expiryQueue.poll()) != null)
             {
-                Iterator<AuthenticationSession> sessionsIter
-                    = authenticationSessions.values().iterator();
-                while (sessionsIter.hasNext())
+                AuthenticationSession session = expiry.session;
+
+                synchronized (syncRoot)
                 {
-                    AuthenticationSession session = sessionsIter.next();
+                    if (!isActive(session))
+                    {
+                        // Destroyed already
+                        continue;
+                    }
+
                     if (System.currentTimeMillis()
                             - session.getActivityTimestamp()
                                     > authenticationLifetime)
                     {
                         logger.info("Expiring session:" + session);
-                        sessionsIter.remove();
+                        removeSession(session);
+                    }
+                    else
+                    {
+                        // The session has been used in the meantime
+                        expiryQueue.offer(new SessionExpiry(session));
                     }
                 }
             }
         }
     }
+
+    /**
+     * The entry of {@link #expiryQueue} which becomes due when the session
+     * would expire if it was not used since it's entry has been created.
+     */
+    private class SessionExpiry
+        implements Delayed
+    {
+        /**
+         * The session to be checked.
+         */
+        private final AuthenticationSession session;
+
+        /**
+         * The time in millis at which the session is to be checked.
+         */
+        private final long deadline;
+
+        SessionExpiry(AuthenticationSession session)
+        {
+            this.session = session;
+            this.deadline
+                = session.getActivityTimestamp() + authenticationLifetime;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(
+                    deadline - System.currentTimeMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o)
+        {
+            return Long.compare(
+                    deadline, ((SessionExpiry) o).deadline);
+        }
+    }
 }
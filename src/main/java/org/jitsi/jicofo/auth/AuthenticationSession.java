@@ -49,13 +49,13 @@
      * session instance, so that it can eventually expire after exceeding
      * time limit of inactivity.
      */
-    private long activityTimestamp = System.currentTimeMillis();
+    private volatile long activityTimestamp = System.currentTimeMillis();
 
     /**
      * User's jabber ID recently used with this session. Used to bind
      * anonymous JID to {@link #userIdentity}.
      */
-    private String userJabberId;
+    private volatile String userJabberId;
 
     /**
      * Optional room name to which this session ID is bound.
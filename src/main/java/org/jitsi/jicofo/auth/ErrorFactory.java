@@ -113,4 +113,32 @@ public static IQ createReservationError(ConferenceIq query,
 
         return IQ.createErrorResponse(query, error);
     }
+
+    /**
+     * Creates 'resource-constraint' XMPP error response to given
+     * <tt>query</tt> which has been rejected by the admission control.
+     *
+     * @param query the IQ for which error response will be created.
+     * @param retryAfter the number of seconds after which the request should
+     *                   be retried.
+     *
+     * @return 'resource-constraint' XMPP error response to given
+     *         <tt>query</tt> with application specific 'retry-after'
+     *         extension.
+     */
+    public static IQ createConferenceRejectedError(IQ query, int retryAfter)
+    {
+        final XMPPError error
+            = new XMPPError(
+                    XMPPError.Condition.resource_constraint,
+                    "too many conference requests");
+
+        RetryAfterPacketExt retryAfterExt = new RetryAfterPacketExt();
+
+        retryAfterExt.setSeconds(retryAfter);
+
+        error.addExtension(retryAfterExt);
+
+        return IQ.createErrorResponse(query, error);
+    }
 }
@@ -50,26 +50,11 @@
     public static final String HEALTH_CHECK_FAILED
         = "org/jitsi/jicofo/JVB/UNHEALTHY";
 
-    /**
-     * The event is emitted by
-     * {@link org.jitsi.impl.protocol.xmpp.colibri.ColibriConferenceImpl}
-     * when new video channels are being allocated/expired which results in
-     * video stream count change. It is consumed by {@link BridgeSelector}
-     * to estimate the current video stream count for each JVB.
-     */
-    public static final String VIDEOSTREAMS_CHANGED
-        = "org/jitsi/jicofo/JVB/VIDEOSTREAMS_CHANGE";
-
     /**
      * The key for event property
      */
     private final static String JVB_JID_KEY = "bridge.jid";
 
-    /**
-     * The key for video stream count property
-     */
-    private final static String STREAMS_VIDEO_KEY = "bridge.streams.video";
-
     /**
      * Used to init the properties passed to the constructor.
      */
@@ -116,24 +101,6 @@ static public BridgeEvent createHealthFailed(String bridgeJid)
         return new BridgeEvent(HEALTH_CHECK_FAILED, bridgeJid);
     }
 
-    /**
-     * Creates {@link #VIDEOSTREAMS_CHANGED} <tt>BridgeEvent</tt>.
-     *
-     * @param bridgeJid the JID of the bridge for which the event will be
-     *        created.
-     * @param videoStreamCount how many video streams are being added/removed.
-     *
-     * @return {@link #VIDEOSTREAMS_CHANGED} <tt>BridgeEvent</tt> for given
-     *         <tt>bridgeJid</tt>.
-     */
-    static public BridgeEvent createVideoStreamsChanged(String bridgeJid,
-                                                      int    videoStreamCount)
-    {
-        Dictionary<String, Object> dict = initDictionary(bridgeJid);
-        dict.put(STREAMS_VIDEO_KEY, videoStreamCount);
-        return new BridgeEvent(VIDEOSTREAMS_CHANGED, dict);
-    }
-
     /**
      * Checks whether or not given <tt>Event</tt> is a <tt>BridgeEvent</tt>.
      *
@@ -149,18 +116,12 @@ static public boolean isBridgeEvent(Event event)
         case BRIDGE_DOWN:
         case BRIDGE_UP:
         case HEALTH_CHECK_FAILED:
-        case VIDEOSTREAMS_CHANGED:
             return true;
         default:
             return false;
         }
     }
 
-    private BridgeEvent(String topic, Dictionary<String, Object> dict)
-    {
-        super(topic, dict);
-    }
-
     private BridgeEvent(String topic, String bridgeJid)
     {
         super(topic, initDictionary(bridgeJid));
@@ -177,17 +138,6 @@ public String getBridgeJid()
         return (String) getProperty(JVB_JID_KEY);
     }
 
-    /**
-     * Obtains the value of video stream count associated with the current
-     * <tt>BridgeEvent</tt>.
-     * @return <tt>Integer</tt> or <tt>null</tt> if attribute not present for
-     * given event.
-     */
-    public Integer getVideoStreamCount()
-    {
-        return (Integer) getProperty(STREAMS_VIDEO_KEY);
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -22,6 +22,7 @@
 
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.ColibriConferenceIQ.Recording.*;
 
@@ -52,16 +53,18 @@
     protected final XmppConnection connection;
 
     /**
-     * Process packets in different thread, keeping packets receive order.
+     * Indicates whether this instance is registered in
+     * {@link PacketDispatcher} for the packets sent by the recorder component.
+     * Packets are processed in different thread, keeping packets receive
+     * order.
      */
-    private QueuePacketProcessor packetProcessor = null;
+    private boolean packetHandlerRegistered;
 
     public Recorder(String recorderComponentJid,
                     XmppConnection connection)
     {
         this.connection = Objects.requireNonNull(connection, "connection");
         this.recorderComponentJid = recorderComponentJid;
-        this.packetProcessor = new QueuePacketProcessor(connection, this, this);
     }
 
     /**
@@ -69,7 +72,9 @@ public Recorder(String recorderComponentJid,
      * joins the MUC.
      */
     public void init() {
-        this.packetProcessor.start();
+        PacketDispatcher.addHandler(
+                connection, recorderComponentJid, IQ.class, this, this);
+        packetHandlerRegistered = true;
     }
 
     /**
@@ -77,10 +82,11 @@ public void init() {
      */
     public void dispose()
     {
-        if (this.packetProcessor != null)
+        if (packetHandlerRegistered)
         {
-            this.packetProcessor.stop();
-            this.packetProcessor = null;
+            PacketDispatcher.removeHandler(
+                    connection, recorderComponentJid, this);
+            packetHandlerRegistered = false;
         }
     }
 
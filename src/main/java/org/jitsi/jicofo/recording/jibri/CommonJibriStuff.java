@@ -91,10 +91,10 @@
     protected final OperationSetJitsiMeetTools meetTools;
 
     /**
-     * {@link QueuePacketProcessor} used to execute packets on separate single
-     * threaded queue which will not block Smack's packet reader thread.
+     * Indicates whether this instance is registered in
+     * {@link PacketDispatcher} for the packets sent from the conference room.
      */
-    private QueuePacketProcessor packetProcessor;
+    private boolean packetHandlerRegistered;
 
     /**
      * Executor service used by {@link JibriSession} to schedule pending timeout
@@ -199,8 +199,12 @@ public void init()
             logger.error("Failed to start Jibri event handler: " + e, e);
         }
 
-        this.packetProcessor = new QueuePacketProcessor(connection, this, this);
-        this.packetProcessor.start();
+        // The requests are sent by the participants, so only the packets
+        // coming from the room are dispatched to this instance
+        PacketDispatcher.addHandler(
+                connection, conference.getRoomName(), JibriIq.class,
+                this, this);
+        packetHandlerRegistered = true;
 
         updateJibriAvailability();
     }
@@ -221,10 +225,11 @@ public void dispose()
             logger.error("Failed to stop Jibri event handler: " + e, e);
         }
 
-        if (this.packetProcessor != null)
+        if (packetHandlerRegistered)
         {
-            this.packetProcessor.stop();
-            this.packetProcessor = null;
+            PacketDispatcher.removeHandler(
+                    connection, conference.getRoomName(), this);
+            packetHandlerRegistered = false;
         }
     }
 
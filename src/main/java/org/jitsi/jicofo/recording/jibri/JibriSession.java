@@ -42,8 +42,9 @@
  * this happen it needs to cache all the information required to start new
  * session. It uses {@link JibriDetector} to select new Jibri.
  *
- * It also contains it's own {@link QueuePacketProcessor} and processes XMPP
- * packets associated with the current session.
+ * It registers in {@link PacketDispatcher} for the packets sent by the current
+ * Jibri instance and processes XMPP packets associated with the current
+ * session.
  *
  * @author Pawel Domas
  */
@@ -131,10 +132,15 @@ static private boolean isStartingStatus(JibriIq.Status status)
     private final Owner owner;
 
     /**
-     * The {@link QueuePacketProcessor} which executes
-     * {@link #processPacket(Packet)} on dedicated single threaded queue.
+     * Indicates whether this session has been started and not stopped yet.
      */
-    private QueuePacketProcessor packetProcessor;
+    private boolean started;
+
+    /**
+     * The JID for which this session is currently registered in
+     * {@link PacketDispatcher} or <tt>null</tt> if it is not registered.
+     */
+    private String dispatcherJid;
 
     /**
      * Reference to scheduled {@link PendingStatusTimeout}
@@ -240,10 +246,9 @@ public JibriSession(
      */
     synchronized public void start()
     {
-        if (packetProcessor == null)
+        if (!started)
         {
-            this.packetProcessor = new QueuePacketProcessor(xmpp, this, this);
-            this.packetProcessor.start();
+            started = true;
 
             tryStartRestartJibri(null);
         }
@@ -257,7 +262,7 @@ synchronized public void start()
      */
     synchronized public XMPPError stop()
     {
-        if (packetProcessor == null)
+        if (!started)
         {
             return null;
         }
@@ -307,8 +312,8 @@ synchronized public XMPPError stop()
             setJibriStatus(JibriIq.Status.OFF, null);
         }
 
-        packetProcessor.stop();
-        packetProcessor = null;
+        started = false;
+        updatePacketHandler();
 
         return error;
     }
@@ -369,6 +374,45 @@ private XMPPError sendStopIQ()
         }
     }
 
+    /**
+     * Sets {@link #currentJibriJid} and updates the registration in
+     * {@link PacketDispatcher}, so that the packets sent by the new Jibri are
+     * dispatched to this session.
+     *
+     * @param jibriJid the JID of the Jibri or <tt>null</tt>.
+     */
+    private synchronized void setCurrentJibriJid(String jibriJid)
+    {
+        currentJibriJid = jibriJid;
+
+        updatePacketHandler();
+    }
+
+    /**
+     * Registers this session in {@link PacketDispatcher} for
+     * the {@link #currentJibriJid} if the session is running or unregisters
+     * it otherwise.
+     */
+    private synchronized void updatePacketHandler()
+    {
+        String jid = started ? currentJibriJid : null;
+
+        if (Objects.equals(jid, dispatcherJid))
+        {
+            return;
+        }
+
+        if (dispatcherJid != null)
+        {
+            PacketDispatcher.removeHandler(xmpp, dispatcherJid, this);
+        }
+        if (jid != null)
+        {
+            PacketDispatcher.addHandler(xmpp, jid, IQ.class, this, this);
+        }
+        dispatcherJid = jid;
+    }
+
     /**
      * Accept only XMPP packets which are coming from the Jibri currently used
      * by this session.
@@ -456,7 +500,7 @@ private void processJibriIqFromJibri(JibriIq iq)
                         XMPPError.Condition.interna_server_error,
                         "Unknown error");
                 }
-                this.currentJibriJid = null;
+                setCurrentJibriJid(null);
                 tryStartRestartJibri(error);
             }
             else
@@ -557,7 +601,7 @@ private void recordingStopped(XMPPError error, boolean updateStatus)
             logger.info("Recording stopped for: " + roomName);
         }
 
-        currentJibriJid = null;
+        setCurrentJibriJid(null);
         retryAttempt = 0;
 
         // First we'll send an error and then follow with availability status
@@ -593,7 +637,7 @@ private void startJibri(final String jibriJid)
         startIq.setRoom(roomName);
 
         // Store Jibri JID to make the packet filter accept the response
-        currentJibriJid = jibriJid;
+        setCurrentJibriJid(jibriJid);
 
         // We're now in PENDING state (waiting for Jibri ON update)
         // Setting PENDING status also blocks from accepting
@@ -34,6 +34,11 @@
 public class HandlerImpl
     extends AbstractJSONHandler
 {
+    /**
+     * The HTTP resource which exports the statistics of Jicofo.
+     */
+    private static final String STATISTICS_TARGET = "/about/stats";
+
     /**
      * Initializes a new {@code HandlerImpl} instance within a specific
      * {@code BundleContext}.
@@ -73,6 +78,76 @@ protected void doGetHealthJSON(
         endResponse(/* target */ null, baseRequest, request, response);
     }
 
+    /**
+     * Handles {@link #STATISTICS_TARGET} in addition to the resources handled
+     * by the super implementation.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    protected void handleJSON(
+            String target,
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        super.handleJSON(target, baseRequest, request, response);
+
+        if (baseRequest.isHandled())
+        {
+            return;
+        }
+
+        if (STATISTICS_TARGET.equals(target))
+        {
+            if ("GET".equals(request.getMethod()))
+            {
+                doGetStatisticsJSON(baseRequest, request, response);
+            }
+            else
+            {
+                response.setStatus(
+                        HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            }
+        }
+    }
+
+    /**
+     * Gets a JSON representation of the statistics of Jicofo.
+     *
+     * @param baseRequest the original unwrapped {@link Request} object
+     * @param request the request either as the {@code Request} object or a
+     * wrapper of that request
+     * @param response the response either as the {@code Response} object or a
+     * wrapper of that response
+     * @throws IOException
+     * @throws ServletException
+     */
+    private void doGetStatisticsJSON(
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        beginResponse(/* target */ null, baseRequest, request, response);
+
+        FocusManager focusManager = getFocusManager();
+
+        if (focusManager == null)
+        {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        else
+        {
+            Statistics.getJSON(focusManager, baseRequest, request, response);
+        }
+
+        endResponse(/* target */ null, baseRequest, request, response);
+    }
+
     /**
      * Gets the {@code FocusManager} instance available to this Jetty
      * {@code Handler}.
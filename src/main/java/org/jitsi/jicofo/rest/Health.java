@@ -118,7 +118,8 @@ private static void check(FocusManager focusManager)
         if (!focusManager.conferenceRequest(
                     roomName,
                     JITSI_MEET_CONFIG,
-                    Level.WARNING /* conference logging level */))
+                    Level.WARNING /* conference logging level */,
+                    false /* not subject to admission control */))
         {
             throw new RuntimeException(
                     "Failed to create conference with room name " + roomName);
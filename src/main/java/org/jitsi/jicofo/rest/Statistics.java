@@ -0,0 +1,145 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.rest;
+
+import java.io.*;
+import java.util.*;
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import net.java.sip.communicator.util.ServiceUtils;
+
+import org.eclipse.jetty.server.*;
+
+import org.jitsi.jicofo.*;
+import org.jitsi.jicofo.util.*;
+import org.json.simple.*;
+
+/**
+ * Exports the runtime statistics of Jicofo in JSON format.
+ *
+ * @author agent
+ */
+public class Statistics
+{
+    /**
+     * Gets a JSON representation of the statistics of Jicofo.
+     *
+     * @param focusManager the {@code FocusManager} instance.
+     * @param baseRequest the original unwrapped {@link Request} object
+     * @param request the request either as the {@code Request} object or a
+     * wrapper of that request
+     * @param response the response either as the {@code Response} object or a
+     * wrapper of that response
+     * @throws IOException
+     * @throws ServletException
+     */
+    @SuppressWarnings("unchecked")
+    static void getJSON(
+            FocusManager focusManager,
+            Request baseRequest,
+            HttpServletRequest request,
+            HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        JSONObject jsonRoot = new JSONObject();
+
+        jsonRoot.put("thread_pools", getThreadPoolsJSON());
+
+        MeetExtensionsHandler meetExtensionsHandler
+            = focusManager.getMeetExtensionsHandler();
+        if (meetExtensionsHandler != null)
+        {
+            jsonRoot.put(
+                    "packet_processing",
+                    toJSON(meetExtensionsHandler.getPacketProcessingStats()));
+        }
+
+        jsonRoot.put(
+                "admission",
+                toJSON(focusManager.getAdmissionController().getStats()));
+
+        JvbDoctor jvbDoctor
+            = ServiceUtils.getService(
+                    FocusBundleActivator.bundleContext, JvbDoctor.class);
+        if (jvbDoctor != null)
+        {
+            jsonRoot.put("health_checks", getHealthChecksJSON(jvbDoctor));
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.getWriter().append(jsonRoot.toJSONString());
+    }
+
+    /**
+     * Returns the statistics of the thread pools created by
+     * {@link FocusBundleActivator} mapped to the names of the pools.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject getThreadPoolsJSON()
+    {
+        JSONObject pools = new JSONObject();
+
+        for (InstrumentedExecutor pool : FocusBundleActivator.getThreadPools())
+        {
+            pools.put(pool.getName(), toJSON(pool.getStats()));
+        }
+        return pools;
+    }
+
+    /**
+     * Returns the health check statistics of the bridges mapped to their JIDs.
+     *
+     * @param jvbDoctor the <tt>JvbDoctor</tt> which does the health checks.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject getHealthChecksJSON(JvbDoctor jvbDoctor)
+    {
+        JSONObject bridges = new JSONObject();
+
+        for (Map.Entry<String, Map<String, Object>> bridge
+                : jvbDoctor.getHealthCheckStats().entrySet())
+        {
+            bridges.put(bridge.getKey(), toJSON(bridge.getValue()));
+        }
+        return bridges;
+    }
+
+    /**
+     * Converts a map of statistics to JSON.
+     *
+     * @param stats a map of the statistic names to their values.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJSON(Map<String, Object> stats)
+    {
+        JSONObject json = new JSONObject();
+
+        for (Map.Entry<String, Object> stat : stats.entrySet())
+        {
+            Object value = stat.getValue();
+            if (value instanceof Map)
+            {
+                value = toJSON((Map<String, Object>) value);
+            }
+            json.put(stat.getKey(), value);
+        }
+        return json;
+    }
+}
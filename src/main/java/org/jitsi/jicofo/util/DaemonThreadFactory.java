@@ -18,6 +18,7 @@
 package org.jitsi.jicofo.util;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * A thread factory that creates daemon threads.
@@ -27,6 +28,38 @@
 public class DaemonThreadFactory
     implements ThreadFactory
 {
+    /**
+     * The prefix of the names given to the threads or <tt>null</tt> to use
+     * the default names.
+     */
+    private final String namePrefix;
+
+    /**
+     * The number of threads created so far, used to name the threads.
+     */
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Creates new <tt>DaemonThreadFactory</tt> which gives default names to
+     * the threads.
+     */
+    public DaemonThreadFactory()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates new <tt>DaemonThreadFactory</tt>.
+     *
+     * @param namePrefix the prefix of the names given to the threads (which
+     * will be followed by the thread number) or <tt>null</tt> to use
+     * the default names.
+     */
+    public DaemonThreadFactory(String namePrefix)
+    {
+        this.namePrefix = namePrefix;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -38,6 +71,10 @@ public Thread newThread(Runnable r)
         {
             t.setDaemon(true);
         }
+        if (namePrefix != null)
+        {
+            t.setName(namePrefix + "-" + threadCount.incrementAndGet());
+        }
         return t;
     }
 }
@@ -0,0 +1,366 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A named <tt>ScheduledThreadPoolExecutor</tt> which keeps track of how long
+ * the tasks are waiting for a free thread. The wait time is measured from
+ * the moment when the task was due to run (which for tasks submitted without
+ * a delay is the moment of submission) until one of the pool threads picks it
+ * up. The queue depth and the wait time statistics are exported with
+ * {@link #getStats()}.
+ *
+ * In the elastic mode the pool threads only dispatch the tasks which are due
+ * to an unbounded pool of threads, which are created when needed and
+ * terminated after they have been idle for a while. The number of tasks
+ * blocked at the same time (eg. waiting for an XMPP response) is then not
+ * limited by the size of the pool.
+ *
+ * @author agent
+ */
+public class InstrumentedExecutor
+    extends ScheduledThreadPoolExecutor
+{
+    /**
+     * The name of the pool.
+     */
+    private final String name;
+
+    /**
+     * The number of tasks which have been started by this pool.
+     */
+    private final AtomicLong startedTasks = new AtomicLong();
+
+    /**
+     * The sum of the wait times of all started tasks in nanoseconds.
+     */
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * The longest wait time observed in nanoseconds.
+     */
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * The pool which runs the tasks in the elastic mode or <tt>null</tt> if
+     * the tasks are executed by the threads of this pool.
+     */
+    private final ThreadPoolExecutor elasticPool;
+
+    /**
+     * Creates new <tt>InstrumentedExecutor</tt> which runs daemon threads.
+     *
+     * @param name the name of the pool which is also used to name the threads.
+     * @param poolSize the number of threads in the pool.
+     */
+    public InstrumentedExecutor(String name, int poolSize)
+    {
+        this(name, poolSize, false);
+    }
+
+    /**
+     * Creates new <tt>InstrumentedExecutor</tt> which runs daemon threads.
+     *
+     * @param name the name of the pool which is also used to name the threads.
+     * @param poolSize the number of threads in the pool. In the elastic mode
+     * a single thread is used to dispatch the tasks.
+     * @param elastic <tt>true</tt> to run the tasks on an unbounded pool of
+     * threads.
+     */
+    public InstrumentedExecutor(String name, int poolSize, boolean elastic)
+    {
+        super(elastic ? 1 : poolSize, new DaemonThreadFactory(name));
+
+        this.name = name;
+
+        // Cancelled timeouts would otherwise occupy the queue until they are
+        // due and distort the queue depth
+        setRemoveOnCancelPolicy(true);
+
+        elasticPool
+            = elastic
+                ? new ThreadPoolExecutor(
+                        0, Integer.MAX_VALUE,
+                        60L, TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(),
+                        new DaemonThreadFactory(name + "-elastic"))
+                : null;
+    }
+
+    /**
+     * Returns the name of this pool.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this pool runs in the elastic mode.
+     */
+    public boolean isElastic()
+    {
+        return elasticPool != null;
+    }
+
+    /**
+     * Wraps the task, so that it is handed off to {@link #elasticPool} in
+     * the elastic mode.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(
+            Runnable runnable, RunnableScheduledFuture<V> task)
+    {
+        return elasticPool != null ? new HandOffTask<>(task) : task;
+    }
+
+    /**
+     * Wraps the task, so that it is handed off to {@link #elasticPool} in
+     * the elastic mode.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(
+            Callable<V> callable, RunnableScheduledFuture<V> task)
+    {
+        return elasticPool != null ? new HandOffTask<>(task) : task;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void shutdown()
+    {
+        super.shutdown();
+
+        if (elasticPool != null)
+        {
+            elasticPool.shutdown();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        List<Runnable> notStarted = super.shutdownNow();
+
+        if (elasticPool != null)
+        {
+            elasticPool.shutdownNow();
+        }
+        return notStarted;
+    }
+
+    /**
+     * Records the time the task has been waiting for a thread.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    protected void beforeExecute(Thread t, Runnable r)
+    {
+        super.beforeExecute(t, r);
+
+        if (r instanceof Delayed)
+        {
+            // The delay is negative once the task is overdue
+            long waitNanos
+                = Math.max(0L, -((Delayed) r).getDelay(TimeUnit.NANOSECONDS));
+
+            startedTasks.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+
+            long max;
+            while (waitNanos > (max = maxWaitNanos.get())
+                    && !maxWaitNanos.compareAndSet(max, waitNanos))
+            {
+                // Retry until we either set the new max or someone else sets
+                // a greater value
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks waiting in the queue. Includes the tasks
+     * scheduled to run in the future.
+     */
+    public int getQueueDepth()
+    {
+        return getQueue().size();
+    }
+
+    /**
+     * Returns the average time the tasks have been waiting for a thread in
+     * milliseconds.
+     */
+    public double getAverageWaitMillis()
+    {
+        long started = startedTasks.get();
+
+        return started == 0
+            ? 0d
+            : totalWaitNanos.get() / (double) started / 1000000d;
+    }
+
+    /**
+     * Returns the longest time a task has been waiting for a thread in
+     * milliseconds.
+     */
+    public double getMaxWaitMillis()
+    {
+        return maxWaitNanos.get() / 1000000d;
+    }
+
+    /**
+     * Returns the snapshot of the statistics of this pool.
+     *
+     * @return a map of the statistic names to their values.
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+
+        if (elasticPool != null)
+        {
+            stats.put("elastic", true);
+            stats.put("pool_size", elasticPool.getPoolSize());
+            stats.put("active_threads", elasticPool.getActiveCount());
+        }
+        else
+        {
+            stats.put("pool_size", getCorePoolSize());
+            stats.put("active_threads", getActiveCount());
+        }
+        stats.put("queue_depth", getQueueDepth());
+        stats.put("started_tasks", startedTasks.get());
+        stats.put("completed_tasks", getCompletedTaskCount());
+        stats.put("average_wait_ms", getAverageWaitMillis());
+        stats.put("max_wait_ms", getMaxWaitMillis());
+
+        return stats;
+    }
+
+    /**
+     * The task queued in the elastic mode. When it is due, the pool thread
+     * hands off the actual task to {@link #elasticPool} instead of running
+     * it. The periodic tasks reschedule this wrapper after each run, so
+     * the next run is also handed off.
+     *
+     * @param <V> the type of the result.
+     */
+    private class HandOffTask<V>
+        implements RunnableScheduledFuture<V>
+    {
+        /**
+         * The task created by the <tt>ScheduledThreadPoolExecutor</tt>.
+         */
+        private final RunnableScheduledFuture<V> task;
+
+        HandOffTask(RunnableScheduledFuture<V> task)
+        {
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                elasticPool.execute(task);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Shutting down
+                task.cancel(false);
+            }
+        }
+
+        @Override
+        public boolean isPeriodic()
+        {
+            return task.isPeriodic();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            boolean cancelled = task.cancel(mayInterruptIfRunning);
+
+            // The wrapped task does not know about the queue, so this wrapper
+            // has to be removed here
+            if (cancelled && getRemoveOnCancelPolicy())
+            {
+                remove(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled()
+        {
+            return task.isCancelled();
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return task.isDone();
+        }
+
+        @Override
+        public V get()
+            throws InterruptedException, ExecutionException
+        {
+            return task.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException
+        {
+            return task.get(timeout, unit);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return task.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed o)
+        {
+            if (o instanceof HandOffTask)
+            {
+                o = ((HandOffTask<?>) o).task;
+            }
+            return task.compareTo(o);
+        }
+    }
+}
@@ -26,11 +26,19 @@
 
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Contains factory methods for creating Jingle offer sent in 'session-invite'
  * by Jitsi Meet conference focus.
  *
+ * The payload types and RTP header extensions depend only on the configuration
+ * and the options passed to the factory methods, so they're created once per
+ * combination of the options and shared by all offers. Every offer gets its own
+ * content, transport and RTP description elements, which are modified when
+ * the offer is filled with the transport and the sources of the conference.
+ * The shared elements must not be modified.
+ *
  * @author Pawel Domas
  * @author George Politis
  * @author Boris Grozev
@@ -119,6 +127,14 @@
      */
     private final boolean ENABLE_FRAMEMARKING;
 
+    /**
+     * The RTP descriptions from which the payload types and RTP header
+     * extensions are taken for the offers, stored by the options they've been
+     * created for.
+     */
+    private final ConcurrentMap<String, RtpDescriptionPacketExtension>
+        rtpDescTemplates = new ConcurrentHashMap<>();
+
     /**
      * Ctor.
      *
@@ -155,7 +171,14 @@ public ContentPacketExtension createAudioContent(
             = createContentPacketExtension(
                     MediaType.AUDIO, disableIce, useDtls);
 
-        addAudioToContent(content, stereo);
+        String key = "audio:" + stereo;
+        RtpDescriptionPacketExtension template = rtpDescTemplates.get(key);
+        if (template == null)
+        {
+            template = cacheTemplate(key, createAudioRtpDescription(stereo));
+        }
+
+        content.addChildExtension(createFromTemplate(template));
 
         return content;
     }
@@ -209,11 +232,74 @@ public ContentPacketExtension createVideoContent(
             = createContentPacketExtension(
                     MediaType.VIDEO, disableIce, useDtls);
 
-        addVideoToContent(videoContentPe, useRtx, minBitrate, startBitrate);
+        String key = "video:" + useRtx + ":" + minBitrate + ":" + startBitrate;
+        RtpDescriptionPacketExtension template = rtpDescTemplates.get(key);
+        if (template == null)
+        {
+            template
+                = cacheTemplate(
+                        key,
+                        createVideoRtpDescription(
+                                useRtx, minBitrate, startBitrate));
+        }
+
+        videoContentPe.addChildExtension(createFromTemplate(template));
 
         return videoContentPe;
     }
 
+    /**
+     * Stores the RTP description template unless another thread has stored one
+     * for the same key in the meantime.
+     *
+     * @param key the options for which the template has been created.
+     * @param template the template to be stored.
+     *
+     * @return the template which is stored for the key.
+     */
+    private RtpDescriptionPacketExtension cacheTemplate(
+            String key, RtpDescriptionPacketExtension template)
+    {
+        RtpDescriptionPacketExtension existing
+            = rtpDescTemplates.putIfAbsent(key, template);
+
+        return existing != null ? existing : template;
+    }
+
+    /**
+     * Creates new RTP description which shares the payload types and the RTP
+     * header extensions with given template.
+     *
+     * @param template the cached RTP description.
+     *
+     * @return new <tt>RtpDescriptionPacketExtension</tt> instance.
+     */
+    private static RtpDescriptionPacketExtension createFromTemplate(
+            RtpDescriptionPacketExtension template)
+    {
+        RtpDescriptionPacketExtension rtpDesc
+            = new RtpDescriptionPacketExtension();
+
+        rtpDesc.setMedia(template.getMedia());
+
+        String maxptime = template.getAttributeAsString("maxptime");
+        if (maxptime != null)
+        {
+            rtpDesc.setAttribute("maxptime", maxptime);
+        }
+
+        for (RTPHdrExtPacketExtension extmap : template.getExtmapList())
+        {
+            rtpDesc.addExtmap(extmap);
+        }
+        for (PayloadTypePacketExtension pt : template.getPayloadTypes())
+        {
+            rtpDesc.addPayloadType(pt);
+        }
+
+        return rtpDesc;
+    }
+
     /**
      * Creates <tt>ContentPacketExtension</tt> initialized with type of
      * the media and basic transport information based on given parameters.
@@ -259,14 +345,12 @@ private static ContentPacketExtension createContentPacketExtension(
     }
 
     /**
-     * Adds the audio-related extensions for an offer to a
-     * {@link ContentPacketExtension}.
-     * @param content the {@link ContentPacketExtension} to add extensions to.
+     * Creates the RTP description with the video payload types and RTP header
+     * extensions for an offer.
+     * @return the template <tt>RtpDescriptionPacketExtension</tt>.
      */
-    private void addVideoToContent(ContentPacketExtension content,
-                                          boolean useRtx,
-                                          int minBitrate,
-                                          int startBitrate)
+    private RtpDescriptionPacketExtension createVideoRtpDescription(
+            boolean useRtx, int minBitrate, int startBitrate)
     {
         RtpDescriptionPacketExtension rtpDesc
             = new RtpDescriptionPacketExtension();
@@ -431,7 +515,7 @@ private void addVideoToContent(ContentPacketExtension content,
         // a=rtpmap:117 ulpfec/90000
         //addPayloadTypeExtension(rtpDesc, 117, Constants.ULPFEC, 90000);
 
-        content.addChildExtension(rtpDesc);
+        return rtpDesc;
     }
 
     /**
@@ -499,12 +583,12 @@ private static PayloadTypePacketExtension addPayloadTypeExtension(
     }
 
     /**
-     * Adds the video-related extensions for an offer to a
-     * {@link ContentPacketExtension}.
-     * @param content the {@link ContentPacketExtension} to add extensions to.
+     * Creates the RTP description with the audio payload types and RTP header
+     * extensions for an offer.
+     * @return the template <tt>RtpDescriptionPacketExtension</tt>.
      */
-    private static void addAudioToContent(ContentPacketExtension content,
-                                          boolean stereo)
+    private static RtpDescriptionPacketExtension createAudioRtpDescription(
+            boolean stereo)
     {
         RtpDescriptionPacketExtension rtpDesc
             = new RtpDescriptionPacketExtension();
@@ -545,7 +629,8 @@ private static void addAudioToContent(ContentPacketExtension content,
 
         // a=maxptime:60
         rtpDesc.setAttribute("maxptime", "60");
-        content.addChildExtension(rtpDesc);
+
+        return rtpDesc;
     }
 
     /**
@@ -0,0 +1,211 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.util;
+
+import org.jitsi.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An <tt>Executor</tt> which runs the tasks on another executor, but never
+ * more than a given number of them at the same time. Tasks exceeding the limit
+ * wait in the lane's own queue without occupying the threads of the underlying
+ * pool. With the limit of one the tasks are executed serially in the order of
+ * submission.
+ *
+ * Used to make sure that the work of a single conference can not take all
+ * the threads of a pool shared by all conferences.
+ *
+ * If the underlying executor rejects the lane, the tasks which have been
+ * accepted by the lane stay in its queue and are executed once a task
+ * submitted later is accepted by the underlying executor.
+ *
+ * @author agent
+ */
+public class LaneExecutor
+    implements Executor
+{
+    /**
+     * The logger used by this class.
+     */
+    private final static Logger logger = Logger.getLogger(LaneExecutor.class);
+
+    /**
+     * The executor which runs the tasks.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of tasks of this lane running at the same time.
+     */
+    private final int maxConcurrent;
+
+    /**
+     * The tasks waiting for their turn.
+     */
+    private final Deque<Runnable> pending = new ArrayDeque<>();
+
+    /**
+     * The number of tasks submitted to {@link #executor}.
+     */
+    private int running;
+
+    /**
+     * Creates new <tt>LaneExecutor</tt>.
+     *
+     * @param executor the executor which will run the tasks.
+     * @param maxConcurrent the maximum number of tasks of the lane which can
+     * be running at the same time.
+     */
+    public LaneExecutor(Executor executor, int maxConcurrent)
+    {
+        if (maxConcurrent < 1)
+        {
+            throw new IllegalArgumentException(
+                    "maxConcurrent: " + maxConcurrent);
+        }
+
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable task)
+    {
+        Objects.requireNonNull(task, "task");
+
+        synchronized (this)
+        {
+            pending.add(task);
+
+            if (running >= maxConcurrent)
+            {
+                return;
+            }
+            running++;
+        }
+
+        try
+        {
+            executor.execute(new Worker());
+        }
+        catch (RejectedExecutionException e)
+        {
+            boolean removed;
+            synchronized (this)
+            {
+                running--;
+                // The task is not accepted, unless a worker of the lane has
+                // taken it already. The tasks accepted before stay in
+                // the queue.
+                removed = pending.removeLastOccurrence(task);
+            }
+
+            logRejected(e);
+
+            if (removed)
+            {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tasks waiting for their turn in this lane.
+     */
+    public synchronized int getQueueDepth()
+    {
+        return pending.size();
+    }
+
+    /**
+     * Logs the rejection of the lane by the underlying executor.
+     *
+     * @param e the exception thrown by the underlying executor.
+     */
+    private void logRejected(RejectedExecutionException e)
+    {
+        logger.error(
+            "The executor has rejected the lane, " + getQueueDepth()
+                + " task(s) will wait for the next submission", e);
+    }
+
+    /**
+     * Runs one of the pending tasks and then either hands over the slot to
+     * the next task (by re-submitting itself to the pool, so that other lanes
+     * get their turn as well) or releases it.
+     */
+    private class Worker
+        implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            Runnable task;
+            synchronized (LaneExecutor.this)
+            {
+                task = pending.poll();
+                if (task == null)
+                {
+                    running--;
+                    return;
+                }
+            }
+
+            try
+            {
+                task.run();
+            }
+            catch (Throwable t)
+            {
+                logger.error("Task failed: " + task, t);
+            }
+            finally
+            {
+                boolean hasMore;
+                synchronized (LaneExecutor.this)
+                {
+                    hasMore = !pending.isEmpty();
+                    if (!hasMore)
+                    {
+                        running--;
+                    }
+                }
+                if (hasMore)
+                {
+                    try
+                    {
+                        executor.execute(new Worker());
+                    }
+                    catch (RejectedExecutionException e)
+                    {
+                        synchronized (LaneExecutor.this)
+                        {
+                            running--;
+                        }
+                        logRejected(e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.util;
+
+import org.jitsi.jicofo.*;
+import org.jitsi.protocol.xmpp.*;
+import org.jitsi.service.configuration.*;
+import org.jitsi.util.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Dispatches the packets received on a connection to the handlers registered
+ * for the JIDs of the senders. It replaces the packet listeners which every
+ * conference used to register on the shared connection with it's own thread,
+ * which made Smack run the filters of all conferences against every packet.
+ *
+ * There is only one packet listener registered on the connection. A packet is
+ * routed by looking up the handlers registered for the full and the bare JID
+ * of it's sender (eg. the MUC room JID for the packets sent by conference
+ * participants, or the full JID of a Jibri instance), so the cost does not
+ * depend on the number of conferences. Only the packets of the type handled by
+ * any of the matching handlers are taken from the connection, so the presence
+ * and the Jingle traffic of a room do not go through the lanes. The filters of
+ * the matching handlers are evaluated on a small, fixed number of lanes shared
+ * by all handlers (see {@link QueuePacketProcessor}). The packets sent from
+ * the same bare JID are processed by one lane in the order in which they have
+ * been received. The packets which do not fit in the queue of a lane are
+ * dropped without an error response, as the IQ could be responded to by
+ * a listener which is not registered in the dispatcher.
+ *
+ * The handlers are registered with the static methods. The dispatcher of
+ * a connection is started when the first handler is registered and stopped
+ * when the last one goes away.
+ *
+ * @author agent
+ */
+public class PacketDispatcher
+    implements PacketFilter,
+               PacketListener
+{
+    /**
+     * The logger used by this class.
+     */
+    private final static Logger logger
+        = Logger.getLogger(PacketDispatcher.class);
+
+    /**
+     * The name of the property which specifies the number of lanes on which
+     * the dispatched packets are processed. Defaults to the number of
+     * available processors.
+     */
+    public static final String PACKET_DISPATCHER_LANES_PNAME
+        = "org.jitsi.jicofo.PACKET_DISPATCHER_LANES";
+
+    /**
+     * The name of the property which specifies how many packets can be waiting
+     * in the queue of a single lane.
+     */
+    public static final String PACKET_DISPATCHER_QUEUE_CAPACITY_PNAME
+        = "org.jitsi.jicofo.PACKET_DISPATCHER_QUEUE_CAPACITY";
+
+    /**
+     * The default value for {@link #PACKET_DISPATCHER_QUEUE_CAPACITY_PNAME}.
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /**
+     * The dispatchers mapped to the connections on which they're running. Also
+     * used to synchronize the registration of the handlers.
+     */
+    private static final Map<XmppConnection, PacketDispatcher> dispatchers
+        = new IdentityHashMap<>();
+
+    /**
+     * Registers the handler of the packets sent from given JID.
+     *
+     * @param connection the connection on which the packets are received.
+     * @param jid the JID of the sender. If it's a bare JID the handler will
+     * get the packets from all of it's resources (eg. the packets from all
+     * occupants of a MUC room).
+     * @param packetType the class of the packets handled by the listener. It
+     * is checked on Smack's packet reader thread, so that the packets of
+     * the other types are not queued.
+     * @param listener the listener which will process the packets.
+     * @param filter the filter which further limits the packets passed to
+     * the <tt>listener</tt>. It is called on the lane on which the packet is
+     * processed.
+     */
+    public static void addHandler(XmppConnection            connection,
+                                  String                    jid,
+                                  Class<? extends Packet>   packetType,
+                                  PacketListener            listener,
+                                  PacketFilter              filter)
+    {
+        Objects.requireNonNull(connection, "connection");
+        Objects.requireNonNull(jid, "jid");
+
+        Handler handler
+            = new Handler(
+                    Objects.requireNonNull(packetType, "packetType"),
+                    Objects.requireNonNull(listener, "listener"),
+                    Objects.requireNonNull(filter, "filter"));
+
+        synchronized (dispatchers)
+        {
+            PacketDispatcher dispatcher = dispatchers.get(connection);
+            if (dispatcher == null)
+            {
+                dispatcher = new PacketDispatcher(connection);
+                dispatchers.put(connection, dispatcher);
+                dispatcher.start();
+            }
+
+            dispatcher.add(toKey(jid), handler);
+        }
+    }
+
+    /**
+     * Removes the handler registered with {@link #addHandler}.
+     *
+     * @param connection the connection for which the handler was registered.
+     * @param jid the JID for which the handler was registered.
+     * @param listener the listener of the handler.
+     */
+    public static void removeHandler(XmppConnection    connection,
+                                     String            jid,
+                                     PacketListener    listener)
+    {
+        synchronized (dispatchers)
+        {
+            PacketDispatcher dispatcher = dispatchers.get(connection);
+
+            if (dispatcher != null
+                    && dispatcher.remove(toKey(jid), listener)
+                    && dispatcher.handlerCount == 0)
+            {
+                dispatchers.remove(connection);
+                dispatcher.stop();
+            }
+        }
+    }
+
+    /**
+     * Returns the key under which the handlers of given JID are stored. Bare
+     * JIDs are case insensitive.
+     */
+    private static String toKey(String jid)
+    {
+        return jid.indexOf('/') == -1 ? jid.toLowerCase() : jid;
+    }
+
+    /**
+     * The connection on which the packets are received.
+     */
+    private final XmppConnection connection;
+
+    /**
+     * The handlers mapped to the keys of the JIDs.
+     */
+    private final ConcurrentMap<String, List<Handler>> handlers
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The number of handlers registered in {@link #handlers}.
+     */
+    private int handlerCount;
+
+    /**
+     * The lanes on which the packets are processed.
+     */
+    private QueuePacketProcessor packetProcessor;
+
+    /**
+     * Creates new <tt>PacketDispatcher</tt>.
+     *
+     * @param connection the connection on which the packets are received.
+     */
+    private PacketDispatcher(XmppConnection connection)
+    {
+        this.connection = connection;
+    }
+
+    /**
+     * Registers the packet listener on the connection.
+     */
+    private void start()
+    {
+        int lanes = Runtime.getRuntime().availableProcessors();
+        int capacity = DEFAULT_QUEUE_CAPACITY;
+
+        ConfigurationService config
+            = FocusBundleActivator.bundleContext != null
+                ? FocusBundleActivator.getConfigService() : null;
+        if (config != null)
+        {
+            lanes = config.getInt(PACKET_DISPATCHER_LANES_PNAME, lanes);
+            capacity
+                = config.getInt(
+                        PACKET_DISPATCHER_QUEUE_CAPACITY_PNAME, capacity);
+        }
+
+        logger.info(
+            "Dispatching packets on " + lanes + " lanes, queue capacity: "
+                + capacity);
+
+        packetProcessor
+            = new QueuePacketProcessor(
+                    connection, this, this,
+                    Math.max(1, lanes),
+                    Math.max(1, capacity),
+                    QueuePacketProcessor.OverflowPolicy.DROP_NEWEST,
+                    false);
+        packetProcessor.start();
+    }
+
+    /**
+     * Unregisters the packet listener from the connection.
+     */
+    private void stop()
+    {
+        packetProcessor.stop();
+        packetProcessor = null;
+    }
+
+    /**
+     * Adds the handler for given key.
+     */
+    private void add(String key, Handler handler)
+    {
+        List<Handler> keyHandlers = handlers.get(key);
+        if (keyHandlers == null)
+        {
+            keyHandlers = new CopyOnWriteArrayList<>();
+            handlers.put(key, keyHandlers);
+        }
+
+        keyHandlers.add(handler);
+        handlerCount++;
+    }
+
+    /**
+     * Removes the handler with given listener for given key.
+     *
+     * @return <tt>true</tt> if the handler has been found and removed.
+     */
+    private boolean remove(String key, PacketListener listener)
+    {
+        List<Handler> keyHandlers = handlers.get(key);
+        if (keyHandlers == null)
+        {
+            return false;
+        }
+
+        for (Handler handler : keyHandlers)
+        {
+            if (handler.listener == listener)
+            {
+                keyHandlers.remove(handler);
+                handlerCount--;
+
+                if (keyHandlers.isEmpty())
+                {
+                    handlers.remove(key);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Accepts the packets sent from the JIDs for which there are any handlers
+     * of the packet's type registered. Called on Smack's packet reader thread.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(Packet packet)
+    {
+        String from = packet.getFrom();
+
+        return from != null
+            && (isHandled(packet, handlers.get(from))
+                    || isHandled(packet, handlers.get(toBareKey(from))));
+    }
+
+    /**
+     * Checks if any of given handlers handles the packets of the type of
+     * given packet.
+     */
+    private static boolean isHandled(Packet packet, List<Handler> keyHandlers)
+    {
+        if (keyHandlers != null)
+        {
+            for (Handler handler : keyHandlers)
+            {
+                if (handler.packetType.isInstance(packet))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Passes the packet to the handlers which accept it. Called on the lane
+     * assigned to the bare JID of the sender.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void processPacket(Packet packet)
+    {
+        String from = packet.getFrom();
+        if (from == null)
+        {
+            return;
+        }
+
+        dispatch(packet, handlers.get(from));
+
+        String bareKey = toBareKey(from);
+        if (!bareKey.equals(from))
+        {
+            dispatch(packet, handlers.get(bareKey));
+        }
+    }
+
+    /**
+     * Passes the packet to these of given handlers which accept it.
+     */
+    private void dispatch(Packet packet, List<Handler> keyHandlers)
+    {
+        if (keyHandlers == null)
+        {
+            return;
+        }
+
+        for (Handler handler : keyHandlers)
+        {
+            try
+            {
+                if (handler.packetType.isInstance(packet)
+                        && handler.filter.accept(packet))
+                {
+                    handler.listener.processPacket(packet);
+                }
+            }
+            catch (Throwable t)
+            {
+                logger.error(
+                    "Failed to process packet: " + packet.toXML(), t);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the bare JID of given JID.
+     */
+    private static String toBareKey(String jid)
+    {
+        return org.jivesoftware.smack.util.StringUtils
+            .parseBareAddress(jid).toLowerCase();
+    }
+
+    /**
+     * A listener registered together with it's packet type and filter.
+     */
+    private static class Handler
+    {
+        final Class<? extends Packet> packetType;
+
+        final PacketListener listener;
+
+        final PacketFilter filter;
+
+        Handler(Class<? extends Packet>   packetType,
+                PacketListener            listener,
+                PacketFilter              filter)
+        {
+            this.packetType = packetType;
+            this.listener = listener;
+            this.filter = filter;
+        }
+    }
+}
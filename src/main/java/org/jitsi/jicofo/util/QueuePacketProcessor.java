@@ -18,6 +18,7 @@
 package org.jitsi.jicofo.util;
 
 import org.jitsi.protocol.xmpp.*;
+import org.jitsi.util.*;
 
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
@@ -25,20 +26,78 @@
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Process incoming xmpp packets, queues them and process them by passing them
  * to the specified packed listener in a single thread.
  *
+ * In the partitioned mode the packets are distributed between multiple
+ * single threaded lanes by the bare JID of the sender (which is the room JID
+ * for the packets sent by conference participants). The packets of one room
+ * are processed in the order in which they were received, but a slow packet
+ * in one room does not hold the packets of the rooms assigned to other lanes.
+ * Each lane has a bounded queue and the packets which do not fit are handled
+ * according to the {@link OverflowPolicy}.
+ *
  * @author Damian Minkov
  * @author Pawel Domas
  */
 public class QueuePacketProcessor
 {
     /**
-     * The single thread executor that will process packets.
+     * The logger used by this class.
+     */
+    private final static Logger logger
+        = Logger.getLogger(QueuePacketProcessor.class);
+
+    /**
+     * Tells what happens with the packet which arrives when the queue of it's
+     * lane is full. If {@link #errorOnDrop} is set, the IQ requests dropped by
+     * any of the policies are responded to with 'resource-constraint' error,
+     * so that the sender does not wait for the timeout.
+     */
+    public enum OverflowPolicy
+    {
+        /**
+         * The packet which has just arrived is dropped.
+         */
+        DROP_NEWEST,
+
+        /**
+         * The packet which has been waiting in the queue for the longest time
+         * is dropped to make room for the new one.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * The lanes that will process packets.
+     */
+    private volatile Lane[] lanes;
+
+    /**
+     * The number of lanes.
+     */
+    private final int laneCount;
+
+    /**
+     * The maximum number of packets waiting in the queue of a single lane.
+     */
+    private final int laneCapacity;
+
+    /**
+     * What to do with the packets which do not fit in the queue.
+     */
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * Whether the IQ requests which do not fit in the queue are responded to
+     * with an error. It must be set only if {@link #packetListener} is
+     * the only one which replies to the IQs accepted by {@link #packetFilter},
+     * otherwise the sender could get two responses.
      */
-    private ExecutorService executor;
+    private final boolean errorOnDrop;
 
     /**
      * The packet filter which will be used to filter packets to be processed by
@@ -76,11 +135,56 @@ public QueuePacketProcessor(
             PacketListener    packetListener,
             PacketFilter      packetFilter)
     {
+        this(connection, packetListener, packetFilter,
+             1, Integer.MAX_VALUE, OverflowPolicy.DROP_NEWEST, false);
+    }
+
+    /**
+     * Constructs QueuePacketProcessor which runs in the partitioned mode.
+     * @param connection the connection instance to which packet listener will
+     * be registered.
+     * @param packetListener target packet processor.
+     * @param packetFilter packet filter used to limit packets acceptable by
+     * the packet listener.
+     * @param laneCount the number of single threaded lanes.
+     * @param laneCapacity the maximum number of packets waiting in the queue
+     * of a single lane.
+     * @param overflowPolicy what to do with the packets which do not fit in
+     * the queue.
+     * @param errorOnDrop whether the IQ requests which do not fit in the queue
+     * should be responded to with 'resource-constraint' error. Must not be
+     * set if the IQs accepted by the <tt>packetFilter</tt> may be responded
+     * to by someone else than the <tt>packetListener</tt>.
+     */
+    public QueuePacketProcessor(
+            XmppConnection    connection,
+            PacketListener    packetListener,
+            PacketFilter      packetFilter,
+            int               laneCount,
+            int               laneCapacity,
+            OverflowPolicy    overflowPolicy,
+            boolean           errorOnDrop)
+    {
+        if (laneCount < 1)
+        {
+            throw new IllegalArgumentException("laneCount: " + laneCount);
+        }
+        if (laneCapacity < 1)
+        {
+            throw new IllegalArgumentException(
+                    "laneCapacity: " + laneCapacity);
+        }
+
         this.packetListener
             = Objects.requireNonNull(packetListener, "packetListener");
         this.packetFilter
             = Objects.requireNonNull(packetFilter, "packetFilter");
         this.connection = Objects.requireNonNull(connection, "connection");
+        this.overflowPolicy
+            = Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+        this.laneCount = laneCount;
+        this.laneCapacity = laneCapacity;
+        this.errorOnDrop = errorOnDrop;
     }
 
     /**
@@ -89,13 +193,17 @@ public QueuePacketProcessor(
      */
     public void start()
     {
-        if (executor != null)
+        if (lanes != null)
         {
             throw new IllegalStateException("already started");
         }
 
-        final ExecutorService theExecutorService
-            = this.executor = Executors.newSingleThreadExecutor();
+        final Lane[] theLanes = new Lane[laneCount];
+        for (int i = 0; i < theLanes.length; i++)
+        {
+            theLanes[i] = new Lane(theLanes);
+        }
+        this.lanes = theLanes;
 
         this._packetListenerWrap = new PacketListener()
         {
@@ -103,19 +211,8 @@ public void start()
             public void processPacket(final Packet packet)
             {
                 // add the packet to the queue of tasks to process
-                theExecutorService.submit(new Runnable()
-                {
-                    @Override
-                    public void run()
-                    {
-                        // If this instance was stopped executor will change
-                        if (QueuePacketProcessor.this.executor
-                                == theExecutorService)
-                        {
-                            packetListener.processPacket(packet);
-                        }
-                    }
-                });
+                theLanes[getLaneIndex(packet, theLanes.length)]
+                    .enqueue(packet);
             }
         };
 
@@ -127,12 +224,275 @@ public void run()
      */
     public void stop()
     {
-        if (executor == null)
+        Lane[] theLanes = this.lanes;
+        if (theLanes == null)
         {
             throw new IllegalStateException("already stopped");
         }
         this.connection.removePacketHandler(_packetListenerWrap);
-        this.executor.shutdown();
-        this.executor = null;
+        this.lanes = null;
+
+        for (Lane lane : theLanes)
+        {
+            lane.executor.shutdown();
+        }
+    }
+
+    /**
+     * Selects the lane for given packet.
+     *
+     * @param packet the packet to be processed.
+     * @param laneCount the number of lanes.
+     *
+     * @return the index of the lane.
+     */
+    private int getLaneIndex(Packet packet, int laneCount)
+    {
+        if (laneCount == 1)
+        {
+            return 0;
+        }
+
+        String key = getPartitionKey(packet);
+
+        return key == null
+            ? 0 : (key.hashCode() & Integer.MAX_VALUE) % laneCount;
+    }
+
+    /**
+     * Returns the key used to distribute packets between the lanes. Packets
+     * with the same key are always processed by the same lane. The default
+     * implementation returns the bare JID of the sender.
+     *
+     * @param packet the packet to be processed.
+     *
+     * @return the partition key or <tt>null</tt> if the packet has no sender.
+     */
+    protected String getPartitionKey(Packet packet)
+    {
+        String from = packet.getFrom();
+
+        return from == null
+            ? null
+            : org.jivesoftware.smack.util.StringUtils.parseBareAddress(from);
+    }
+
+    /**
+     * Logs the packet which has been dropped and responds with an error if
+     * it's an IQ request and {@link #errorOnDrop} is set.
+     *
+     * @param packet the packet which has been dropped.
+     */
+    private void onPacketDropped(Packet packet)
+    {
+        logger.warn(
+            "Packet processing queue full - dropping: " + packet.getPacketID()
+                + " from: " + packet.getFrom());
+
+        if (errorOnDrop && packet instanceof IQ)
+        {
+            IQ iq = (IQ) packet;
+            if (IQ.Type.GET.equals(iq.getType())
+                || IQ.Type.SET.equals(iq.getType()))
+            {
+                connection.sendPacket(
+                        IQ.createErrorResponse(
+                                iq,
+                                new XMPPError(
+                                    XMPPError.Condition.resource_constraint)));
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot of the statistics of this processor.
+     *
+     * @return a map of the statistic names to their values. The map is empty
+     * if this instance is not running.
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Lane[] theLanes = this.lanes;
+
+        if (theLanes == null)
+        {
+            return stats;
+        }
+
+        int queueDepth = 0;
+        int maxLaneQueueDepth = 0;
+        long processed = 0;
+        long dropped = 0;
+        long totalQueueNanos = 0;
+        long maxQueueNanos = 0;
+
+        for (Lane lane : theLanes)
+        {
+            int laneDepth = lane.executor.getQueue().size();
+
+            queueDepth += laneDepth;
+            maxLaneQueueDepth = Math.max(maxLaneQueueDepth, laneDepth);
+            processed += lane.processedPackets.get();
+            dropped += lane.droppedPackets.get();
+            totalQueueNanos += lane.totalQueueNanos.get();
+            maxQueueNanos = Math.max(maxQueueNanos, lane.maxQueueNanos.get());
+        }
+
+        stats.put("lanes", theLanes.length);
+        stats.put("lane_capacity", laneCapacity);
+        stats.put("queue_depth", queueDepth);
+        stats.put("max_lane_queue_depth", maxLaneQueueDepth);
+        stats.put("processed_packets", processed);
+        stats.put("dropped_packets", dropped);
+        stats.put(
+                "average_queue_time_ms",
+                processed == 0
+                    ? 0d : totalQueueNanos / (double) processed / 1000000d);
+        stats.put("max_queue_time_ms", maxQueueNanos / 1000000d);
+
+        return stats;
+    }
+
+    /**
+     * A single threaded lane with a bounded queue.
+     */
+    private class Lane
+        implements RejectedExecutionHandler
+    {
+        /**
+         * The lanes of the processor instance to which this lane belongs.
+         * Packets are not processed anymore once the processor is stopped.
+         */
+        private final Lane[] owner;
+
+        /**
+         * The single thread executor that will process packets.
+         */
+        private final ThreadPoolExecutor executor;
+
+        /**
+         * The number of packets processed by this lane.
+         */
+        private final AtomicLong processedPackets = new AtomicLong();
+
+        /**
+         * The number of packets dropped because of the queue overflow.
+         */
+        private final AtomicLong droppedPackets = new AtomicLong();
+
+        /**
+         * The sum of the times the processed packets spent in the queue in
+         * nanoseconds.
+         */
+        private final AtomicLong totalQueueNanos = new AtomicLong();
+
+        /**
+         * The longest time a packet spent in the queue in nanoseconds.
+         */
+        private final AtomicLong maxQueueNanos = new AtomicLong();
+
+        Lane(Lane[] owner)
+        {
+            this.owner = owner;
+            this.executor
+                = new ThreadPoolExecutor(
+                        1, 1, 0L, TimeUnit.MILLISECONDS,
+                        laneCapacity == Integer.MAX_VALUE
+                            ? new LinkedBlockingQueue<Runnable>()
+                            : new ArrayBlockingQueue<Runnable>(laneCapacity),
+                        new DaemonThreadFactory("packet-processor"),
+                        this);
+        }
+
+        /**
+         * Adds the packet to the queue of this lane.
+         *
+         * @param packet the packet to be processed.
+         */
+        void enqueue(Packet packet)
+        {
+            executor.execute(new PacketTask(packet));
+        }
+
+        /**
+         * Applies the {@link #overflowPolicy} when the queue is full.
+         * <p>
+         * {@inheritDoc}
+         */
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+        {
+            if (executor.isShutdown())
+            {
+                return;
+            }
+
+            PacketTask dropped = (PacketTask) r;
+
+            if (overflowPolicy == OverflowPolicy.DROP_OLDEST)
+            {
+                PacketTask oldest = (PacketTask) executor.getQueue().poll();
+                if (oldest != null)
+                {
+                    dropped = oldest;
+                    executor.execute(r);
+                }
+            }
+
+            droppedPackets.incrementAndGet();
+
+            onPacketDropped(dropped.packet);
+        }
+
+        /**
+         * The task which passes the packet to the listener and measures
+         * the time it has spent in the queue.
+         */
+        private class PacketTask
+            implements Runnable
+        {
+            private final Packet packet;
+
+            private final long enqueuedNanos = System.nanoTime();
+
+            PacketTask(Packet packet)
+            {
+                this.packet = packet;
+            }
+
+            @Override
+            public void run()
+            {
+                // If this instance was stopped the lanes will change
+                if (QueuePacketProcessor.this.lanes != owner)
+                {
+                    return;
+                }
+
+                long queueNanos = System.nanoTime() - enqueuedNanos;
+
+                processedPackets.incrementAndGet();
+                totalQueueNanos.addAndGet(queueNanos);
+
+                long max;
+                while (queueNanos > (max = maxQueueNanos.get())
+                        && !maxQueueNanos.compareAndSet(max, queueNanos))
+                {
+                    // Retry until we either set the new max or someone else
+                    // sets a greater value
+                }
+
+                try
+                {
+                    packetListener.processPacket(packet);
+                }
+                catch (Throwable t)
+                {
+                    logger.error(
+                        "Failed to process packet: " + packet.toXML(), t);
+                }
+            }
+        }
     }
 }
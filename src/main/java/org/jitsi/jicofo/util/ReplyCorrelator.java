@@ -0,0 +1,416 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.util;
+
+import org.jitsi.util.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Matches the responses received on an XMPP connection with the requests
+ * sent on it. A single instance is registered as a packet listener on
+ * the connection and it finds the request of every packet with a hash lookup
+ * by the packet ID, instead of having a <tt>PacketCollector</tt> with
+ * a <tt>PacketIDFilter</tt> (evaluated against every packet received) for
+ * each request in progress.
+ *
+ * The responses are delivered on the packet listener thread of
+ * the connection. A thread which waits for the response while executing
+ * a packet listener would never get it, so the blocking requests still need
+ * a <tt>PacketCollector</tt>.
+ *
+ * The timeouts are tracked on a timing wheel advanced by a single task every
+ * {@link #tickMillis}. The task is scheduled only while there are requests
+ * waiting for a response. A request which times out is completed with
+ * <tt>null</tt>, just like <tt>PacketCollector#nextResult(long)</tt>.
+ * By default the wheel runs on a thread of it's own, so that the timeouts do
+ * not depend on a pool which can be saturated by the threads waiting for
+ * the responses.
+ *
+ * @author agent
+ */
+public class ReplyCorrelator
+    implements PacketFilter, PacketListener
+{
+    /**
+     * The logger used by this class.
+     */
+    private final static Logger logger
+        = Logger.getLogger(ReplyCorrelator.class);
+
+    /**
+     * The default resolution of the timeouts in milliseconds.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 100L;
+
+    /**
+     * The number of slots on the timing wheel. The timeouts longer than
+     * a full turn of the wheel stay in their slot for more than one turn.
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * The requests waiting for a response mapped by the packet ID.
+     */
+    private final ConcurrentMap<String, PendingReply> pendingReplies
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The slots of the timing wheel. Guarded by the lock on the array.
+     */
+    private final List<List<PendingReply>> wheel;
+
+    /**
+     * The executor which runs {@link #tickTask}.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The time in milliseconds between two ticks of the wheel.
+     */
+    private final long tickMillis;
+
+    /**
+     * The task which advances the wheel.
+     */
+    private final Runnable tickTask = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                tick();
+            }
+            catch (Exception e)
+            {
+                logger.error("Failed to expire requests", e);
+            }
+        }
+    };
+
+    /**
+     * The number of ticks done so far. Guarded by the lock on {@link #wheel}.
+     */
+    private long tickCount;
+
+    /**
+     * The number of entries on the wheel. Guarded by the lock on
+     * {@link #wheel}.
+     */
+    private int wheelEntries;
+
+    /**
+     * The scheduled {@link #tickTask} or <tt>null</tt> if the wheel is
+     * empty. Guarded by the lock on {@link #wheel}.
+     */
+    private ScheduledFuture<?> tickFuture;
+
+    /**
+     * Creates new <tt>ReplyCorrelator</tt> with the default resolution of
+     * the timeouts, which advances the timing wheel on a daemon thread of
+     * it's own. The thread terminates when there are no requests waiting
+     * for a while.
+     */
+    public ReplyCorrelator()
+    {
+        this(createTimeoutExecutor(), DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * Creates new <tt>ReplyCorrelator</tt> with the default resolution of
+     * the timeouts.
+     *
+     * @param executor the executor which will advance the timing wheel.
+     */
+    public ReplyCorrelator(ScheduledExecutorService executor)
+    {
+        this(executor, DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * Creates new <tt>ReplyCorrelator</tt>.
+     *
+     * @param executor the executor which will advance the timing wheel.
+     * @param tickMillis the resolution of the timeouts in milliseconds.
+     */
+    public ReplyCorrelator(ScheduledExecutorService executor, long tickMillis)
+    {
+        if (tickMillis <= 0)
+        {
+            throw new IllegalArgumentException("tickMillis: " + tickMillis);
+        }
+
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.tickMillis = tickMillis;
+
+        wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++)
+        {
+            wheel.add(new ArrayList<PendingReply>());
+        }
+    }
+
+    /**
+     * Creates the single thread executor used by default to advance the timing
+     * wheel.
+     */
+    private static ScheduledExecutorService createTimeoutExecutor()
+    {
+        ScheduledThreadPoolExecutor executor
+            = new ScheduledThreadPoolExecutor(
+                    1, new DaemonThreadFactory("reply-timeouts"));
+
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Registers a request which is about to be sent. Must be called before
+     * the request is sent, so that the response will not be missed.
+     *
+     * @param packetId the ID of the request packet.
+     * @param timeout how long to wait for the response in milliseconds.
+     *
+     * @return the future which will be completed with the response or with
+     * <tt>null</tt> on timeout. If there is a request with the same ID
+     * waiting already, the future is completed together with the one of that
+     * request, just like two <tt>PacketCollector</tt>s for the same ID would
+     * both receive the response.
+     */
+    public SettableFuture<Packet> register(String packetId, long timeout)
+    {
+        Objects.requireNonNull(packetId, "packetId");
+
+        final SettableFuture<Packet> reply = new SettableFuture<>();
+        PendingReply pending = new PendingReply(packetId, reply);
+        PendingReply existing = pendingReplies.putIfAbsent(packetId, pending);
+
+        if (existing != null)
+        {
+            logger.warn("Duplicated packet ID: " + packetId);
+
+            existing.reply.addCallback(new SettableFuture.Callback<Packet>()
+            {
+                @Override
+                public void onSuccess(Packet response)
+                {
+                    reply.set(response);
+                }
+
+                @Override
+                public void onFailure(Throwable error)
+                {
+                    reply.setException(error);
+                }
+            });
+            return reply;
+        }
+
+        // One tick more, so that the request never expires early when
+        // the next tick is due sooner than in tickMillis
+        long ticks = Math.max(0L, timeout) / tickMillis + 1;
+
+        synchronized (wheel)
+        {
+            pending.rounds = (ticks - 1) / WHEEL_SIZE;
+
+            wheel.get(slot(tickCount + ticks)).add(pending);
+
+            wheelEntries++;
+
+            if (tickFuture == null)
+            {
+                tickFuture
+                    = executor.scheduleAtFixedRate(
+                            tickTask, tickMillis, tickMillis,
+                            TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return reply;
+    }
+
+    /**
+     * Stops waiting for the response to given request, eg. when it could not
+     * be sent. The future returned by {@link #register(String, long)} is not
+     * completed by this method.
+     *
+     * @param packetId the ID of the request packet.
+     */
+    public void unregister(String packetId)
+    {
+        // The entry is dropped from the wheel on the next visit of it's slot
+        pendingReplies.remove(packetId);
+    }
+
+    /**
+     * Returns the number of requests waiting for a response.
+     */
+    public int getPendingCount()
+    {
+        return pendingReplies.size();
+    }
+
+    /**
+     * Maps the tick number to the slot of the wheel.
+     */
+    private static int slot(long tick)
+    {
+        return (int) (tick % WHEEL_SIZE);
+    }
+
+    /**
+     * Advances the wheel by one slot and completes the requests which have
+     * timed out.
+     */
+    private void tick()
+    {
+        List<PendingReply> expired = null;
+
+        synchronized (wheel)
+        {
+            tickCount++;
+
+            Iterator<PendingReply> entries
+                = wheel.get(slot(tickCount)).iterator();
+
+            while (entries.hasNext())
+            {
+                PendingReply pending = entries.next();
+
+                if (pendingReplies.get(pending.packetId) != pending)
+                {
+                    // Replied or unregistered
+                    entries.remove();
+                    wheelEntries--;
+                }
+                else if (pending.rounds > 0)
+                {
+                    pending.rounds--;
+                }
+                else
+                {
+                    entries.remove();
+                    wheelEntries--;
+
+                    if (expired == null)
+                    {
+                        expired = new LinkedList<>();
+                    }
+                    expired.add(pending);
+                }
+            }
+
+            if (wheelEntries == 0 && tickFuture != null)
+            {
+                tickFuture.cancel(false);
+                tickFuture = null;
+            }
+        }
+
+        if (expired != null)
+        {
+            for (PendingReply pending : expired)
+            {
+                if (pendingReplies.remove(pending.packetId, pending))
+                {
+                    // null means timeout just like with PacketCollector
+                    pending.reply.set(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts the packets which are responses to the registered requests.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(Packet packet)
+    {
+        String packetId = packet.getPacketID();
+
+        if (packetId == null || !pendingReplies.containsKey(packetId))
+        {
+            return false;
+        }
+        if (packet instanceof IQ)
+        {
+            IQ.Type type = ((IQ) packet).getType();
+
+            // A request sent to us with the same ID is not the response
+            return IQ.Type.RESULT.equals(type) || IQ.Type.ERROR.equals(type);
+        }
+        return true;
+    }
+
+    /**
+     * Completes the request with the response.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public void processPacket(Packet packet)
+    {
+        PendingReply pending = pendingReplies.remove(packet.getPacketID());
+
+        // Can be null if the request has just timed out
+        if (pending != null)
+        {
+            pending.reply.set(packet);
+        }
+    }
+
+    /**
+     * The request waiting for a response.
+     */
+    private static class PendingReply
+    {
+        /**
+         * The ID of the request packet.
+         */
+        private final String packetId;
+
+        /**
+         * The future to be completed with the response.
+         */
+        private final SettableFuture<Packet> reply;
+
+        /**
+         * How many more turns of the wheel are left before the request times
+         * out. Guarded by the lock on the wheel.
+         */
+        private long rounds;
+
+        PendingReply(String packetId, SettableFuture<Packet> reply)
+        {
+            this.packetId = packetId;
+            this.reply = reply;
+        }
+    }
+}
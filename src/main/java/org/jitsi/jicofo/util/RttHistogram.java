@@ -0,0 +1,124 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts round trip times in fixed buckets. The bucket bounds are inclusive
+ * upper limits given in milliseconds and the last bucket counts everything
+ * above the greatest bound. The samples are recorded without locking.
+ *
+ * @author agent
+ */
+public class RttHistogram
+{
+    /**
+     * The upper bounds of the buckets in milliseconds.
+     */
+    private static final long[] BUCKET_BOUNDS
+        = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000 };
+
+    /**
+     * The sample counts of the buckets. The last one is for the samples
+     * greater than the last bound.
+     */
+    private final AtomicLongArray buckets
+        = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+    /**
+     * The number of samples recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of all samples in milliseconds.
+     */
+    private final AtomicLong totalMillis = new AtomicLong();
+
+    /**
+     * The greatest sample in milliseconds.
+     */
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    /**
+     * Records round trip time.
+     *
+     * @param rttMillis the round trip time in milliseconds.
+     */
+    public void record(long rttMillis)
+    {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length
+                && rttMillis > BUCKET_BOUNDS[bucket])
+        {
+            bucket++;
+        }
+
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalMillis.addAndGet(rttMillis);
+
+        long max;
+        while (rttMillis > (max = maxMillis.get())
+                && !maxMillis.compareAndSet(max, rttMillis))
+        {
+            // Retry until we either set the new max or someone else sets
+            // a greater value
+        }
+    }
+
+    /**
+     * Returns the number of samples recorded.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Returns the snapshot of the histogram. The buckets are exported under
+     * "le_&lt;bound&gt;" keys (counting the samples less than or equal to
+     * the bound, but greater than the previous one) and "gt_&lt;bound&gt;" for
+     * the last one.
+     *
+     * @return a map of the statistic names to their values.
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long samples = count.get();
+
+        stats.put("count", samples);
+        stats.put(
+                "average_ms",
+                samples == 0 ? 0d : totalMillis.get() / (double) samples);
+        stats.put("max_ms", maxMillis.get());
+
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++)
+        {
+            stats.put("le_" + BUCKET_BOUNDS[i], buckets.get(i));
+        }
+        stats.put(
+                "gt_" + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1],
+                buckets.get(BUCKET_BOUNDS.length));
+
+        return stats;
+    }
+}
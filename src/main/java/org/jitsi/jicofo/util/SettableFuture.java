@@ -0,0 +1,309 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.util;
+
+import org.jitsi.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A <tt>Future</tt> which is completed explicitly by the producer of
+ * the result and notifies the registered {@link Callback}s once that happens,
+ * so that the consumer does not have to block any thread while waiting.
+ *
+ * Callbacks registered without an executor are executed by the thread which
+ * completes the future (or by the registering thread if the future is done
+ * already), so they must not block. Anything that takes time should be
+ * passed an executor.
+ *
+ * @param <V> the type of the result.
+ *
+ * @author agent
+ */
+public class SettableFuture<V>
+    implements Future<V>
+{
+    /**
+     * The logger used by this class.
+     */
+    private final static Logger logger = Logger.getLogger(SettableFuture.class);
+
+    /**
+     * The result or <tt>null</tt> if the future has failed.
+     */
+    private V result;
+
+    /**
+     * The failure cause or <tt>null</tt> if the future has succeeded.
+     */
+    private Throwable error;
+
+    /**
+     * The listeners to be notified on completion. Set to <tt>null</tt> when
+     * the future is completed.
+     */
+    private List<Runnable> listeners = new LinkedList<>();
+
+    /**
+     * Completes this future with given result.
+     *
+     * @param result the result which can be <tt>null</tt>.
+     *
+     * @return <tt>true</tt> if the future has been completed or
+     * <tt>false</tt> if it was done already.
+     */
+    public boolean set(V result)
+    {
+        return complete(result, null);
+    }
+
+    /**
+     * Completes this future with a failure.
+     *
+     * @param error the cause of the failure.
+     *
+     * @return <tt>true</tt> if the future has been completed or
+     * <tt>false</tt> if it was done already.
+     */
+    public boolean setException(Throwable error)
+    {
+        return complete(null, Objects.requireNonNull(error, "error"));
+    }
+
+    /**
+     * Fails this future with <tt>CancellationException</tt>. The operation
+     * which is to produce the result is not interrupted, but it's result will
+     * be ignored.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        return complete(null, new CancellationException());
+    }
+
+    /**
+     * Stores the outcome and runs the listeners.
+     */
+    private boolean complete(V result, Throwable error)
+    {
+        List<Runnable> toNotify;
+
+        synchronized (this)
+        {
+            if (listeners == null)
+            {
+                return false;
+            }
+
+            this.result = result;
+            this.error = error;
+
+            toNotify = listeners;
+            listeners = null;
+
+            notifyAll();
+        }
+
+        for (Runnable listener : toNotify)
+        {
+            runListener(listener);
+        }
+        return true;
+    }
+
+    /**
+     * Runs the listener and logs the exception thrown by it, so that it will
+     * not prevent other listeners from being notified.
+     */
+    private static void runListener(Runnable listener)
+    {
+        try
+        {
+            listener.run();
+        }
+        catch (Throwable t)
+        {
+            logger.error("Future callback has failed", t);
+        }
+    }
+
+    /**
+     * Registers a callback which will be executed by the thread which
+     * completes this future. If the future is done already the callback is
+     * executed immediately by the calling thread.
+     *
+     * @param callback the callback to be notified.
+     */
+    public void addCallback(Callback<? super V> callback)
+    {
+        addCallback(callback, null);
+    }
+
+    /**
+     * Registers a callback which will be executed on given executor once this
+     * future is completed.
+     *
+     * @param callback the callback to be notified.
+     * @param executor the executor which will run the callback or
+     * <tt>null</tt> to run it on the thread which completes this future.
+     */
+    public void addCallback(final Callback<? super V> callback,
+                            final Executor            executor)
+    {
+        Objects.requireNonNull(callback, "callback");
+
+        final Runnable notify = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Throwable error;
+                V result;
+
+                synchronized (SettableFuture.this)
+                {
+                    error = SettableFuture.this.error;
+                    result = SettableFuture.this.result;
+                }
+
+                if (error != null)
+                {
+                    callback.onFailure(error);
+                }
+                else
+                {
+                    callback.onSuccess(result);
+                }
+            }
+        };
+        Runnable listener = executor == null ? notify : new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                executor.execute(notify);
+            }
+        };
+
+        synchronized (this)
+        {
+            if (listeners != null)
+            {
+                listeners.add(listener);
+                return;
+            }
+        }
+        runListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isCancelled()
+    {
+        return error instanceof CancellationException;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isDone()
+    {
+        return listeners == null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized V get()
+        throws InterruptedException, ExecutionException
+    {
+        while (listeners != null)
+        {
+            wait();
+        }
+        return getResult();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized V get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (listeners != null)
+        {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+            {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    /**
+     * Returns the result or throws the exception appropriate for the failure.
+     * Must be called with the lock held, after the future is done.
+     */
+    private V getResult()
+        throws ExecutionException
+    {
+        if (error instanceof CancellationException)
+        {
+            throw (CancellationException) error;
+        }
+        else if (error != null)
+        {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+
+    /**
+     * The interface notified about the outcome of a {@link SettableFuture}.
+     *
+     * @param <V> the type of the result.
+     */
+    public interface Callback<V>
+    {
+        /**
+         * Called when the future has been completed successfully.
+         *
+         * @param result the result which can be <tt>null</tt>.
+         */
+        void onSuccess(V result);
+
+        /**
+         * Called when the future has failed or has been cancelled.
+         *
+         * @param error the cause of the failure.
+         */
+        void onFailure(Throwable error);
+    }
+}
@@ -412,9 +412,17 @@ private org.jivesoftware.smack.packet.IQ handleConferenceIq(
             return error;
         }
 
-        boolean ready
-            = focusManager.conferenceRequest(
+        boolean ready;
+        try
+        {
+            ready = focusManager.conferenceRequest(
                     room, query.getPropertiesMap());
+        }
+        catch (ConferenceRejectedException e)
+        {
+            return ErrorFactory.createConferenceRejectedError(
+                    query, e.getRetryAfter());
+        }
 
         if (!isFocusAnonymous && authAuthority == null)
         {
@@ -52,6 +52,13 @@
     protected final Map<String, JingleSession> sessions
         = new ConcurrentHashMap<>();
 
+    /**
+     * Renders the SSRCs and SSRC groups sent in 'source-add' and
+     * 'source-remove' notifications, so that the same instance is serialized
+     * only once no matter how many participants it's sent to.
+     */
+    private final XmlFragmentCache fragmentCache = new XmlFragmentCache();
+
     /**
      * Implementing classes should return our JID here.
      *
@@ -345,84 +352,8 @@ public void sendAddSourceIQ(MediaSSRCMap         ssrcs,
                                 MediaSSRCGroupMap    ssrcGroupMap,
                                 JingleSession        session)
     {
-        JingleIQ addSourceIq = new JingleIQ();
-
-        addSourceIq.setAction(JingleAction.SOURCEADD);
-        addSourceIq.setFrom(getOurJID());
-        addSourceIq.setType(IQ.Type.SET);
-
-        for (String media : ssrcs.getMediaTypes())
-        {
-            ContentPacketExtension content
-                = new ContentPacketExtension();
-
-            content.setName(media);
-
-            RtpDescriptionPacketExtension rtpDesc
-                = new RtpDescriptionPacketExtension();
-
-            rtpDesc.setMedia(media);
-
-            content.addChildExtension(rtpDesc);
-
-            for (SourcePacketExtension ssrc : ssrcs.getSSRCsForMedia(media))
-            {
-                try
-                {
-                    rtpDesc.addChildExtension(ssrc.copy());
-                }
-                catch (Exception e)
-                {
-                    logger.error("Copy SSRC error", e);
-                }
-            }
-
-            addSourceIq.addContent(content);
-        }
-
-        if (ssrcGroupMap != null)
-        {
-            for (String media : ssrcGroupMap.getMediaTypes())
-            {
-                ContentPacketExtension content
-                    = addSourceIq.getContentByName(media);
-                RtpDescriptionPacketExtension rtpDesc;
-
-                if (content == null)
-                {
-                    // It means content was not created when adding SSRCs...
-                    logger.warn(
-                        "No SSRCs to be added when group exists for media: "
-                            + media);
-
-                    content = new ContentPacketExtension();
-                    content.setName(media);
-                    addSourceIq.addContent(content);
-
-                    rtpDesc = new RtpDescriptionPacketExtension();
-                    rtpDesc.setMedia(media);
-                    content.addChildExtension(rtpDesc);
-                }
-                else
-                {
-                    rtpDesc = content.getFirstChildOfType(
-                        RtpDescriptionPacketExtension.class);
-                }
-
-                for (SSRCGroup ssrcGroup
-                    : ssrcGroupMap.getSSRCGroupsForMedia(media))
-                {
-                    try
-                    {
-                        rtpDesc.addChildExtension(ssrcGroup.getExtensionCopy());
-                    }
-                    catch (Exception e)
-                    {
-                        logger.error("Copy SSRC GROUP error", e);
-                    }
-                }
-            }
-        }
+        JingleIQ addSourceIq
+            = createSourceIQ(JingleAction.SOURCEADD, ssrcs, ssrcGroupMap);
 
         String peerSid = session.getSessionID();
 
@@ -451,38 +382,62 @@ public void sendRemoveSourceIQ(MediaSSRCMap         ssrcs,
                                    MediaSSRCGroupMap    ssrcGroupMap,
                                    JingleSession        session)
     {
-        JingleIQ removeSourceIq = new JingleIQ();
+        JingleIQ removeSourceIq
+            = createSourceIQ(JingleAction.SOURCEREMOVE, ssrcs, ssrcGroupMap);
 
-        removeSourceIq.setAction(JingleAction.SOURCEREMOVE);
-        removeSourceIq.setFrom(getOurJID());
-        removeSourceIq.setType(IQ.Type.SET);
+        String peerSid = session.getSessionID();
 
-        for (String media : ssrcs.getMediaTypes())
-        {
-            ContentPacketExtension content
-                = new ContentPacketExtension();
+        removeSourceIq.setTo(session.getAddress());
+        removeSourceIq.setSID(peerSid);
 
-            content.setName(media);
+        logger.info(
+            "Notify remove SSRC " + session.getAddress()
+                + " SID: " + peerSid + " " + ssrcs + " " + ssrcGroupMap);
 
-            RtpDescriptionPacketExtension rtpDesc
-                = new RtpDescriptionPacketExtension();
-            rtpDesc.setMedia(media);
+        XmppConnection connection = getConnection();
 
-            content.addChildExtension(rtpDesc);
+        connection.sendPacket(removeSourceIq);
+    }
+
+    /**
+     * Creates 'source-add' or 'source-remove' notification without
+     * the addressing, which is to be filled by the caller.
+     *
+     * The SSRCs and SSRC groups are not copied, but put directly in
+     * the {@link CachedRtpDescriptionPacketExtension}s. These are the instances
+     * shared by the snapshots of the participant's SSRCs, so when the same
+     * change is sent to all participants of a conference the payload is
+     * rendered only once by {@link #fragmentCache} and only the envelope is
+     * serialized for every recipient.
+     *
+     * @param action {@link JingleAction#SOURCEADD} or
+     * {@link JingleAction#SOURCEREMOVE}.
+     * @param ssrcs the map of media SSRCs that will be included in
+     *              the notification.
+     * @param ssrcGroupMap the map of media SSRC groups that will be included in
+     *                     the notification, can be <tt>null</tt>.
+     *
+     * @return new <tt>JingleIQ</tt> without 'to' and 'sid' set.
+     */
+    private JingleIQ createSourceIQ(JingleAction         action,
+                                    MediaSSRCMap         ssrcs,
+                                    MediaSSRCGroupMap    ssrcGroupMap)
+    {
+        JingleIQ sourceIq = new JingleIQ();
+
+        sourceIq.setAction(action);
+        sourceIq.setFrom(getOurJID());
+        sourceIq.setType(IQ.Type.SET);
+
+        for (String media : ssrcs.getMediaTypes())
+        {
+            RtpDescriptionPacketExtension rtpDesc
+                = addSourceContent(sourceIq, media);
 
             for (SourcePacketExtension ssrc : ssrcs.getSSRCsForMedia(media))
             {
-                try
-                {
-                    rtpDesc.addChildExtension(ssrc.copy());
-                }
-                catch (Exception e)
-                {
-                    logger.error("Copy SSRC error", e);
-                }
+                rtpDesc.addChildExtension(ssrc);
             }
-
-            removeSourceIq.addContent(content);
         }
 
         if (ssrcGroupMap != null)
@@ -490,23 +445,17 @@ public void sendRemoveSourceIQ(MediaSSRCMap         ssrcs,
             for (String media : ssrcGroupMap.getMediaTypes())
             {
                 ContentPacketExtension content
-                    = removeSourceIq.getContentByName(media);
+                    = sourceIq.getContentByName(media);
                 RtpDescriptionPacketExtension rtpDesc;
 
                 if (content == null)
                 {
                     // It means content was not created when adding SSRCs...
                     logger.warn(
-                        "No SSRCs to be removed when group exists for media: "
-                            + media);
-
-                    content = new ContentPacketExtension();
-                    content.setName(media);
-                    removeSourceIq.addContent(content);
+                        "No SSRCs in " + action + " when group exists for"
+                            + " media: " + media);
 
-                    rtpDesc = new RtpDescriptionPacketExtension();
-                    rtpDesc.setMedia(media);
-                    content.addChildExtension(rtpDesc);
+                    rtpDesc = addSourceContent(sourceIq, media);
                 }
                 else
                 {
@@ -517,30 +466,39 @@ public void sendRemoveSourceIQ(MediaSSRCMap         ssrcs,
                 for (SSRCGroup ssrcGroup
                     : ssrcGroupMap.getSSRCGroupsForMedia(media))
                 {
-                    try
-                    {
-                        rtpDesc.addChildExtension(ssrcGroup.getExtensionCopy());
-                    }
-                    catch (Exception e)
-                    {
-                        logger.error("Copy SSRC GROUP error", e);
-                    }
+                    rtpDesc.addChildExtension(ssrcGroup.getPacketExtension());
                 }
             }
         }
 
-        String peerSid = session.getSessionID();
+        return sourceIq;
+    }
 
-        removeSourceIq.setTo(session.getAddress());
-        removeSourceIq.setSID(peerSid);
+    /**
+     * Adds the content for given media to the 'source-add' or 'source-remove'
+     * notification.
+     *
+     * @param sourceIq the notification to which the content will be added.
+     * @param media the media type of the content.
+     *
+     * @return the RTP description of the new content, to which the SSRCs and
+     * SSRC groups are to be added.
+     */
+    private RtpDescriptionPacketExtension addSourceContent(JingleIQ    sourceIq,
+                                                           String      media)
+    {
+        ContentPacketExtension content = new ContentPacketExtension();
 
-        logger.info(
-            "Notify remove SSRC " + session.getAddress()
-                + " SID: " + peerSid + " " + ssrcs + " " + ssrcGroupMap);
+        content.setName(media);
 
-        XmppConnection connection = getConnection();
+        RtpDescriptionPacketExtension rtpDesc
+            = new CachedRtpDescriptionPacketExtension(media, fragmentCache);
 
-        connection.sendPacket(removeSourceIq);
+        content.addChildExtension(rtpDesc);
+
+        sourceIq.addContent(content);
+
+        return rtpDesc;
     }
 
     /**
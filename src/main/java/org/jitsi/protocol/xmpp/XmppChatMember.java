@@ -62,4 +62,10 @@
      * otherwise.
      */
     boolean isRobot();
+
+    /**
+     * Returns the region advertised by this chat member in it's presence.
+     * @return the region ID or <tt>null</tt> if unknown.
+     */
+    String getRegion();
 }
@@ -19,6 +19,8 @@
 
 import net.java.sip.communicator.service.protocol.*;
 
+import org.jitsi.jicofo.util.*;
+
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
@@ -56,6 +58,20 @@
     Packet sendPacketAndGetReply(Packet packet)
         throws OperationFailedException;
 
+    /**
+     * Sends the packet and returns immediately without waiting for the reply.
+     * The reply is matched with the request by the packet ID.
+     *
+     * @param packet the packet to be sent.
+     *
+     * @return <tt>SettableFuture</tt> completed with the response packet or
+     * with <tt>null</tt> if no response was received within the time limit.
+     * It fails with <tt>OperationFailedException</tt> with
+     * {@link OperationFailedException#PROVIDER_NOT_REGISTERED} error code if
+     * the packet could not be sent, because the XMPP connection is broken.
+     */
+    SettableFuture<Packet> sendPacketAndGetReplyAsync(Packet packet);
+
     /**
      * Adds packet listener and a filter that limits the packets reaching
      * listener object.
@@ -22,6 +22,7 @@
 import net.java.sip.communicator.service.protocol.*;
 
 import org.jitsi.jicofo.*;
+import org.jitsi.jicofo.util.*;
 import org.jitsi.protocol.xmpp.util.*;
 
 import java.util.*;
@@ -64,6 +65,26 @@
      */
     void setConfig(JitsiMeetConfig config);
 
+    /**
+     * Sets for how long the requests of
+     * {@link #createColibriChannelsAsync(boolean, String, boolean, List)} are
+     * collected, before they're sent to the bridge in a single Colibri IQ.
+     *
+     * @param window the time in milliseconds. Zero or negative value disables
+     * batching, so that every request is sent immediately.
+     */
+    void setAllocationBatchWindow(long window);
+
+    /**
+     * Sets the {@link BridgeSelector} which will be notified about the video
+     * stream count changes caused by allocating and expiring the channels of
+     * this conference.
+     *
+     * @param bridgeSelector the <tt>BridgeSelector</tt> or <tt>null</tt> to
+     * stop the notifications.
+     */
+    void setBridgeSelector(BridgeSelector bridgeSelector);
+
     /**
      * Sets world readable name that identifies the conference.
      * @param name the new name.
@@ -108,12 +129,41 @@ ColibriConferenceIQ createColibriChannels(
             List<ContentPacketExtension>    contents)
         throws    OperationFailedException;
 
+    /**
+     * Creates channels on the videobridge for given parameters without
+     * blocking the calling thread. If the conference is being created by
+     * another request at the moment, the request is queued and sent once
+     * the conference exists.
+     *
+     * @param useBundle <tt>true</tt> if channel transport bundle should be used
+     *                  for this allocation.
+     * @param endpointName the name that will identify channels endpoint.
+     * @param peerIsInitiator <tt>true</tt> if peer is ICE an initiator
+     *                        of ICE session.
+     * @param contents content list that describes peer media.
+     *
+     * @return <tt>SettableFuture</tt> completed with
+     * <tt>ColibriConferenceIQ</tt> that describes allocated channels or with
+     * <tt>null</tt> if the conference has been disposed. It fails with
+     * <tt>OperationFailedException</tt> if channel allocation failed due to
+     * network or bridge failure.
+     */
+    SettableFuture<ColibriConferenceIQ> createColibriChannelsAsync(
+            boolean                         useBundle,
+            String                          endpointName,
+            boolean                         peerIsInitiator,
+            List<ContentPacketExtension>    contents);
+
     /**
      * Does Colibri channels update of RTP description, SSRC and transport
      * information. This is a combined request and what it will contain depends
      * which parameters are provided. Most of them is optional here. Request
      * will be sent only if any data has been provided.
      *
+     * The SSRCs and SSRC groups are sent only for the channels which have had
+     * different ones sent in the previous update. The SSRC maps are not copied
+     * and must not be modified after this call.
+     *
      * @param localChannelsInfo (mandatory) <tt>ColibriConferenceIQ</tt> that
      * contains the description of the channels for which update request will be
      * sent to the bridge.
@@ -173,7 +223,11 @@ void updateTransportInfo(
             ColibriConferenceIQ                           localChannelsInfo);
 
     /**
-     * Updates simulcast layers on the bridge.
+     * Updates simulcast layers on the bridge. Only the channels which have had
+     * different SSRCs or SSRC groups sent in the previous update are included
+     * in the request. The maps are not copied and must not be modified after
+     * this call.
+     * @param ssrcs the map of media SSRCs that will be updated on the bridge.
      * @param ssrcGroups the map of media SSRC groups that will be updated on
      *                   the bridge.
      * @param localChannelsInfo <<tt>ColibriConferenceIQ</tt> that contains
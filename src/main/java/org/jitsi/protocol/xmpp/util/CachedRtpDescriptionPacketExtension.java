@@ -0,0 +1,93 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.protocol.xmpp.util;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.util.*;
+
+import java.util.*;
+
+/**
+ * The RTP description which renders it's child extensions through
+ * {@link XmlFragmentCache}. Used to carry the SSRCs and SSRC groups in
+ * 'source-add' and 'source-remove' notifications, which are sent with
+ * the same payload to many participants. Only the <tt>media</tt> attribute of
+ * the description itself is rendered, which is all the notifications need.
+ *
+ * The child extensions are added without being copied, so they must not be
+ * modified once the description has been created.
+ *
+ * @author agent
+ */
+public class CachedRtpDescriptionPacketExtension
+    extends RtpDescriptionPacketExtension
+{
+    /**
+     * The cache used to render the child extensions.
+     */
+    private final XmlFragmentCache fragmentCache;
+
+    /**
+     * Creates new <tt>CachedRtpDescriptionPacketExtension</tt>.
+     *
+     * @param media the media type of the description.
+     * @param fragmentCache the cache which will be used to render the child
+     * extensions.
+     */
+    public CachedRtpDescriptionPacketExtension(
+            String              media,
+            XmlFragmentCache    fragmentCache)
+    {
+        this.fragmentCache
+            = Objects.requireNonNull(fragmentCache, "fragmentCache");
+
+        setMedia(media);
+    }
+
+    @Override
+    public String toXML()
+    {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append('<').append(getElementName())
+            .append(" xmlns='").append(getNamespace()).append('\'');
+
+        String media = getMedia();
+        if (media != null)
+        {
+            xml.append(" media='")
+                .append(StringUtils.escapeForXML(media)).append('\'');
+        }
+
+        List<? extends PacketExtension> children = getChildExtensions();
+        if (children == null || children.isEmpty())
+        {
+            return xml.append("/>").toString();
+        }
+
+        xml.append('>');
+        for (PacketExtension child : children)
+        {
+            xml.append(fragmentCache.toXML(child));
+        }
+        return xml.append("</").append(getElementName()).append('>')
+            .toString();
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.protocol.xmpp.util;
+
+import java.util.*;
+
+/**
+ * A hash map of primitive <tt>long</tt> keys to objects, which does not box
+ * the keys. It uses open addressing with linear probing and the backward shift
+ * deletion, so there are no tombstones left after removal. <tt>null</tt>
+ * values are not allowed (<tt>null</tt> marks an empty slot).
+ *
+ * The class is not thread safe.
+ *
+ * @param <V> the type of values stored in the map.
+ *
+ * @author agent
+ */
+public class LongObjectHashMap<V>
+{
+    /**
+     * The maximum fraction of the slots which can be occupied before the table
+     * is grown.
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * The keys table.
+     */
+    private long[] keys;
+
+    /**
+     * The values table, <tt>null</tt> means that the slot is empty.
+     */
+    private Object[] values;
+
+    /**
+     * The mask used to wrap the slot index (table length - 1).
+     */
+    private int mask;
+
+    /**
+     * The number of entries stored in the map.
+     */
+    private int size;
+
+    /**
+     * The number of entries above which the table is grown.
+     */
+    private int resizeThreshold;
+
+    /**
+     * Creates new empty <tt>LongObjectHashMap</tt>.
+     */
+    public LongObjectHashMap()
+    {
+        this(4);
+    }
+
+    /**
+     * Creates new empty <tt>LongObjectHashMap</tt> which can hold given number
+     * of entries without growing.
+     *
+     * @param expectedSize the expected number of entries.
+     */
+    public LongObjectHashMap(int expectedSize)
+    {
+        int minCapacity = Math.max(2, (int) (expectedSize / LOAD_FACTOR));
+
+        allocate(Integer.highestOneBit(minCapacity - 1) << 1);
+    }
+
+    /**
+     * Allocates the tables of given capacity.
+     *
+     * @param capacity the new capacity which must be a power of two.
+     */
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads the bits of the key and maps it to the slot index.
+     */
+    private int slot(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Returns the value mapped to given key.
+     *
+     * @param key the key to look for.
+     *
+     * @return the value or <tt>null</tt> if there is no mapping for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int i = slot(key);
+        Object value;
+
+        while ((value = values[i]) != null)
+        {
+            if (keys[i] == key)
+            {
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether there is a value mapped to given key.
+     *
+     * @param key the key to look for.
+     */
+    public boolean containsKey(long key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps given value to the key, replacing the previous value if any.
+     *
+     * @param key the key.
+     * @param value the value which can not be <tt>null</tt>.
+     *
+     * @return the previous value mapped to the key or <tt>null</tt>.
+     */
+    public V put(long key, V value)
+    {
+        return put(key, value, true);
+    }
+
+    /**
+     * Maps given value to the key only if there is no value for the key yet.
+     *
+     * @param key the key.
+     * @param value the value which can not be <tt>null</tt>.
+     *
+     * @return the value currently mapped to the key or <tt>null</tt> if
+     * the given value has been stored.
+     */
+    public V putIfAbsent(long key, V value)
+    {
+        return put(key, value, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(long key, V value, boolean replace)
+    {
+        Objects.requireNonNull(value, "value");
+
+        int i = slot(key);
+        Object current;
+
+        while ((current = values[i]) != null)
+        {
+            if (keys[i] == key)
+            {
+                if (replace)
+                {
+                    values[i] = value;
+                }
+                return (V) current;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+
+        if (++size > resizeThreshold)
+        {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the mapping for given key.
+     *
+     * @param key the key to be removed.
+     *
+     * @return the value which was mapped to the key or <tt>null</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int i = slot(key);
+        Object value;
+
+        while ((value = values[i]) != null)
+        {
+            if (keys[i] == key)
+            {
+                values[i] = null;
+                size--;
+                shiftBack(i);
+
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Fills the gap left by a removed entry by moving back the entries of
+     * the same probe sequence.
+     *
+     * @param gap the index of the slot which has just been emptied.
+     */
+    private void shiftBack(int gap)
+    {
+        int i = (gap + 1) & mask;
+        Object value;
+
+        while ((value = values[i]) != null)
+        {
+            int distanceFromSlot = (i - slot(keys[i])) & mask;
+            int distanceFromGap = (i - gap) & mask;
+
+            // The entry can be moved only if it's slot is not between the gap
+            // and it's current position
+            if (distanceFromSlot >= distanceFromGap)
+            {
+                keys[gap] = keys[i];
+                values[gap] = value;
+                values[i] = null;
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Grows the tables and re-inserts all entries.
+     *
+     * @param capacity the new capacity.
+     */
+    private void rehash(int capacity)
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldValues.length; i++)
+        {
+            Object value = oldValues[i];
+            if (value != null)
+            {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != null)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = value;
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of this map. The values are not copied.
+     *
+     * @return new <tt>LongObjectHashMap</tt> with the same mappings.
+     */
+    public LongObjectHashMap<V> copy()
+    {
+        LongObjectHashMap<V> copy = new LongObjectHashMap<>(0);
+
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.mask = mask;
+        copy.size = size;
+        copy.resizeThreshold = resizeThreshold;
+
+        return copy;
+    }
+
+    /**
+     * Removes all entries from this map.
+     */
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of entries stored in this map.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map is empty.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+}
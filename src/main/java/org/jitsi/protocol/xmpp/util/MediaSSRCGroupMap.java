@@ -26,6 +26,13 @@
  * Class maps lists of SSRC groups to media types and encapsulates various
  * utility operations.
  *
+ * Like in {@link MediaSSRCMap} the lists of groups are never modified once
+ * they have been stored in the map and a {@link #snapshot()} shares the map of
+ * the lists with the map it has been taken from until any of them is modified.
+ * The {@link SSRCGroup}s are shared by all snapshots and must not be modified
+ * once they have been added to the map. All access to the map of the lists is
+ * synchronized on the map instance.
+ *
  * @author Pawel Domas
  */
 public class MediaSSRCGroupMap
@@ -33,7 +40,13 @@
     /**
      * Map backend.
      */
-    private final Map<String, List<SSRCGroup>> groupMap;
+    private Map<String, List<SSRCGroup>> groupMap;
+
+    /**
+     * Tells whether {@link #groupMap} is shared with a snapshot and has to be
+     * copied before it can be modified.
+     */
+    private boolean shared;
 
     /**
      * Creates new instance of <tt>MediaSSRCGroupMap</tt>.
@@ -57,16 +70,62 @@ private MediaSSRCGroupMap(Map<String, List<SSRCGroup>> map)
      * Returns the list of {@link SSRCGroup} for given media type.
      * @param media the name of media type for which list of SSRC groups will be
      *              returned.
+     * @return read-only list of SSRC groups for given media type. It is not
+     * affected by the later modifications of this map.
+     */
+    public synchronized List<SSRCGroup> getSSRCGroupsForMedia(String media)
+    {
+        List<SSRCGroup> mediaGroups = groupMap.get(media);
+
+        return mediaGroups != null
+            ? Collections.unmodifiableList(mediaGroups)
+            : Collections.<SSRCGroup>emptyList();
+    }
+
+    /**
+     * Returns the list of {@link SSRCGroup} stored for given media type or
+     * an empty list.
+     *
+     * @param media the name of media type for which the list will be returned.
      */
-    public List<SSRCGroup> getSSRCGroupsForMedia(String media)
+    private List<SSRCGroup> getGroupList(String media)
     {
         List<SSRCGroup> mediaGroups = groupMap.get(media);
-        if (mediaGroups == null)
+
+        return mediaGroups != null
+            ? mediaGroups : Collections.<SSRCGroup>emptyList();
+    }
+
+    /**
+     * Copies the map of the lists if it's shared with a snapshot. The lists
+     * are never modified, so these are not copied.
+     */
+    private void ensureNotShared()
+    {
+        if (!shared)
         {
-            mediaGroups = new ArrayList<>();
-            groupMap.put(media, mediaGroups);
+            return;
         }
-        return mediaGroups;
+
+        groupMap = new HashMap<>(groupMap);
+        shared = false;
+    }
+
+    /**
+     * Creates a snapshot of this map. The lists are shared until any of the two
+     * maps is modified and the {@link SSRCGroup}s are not copied.
+     *
+     * @return a new instance of <tt>MediaSSRCGroupMap</tt> which contains
+     * the same <tt>SSRCGroup</tt>s as this map.
+     */
+    public synchronized MediaSSRCGroupMap snapshot()
+    {
+        shared = true;
+
+        MediaSSRCGroupMap snapshot = new MediaSSRCGroupMap(groupMap);
+        snapshot.shared = true;
+
+        return snapshot;
     }
 
     /**
@@ -83,11 +142,10 @@ public static MediaSSRCGroupMap getSSRCGroupsForContents(
 
         for (ContentPacketExtension content : contents)
         {
-            List<SSRCGroup> mediaGroups
-                = mediaSSRCGroupMap.getSSRCGroupsForMedia(content.getName());
-
             // FIXME: does not check for duplicates
-            mediaGroups.addAll(SSRCGroup.getSSRCGroupsForContent(content));
+            mediaSSRCGroupMap.addSSRCGroups(
+                    content.getName(),
+                    SSRCGroup.getSSRCGroupsForContent(content));
         }
 
         return mediaSSRCGroupMap;
@@ -96,7 +154,7 @@ public static MediaSSRCGroupMap getSSRCGroupsForContents(
     /**
      * Returns all media types stored in this map(some of them might be empty).
      */
-    public List<String> getMediaTypes()
+    public synchronized List<String> getMediaTypes()
     {
         return new ArrayList<>(groupMap.keySet());
     }
@@ -107,9 +165,9 @@ public List<String> getMediaTypes()
      * @param ssrcGroup <tt>SSRCGroup</tt> that will be mapped to given media
      *                  type.
      */
-    public void addSSRCGroup(String media, SSRCGroup ssrcGroup)
+    public synchronized void addSSRCGroup(String media, SSRCGroup ssrcGroup)
     {
-        getSSRCGroupsForMedia(media).add(ssrcGroup);
+        addSSRCGroups(media, Collections.singletonList(ssrcGroup));
     }
 
     /**
@@ -118,9 +176,18 @@ public void addSSRCGroup(String media, SSRCGroup ssrcGroup)
      * @param ssrcGroups <tt>SSRCGroup</tt>s that will be mapped to given media
      *                  type.
      */
-    public void addSSRCGroups(String media, List<SSRCGroup> ssrcGroups)
+    public synchronized void addSSRCGroups(
+            String media, List<SSRCGroup> ssrcGroups)
     {
-        getSSRCGroupsForMedia(media).addAll(ssrcGroups);
+        ensureNotShared();
+
+        List<SSRCGroup> groupList = getGroupList(media);
+        List<SSRCGroup> newList
+            = new ArrayList<>(groupList.size() + ssrcGroups.size());
+
+        newList.addAll(groupList);
+        newList.addAll(ssrcGroups);
+        groupMap.put(media, newList);
     }
 
     /**
@@ -131,12 +198,15 @@ public void addSSRCGroups(String media, List<SSRCGroup> ssrcGroups)
      */
     public void add(MediaSSRCGroupMap ssrcGroups)
     {
-        for (String media : ssrcGroups.getMediaTypes())
+        // Not holding our lock while reading the other map
+        MediaSSRCGroupMap toAdd = ssrcGroups.snapshot();
+
+        synchronized (this)
         {
-            List<SSRCGroup> groups = ssrcGroups.getSSRCGroupsForMedia(media);
-            for (SSRCGroup group : groups)
+            for (Map.Entry<String, List<SSRCGroup>> e
+                    : toAdd.groupMap.entrySet())
             {
-                addSSRCGroup(media, group);
+                addSSRCGroups(e.getKey(), e.getValue());
             }
         }
     }
@@ -183,11 +253,11 @@ public boolean containsGroup(String mediaType, SSRCGroup toFind)
     /**
      * Returns <tt>true</tt> if this map contains any SSRC groups.
      */
-    public boolean isEmpty()
+    public synchronized boolean isEmpty()
     {
-        for (String media : groupMap.keySet())
+        for (List<SSRCGroup> groups : groupMap.values())
         {
-            if (!getSSRCGroupsForMedia(media).isEmpty())
+            if (!groups.isEmpty())
             {
                 return false;
             }
@@ -205,15 +275,35 @@ public boolean isEmpty()
      */
     public MediaSSRCGroupMap remove(MediaSSRCGroupMap mapToRemove)
     {
+        // Not holding our lock while reading the other map
+        MediaSSRCGroupMap toRemove = mapToRemove.snapshot();
+
+        synchronized (this)
+        {
+            return removeGroups(toRemove);
+        }
+    }
+
+    /**
+     * Removes SSRC groups contained in given snapshot from this map.
+     *
+     * @param toRemove the snapshot of the <tt>MediaSSRCGroupMap</tt> which
+     *                 is not accessed by any other thread.
+     */
+    private MediaSSRCGroupMap removeGroups(MediaSSRCGroupMap toRemove)
+    {
+        ensureNotShared();
+
         MediaSSRCGroupMap removedGroups = new MediaSSRCGroupMap();
 
-        for (String media : mapToRemove.groupMap.keySet())
+        for (Map.Entry<String, List<SSRCGroup>> e
+                : toRemove.groupMap.entrySet())
         {
-            List<SSRCGroup> groupList = getSSRCGroupsForMedia(media);
+            String media = e.getKey();
+            List<SSRCGroup> groupList = getGroupList(media);
             List<SSRCGroup> toBeRemoved= new ArrayList<>();
 
-            for (SSRCGroup ssrcGroupToCheck
-                : mapToRemove.groupMap.get(media))
+            for (SSRCGroup ssrcGroupToCheck : e.getValue())
             {
                 for (SSRCGroup ssrcGroup : groupList)
                 {
@@ -224,9 +314,15 @@ public MediaSSRCGroupMap remove(MediaSSRCGroupMap mapToRemove)
                 }
             }
 
-            removedGroups.getSSRCGroupsForMedia(media).addAll(toBeRemoved);
+            removedGroups.addSSRCGroups(media, toBeRemoved);
 
-            groupList.removeAll(toBeRemoved);
+            if (!toBeRemoved.isEmpty())
+            {
+                List<SSRCGroup> newList = new ArrayList<>(groupList);
+
+                newList.removeAll(toBeRemoved);
+                groupMap.put(media, newList);
+            }
         }
 
         return removedGroups;
@@ -235,7 +331,7 @@ public MediaSSRCGroupMap remove(MediaSSRCGroupMap mapToRemove)
     /**
      * Returns deep copy of this map instance.
      */
-    public MediaSSRCGroupMap copy()
+    public synchronized MediaSSRCGroupMap copy()
     {
         Map<String, List<SSRCGroup>> mapCopy = new HashMap<>();
 
@@ -260,7 +356,8 @@ String groupsToString(List<SSRCGroup> ssrcs)
         StringBuilder str = new StringBuilder();
         for (SSRCGroup group : ssrcs)
         {
-            SourceGroupPacketExtension sourceGroup = group.getExtensionCopy();
+            SourceGroupPacketExtension sourceGroup
+                = group.getPacketExtension();
 
             str.append("SSRCGroup(")
                 .append(sourceGroup.getSemantics())
@@ -281,7 +378,7 @@ String groupsToString(List<SSRCGroup> ssrcs)
      *         <tt>SourceGroupPacketExtension</tt> which reflects current state
      *         of this <tt>MediaSSRCGroupMap</tt>.
      */
-    public Map<String, List<SourceGroupPacketExtension>> toMap()
+    public synchronized Map<String, List<SourceGroupPacketExtension>> toMap()
     {
         Map<String, List<SourceGroupPacketExtension>> map = new HashMap<>();
 
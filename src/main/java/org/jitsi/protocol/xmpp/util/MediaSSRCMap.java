@@ -21,12 +21,28 @@
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
 
 import java.util.*;
-import java.util.concurrent.*;
 
 /**
  * The map of media <tt>SourcePacketExtension</tt> encapsulates various
  * manipulation and access operations.
  *
+ * Besides the lists of SSRCs the map maintains an index of SSRC numbers for
+ * each media type, so that looking up the SSRC by it's number does not require
+ * scanning the list. The lists returned by {@link #getSSRCsForMedia(String)}
+ * can not be modified directly in order to keep the index consistent.
+ *
+ * The lists of SSRCs are never modified once they have been stored in the map,
+ * every modification stores a new list instead. This way the lists returned by
+ * {@link #getSSRCsForMedia(String)} can be iterated while the map is being
+ * modified by another thread.
+ *
+ * A {@link #snapshot()} shares the map of the lists and the index with the map
+ * it has been taken from. Whichever of them is modified first copies these
+ * before the modification, but never the lists, nor
+ * the <tt>SourcePacketExtension</tt>s, which are shared by all snapshots and
+ * must not be modified once they have been added to the map. All access to
+ * the containers is synchronized on the map instance.
+ *
  * @author Pawel Domas
  */
 public class MediaSSRCMap
@@ -34,7 +50,29 @@
     /**
      * The media SSRC map storage.
      */
-    private final Map<String, List<SourcePacketExtension>> ssrcs;
+    private Map<String, List<SourcePacketExtension>> ssrcs;
+
+    /**
+     * The index of SSRC numbers to the <tt>SourcePacketExtension</tt> stored
+     * in {@link #ssrcs} for each media type. When there are duplicated SSRCs
+     * the first one is indexed.
+     */
+    private Map<String, LongObjectHashMap<SourcePacketExtension>> index
+        = new HashMap<>();
+
+    /**
+     * The number of SSRCs stored in this map which are not indexed, because
+     * another SSRC with the same number and media type is stored already.
+     * As long as it's zero every indexed SSRC number identifies exactly one
+     * <tt>SourcePacketExtension</tt>.
+     */
+    private int duplicateCount;
+
+    /**
+     * Tells whether {@link #ssrcs} and {@link #index} are shared with
+     * a snapshot and have to be copied before they can be modified.
+     */
+    private boolean shared;
 
     /**
      * Creates new empty instance of <tt>MediaSSRCMap</tt>.
@@ -53,6 +91,26 @@ public MediaSSRCMap()
     private MediaSSRCMap(Map<String, List<SourcePacketExtension>> ssrcs)
     {
         this.ssrcs = ssrcs;
+
+        for (Map.Entry<String, List<SourcePacketExtension>> e
+                : ssrcs.entrySet())
+        {
+            indexSSRCs(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Creates new instance of <tt>MediaSSRCMap</tt> which shares the state of
+     * given map.
+     *
+     * @param source the map from which the snapshot is being taken.
+     */
+    private MediaSSRCMap(MediaSSRCMap source)
+    {
+        this.ssrcs = source.ssrcs;
+        this.index = source.index;
+        this.duplicateCount = source.duplicateCount;
+        this.shared = true;
     }
 
     /**
@@ -61,26 +119,149 @@ private MediaSSRCMap(Map<String, List<SourcePacketExtension>> ssrcs)
      *
      * @param media the media type for which the list of
      *              <tt>SourcePacketExtension</tt> will be returned.
+     *
+     * @return read-only list of SSRCs for given media type. It is not affected
+     * by the later modifications of this map.
      */
-    public List<SourcePacketExtension> getSSRCsForMedia(String media)
+    public synchronized List<SourcePacketExtension> getSSRCsForMedia(
+            String media)
     {
         List<SourcePacketExtension> ssrcList = ssrcs.get(media);
-        if (ssrcList == null)
+
+        return ssrcList != null
+            ? Collections.unmodifiableList(ssrcList)
+            : Collections.<SourcePacketExtension>emptyList();
+    }
+
+    /**
+     * Returns the list of <tt>SourcePacketExtension</tt> stored for given
+     * media type or an empty list.
+     *
+     * @param media the media type for which the list will be returned.
+     */
+    private List<SourcePacketExtension> getSSRCList(String media)
+    {
+        List<SourcePacketExtension> ssrcList = ssrcs.get(media);
+
+        return ssrcList != null
+            ? ssrcList : Collections.<SourcePacketExtension>emptyList();
+    }
+
+    /**
+     * Replaces the list of <tt>SourcePacketExtension</tt> stored for given
+     * media type. Must be called after {@link #ensureNotShared()}.
+     *
+     * @param media the media type for which the list will be stored.
+     * @param ssrcList the new list which must not be modified afterwards.
+     */
+    private void setSSRCList(String                        media,
+                             List<SourcePacketExtension>   ssrcList)
+    {
+        ssrcs.put(media, ssrcList);
+    }
+
+    /**
+     * Copies the containers of this map if they're shared with a snapshot.
+     * The lists are never modified, so only the map of the lists and
+     * the index are copied.
+     */
+    private void ensureNotShared()
+    {
+        if (!shared)
+        {
+            return;
+        }
+
+        Map<String, List<SourcePacketExtension>> ssrcsCopy
+            = new HashMap<>(ssrcs);
+
+        Map<String, LongObjectHashMap<SourcePacketExtension>> indexCopy
+            = new HashMap<>();
+        for (Map.Entry<String, LongObjectHashMap<SourcePacketExtension>> e
+                : index.entrySet())
+        {
+            indexCopy.put(e.getKey(), e.getValue().copy());
+        }
+
+        ssrcs = ssrcsCopy;
+        index = indexCopy;
+        shared = false;
+    }
+
+    /**
+     * Creates a snapshot of this map. It costs as much as creating an empty
+     * map, because the state is shared until any of the two maps is modified.
+     * The <tt>SourcePacketExtension</tt>s are not copied.
+     *
+     * @return a new instance of <tt>MediaSSRCMap</tt> which contains the same
+     * <tt>SourcePacketExtension</tt>s as this map.
+     */
+    public synchronized MediaSSRCMap snapshot()
+    {
+        shared = true;
+
+        return new MediaSSRCMap(this);
+    }
+
+    /**
+     * Returns the SSRC number index for given media type. The index is created
+     * if it does not exist yet.
+     *
+     * @param media the media type for which the index will be returned.
+     */
+    private LongObjectHashMap<SourcePacketExtension> getIndex(String media)
+    {
+        LongObjectHashMap<SourcePacketExtension> mediaIndex = index.get(media);
+        if (mediaIndex == null)
         {
-            // Prevent concurrent modification exception,
-            // when removing duplicates
-            ssrcList = new CopyOnWriteArrayList<>();
-            ssrcs.put(media, ssrcList);
+            mediaIndex = new LongObjectHashMap<>();
+            index.put(media, mediaIndex);
+        }
+        return mediaIndex;
+    }
+
+    /**
+     * Adds given SSRCs to the index.
+     *
+     * @param media the media type of the SSRCs.
+     * @param ssrcs the SSRCs which have been just added to the list.
+     */
+    private void indexSSRCs(String                            media,
+                            Collection<SourcePacketExtension> ssrcs)
+    {
+        LongObjectHashMap<SourcePacketExtension> mediaIndex = getIndex(media);
+
+        for (SourcePacketExtension ssrc : ssrcs)
+        {
+            if (mediaIndex.putIfAbsent(ssrc.getSSRC(), ssrc) != null)
+            {
+                duplicateCount++;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index from scratch. Used only after duplicated SSRCs have
+     * been removed, as then it is not known which one should be indexed.
+     */
+    private void reindex()
+    {
+        index.clear();
+        duplicateCount = 0;
+
+        for (Map.Entry<String, List<SourcePacketExtension>> e
+                : ssrcs.entrySet())
+        {
+            indexSSRCs(e.getKey(), e.getValue());
         }
-        return ssrcList;
     }
 
     /**
      * Returns all media types contained in this map.
      */
-    public Set<String> getMediaTypes()
+    public synchronized Set<String> getMediaTypes()
     {
-        return ssrcs.keySet();
+        return new HashSet<>(ssrcs.keySet());
     }
 
     /**
@@ -90,10 +271,16 @@ public Set<String> getMediaTypes()
      */
     public void add(MediaSSRCMap mapToMerge)
     {
-        for (Map.Entry<String, List<SourcePacketExtension>> e
-                : mapToMerge.ssrcs.entrySet())
+        // Not holding our lock while reading the other map
+        Map<String, List<SourcePacketExtension>> toMerge = mapToMerge.toMap();
+
+        synchronized (this)
         {
-            addSSRCs(e.getKey(), e.getValue());
+            for (Map.Entry<String, List<SourcePacketExtension>> e
+                    : toMerge.entrySet())
+            {
+                addSSRCs(e.getKey(), e.getValue());
+            }
         }
     }
 
@@ -105,10 +292,9 @@ public void add(MediaSSRCMap mapToMerge)
      *
      * @param ssrc the <tt>SourcePacketExtension</tt> to be added to this map.
      */
-    public void addSSRC(String media, SourcePacketExtension ssrc)
+    public synchronized void addSSRC(String media, SourcePacketExtension ssrc)
     {
-        // BEWARE! add will not detect duplications
-        getSSRCsForMedia(media).add(ssrc);
+        addSSRCs(media, Collections.singletonList(ssrc));
     }
 
     /**
@@ -118,11 +304,22 @@ public void addSSRC(String media, SourcePacketExtension ssrc)
      *
      * @param ssrcs collection of SSRCs which will be included in this map.
      */
-    public void addSSRCs(String media, Collection<SourcePacketExtension> ssrcs)
+    public synchronized void addSSRCs(
+            String media, Collection<SourcePacketExtension> ssrcs)
     {
+        ensureNotShared();
+
+        List<SourcePacketExtension> ssrcList = getSSRCList(media);
+        List<SourcePacketExtension> newList
+            = new ArrayList<>(ssrcList.size() + ssrcs.size());
+
         // BEWARE! addAll will not detect duplications
         // as .equals is not overridden
-        getSSRCsForMedia(media).addAll(ssrcs);
+        newList.addAll(ssrcList);
+        newList.addAll(ssrcs);
+        setSSRCList(media, newList);
+
+        indexSSRCs(media, ssrcs);
     }
 
     /**
@@ -131,7 +328,7 @@ public void addSSRCs(String media, Collection<SourcePacketExtension> ssrcs)
      * @return a new instance of <tt>MediaSSRCMap</tt> which contains copies of
      *         <tt>SourcePacketExtension</tt> stored in this map.
      */
-    public MediaSSRCMap copyDeep()
+    public synchronized MediaSSRCMap copyDeep()
     {
         Map<String, List<SourcePacketExtension>> mapCopy = new HashMap<>();
 
@@ -166,14 +363,12 @@ public MediaSSRCMap copyDeep()
      *         the same SSRC number as given in the <tt>ssrcValue</tt> or
      *         <tt>null</tt> if not found.
      */
-    public SourcePacketExtension findSSRC(String media, long ssrcValue)
+    public synchronized SourcePacketExtension findSSRC(
+            String media, long ssrcValue)
     {
-        for (SourcePacketExtension ssrc : getSSRCsForMedia(media))
-        {
-            if (ssrcValue == ssrc.getSSRC())
-                return ssrc;
-        }
-        return null;
+        LongObjectHashMap<SourcePacketExtension> mediaIndex = index.get(media);
+
+        return mediaIndex != null ? mediaIndex.get(ssrcValue) : null;
     }
 
     /**
@@ -183,13 +378,13 @@ public SourcePacketExtension findSSRC(String media, long ssrcValue)
      * @return type of the media of the SSRC identified by the given number or
      * <tt>null</tt> if not found.
      */
-    public String findSSRCsMediaType(long ssrcValue)
+    public synchronized String findSSRCsMediaType(long ssrcValue)
     {
-        Set<String> mediaTypes = getMediaTypes();
-        for (String mediaType : mediaTypes)
+        for (Map.Entry<String, LongObjectHashMap<SourcePacketExtension>> e
+                : index.entrySet())
         {
-            if (findSSRC(mediaType, ssrcValue) != null)
-                return mediaType;
+            if (e.getValue().containsKey(ssrcValue))
+                return e.getKey();
         }
         return null;
     }
@@ -225,28 +420,79 @@ public SourcePacketExtension findSSRCforOwner(String media, String owner)
      */
     public MediaSSRCMap remove(MediaSSRCMap mapToRemove)
     {
+        // Not holding our lock while reading the other map
+        Map<String, List<SourcePacketExtension>> toRemove
+            = mapToRemove.toMap();
+
+        synchronized (this)
+        {
+            return remove(toRemove);
+        }
+    }
+
+    /**
+     * Removes given SSRCs from this instance.
+     *
+     * @param mapToRemove the lists of SSRCs to be removed mapped to their
+     * media types.
+     *
+     * @return the <tt>MediaSSRCMap</tt> that contains only these SSRCs that
+     *         were actually removed(existed in this map).
+     */
+    private MediaSSRCMap remove(
+            Map<String, List<SourcePacketExtension>> mapToRemove)
+    {
+        ensureNotShared();
+
         MediaSSRCMap removedSSRCs = new MediaSSRCMap();
-        // FIXME: fix duplication
-        for (String media : mapToRemove.ssrcs.keySet())
+        boolean removedDuplicates = false;
+
+        for (String media : mapToRemove.keySet())
         {
-            List<SourcePacketExtension> ssrcList = getSSRCsForMedia(media);
+            List<SourcePacketExtension> ssrcList = getSSRCList(media);
+            LongObjectHashMap<SourcePacketExtension> mediaIndex
+                = getIndex(media);
             List<SourcePacketExtension> toBeRemoved = new ArrayList<>();
 
-            for (SourcePacketExtension ssrcToCheck
-                    : mapToRemove.ssrcs.get(media))
+            for (SourcePacketExtension ssrcToCheck : mapToRemove.get(media))
             {
-                for (SourcePacketExtension ssrc : ssrcList)
+                long ssrcValue = ssrcToCheck.getSSRC();
+                SourcePacketExtension ssrc = mediaIndex.remove(ssrcValue);
+                if (ssrc == null)
+                {
+                    continue;
+                }
+                if (duplicateCount == 0)
                 {
-                    if (ssrcToCheck.getSSRC() == ssrc.getSSRC())
+                    toBeRemoved.add(ssrc);
+                    continue;
+                }
+                // Slow path - collect all SSRCs with the same number
+                for (SourcePacketExtension duplicate : ssrcList)
+                {
+                    if (ssrcValue == duplicate.getSSRC())
                     {
-                        toBeRemoved.add(ssrc);
+                        toBeRemoved.add(duplicate);
                     }
                 }
+                removedDuplicates = true;
             }
 
-            ssrcList.removeAll(toBeRemoved);
+            if (!toBeRemoved.isEmpty())
+            {
+                List<SourcePacketExtension> newList
+                    = new ArrayList<>(ssrcList);
+
+                newList.removeAll(toBeRemoved);
+                setSSRCList(media, newList);
 
-            removedSSRCs.getSSRCsForMedia(media).addAll(toBeRemoved);
+                removedSSRCs.addSSRCs(media, toBeRemoved);
+            }
+        }
+
+        if (removedDuplicates)
+        {
+            reindex();
         }
         return removedSSRCs;
     }
@@ -261,21 +507,45 @@ public MediaSSRCMap remove(MediaSSRCMap mapToRemove)
      * @return <tt>true</tt> if the SSRC has been actually removed which means
      *         that it was in the map before the operation took place.
      */
-    public boolean remove(String media, SourcePacketExtension ssrc)
+    public synchronized boolean remove(String                   media,
+                                       SourcePacketExtension    ssrc)
     {
         SourcePacketExtension toBeRemoved = findSSRC(media, ssrc.getSSRC());
-        return toBeRemoved != null && getSSRCsForMedia(media).remove(ssrc);
+        if (toBeRemoved == null)
+        {
+            return false;
+        }
+
+        ensureNotShared();
+
+        List<SourcePacketExtension> newList
+            = new ArrayList<>(getSSRCList(media));
+        if (!newList.remove(ssrc))
+        {
+            return false;
+        }
+        setSSRCList(media, newList);
+
+        if (duplicateCount == 0)
+        {
+            index.get(media).remove(ssrc.getSSRC());
+        }
+        else
+        {
+            reindex();
+        }
+        return true;
     }
 
     /**
      * Returns <tt>true</tt> if this map does not contain any
      * <tt>SourcePacketExtension</tt>s or <tt>false</tt> otherwise.
      */
-    public boolean isEmpty()
+    public synchronized boolean isEmpty()
     {
-        for (String media : ssrcs.keySet())
+        for (List<SourcePacketExtension> ssrcList : ssrcs.values())
         {
-            if (!getSSRCsForMedia(media).isEmpty())
+            if (!ssrcList.isEmpty())
             {
                 return false;
             }
@@ -345,11 +615,19 @@ String SSRCsToString(List<SourcePacketExtension> ssrcs)
      * <tt>MediaSSRCMap</tt>.
      *
      * @return <tt>Map<String, List<SourcePacketExtension></tt> which reflects
-     *         the state of this <tt>MediaSSRCMap</tt>.
+     *         the state of this <tt>MediaSSRCMap</tt>. It is not affected by
+     *         the later modifications of this map.
      */
-    public Map<String, List<SourcePacketExtension>> toMap()
+    public synchronized Map<String, List<SourcePacketExtension>> toMap()
     {
-        return Collections.unmodifiableMap(ssrcs);
+        Map<String, List<SourcePacketExtension>> map = new HashMap<>();
+
+        for (Map.Entry<String, List<SourcePacketExtension>> e
+                : ssrcs.entrySet())
+        {
+            map.put(e.getKey(), Collections.unmodifiableList(e.getValue()));
+        }
+        return Collections.unmodifiableMap(map);
     }
 
     @Override
@@ -66,21 +66,33 @@ private static void copyParamAttr( SourcePacketExtension    dst,
     }
 
     /**
-     * Call will remove all {@link ParameterPacketExtension}s from all
-     * <tt>SourcePacketExtension</tt>s stored in given <tt>MediaSSRCMap</tt>.
+     * Copies all <tt>SourcePacketExtension</tt>s stored in given
+     * <tt>MediaSSRCMap</tt> without their {@link ParameterPacketExtension}s.
+     * The SSRCs stored in the map are shared with the participant's state and
+     * can not be stripped in place.
      *
      * @param ssrcMap the <tt>MediaSSRCMap</tt> which contains the SSRC packet
-     * extensions to be stripped out of their parameters.
+     * extensions to be copied.
+     *
+     * @return new <tt>MediaSSRCMap</tt> with the SSRCs stripped out of their
+     * parameters.
      */
-    public static void deleteSSRCParams(MediaSSRCMap ssrcMap)
+    public static MediaSSRCMap copyWithoutParams(MediaSSRCMap ssrcMap)
     {
+        MediaSSRCMap stripped = new MediaSSRCMap();
+
         for (String media : ssrcMap.getMediaTypes())
         {
             for (SourcePacketExtension ssrc : ssrcMap.getSSRCsForMedia(media))
             {
-                deleteSSRCParams(ssrc);
+                SourcePacketExtension copy = ssrc.copy();
+
+                deleteSSRCParams(copy);
+
+                stripped.addSSRC(media, copy);
             }
         }
+        return stripped;
     }
 
     /**
@@ -0,0 +1,158 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.protocol.xmpp.util;
+
+import org.jivesoftware.smack.packet.*;
+
+import java.lang.ref.*;
+import java.util.*;
+
+/**
+ * Caches the XML rendered for packet extensions, so that an extension which
+ * is sent to many peers (eg. the SSRC advertised with 'source-add' to every
+ * conference participant) is serialized only once. The extensions are
+ * identified by the instance and not by the value, because the classes do not
+ * implement <tt>equals</tt> in a meaningful way. The cache does not prevent
+ * the extensions from being garbage collected.
+ *
+ * The extensions put in the cache must not be modified afterwards, as
+ * the modification would not be reflected in the cached XML. This holds for
+ * the SSRCs and SSRC groups stored in {@link MediaSSRCMap} and
+ * {@link MediaSSRCGroupMap} which are shared between the snapshots.
+ *
+ * The class is thread safe.
+ *
+ * @author agent
+ */
+public class XmlFragmentCache
+{
+    /**
+     * The rendered XML mapped to the extensions.
+     */
+    private final Map<IdentityKey, String> fragments = new HashMap<>();
+
+    /**
+     * The queue on which the keys of the extensions which have been garbage
+     * collected are put.
+     */
+    private final ReferenceQueue<PacketExtension> collected
+        = new ReferenceQueue<>();
+
+    /**
+     * Returns the XML of given extension, rendering it only if it's not
+     * in the cache yet.
+     *
+     * @param extension the <tt>PacketExtension</tt> to be serialized.
+     *
+     * @return the XML representation of the extension.
+     */
+    public String toXML(PacketExtension extension)
+    {
+        synchronized (fragments)
+        {
+            expunge();
+
+            String xml = fragments.get(new IdentityKey(extension, null));
+            if (xml != null)
+            {
+                return xml;
+            }
+        }
+
+        // Rendered outside of the lock, in the worst case the same extension
+        // is rendered twice
+        String xml = extension.toXML();
+
+        synchronized (fragments)
+        {
+            fragments.put(new IdentityKey(extension, collected), xml);
+        }
+        return xml;
+    }
+
+    /**
+     * Returns the number of extensions for which the XML is cached.
+     */
+    public int size()
+    {
+        synchronized (fragments)
+        {
+            expunge();
+
+            return fragments.size();
+        }
+    }
+
+    /**
+     * Removes the entries of the extensions which have been garbage collected.
+     */
+    private void expunge()
+    {
+        Reference<? extends PacketExtension> key;
+
+        while ((key = collected.poll()) != null)
+        {
+            fragments.remove(key);
+        }
+    }
+
+    /**
+     * Weak reference to an extension which compares by the identity of
+     * the referent.
+     */
+    private static class IdentityKey
+        extends WeakReference<PacketExtension>
+    {
+        /**
+         * The identity hash code of the referent, which must stay the same
+         * after the referent has been collected.
+         */
+        private final int hash;
+
+        IdentityKey(PacketExtension                    extension,
+                    ReferenceQueue<PacketExtension>    queue)
+        {
+            super(extension, queue);
+
+            this.hash = System.identityHashCode(extension);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this)
+            {
+                return true;
+            }
+            if (!(obj instanceof IdentityKey))
+            {
+                return false;
+            }
+
+            PacketExtension extension = get();
+
+            return extension != null && extension == ((IdentityKey) obj).get();
+        }
+    }
+}
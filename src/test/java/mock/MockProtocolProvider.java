@@ -171,7 +171,7 @@ public void includeColibriOpSet()
     {
         addSupportedOperationSet(
             OperationSetColibriConference.class,
-            new MockColibriOpSet(this, eventAdmin));
+            new MockColibriOpSet(this));
     }
 
     public void includeJingleOpSet()
@@ -34,6 +34,7 @@
 import org.osgi.framework.*;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
  *
@@ -58,6 +59,12 @@
 
     private boolean returnServerError = false;
 
+    /**
+     * The number of the next health checks which will be left without
+     * a response.
+     */
+    private final AtomicInteger healthChecksToDrop = new AtomicInteger();
+
     private VideobridgeBundleActivator jvbActivator;
 
     public MockVideobridge(MockXmppConnection connection,
@@ -101,6 +108,12 @@ public void processPacket(Packet p)
         {
             logger.debug("JVB rcv: " + p.toXML());
 
+            if (p instanceof HealthCheckIQ && dropHealthCheck())
+            {
+                logger.debug("JVB dropped: " + p.toXML());
+                return;
+            }
+
             IQ response;
             if (error == null)
             {
@@ -142,6 +155,20 @@ else if (p != null)
         }
     }
 
+    private boolean dropHealthCheck()
+    {
+        int toDrop;
+        do
+        {
+            toDrop = healthChecksToDrop.get();
+            if (toDrop <= 0)
+                return false;
+        }
+        while (!healthChecksToDrop.compareAndSet(toDrop, toDrop - 1));
+
+        return true;
+    }
+
     /**
      *
      * @param p <tt>ColibriConferenceIQ</tt> or <tt>HealthCheckIQ</tt> assumed
@@ -256,4 +283,23 @@ public void setReturnServerError(boolean returnServerError)
     {
         this.returnServerError = returnServerError;
     }
+
+    /**
+     * Makes the bridge leave the next health checks without a response, so
+     * that they time out.
+     *
+     * @param count how many health checks will be dropped.
+     */
+    public void dropHealthChecks(int count)
+    {
+        healthChecksToDrop.set(count);
+    }
+
+    /**
+     * Returns the number of the health checks which are yet to be dropped.
+     */
+    public int getHealthChecksToDrop()
+    {
+        return healthChecksToDrop.get();
+    }
 }
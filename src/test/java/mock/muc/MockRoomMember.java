@@ -42,6 +42,8 @@
 
     private ChatRoomMemberRole role = ChatRoomMemberRole.MEMBER;
 
+    private String region;
+
     MockRoomMember(String address, MockMultiUserChat chatRoom)
     {
         this.address = address;
@@ -162,6 +164,17 @@ public boolean isRobot()
         return false;
     }
 
+    @Override
+    public String getRegion()
+    {
+        return region;
+    }
+
+    public void setRegion(String region)
+    {
+        this.region = region;
+    }
+
     @Override
     public Presence getPresence()
     {
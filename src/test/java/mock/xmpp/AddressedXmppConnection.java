@@ -17,6 +17,7 @@
  */
 package mock.xmpp;
 
+import org.jitsi.jicofo.util.*;
 
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
@@ -64,6 +65,14 @@ public Packet sendPacketAndGetReply(Packet packet)
         return connection.sendPacketAndGetReply(packet);
     }
 
+    @Override
+    public SettableFuture<Packet> sendPacketAndGetReplyAsync(Packet packet)
+    {
+        fromCheck(packet);
+
+        return connection.sendPacketAndGetReplyAsync(packet);
+    }
+
     @Override
     public void addPacketHandler(PacketListener listener, PacketFilter filter)
     {
@@ -75,4 +84,10 @@ public void removePacketHandler(PacketListener listener)
     {
         connection.removePacketHandler(listener);
     }
+
+    @Override
+    public void setReplyTimeout(long replyTimeout)
+    {
+        connection.setReplyTimeout(replyTimeout);
+    }
 }
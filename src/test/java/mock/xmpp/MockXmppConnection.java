@@ -13,4 +13,11 @@
     void addPacketHandler(PacketListener listener, PacketFilter filter);
 
     void removePacketHandler(PacketListener listener);
+
+    /**
+     * Sets how long the requests wait for the reply before they time out.
+     *
+     * @param replyTimeout the timeout in milliseconds.
+     */
+    void setReplyTimeout(long replyTimeout);
 }
@@ -18,12 +18,14 @@
 package mock.xmpp;
 
 import org.jitsi.assertions.*;
+import org.jitsi.jicofo.util.*;
 import org.jitsi.util.*;
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  *
@@ -34,11 +36,30 @@
     private final static Logger logger
         = Logger.getLogger(MockXmppConnectionImpl.class);
 
+    /**
+     * The default time in milliseconds {@link #sendPacketAndGetReply(Packet)}
+     * waits for the reply.
+     */
+    public static final long DEFAULT_REPLY_TIMEOUT = 10000;
+
+    /**
+     * How long {@link #sendPacketAndGetReply(Packet)} waits for the reply.
+     */
+    private volatile long replyTimeout = DEFAULT_REPLY_TIMEOUT;
+
     final LinkedList<Packet> packetQueue = new LinkedList<Packet>();
 
     private final Map<PacketListener, PacketHandler> handlers
         = new HashMap<PacketListener, PacketHandler>();
 
+    /**
+     * The pool which waits for the replies of the packets sent with
+     * {@link #sendPacketAndGetReplyAsync(Packet)}.
+     */
+    private final ExecutorService replyReaders
+        = Executors.newCachedThreadPool(
+                new DaemonThreadFactory("reply-reader"));
+
     @Override
     public void sendPacket(final Packet packet)
     {
@@ -92,7 +113,31 @@ public Packet sendPacketAndGetReply(Packet packet)
 
         sendPacket(packet);
 
-        return readNextPacket(myJid, packetId, 10000);
+        return readNextPacket(myJid, packetId, replyTimeout);
+    }
+
+    @Override
+    public SettableFuture<Packet> sendPacketAndGetReplyAsync(
+            final Packet packet)
+    {
+        final SettableFuture<Packet> reply = new SettableFuture<Packet>();
+
+        replyReaders.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                reply.set(sendPacketAndGetReply(packet));
+            }
+        });
+
+        return reply;
+    }
+
+    @Override
+    public void setReplyTimeout(long replyTimeout)
+    {
+        this.replyTimeout = replyTimeout;
     }
 
     public Packet readNextPacket(String myJid, long timeout)
@@ -20,8 +20,8 @@
 import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
 import net.java.sip.communicator.service.protocol.*;
 
-import org.jitsi.eventadmin.*;
 import org.jitsi.impl.protocol.xmpp.colibri.*;
+import org.jitsi.jicofo.util.*;
 import org.jitsi.protocol.xmpp.*;
 
 import org.jivesoftware.smack.packet.*;
@@ -79,6 +79,13 @@
     private BlockingQueue<String> requestsSentQueue
         = new LinkedBlockingQueue<String>();
 
+    /**
+     * Asynchronous "create" requests which are held until
+     * {@link #resumeConferenceCreate()} is called.
+     */
+    private final List<Runnable> blockedCreateRequests
+        = new ArrayList<Runnable>();
+
     /**
      * Indicates if threads should be blocked before response is received.
      */
@@ -109,10 +116,9 @@
      * @param connection XMPP connection object that wil be used by new
      *                   instance.
      */
-    public AllocThreadingTestColibriConference(
-        XmppConnection connection, EventAdmin eventAdmin)
+    public AllocThreadingTestColibriConference(XmppConnection connection)
     {
-        super(connection, eventAdmin);
+        super(connection);
     }
 
     /**
@@ -132,11 +138,20 @@ public void blockConferenceCreator(boolean block)
      */
     public void resumeConferenceCreate()
     {
+        List<Runnable> toSend;
         synchronized (createConferenceSync)
         {
             blockConferenceCreation = false;
 
             createConferenceSync.notifyAll();
+
+            toSend = new ArrayList<Runnable>(blockedCreateRequests);
+            blockedCreateRequests.clear();
+        }
+
+        for (Runnable send : toSend)
+        {
+            send.run();
         }
     }
 
@@ -288,6 +303,79 @@ protected Packet sendAllocRequest(String endpointName,
         return response;
     }
 
+    /**
+     * Asynchronous version of {@link #sendAllocRequest(String,
+     * ColibriConferenceIQ)}. The request which creates the conference is
+     * reported as the conference creator and held, without blocking any
+     * thread, for as long as the creator is to be blocked. Blocking of
+     * the responses is not supported, as there is no thread to be blocked.
+     */
+    @Override
+    protected SettableFuture<Packet> sendAllocRequestAsync(
+            final String                 endpointName,
+            final ColibriConferenceIQ    request)
+    {
+        // Batched requests are not made for a single endpoint
+        final String requester
+            = endpointName != null ? endpointName : "batch";
+        final SettableFuture<Packet> response = new SettableFuture<Packet>();
+
+        Runnable send = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                requestsSentQueue.add(requester);
+
+                if (responseError != null)
+                {
+                    responseReceivedQueue.add(requester);
+                    response.set(
+                        IQ.createErrorResponse(
+                            request, new XMPPError(responseError)));
+                    return;
+                }
+
+                AllocThreadingTestColibriConference.super
+                    .sendAllocRequestAsync(endpointName, request)
+                    .addCallback(new SettableFuture.Callback<Packet>()
+                    {
+                        @Override
+                        public void onSuccess(Packet result)
+                        {
+                            responseReceivedQueue.add(requester);
+                            response.set(result);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable error)
+                        {
+                            response.setException(error);
+                        }
+                    });
+            }
+        };
+
+        synchronized (createConferenceSync)
+        {
+            // No conference ID means that the request creates the conference
+            if (request.getID() == null)
+            {
+                confCreatorQueue.offer(requester);
+
+                if (blockConferenceCreation)
+                {
+                    blockedCreateRequests.add(send);
+                    return response;
+                }
+            }
+        }
+
+        send.run();
+
+        return response;
+    }
+
     public void resumeResponses()
     {
         synchronized (blockResponseReceiveLock)
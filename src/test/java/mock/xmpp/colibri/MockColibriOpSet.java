@@ -19,7 +19,6 @@
 
 import mock.*;
 
-import org.jitsi.eventadmin.*;
 import org.jitsi.impl.protocol.xmpp.colibri.*;
 import org.jitsi.protocol.xmpp.colibri.*;
 
@@ -32,27 +31,21 @@
 {
     private final MockProtocolProvider protocolProvider;
 
-    private final EventAdmin eventAdmin;
-
     private OperationSetColibriConferenceImpl colibriImpl;
 
-    public MockColibriOpSet(MockProtocolProvider protocolProvider,
-                            EventAdmin           eventAdmin)
+    public MockColibriOpSet(MockProtocolProvider protocolProvider)
     {
         this.protocolProvider = protocolProvider;
 
         colibriImpl = new OperationSetColibriConferenceImpl();
 
-        this.eventAdmin = eventAdmin;
-
-        colibriImpl.initialize(
-            protocolProvider.getMockXmppConnection(), eventAdmin);
+        colibriImpl.initialize(protocolProvider.getMockXmppConnection());
     }
 
     public AllocThreadingTestColibriConference createAllocThreadingConf()
     {
         return new AllocThreadingTestColibriConference(
-            protocolProvider.getMockXmppConnection(), eventAdmin);
+            protocolProvider.getMockXmppConnection());
     }
 
     @Override
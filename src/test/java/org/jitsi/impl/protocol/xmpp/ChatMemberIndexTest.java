@@ -0,0 +1,154 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ChatMemberIndex}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class ChatMemberIndexTest
+{
+    private static final String ROOM = "room@conference.example.com";
+
+    private ChatMemberIndex index;
+
+    @Before
+    public void setUp()
+    {
+        index = new ChatMemberIndex();
+    }
+
+    private static ChatMemberImpl createMember(String nickname, int joinOrder)
+    {
+        return new ChatMemberImpl(ROOM + "/" + nickname, null, joinOrder);
+    }
+
+    /**
+     * The members are found by their MUC JID until they are removed.
+     */
+    @Test
+    public void testAddFindRemove()
+    {
+        ChatMemberImpl alice = createMember("alice", 1);
+        ChatMemberImpl bob = createMember("bob", 2);
+
+        assertTrue(index.add(alice));
+        assertTrue(index.add(bob));
+        assertEquals(2, index.size());
+
+        assertSame(alice, index.findByMucJid(ROOM + "/alice"));
+        assertSame(bob, index.findByMucJid(ROOM + "/bob"));
+        assertNull(index.findByMucJid(ROOM + "/carol"));
+        assertNull(index.findByMucJid(null));
+
+        assertSame(alice, index.remove(ROOM + "/alice"));
+        assertNull(index.remove(ROOM + "/alice"));
+
+        assertNull(index.findByMucJid(ROOM + "/alice"));
+        assertEquals(Collections.<ChatRoomMember>singletonList(bob),
+                     index.getMembers());
+    }
+
+    /**
+     * The second member with the same MUC JID is not added.
+     */
+    @Test
+    public void testDuplicateNotAdded()
+    {
+        ChatMemberImpl first = createMember("alice", 1);
+        ChatMemberImpl second = createMember("alice", 2);
+
+        assertTrue(index.add(first));
+        assertFalse(index.add(second));
+
+        assertEquals(1, index.size());
+        assertSame(first, index.findByMucJid(ROOM + "/alice"));
+    }
+
+    /**
+     * The member list is read only, kept in the join order and its iteration
+     * is not affected by the modifications made in the meantime.
+     */
+    @Test
+    public void testMembersView()
+    {
+        ChatMemberImpl alice = createMember("alice", 1);
+        ChatMemberImpl bob = createMember("bob", 2);
+        index.add(alice);
+        index.add(bob);
+
+        List<ChatRoomMember> members = index.getMembers();
+        assertEquals(Arrays.<ChatRoomMember>asList(alice, bob), members);
+
+        Iterator<ChatRoomMember> iterator = members.iterator();
+        index.remove(ROOM + "/alice");
+        index.add(createMember("carol", 3));
+
+        assertSame(alice, iterator.next());
+        assertSame(bob, iterator.next());
+        assertFalse(iterator.hasNext());
+
+        try
+        {
+            members.add(alice);
+            fail("The member list is modifiable");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * The presence is cached only for the occupants who have not joined yet
+     * and is dropped when the member is removed.
+     */
+    @Test
+    public void testPresenceCache()
+    {
+        String aliceJid = ROOM + "/alice";
+        Presence presence = new Presence(Presence.Type.available);
+
+        assertTrue(index.cachePresence(aliceJid, presence));
+        assertSame(presence, index.takeCachedPresence(aliceJid));
+        assertNull(index.takeCachedPresence(aliceJid));
+
+        index.add(createMember("alice", 1));
+        assertFalse(index.cachePresence(aliceJid, presence));
+        assertNull(index.takeCachedPresence(aliceJid));
+
+        String bobJid = ROOM + "/bob";
+        assertTrue(index.cachePresence(bobJid, presence));
+        index.remove(bobJid);
+        assertNull(index.takeCachedPresence(bobJid));
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp;
+
+import org.jitsi.jicofo.util.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import org.mockito.invocation.*;
+import org.mockito.stubbing.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for {@link XmppProtocolProvider.XmppConnectionAdapter}. The mock
+ * connection delivers the packets the way Smack does: the packet collectors
+ * are fed by the reader thread and the packet listeners are notified one
+ * after another by a single listener thread.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class XmppConnectionAdapterTest
+{
+    /**
+     * Emulates the reader thread of the connection.
+     */
+    private ExecutorService reader;
+
+    /**
+     * Emulates the listener thread of the connection.
+     */
+    private ExecutorService listenerExecutor;
+
+    /**
+     * The filters of the packet collectors created on the connection mapped
+     * to the queues of the collected packets.
+     */
+    private final Map<PacketFilter, BlockingQueue<Packet>> collectors
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The packet listeners added to the connection mapped to their filters.
+     */
+    private final Map<PacketListener, PacketFilter> listeners
+        = new ConcurrentHashMap<>();
+
+    private XmppProtocolProvider.XmppConnectionAdapter adapter;
+
+    @Before
+    public void setUp()
+    {
+        reader = Executors.newSingleThreadExecutor();
+        listenerExecutor = Executors.newSingleThreadExecutor();
+
+        XMPPConnection connection = mock(XMPPConnection.class);
+
+        when(connection.isConnected()).thenReturn(true);
+
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation)
+            {
+                Object[] args = invocation.getArguments();
+                listeners.put(
+                    (PacketListener) args[0], (PacketFilter) args[1]);
+                return null;
+            }
+        }).when(connection).addPacketListener(
+            any(PacketListener.class), any(PacketFilter.class));
+
+        when(connection.createPacketCollector(any(PacketFilter.class)))
+            .thenAnswer(new Answer<PacketCollector>()
+            {
+                @Override
+                public PacketCollector answer(InvocationOnMock invocation)
+                {
+                    return createCollector(
+                        (PacketFilter) invocation.getArguments()[0]);
+                }
+            });
+
+        // The remote party responds to every request
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation)
+            {
+                final IQ request = (IQ) invocation.getArguments()[0];
+                reader.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        receive(IQ.createResultIQ(request));
+                    }
+                });
+                return null;
+            }
+        }).when(connection).sendPacket(any(Packet.class));
+
+        adapter = new XmppProtocolProvider.XmppConnectionAdapter(connection);
+    }
+
+    @After
+    public void tearDown()
+    {
+        reader.shutdownNow();
+        listenerExecutor.shutdownNow();
+    }
+
+    private PacketCollector createCollector(final PacketFilter filter)
+    {
+        final BlockingQueue<Packet> queue = new LinkedBlockingQueue<>();
+        collectors.put(filter, queue);
+
+        PacketCollector collector = mock(PacketCollector.class);
+
+        when(collector.nextResult(anyLong()))
+            .thenAnswer(new Answer<Packet>()
+            {
+                @Override
+                public Packet answer(InvocationOnMock invocation)
+                    throws InterruptedException
+                {
+                    long timeout = (Long) invocation.getArguments()[0];
+                    return queue.poll(timeout, TimeUnit.MILLISECONDS);
+                }
+            });
+
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation)
+            {
+                collectors.remove(filter);
+                return null;
+            }
+        }).when(collector).cancel();
+
+        return collector;
+    }
+
+    /**
+     * Delivers the packet just like the reader thread of Smack does.
+     */
+    private void receive(final Packet packet)
+    {
+        for (Map.Entry<PacketFilter, BlockingQueue<Packet>> collector
+                : collectors.entrySet())
+        {
+            if (collector.getKey().accept(packet))
+            {
+                collector.getValue().add(packet);
+            }
+        }
+
+        listenerExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (Map.Entry<PacketListener, PacketFilter> listener
+                        : listeners.entrySet())
+                {
+                    if (listener.getValue().accept(packet))
+                    {
+                        listener.getKey().processPacket(packet);
+                    }
+                }
+            }
+        });
+    }
+
+    private static IQ createRequest()
+    {
+        IQ iq = new IQ()
+        {
+            @Override
+            public String getChildElementXML()
+            {
+                return null;
+            }
+        };
+        iq.setType(IQ.Type.GET);
+        iq.setTo("bridge.example.com");
+        iq.setFrom("focus.example.com");
+        return iq;
+    }
+
+    /**
+     * The blocking request made by a packet listener receives the response
+     * before it times out, even though no other packet listener can be
+     * notified until it returns.
+     */
+    @Test
+    public void testBlockingRequestFromListener()
+        throws Exception
+    {
+        final IQ request = createRequest();
+
+        Future<Packet> response
+            = listenerExecutor.submit(new Callable<Packet>()
+            {
+                @Override
+                public Packet call()
+                    throws Exception
+                {
+                    return adapter.sendPacketAndGetReply(request);
+                }
+            });
+
+        // Way less than the reply timeout
+        Packet reply = response.get(2, TimeUnit.SECONDS);
+
+        assertNotNull(reply);
+        assertEquals(request.getPacketID(), reply.getPacketID());
+        assertTrue("The collector was not cancelled", collectors.isEmpty());
+    }
+
+    /**
+     * The asynchronous request is completed by the packet listener thread.
+     */
+    @Test
+    public void testAsyncRequest()
+        throws Exception
+    {
+        IQ request = createRequest();
+
+        SettableFuture<Packet> response
+            = adapter.sendPacketAndGetReplyAsync(request);
+
+        Packet reply = response.get(2, TimeUnit.SECONDS);
+
+        assertNotNull(reply);
+        assertEquals(request.getPacketID(), reply.getPacketID());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.impl.protocol.xmpp.colibri;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ChannelSourcesCache}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class ChannelSourcesCacheTest
+{
+    private ChannelSourcesCache cache;
+
+    private ColibriConferenceIQ channels;
+
+    @Before
+    public void setUp()
+    {
+        cache = new ChannelSourcesCache();
+
+        ColibriConferenceIQ.Channel audioChannel
+            = new ColibriConferenceIQ.Channel();
+        audioChannel.setID("audio1");
+
+        ColibriConferenceIQ.Content audio
+            = new ColibriConferenceIQ.Content("audio");
+        audio.addChannel(audioChannel);
+
+        channels = new ColibriConferenceIQ();
+        channels.addContent(audio);
+    }
+
+    private static MediaSSRCMap createSources(long... ssrcs)
+    {
+        MediaSSRCMap sources = new MediaSSRCMap();
+        for (long ssrc : ssrcs)
+        {
+            SourcePacketExtension source = new SourcePacketExtension();
+            source.setSSRC(ssrc);
+            sources.addSSRC("audio", source);
+        }
+        return sources;
+    }
+
+    private static MediaSSRCGroupMap createGroups(long... ssrcs)
+    {
+        SourceGroupPacketExtension groupExt
+            = new SourceGroupPacketExtension();
+        groupExt.setSemantics("FID");
+
+        SSRCGroup group = new SSRCGroup(groupExt);
+        for (long ssrc : ssrcs)
+        {
+            SourcePacketExtension source = new SourcePacketExtension();
+            source.setSSRC(ssrc);
+            group.addSource(source);
+        }
+
+        MediaSSRCGroupMap groups = new MediaSSRCGroupMap();
+        groups.addSSRCGroup("audio", group);
+        return groups;
+    }
+
+    /**
+     * Requests the sources and returns <tt>true</tt> if the channel has been
+     * included in the update.
+     */
+    private boolean isSent(
+            MediaSSRCMap sources, ChannelSourcesCache.Update update)
+    {
+        return cache.getChangedSources(sources, channels, update)
+            .containsKey("audio");
+    }
+
+    /**
+     * The sources accepted by the bridge are not sent again.
+     */
+    @Test
+    public void testCommitted()
+    {
+        ChannelSourcesCache.Update update = cache.createUpdate();
+        assertTrue(isSent(createSources(1, 2), update));
+        assertFalse(update.isEmpty());
+
+        cache.commit(update);
+
+        // The order of the sources does not matter
+        update = cache.createUpdate();
+        assertFalse(isSent(createSources(2, 1), update));
+        assertTrue(update.isEmpty());
+
+        assertTrue(isSent(createSources(1, 2, 3), cache.createUpdate()));
+    }
+
+    /**
+     * The sources are sent again for as long as the update has not been
+     * accepted by the bridge.
+     */
+    @Test
+    public void testNotCommitted()
+    {
+        assertTrue(isSent(createSources(1), cache.createUpdate()));
+
+        // The first request has failed
+        ChannelSourcesCache.Update update = cache.createUpdate();
+        assertTrue(isSent(createSources(1), update));
+
+        cache.commit(update);
+
+        assertFalse(isSent(createSources(1), cache.createUpdate()));
+    }
+
+    /**
+     * An update which is accepted after a later one does not override what
+     * the later one has sent.
+     */
+    @Test
+    public void testLateCommit()
+    {
+        ChannelSourcesCache.Update first = cache.createUpdate();
+        assertTrue(isSent(createSources(1), first));
+        cache.commit(first);
+
+        ChannelSourcesCache.Update second = cache.createUpdate();
+        assertTrue(isSent(createSources(1, 2), second));
+
+        // The sources are back to what has been accepted, but the bridge
+        // might end up with the second update, so they're sent anyway
+        ChannelSourcesCache.Update third = cache.createUpdate();
+        assertTrue(isSent(createSources(1), third));
+
+        cache.commit(third);
+        cache.commit(second);
+
+        assertFalse(isSent(createSources(1), cache.createUpdate()));
+    }
+
+    /**
+     * If the last update fails, an earlier one being accepted does not make
+     * the channel up to date.
+     */
+    @Test
+    public void testLastUpdateFailed()
+    {
+        ChannelSourcesCache.Update first = cache.createUpdate();
+        assertTrue(isSent(createSources(1), first));
+
+        ChannelSourcesCache.Update second = cache.createUpdate();
+        assertTrue(isSent(createSources(2), second));
+
+        cache.commit(first);
+
+        // The second one has failed
+        assertTrue(isSent(createSources(1), cache.createUpdate()));
+    }
+
+    /**
+     * The update accepted after the channels have been expired does not
+     * bring them back.
+     */
+    @Test
+    public void testCommitAfterRemove()
+    {
+        ChannelSourcesCache.Update update = cache.createUpdate();
+        assertTrue(isSent(createSources(1), update));
+
+        cache.remove(channels);
+        cache.commit(update);
+
+        assertTrue(isSent(createSources(1), cache.createUpdate()));
+    }
+
+    /**
+     * The source groups are committed just like the sources.
+     */
+    @Test
+    public void testGroups()
+    {
+        assertTrue(
+            cache.getChangedGroups(
+                    createGroups(1, 2), channels, cache.createUpdate())
+                .containsKey("audio"));
+
+        // The first request has failed
+        ChannelSourcesCache.Update update = cache.createUpdate();
+        assertTrue(
+            cache.getChangedGroups(createGroups(1, 2), channels, update)
+                .containsKey("audio"));
+
+        cache.commit(update);
+
+        update = cache.createUpdate();
+        assertFalse(
+            cache.getChangedGroups(createGroups(1, 2), channels, update)
+                .containsKey("audio"));
+        assertTrue(update.isEmpty());
+
+        // The order of the SSRCs in a group matters
+        assertTrue(
+            cache.getChangedGroups(
+                    createGroups(2, 1), channels, cache.createUpdate())
+                .containsKey("audio"));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.muc.*;
+import mock.xmpp.pubsub.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link BridgeSelectionStrategy} implementations and
+ * {@link RankedBridgeIndex}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class BridgeSelectionStrategyTest
+{
+    private BridgeSelector selector;
+
+    private RankedBridgeIndex index;
+
+    private BridgeState jvb1;
+
+    private BridgeState jvb2;
+
+    private BridgeState jvb3;
+
+    @Before
+    public void setUp()
+    {
+        selector = new BridgeSelector(new MockSubscriptionOpSetImpl());
+        index = new RankedBridgeIndex();
+
+        jvb1 = createBridge("jvb1.test.domain.net", 10, "us-east");
+        jvb2 = createBridge("jvb2.test.domain.net", 20, "eu-west");
+        jvb3 = createBridge("jvb3.test.domain.net", 30, "eu-west");
+    }
+
+    private BridgeState createBridge(String jid, int streams, String region)
+    {
+        BridgeState bridge = new BridgeState(selector, jid, null);
+
+        bridge.setVideoStreamCount(streams);
+        bridge.setRegion(region);
+        index.add(bridge);
+
+        return bridge;
+    }
+
+    @Test
+    public void testRanking()
+    {
+        BridgeSelectionStrategy strategy
+            = new BridgeSelectionStrategy.LeastLoaded();
+
+        assertEquals(jvb1, select(strategy, null));
+
+        jvb1.onVideoStreamsChanged(15);
+        index.update(jvb1);
+
+        assertEquals(jvb2, select(strategy, null));
+
+        jvb2.setIsOperational(false);
+        index.update(jvb2);
+
+        assertEquals(jvb1, select(strategy, null));
+
+        index.remove(jvb1);
+
+        assertEquals(jvb3, select(strategy, null));
+
+        jvb3.setIsOperational(false);
+        index.update(jvb3);
+
+        assertNull(select(strategy, null));
+    }
+
+    @Test
+    public void testCapacityCeiling()
+    {
+        BridgeSelectionStrategy strategy
+            = new BridgeSelectionStrategy.LeastLoaded();
+
+        strategy.setCapacity(-1, 25);
+
+        assertEquals(jvb1, select(strategy, null));
+
+        jvb1.onVideoStreamsChanged(20);
+        index.update(jvb1);
+
+        // jvb1 and jvb3 are now full
+        assertEquals(jvb2, select(strategy, null));
+
+        jvb2.setConferenceCount(5);
+        strategy.setCapacity(5, 25);
+
+        assertNull(select(strategy, null));
+    }
+
+    @Test
+    public void testRegion()
+    {
+        BridgeSelectionStrategy strategy
+            = new BridgeSelectionStrategy.RegionBased();
+
+        strategy.setCapacity(-1, 35);
+
+        // Region unknown without the participant
+        assertEquals(jvb1, select(strategy, null));
+
+        // The least loaded one in the region, even though jvb1 has less load
+        assertEquals(jvb2, select(strategy, "eu-west"));
+        assertEquals(jvb1, select(strategy, "us-east"));
+
+        jvb2.onVideoStreamsChanged(15);
+        index.update(jvb2);
+
+        // jvb2 is full
+        assertEquals(jvb3, select(strategy, "eu-west"));
+
+        jvb3.setIsOperational(false);
+        index.update(jvb3);
+
+        // No bridges left in the region
+        assertEquals(jvb1, select(strategy, "eu-west"));
+
+        // No bridges in the region at all
+        assertEquals(jvb1, select(strategy, "ap-south"));
+    }
+
+    private BridgeState select(BridgeSelectionStrategy strategy,
+                               String participantRegion)
+    {
+        Participant participant = null;
+        if (participantRegion != null)
+        {
+            MockMultiUserChat chat = new MockMultiUserChat(null, null);
+            MockRoomMember member = chat.createMockRoomMember("member");
+
+            member.setRegion(participantRegion);
+            participant
+                = new Participant(new MockJitsiMeetConference(), member, 20);
+        }
+
+        return strategy.select(
+                index.getOperationalBridges(), null, participant);
+    }
+}
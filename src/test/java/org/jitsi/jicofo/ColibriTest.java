@@ -20,6 +20,7 @@
 import mock.*;
 import mock.jvb.*;
 import mock.util.*;
+import mock.xmpp.pubsub.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
@@ -33,8 +34,12 @@
 import org.junit.runners.*;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 /**
  * FIXME: include into test suite(problems between OSGi restarts)
@@ -133,21 +138,190 @@ public void testChannelAllocation()
 
         colibriConf.expireChannels(peer2Channels);
 
-        //FIXME: fix unreliable sleep call
-        Thread.sleep(1000);
+        assertEquals(3, waitForChannelsCount(mockBridge, 3, 5000));
+
+        colibriConf.expireChannels(peer1Channels);
+
+        assertEquals(0 , waitForChannelsCount(mockBridge, 0, 5000));
+
+        testConference.stop();
+    }
+
+    @Test
+    public void testBatchedChannelAllocation()
+        throws Exception
+    {
+        String roomName = "testroom2@conference.pawel.jitsi.net";
+        String serverName = "test-server";
+        JitsiMeetConfig config
+            = new JitsiMeetConfig(new HashMap<String,String>());
+
+        TestConference testConference
+            = TestConference.allocate(osgi.bc, serverName, roomName);
+
+        MockProtocolProvider pps
+            = testConference.getFocusProtocolProvider();
+
+        OperationSetColibriConference colibriTool
+            = pps.getOperationSet(OperationSetColibriConference.class);
+
+        ColibriConference colibriConf = colibriTool.createNewConference();
+
+        colibriConf.setConfig(config);
+        colibriConf.setAllocationBatchWindow(500);
+
+        colibriConf.setJitsiVideobridge(
+            testConference.getMockVideoBridge().getBridgeJid());
+
+        JingleOfferFactory jingleOfferFactory
+            = FocusBundleActivator.getJingleOfferFactory();
+
+        List<ContentPacketExtension> contents1 = new ArrayList<>();
+        contents1.add(
+            jingleOfferFactory.createAudioContent(false, true, false));
+        contents1.add(
+            jingleOfferFactory.createVideoContent(false, true, false, -1, -1));
+        contents1.add(jingleOfferFactory.createDataContent(false, true));
+
+        List<ContentPacketExtension> contents2 = new ArrayList<>();
+        contents2.add(
+            jingleOfferFactory.createAudioContent(false, true, false));
+        contents2.add(
+            jingleOfferFactory.createVideoContent(false, true, false, -1, -1));
+        contents2.add(jingleOfferFactory.createDataContent(false, true));
+
+        MockVideobridge mockBridge = testConference.getMockVideoBridge();
+
+        // Both requests are made within the batch window, so they will be
+        // sent to the bridge in a single IQ
+        SettableFuture<ColibriConferenceIQ> peer1Future
+            = colibriConf.createColibriChannelsAsync(
+                    true, "endpoint1", true, contents1);
+        SettableFuture<ColibriConferenceIQ> peer2Future
+            = colibriConf.createColibriChannelsAsync(
+                    true, "endpoint2", true, contents2);
+
+        ColibriConferenceIQ peer1Channels
+            = peer1Future.get(10, TimeUnit.SECONDS);
+        ColibriConferenceIQ peer2Channels
+            = peer2Future.get(10, TimeUnit.SECONDS);
+
+        assertEquals(6 , mockBridge.getChannelsCount());
+
+        assertEquals("Peer 1 should have 3 channels allocated",
+                     3, countChannels(peer1Channels));
+        assertEquals("Peer 2 should have 3 channels allocated",
+                     3, countChannels(peer2Channels));
+
+        assertEquals("Peer 1 should have single bundle allocated !",
+                     1, peer1Channels.getChannelBundles().size());
+        assertEquals("Peer 2 should have single bundle allocated !",
+                     1, peer2Channels.getChannelBundles().size());
 
-        assertEquals(3, mockBridge.getChannelsCount());
+        assertFalse(
+            peer1Channels.getChannelBundles().get(0).getId().equals(
+                    peer2Channels.getChannelBundles().get(0).getId()));
 
+        colibriConf.expireChannels(peer2Channels);
         colibriConf.expireChannels(peer1Channels);
 
-        //FIXME: fix unreliable sleep call
+        assertEquals(0 , waitForChannelsCount(mockBridge, 0, 5000));
+
+        testConference.stop();
+    }
+
+    @Test
+    public void testDisposeBatchedChannelAllocation()
+        throws Exception
+    {
+        String roomName = "testroom3@conference.pawel.jitsi.net";
+        String serverName = "test-server";
+        JitsiMeetConfig config
+            = new JitsiMeetConfig(new HashMap<String,String>());
+
+        TestConference testConference
+            = TestConference.allocate(osgi.bc, serverName, roomName);
+
+        MockProtocolProvider pps
+            = testConference.getFocusProtocolProvider();
+
+        OperationSetColibriConference colibriTool
+            = pps.getOperationSet(OperationSetColibriConference.class);
+
+        ColibriConference colibriConf = colibriTool.createNewConference();
+
+        final AtomicInteger videoStreams = new AtomicInteger();
+
+        colibriConf.setConfig(config);
+        colibriConf.setAllocationBatchWindow(500);
+        colibriConf.setBridgeSelector(
+            new BridgeSelector(new MockSubscriptionOpSetImpl())
+            {
+                @Override
+                public void onVideoStreamsChanged(
+                        String bridgeJid, int videoStreamDiff)
+                {
+                    videoStreams.addAndGet(videoStreamDiff);
+                }
+            });
+
+        colibriConf.setJitsiVideobridge(
+            testConference.getMockVideoBridge().getBridgeJid());
+
+        JingleOfferFactory jingleOfferFactory
+            = FocusBundleActivator.getJingleOfferFactory();
+
+        List<ContentPacketExtension> contents = new ArrayList<>();
+        contents.add(
+            jingleOfferFactory.createAudioContent(false, true, false));
+        contents.add(
+            jingleOfferFactory.createVideoContent(false, true, false, -1, -1));
+
+        MockVideobridge mockBridge = testConference.getMockVideoBridge();
+
+        SettableFuture<ColibriConferenceIQ> peerFuture
+            = colibriConf.createColibriChannelsAsync(
+                    true, "endpoint1", true, contents);
+
+        assertEquals(1, videoStreams.get());
+
+        // The batch is still waiting for its window to expire
+        colibriConf.dispose();
+
+        assertNull(peerFuture.get(1, TimeUnit.SECONDS));
+        assertEquals(0, videoStreams.get());
+
+        // Nothing is sent once the window expires
         Thread.sleep(1000);
 
-        assertEquals(0 , mockBridge.getChannelsCount());
+        assertEquals(0, mockBridge.getChannelsCount());
+        assertEquals(0, videoStreams.get());
 
         testConference.stop();
     }
 
+    /**
+     * Waits until the mock bridge has given number of channels allocated.
+     *
+     * @param mockBridge the bridge to be checked.
+     * @param expected the number of channels to wait for.
+     * @param timeout how long to wait at most, in milliseconds.
+     *
+     * @return the number of channels when the wait ends.
+     */
+    private static int waitForChannelsCount(
+            MockVideobridge mockBridge, int expected, long timeout)
+        throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + timeout;
+        while (mockBridge.getChannelsCount() != expected
+                && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10);
+        }
+        return mockBridge.getChannelsCount();
+    }
+
     private static int countChannels(ColibriConferenceIQ conferenceIq)
     {
         int count = 0;
@@ -36,6 +36,7 @@
 import org.junit.runners.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import static org.junit.Assert.*;
 
@@ -310,6 +311,152 @@ public void testCreateFailure()
         mockBridge.stop(osgi.bc);
     }
 
+    /**
+     * Here we test a burst of asynchronous allocations. None of them blocks
+     * a thread and only the conference creator sends its request until
+     * the conference is created.
+     */
+    @Test
+    public void testAsyncColibriMultiThreading()
+        throws Exception
+    {
+        ProviderListener providerListener
+            = new ProviderListener(FocusBundleActivator.bundleContext);
+
+        MockProtocolProvider mockProvider
+            = (MockProtocolProvider) providerListener.obtainProvider(1000);
+
+        MockColibriOpSet colibriOpSet = mockProvider.getMockColibriOpSet();
+
+        String mockBridgeJid = "some.mock.bridge.com";
+
+        MockVideobridge mockBridge
+            = new MockVideobridge(
+                    mockProvider.getMockXmppConnection(),
+                    mockBridgeJid);
+
+        mockBridge.start(osgi.bc);
+
+        AllocThreadingTestColibriConference colibriConf
+            = colibriOpSet.createAllocThreadingConf();
+
+        colibriConf.setJitsiVideobridge(mockBridgeJid);
+
+        colibriConf.blockConferenceCreator(true);
+
+        List<SettableFuture<ColibriConferenceIQ>> results
+            = new ArrayList<SettableFuture<ColibriConferenceIQ>>();
+
+        for (int i=0; i < 20; i++)
+        {
+            // Every call returns right away, on the test thread
+            results.add(
+                colibriConf.createColibriChannelsAsync(
+                        true, "peer" + i, true, createContents()));
+        }
+
+        assertEquals("peer0", colibriConf.obtainConferenceCreator());
+
+        // The creator is being held and the others wait for it in the queue
+        assertEquals(0, colibriConf.allocRequestsSentCount());
+        for (SettableFuture<ColibriConferenceIQ> result : results)
+        {
+            assertFalse(result.isDone());
+        }
+
+        colibriConf.resumeConferenceCreate();
+
+        for (SettableFuture<ColibriConferenceIQ> result : results)
+        {
+            assertNotNull(result.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(results.size(), colibriConf.allocRequestsSentCount());
+        assertEquals(1, mockBridge.getConferenceCount());
+        assertEquals(
+            results.size(),
+            mockBridge.getChannelCountByContent("audio"));
+        assertEquals(
+            results.size(),
+            mockBridge.getChannelCountByContent("video"));
+        assertEquals(
+            results.size(),
+            mockBridge.getChannelCountByContent("data"));
+
+        mockBridge.stop(osgi.bc);
+    }
+
+    /**
+     * Here we test a burst of asynchronous allocations where the conference
+     * creator fails. The allocations queued behind it must fail as well,
+     * without sending their requests.
+     */
+    @Test
+    public void testAsyncCreateFailure()
+        throws Exception
+    {
+        ProviderListener providerListener
+            = new ProviderListener(FocusBundleActivator.bundleContext);
+
+        MockProtocolProvider mockProvider
+            = (MockProtocolProvider) providerListener.obtainProvider(1000);
+
+        MockColibriOpSet colibriOpSet = mockProvider.getMockColibriOpSet();
+
+        String mockBridgeJid = "some.mock.bridge.com";
+
+        MockVideobridge mockBridge
+            = new MockVideobridge(
+                    mockProvider.getMockXmppConnection(),
+                    mockBridgeJid);
+
+        mockBridge.start(osgi.bc);
+
+        AllocThreadingTestColibriConference colibriConf
+            = colibriOpSet.createAllocThreadingConf();
+
+        colibriConf.setJitsiVideobridge(mockBridgeJid);
+
+        colibriConf.setResponseError(XMPPError.Condition.interna_server_error);
+
+        colibriConf.blockConferenceCreator(true);
+
+        List<SettableFuture<ColibriConferenceIQ>> results
+            = new ArrayList<SettableFuture<ColibriConferenceIQ>>();
+
+        for (int i=0; i < 10; i++)
+        {
+            results.add(
+                colibriConf.createColibriChannelsAsync(
+                        true, "peer" + i, true, createContents()));
+        }
+
+        assertNotNull(colibriConf.obtainConferenceCreator());
+
+        colibriConf.resumeConferenceCreate();
+
+        for (SettableFuture<ColibriConferenceIQ> result : results)
+        {
+            try
+            {
+                result.get(5, TimeUnit.SECONDS);
+                fail("Allocation should have failed");
+            }
+            catch (ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof OperationFailedException);
+            }
+        }
+
+        // Only the creator has sent its request
+        assertEquals(1, colibriConf.allocRequestsSentCount());
+
+        // No conference created
+        assertEquals(0, mockBridge.getConferenceCount());
+
+        mockBridge.stop(osgi.bc);
+    }
+
     static List<ContentPacketExtension> createContents()
     {
         List<ContentPacketExtension> contents
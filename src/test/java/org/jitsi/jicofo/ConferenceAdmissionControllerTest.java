@@ -0,0 +1,187 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ConferenceAdmissionController}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class ConferenceAdmissionControllerTest
+{
+    @Test
+    public void testDisabled()
+        throws Exception
+    {
+        ConferenceAdmissionController controller
+            = new ConferenceAdmissionController();
+
+        assertFalse(controller.isEnabled());
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(0, controller.admit("room" + i + "@muc.example.com"));
+        }
+    }
+
+    @Test
+    public void testGlobalLimit()
+        throws Exception
+    {
+        ConferenceAdmissionController controller
+            = new ConferenceAdmissionController();
+
+        // One conference per 10 seconds, burst of 2
+        controller.configure(0.1d, 2, 0d, 0);
+
+        assertTrue(controller.isEnabled());
+        assertEquals(0, controller.admit("room1@muc.example.com"));
+        assertEquals(0, controller.admit("room2@muc.example.com"));
+
+        int retryAfter = controller.admit("room3@muc.example.com");
+        assertTrue(retryAfter > 0 && retryAfter <= 10);
+
+        // The token of a conference which did not need to be created is
+        // returned
+        controller.release("room2@muc.example.com");
+        assertEquals(0, controller.admit("room3@muc.example.com"));
+
+        Map<String, Object> stats = controller.getStats();
+        assertEquals(3L, stats.get("admitted"));
+        assertEquals(1L, stats.get("rejected"));
+        assertEquals(1L, stats.get("rejected_rate"));
+    }
+
+    @Test
+    public void testDomainLimit()
+        throws Exception
+    {
+        ConferenceAdmissionController controller
+            = new ConferenceAdmissionController();
+
+        controller.configure(0d, 0, 0.1d, 1);
+
+        assertEquals(0, controller.admit("room1@muc.tenant1.example.com"));
+        assertTrue(controller.admit("room2@muc.tenant1.example.com") > 0);
+
+        // Other tenants are not affected
+        assertEquals(0, controller.admit("room1@muc.tenant2.example.com"));
+
+        assertEquals(
+            1L, controller.getStats().get("rejected_domain_rate"));
+    }
+
+    @Test(timeout = 10000)
+    public void testNonBlocking()
+        throws Exception
+    {
+        ConferenceAdmissionController controller
+            = new ConferenceAdmissionController();
+
+        // 1 conference per second, the first one uses the burst
+        controller.configure(1d, 1, 0d, 0);
+
+        assertEquals(0, controller.admit("room1@muc.example.com"));
+
+        // The storm is rejected at once and told to retry at the times of
+        // the consecutive tokens
+        long start = System.nanoTime();
+        int[] retryAfter = new int[5];
+        for (int i = 0; i < retryAfter.length; i++)
+        {
+            retryAfter[i] = controller.admit("room" + (i + 2) + "@muc.ex.com");
+        }
+        assertTrue(System.nanoTime() - start < 1000000000L);
+
+        for (int i = 0; i < retryAfter.length; i++)
+        {
+            assertTrue(retryAfter[i] >= i + 1 && retryAfter[i] <= i + 2);
+        }
+        assertEquals(5L, controller.getStats().get("rejected_rate"));
+    }
+
+    @Test(timeout = 10000)
+    public void testRetryReserved()
+        throws Exception
+    {
+        ConferenceAdmissionController controller
+            = new ConferenceAdmissionController();
+
+        // 2 conferences per second, the first one uses the burst
+        controller.configure(2d, 1, 0d, 0);
+
+        assertEquals(0, controller.admit("room1@muc.example.com"));
+
+        // The tokens of the next 500 and 1000 ms are reserved
+        assertEquals(1, controller.admit("room2@muc.example.com"));
+        assertEquals(1, controller.admit("room3@muc.example.com"));
+        assertEquals(2, controller.getStats().get("reserved"));
+
+        Thread.sleep(600);
+
+        // room3 came back too early, its token is still reserved
+        assertTrue(controller.admit("room3@muc.example.com") > 0);
+
+        // room2 gets its token
+        assertEquals(0, controller.admit("room2@muc.example.com"));
+
+        // The new request does not take the token reserved for room3
+        assertTrue(controller.admit("room4@muc.example.com") > 0);
+
+        Map<String, Object> stats = controller.getStats();
+        assertEquals(2, stats.get("reserved"));
+        assertEquals(2L, stats.get("admitted"));
+        assertEquals(3L, stats.get("rejected_rate"));
+    }
+
+    @Test
+    public void testDomainRetryReserved()
+        throws Exception
+    {
+        ConferenceAdmissionController controller
+            = new ConferenceAdmissionController();
+
+        // One conference per 10 seconds in a domain
+        controller.configure(0d, 0, 0.1d, 1);
+
+        assertEquals(0, controller.admit("room1@muc.example.com"));
+
+        // The storm in the domain is told to retry at the consecutive tokens
+        int first = controller.admit("room2@muc.example.com");
+        int second = controller.admit("room3@muc.example.com");
+        assertTrue(first > 0 && first <= 10);
+        assertTrue(second > 10 && second <= 20);
+
+        // Retrying early does not reserve another token
+        int again = controller.admit("room3@muc.example.com");
+        assertTrue(again > 10 && again <= second);
+        assertEquals(2, controller.getStats().get("reserved"));
+
+        // Other tenants are not affected
+        assertEquals(0, controller.admit("room1@muc.tenant.example.com"));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.muc.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import net.java.sip.communicator.impl.protocol.jabber.jinglesdp.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ConferenceSourceRegistry}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class ConferenceSourceRegistryTest
+{
+    private ConferenceSourceRegistry registry;
+
+    private MockJitsiMeetConference mockConference;
+
+    private MockRoomMember roomMember;
+
+    @Before
+    public void setUp()
+    {
+        registry = new ConferenceSourceRegistry();
+        mockConference = new MockJitsiMeetConference();
+        MockMultiUserChat mockMultiUserChat = new MockMultiUserChat(null, null);
+        roomMember = mockMultiUserChat.createMockRoomMember("testMember");
+    }
+
+    /**
+     * Creates new participant for {@link #roomMember} with given audio SSRC.
+     */
+    private Participant createParticipant(long ssrc)
+        throws InvalidSSRCsException
+    {
+        Participant participant
+            = new Participant(mockConference, roomMember, 20);
+
+        ContentPacketExtension audio
+            = FocusBundleActivator.getJingleOfferFactory()
+                .createAudioContent(false, true, true);
+
+        JingleUtils.getRtpDescription(audio).addChildExtension(
+            SSRCUtil.createSSRC(ssrc, new String[][]{
+                {"cname", "cname" + ssrc},
+                {"msid", "stream" + ssrc + " track" + ssrc}
+            }));
+
+        List<ContentPacketExtension> contents = new ArrayList<>();
+        contents.add(audio);
+        participant.addSSRCsAndGroupsFromContent(contents);
+
+        return participant;
+    }
+
+    private static List<Long> getAudioSSRCs(ConferenceSourceRegistry.View view)
+    {
+        List<Long> ssrcs = new ArrayList<>();
+        for (SourcePacketExtension source : view.getSSRCsForMedia("audio"))
+        {
+            ssrcs.add(source.getSSRC());
+        }
+        return ssrcs;
+    }
+
+    /**
+     * The removal of the participant who has left does not remove
+     * the sources of the new instance of the participant who has rejoined
+     * with the same MUC JID.
+     */
+    @Test
+    public void testRemoveAfterRejoin()
+        throws Exception
+    {
+        Participant left = createParticipant(1L);
+        registry.update(left);
+
+        Participant rejoined = createParticipant(2L);
+        registry.update(rejoined);
+
+        assertEquals(left.getMucJid(), rejoined.getMucJid());
+
+        registry.remove(left);
+
+        assertNull(registry.getSSRCs(left));
+        assertNotNull(registry.getSSRCs(rejoined));
+        assertEquals(
+            Collections.singletonList(2L),
+            getAudioSSRCs(registry.getView(null)));
+    }
+
+    /**
+     * The update made by the participant after it has been removed is
+     * ignored.
+     */
+    @Test
+    public void testUpdateAfterRemove()
+        throws Exception
+    {
+        Participant participant = createParticipant(1L);
+        registry.update(participant);
+        registry.remove(participant);
+
+        registry.update(participant);
+
+        assertNull(registry.getSSRCs(participant));
+        assertTrue(getAudioSSRCs(registry.getView(null)).isEmpty());
+    }
+
+    /**
+     * Only the given instance is excluded from the view, not the other
+     * instances with the same MUC JID.
+     */
+    @Test
+    public void testViewExcept()
+        throws Exception
+    {
+        Participant left = createParticipant(1L);
+        registry.update(left);
+
+        Participant rejoined = createParticipant(2L);
+        registry.update(rejoined);
+
+        assertEquals(
+            Collections.singletonList(1L),
+            getAudioSSRCs(registry.getView(rejoined)));
+
+        registry.remove(left);
+
+        assertTrue(getAudioSSRCs(registry.getView(rejoined)).isEmpty());
+    }
+}
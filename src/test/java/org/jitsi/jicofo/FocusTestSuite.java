@@ -17,6 +17,8 @@
  */
 package org.jitsi.jicofo;
 
+import org.jitsi.impl.protocol.xmpp.*;
+import org.jitsi.impl.protocol.xmpp.colibri.*;
 import org.jitsi.jicofo.auth.*;
 import org.jitsi.jicofo.event.*;
 import org.jitsi.jicofo.reservation.*;
@@ -33,23 +35,37 @@
     {
         AuthenticationAuthorityTest.class,
         AuthEventsTest.class,
+        ChannelSourcesCacheTest.class,
+        ChatMemberIndexTest.class,
         ConferenceJsonTest.class,
+        ConferenceAdmissionControllerTest.class,
+        ConferenceSourceRegistryTest.class,
         ConferenceIqProviderTest.class,
+        InstrumentedExecutorTest.class,
         JibriIqProviderTest.class,
         JireconIqProviderTest.class,
         JvbDoctorTest.class,
         MuteIqProviderTest.class,
+        PacketDispatcherTest.class,
         AdvertiseSSRCsTest.class,
         BridgeSelectorTest.class,
+        BridgeSelectionStrategyTest.class,
         BundleTest.class,
+        SSRCUpdateQueueTest.class,
         ColibriTest.class,
         ColibriThreadingTest.class,
+        LaneExecutorTest.class,
         LeakingRoomsTest.class,
         MediaSSRCGroupMapTest.class,
         MediaSSRCMapTest.class,
         MockTest.class,
         PubSubBridgeSelectorTest.class,
+        QueuePacketProcessorTest.class,
+        ReplyCorrelatorTest.class,
+        RESTReservationsTest.class,
         RolesTest.class,
+        XmlFragmentCacheTest.class,
+        XmppConnectionAdapterTest.class,
         XmppTest.class,
         ShutdownTest.class
     })
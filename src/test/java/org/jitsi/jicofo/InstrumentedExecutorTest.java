@@ -0,0 +1,146 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.jicofo.util.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the elastic mode of {@link InstrumentedExecutor}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class InstrumentedExecutorTest
+{
+    private InstrumentedExecutor pool;
+
+    @Before
+    public void setUp()
+    {
+        pool = new InstrumentedExecutor("test", 2, true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Checks that the blocking tasks are not limited by the pool size.
+     */
+    @Test
+    public void testBlockingTasks()
+        throws Exception
+    {
+        final int taskCount = 50;
+        final CountDownLatch allStarted = new CountDownLatch(taskCount);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < taskCount; i++)
+        {
+            pool.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    allStarted.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(taskCount, pool.getStats().get("active_threads"));
+
+        release.countDown();
+
+        Future<String> result = pool.submit(new Callable<String>()
+        {
+            @Override
+            public String call()
+            {
+                return "done";
+            }
+        });
+        assertEquals("done", result.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Checks that the periodic tasks keep running and that the cancelled
+     * tasks are removed from the queue.
+     */
+    @Test
+    public void testScheduledTasks()
+        throws Exception
+    {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch threeRuns = new CountDownLatch(3);
+
+        ScheduledFuture<?> periodic = pool.scheduleAtFixedRate(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    runs.incrementAndGet();
+                    threeRuns.countDown();
+                }
+            }, 0, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(threeRuns.await(5, TimeUnit.SECONDS));
+
+        assertTrue(periodic.cancel(false));
+        assertTrue(periodic.isCancelled());
+
+        ScheduledFuture<?> delayed = pool.schedule(
+            new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    fail("Cancelled task has been executed");
+                }
+            }, 1, TimeUnit.HOURS);
+
+        assertEquals(1, pool.getQueueDepth());
+        assertTrue(delayed.cancel(false));
+        assertEquals(0, pool.getQueueDepth());
+
+        int runsAfterCancel = runs.get();
+        Thread.sleep(50);
+        // At most one run which has been handed off before the cancellation
+        assertTrue(runs.get() - runsAfterCancel <= 1);
+    }
+}
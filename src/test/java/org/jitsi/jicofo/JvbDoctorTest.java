@@ -33,10 +33,13 @@
 import org.junit.runner.*;
 import org.junit.runners.*;
 
+import java.util.*;
 import java.util.concurrent.*;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import static org.mockito.Mockito.*;
 
@@ -52,12 +55,22 @@
 
     private static final int HEALTH_CHECK_INT = 300;
 
+    private static final int SECOND_CHANCE_DELAY = 100;
+
+    /**
+     * The reply timeout used by the tests which make the bridge drop
+     * the health checks.
+     */
+    private static final int REPLY_TIMEOUT = 200;
+
     @BeforeClass
     public static void setUpClass()
         throws Exception
     {
         System.setProperty(
             JvbDoctor.HEALTH_CHECK_INTERVAL_PNAME, "" + HEALTH_CHECK_INT);
+        System.setProperty(
+            JvbDoctor.SECOND_CHANCE_DELAY_PNAME, "" + SECOND_CHANCE_DELAY);
 
         osgi.init();
     }
@@ -195,4 +208,209 @@ public void jvbDoctorTest()
 
         mockBridge.stop(osgi.bc);
     }
+
+    /**
+     * A health check which has timed out is sent again after the second
+     * chance delay and the bridge is not reported as failed if the second
+     * attempt passes.
+     */
+    @Test
+    public void secondChancePassedTest()
+        throws Exception
+    {
+        String jvb2 = "jvb2.jitsi.net";
+
+        HealthCheckFixture fixture = new HealthCheckFixture(jvb2);
+        try
+        {
+            fixture.mockBridge.dropHealthChecks(1);
+            fixture.start();
+
+            long passed = 0;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (passed == 0 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+
+                Map<String, Object> stats = fixture.getStats();
+                if (stats != null)
+                {
+                    passed = (Long) stats.get("passed");
+                }
+            }
+
+            assertTrue("The second attempt has not passed", passed > 0);
+            assertEquals(0, fixture.mockBridge.getHealthChecksToDrop());
+            assertEquals(0L, fixture.getStats().get("failed"));
+
+            verify(fixture.eventSpy, never())
+                .handleEvent(BridgeEvent.createHealthFailed(jvb2));
+        }
+        finally
+        {
+            fixture.stop();
+        }
+    }
+
+    /**
+     * The health check failure is reported once the second attempt has timed
+     * out too.
+     */
+    @Test
+    public void secondChanceFailedTest()
+        throws Exception
+    {
+        String jvb3 = "jvb3.jitsi.net";
+
+        HealthCheckFixture fixture = new HealthCheckFixture(jvb3);
+        try
+        {
+            fixture.mockBridge.dropHealthChecks(2);
+            fixture.start();
+
+            verify(
+                    fixture.eventSpy,
+                    timeout(
+                        HEALTH_CHECK_INT
+                            + 2 * REPLY_TIMEOUT
+                            + SECOND_CHANCE_DELAY
+                            + 1000))
+                .handleEvent(BridgeEvent.createHealthFailed(jvb3));
+
+            assertEquals(0, fixture.mockBridge.getHealthChecksToDrop());
+        }
+        finally
+        {
+            fixture.stop();
+        }
+    }
+
+    /**
+     * The round trip times are counted in the buckets of the upper bounds
+     * they do not exceed.
+     */
+    @Test
+    public void rttHistogramTest()
+    {
+        RttHistogram histogram = new RttHistogram();
+
+        assertEquals(0d, histogram.getStats().get("average_ms"));
+
+        long[] samples = { 0, 10, 11, 25, 26, 1000, 5000, 5001, 60000 };
+        long total = 0;
+        for (long sample : samples)
+        {
+            histogram.record(sample);
+            total += sample;
+        }
+
+        Map<String, Object> stats = histogram.getStats();
+
+        assertEquals((long) samples.length, histogram.getCount());
+        assertEquals((long) samples.length, stats.get("count"));
+        assertEquals(60000L, stats.get("max_ms"));
+        assertEquals(total / (double) samples.length, stats.get("average_ms"));
+
+        assertEquals(2L, stats.get("le_10"));
+        assertEquals(2L, stats.get("le_25"));
+        assertEquals(1L, stats.get("le_50"));
+        assertEquals(0L, stats.get("le_100"));
+        assertEquals(0L, stats.get("le_250"));
+        assertEquals(0L, stats.get("le_500"));
+        assertEquals(1L, stats.get("le_1000"));
+        assertEquals(0L, stats.get("le_2500"));
+        assertEquals(1L, stats.get("le_5000"));
+        assertEquals(2L, stats.get("gt_5000"));
+    }
+
+    /**
+     * Sets up a bridge with health check support which is checked by
+     * {@link JvbDoctor} with a short reply timeout.
+     */
+    private static class HealthCheckFixture
+    {
+        private final String bridgeJid;
+
+        private final MockProtocolProvider focusPps;
+
+        private final MockVideobridge mockBridge;
+
+        private final EventHandler eventSpy = mock(EventHandler.class);
+
+        private final BridgeSelector selector;
+
+        private final JvbDoctor jvbDoctor;
+
+        HealthCheckFixture(String bridgeJid)
+            throws Exception
+        {
+            this.bridgeJid = bridgeJid;
+
+            FocusManager focusManager
+                = ServiceUtils.getService(osgi.bc, FocusManager.class);
+
+            focusPps
+                = (MockProtocolProvider) focusManager.getProtocolProvider();
+
+            mockBridge
+                = new MockVideobridge(
+                        focusPps.getMockXmppConnection(), bridgeJid);
+
+            focusPps.getMockCapsOpSet().addChildNode(
+                new MockCapsNode(
+                        bridgeJid,
+                        new String[] { DiscoveryUtil.FEATURE_HEALTH_CHECK }));
+
+            selector
+                = ServiceUtils.getService(osgi.bc, JitsiMeetServices.class)
+                    .getBridgeSelector();
+
+            jvbDoctor = ServiceUtils.getService(osgi.bc, JvbDoctor.class);
+            assertNotNull(jvbDoctor);
+        }
+
+        /**
+         * Starts the bridge and makes it known to the bridge selector, which
+         * makes {@link JvbDoctor} schedule the health checks.
+         */
+        void start()
+            throws Exception
+        {
+            focusPps.getMockXmppConnection().setReplyTimeout(REPLY_TIMEOUT);
+
+            mockBridge.start(osgi.bc);
+
+            EventUtil.registerEventHandler(
+                osgi.bc,
+                new String[] {
+                    BridgeEvent.BRIDGE_UP,
+                    BridgeEvent.HEALTH_CHECK_FAILED },
+                eventSpy);
+
+            selector.addJvbAddress(bridgeJid);
+
+            verify(eventSpy, timeout(100))
+                .handleEvent(BridgeEvent.createBridgeUp(bridgeJid));
+        }
+
+        /**
+         * Returns the health check statistics of the bridge or <tt>null</tt>
+         * if it's not being checked.
+         */
+        Map<String, Object> getStats()
+        {
+            return jvbDoctor.getHealthCheckStats().get(bridgeJid);
+        }
+
+        void stop()
+            throws Exception
+        {
+            selector.removeJvbAddress(bridgeJid);
+
+            mockBridge.stop(osgi.bc);
+
+            focusPps.getMockXmppConnection().setReplyTimeout(
+                MockXmppConnectionImpl.DEFAULT_REPLY_TIMEOUT);
+        }
+    }
 }
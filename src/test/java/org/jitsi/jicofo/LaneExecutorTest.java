@@ -0,0 +1,231 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.jicofo.util.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LaneExecutor}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class LaneExecutorTest
+{
+    private ExecutorService pool;
+
+    @Before
+    public void setUp()
+    {
+        pool = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown()
+    {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Checks that a lane never runs more tasks at the same time than allowed.
+     */
+    @Test
+    public void testMaxConcurrent()
+        throws InterruptedException
+    {
+        final int maxConcurrent = 3;
+        final int taskCount = 30;
+
+        LaneExecutor lane = new LaneExecutor(pool, maxConcurrent);
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(taskCount);
+
+        for (int i = 0; i < taskCount; i++)
+        {
+            lane.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    int now = running.incrementAndGet();
+                    int max;
+                    while (now > (max = maxRunning.get())
+                            && !maxRunning.compareAndSet(max, now))
+                    {
+                    }
+                    try
+                    {
+                        Thread.sleep(5);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= maxConcurrent);
+        assertEquals(0, lane.getQueueDepth());
+    }
+
+    /**
+     * Checks that a lane of size one executes the tasks in order.
+     */
+    @Test
+    public void testSerialOrder()
+        throws InterruptedException
+    {
+        final int taskCount = 100;
+
+        LaneExecutor lane = new LaneExecutor(pool, 1);
+
+        final List<Integer> executed
+            = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(taskCount);
+
+        for (int i = 0; i < taskCount; i++)
+        {
+            final int idx = i;
+            lane.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    executed.add(idx);
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < taskCount; i++)
+        {
+            assertEquals(i, (int) executed.get(i));
+        }
+    }
+
+    /**
+     * Checks that the tasks accepted by the lane are not lost when
+     * the underlying executor rejects the lane, but executed after the next
+     * task is accepted.
+     */
+    @Test
+    public void testRejectedKeepsQueue()
+    {
+        ManualExecutor executor = new ManualExecutor();
+        LaneExecutor lane = new LaneExecutor(executor, 1);
+
+        final List<String> executed = new ArrayList<>();
+
+        lane.execute(new RecordingTask("A", executed));
+        lane.execute(new RecordingTask("B", executed));
+        lane.execute(new RecordingTask("C", executed));
+
+        // The lane can not hand over to B after A
+        executor.reject = true;
+        executor.runAll();
+
+        assertEquals(Arrays.asList("A"), executed);
+        assertEquals(2, lane.getQueueDepth());
+
+        // The task which is rejected is not kept
+        try
+        {
+            lane.execute(new RecordingTask("D", executed));
+            fail("The task has not been rejected");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Expected
+        }
+        assertEquals(2, lane.getQueueDepth());
+
+        executor.reject = false;
+        lane.execute(new RecordingTask("E", executed));
+        executor.runAll();
+
+        assertEquals(Arrays.asList("A", "B", "C", "E"), executed);
+        assertEquals(0, lane.getQueueDepth());
+    }
+
+    /**
+     * Runs the tasks on the thread of the test, when told to.
+     */
+    private static class ManualExecutor
+        implements Executor
+    {
+        private final Queue<Runnable> submitted = new ArrayDeque<>();
+
+        boolean reject;
+
+        @Override
+        public void execute(Runnable command)
+        {
+            if (reject)
+            {
+                throw new RejectedExecutionException();
+            }
+            submitted.add(command);
+        }
+
+        void runAll()
+        {
+            Runnable command;
+            while ((command = submitted.poll()) != null)
+            {
+                command.run();
+            }
+        }
+    }
+
+    private static class RecordingTask
+        implements Runnable
+    {
+        private final String name;
+
+        private final List<String> executed;
+
+        RecordingTask(String name, List<String> executed)
+        {
+            this.name = name;
+            this.executed = executed;
+        }
+
+        @Override
+        public void run()
+        {
+            executed.add(name);
+        }
+    }
+}
@@ -93,9 +93,9 @@ public void testRemoveSSRCGroup()
             }
         );
 
-        ssrcGroups.getSSRCGroupsForMedia("audio").add(audioGroup1);
-        ssrcGroups.getSSRCGroupsForMedia("audio").add(audioGroup2);
-        ssrcGroups.getSSRCGroupsForMedia("audio").add(audioGroup3);
+        ssrcGroups.addSSRCGroup("audio", audioGroup1);
+        ssrcGroups.addSSRCGroup("audio", audioGroup2);
+        ssrcGroups.addSSRCGroup("audio", audioGroup3);
 
         SSRCGroup videoGroup1 = SSRCUtil.createSSRCGroup(
             SourceGroupPacketExtension.SEMANTICS_SIMULCAST,
@@ -136,13 +136,13 @@ public void testRemoveSSRCGroup()
             }
         );
 
-        ssrcGroups.getSSRCGroupsForMedia("video").add(videoGroup1);
-        ssrcGroups.getSSRCGroupsForMedia("video").add(videoGroup2);
+        ssrcGroups.addSSRCGroup("video", videoGroup1);
+        ssrcGroups.addSSRCGroup("video", videoGroup2);
 
         MediaSSRCGroupMap toRemove = new MediaSSRCGroupMap();
-        toRemove.getSSRCGroupsForMedia("audio").add(audioGroup3.copy());
-        toRemove.getSSRCGroupsForMedia("audio").add(audioGroup1.copy());
-        toRemove.getSSRCGroupsForMedia("video").add(videoGroup2.copy());
+        toRemove.addSSRCGroup("audio", audioGroup3.copy());
+        toRemove.addSSRCGroup("audio", audioGroup1.copy());
+        toRemove.addSSRCGroup("video", videoGroup2.copy());
 
         /*toRemove.getSSRCGroupsForMedia("audio").add(
             SSRCUtil.createSSRCGroup(
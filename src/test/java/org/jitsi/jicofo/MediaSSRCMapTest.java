@@ -28,7 +28,7 @@
 
 import java.util.*;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 
 /**
@@ -100,6 +100,133 @@ public void testSSRCRemove()
             removed.getSSRCsForMedia("video"));
     }
 
+    /**
+     * Checks if the SSRC number index stays consistent with the lists of SSRCs
+     * (including duplicates) through add, remove and copy operations.
+     */
+    @Test
+    public void testSSRCIndex()
+    {
+        MediaSSRCMap ssrcMap = new MediaSSRCMap();
+
+        SourcePacketExtension audioSSRC = createSSRC(1L);
+        SourcePacketExtension videoSSRC = createSSRC(2L);
+        SourcePacketExtension videoDuplicate = createSSRC(2L);
+        SourcePacketExtension videoSSRC2 = createSSRC(3L);
+
+        ssrcMap.addSSRC("audio", audioSSRC);
+        ssrcMap.addSSRCs("video", Arrays.asList(videoSSRC, videoSSRC2));
+
+        assertSame(audioSSRC, ssrcMap.findSSRC("audio", 1L));
+        assertSame(videoSSRC2, ssrcMap.findSSRC("video", 3L));
+        assertNull(ssrcMap.findSSRC("audio", 2L));
+        assertEquals("video", ssrcMap.findSSRCsMediaType(2L));
+        assertNull(ssrcMap.findSSRCsMediaType(4L));
+
+        MediaSSRCMap copy = ssrcMap.copyDeep();
+
+        assertTrue(ssrcMap.remove("audio", audioSSRC));
+        assertFalse(ssrcMap.remove("audio", audioSSRC));
+        assertNull(ssrcMap.findSSRC("audio", 1L));
+
+        // The copy is not affected and it's index points to the copies
+        SourcePacketExtension audioCopy = copy.findSSRC("audio", 1L);
+        assertNotNull(audioCopy);
+        assertNotSame(audioSSRC, audioCopy);
+
+        // Duplicated SSRC is removed together with the original one
+        ssrcMap.addSSRC("video", videoDuplicate);
+
+        MediaSSRCMap toBeRemoved = new MediaSSRCMap();
+        toBeRemoved.addSSRC("video", createSSRC(2L));
+
+        MediaSSRCMap removed = ssrcMap.remove(toBeRemoved);
+
+        assertEquals(2, removed.getSSRCsForMedia("video").size());
+        assertNull(ssrcMap.findSSRC("video", 2L));
+        assertSame(videoSSRC2, ssrcMap.findSSRC("video", 3L));
+        assertEquals(1, ssrcMap.getSSRCsForMedia("video").size());
+
+        // Removing one of duplicates by instance leaves the other one indexed
+        ssrcMap.addSSRC("video", videoSSRC);
+        ssrcMap.addSSRC("video", videoDuplicate);
+
+        assertTrue(ssrcMap.remove("video", videoSSRC));
+        assertSame(videoDuplicate, ssrcMap.findSSRC("video", 2L));
+    }
+
+    @Test
+    public void testSnapshot()
+    {
+        MediaSSRCMap ssrcMap = new MediaSSRCMap();
+
+        SourcePacketExtension audioSSRC = createSSRC(1L);
+        SourcePacketExtension videoSSRC = createSSRC(2L);
+
+        ssrcMap.addSSRC("audio", audioSSRC);
+        ssrcMap.addSSRC("video", videoSSRC);
+
+        MediaSSRCMap snapshot = ssrcMap.snapshot();
+
+        // The SSRCs are shared
+        assertSame(audioSSRC, snapshot.findSSRC("audio", 1L));
+        assertSame(videoSSRC, snapshot.findSSRC("video", 2L));
+
+        // Modifications of the original are not visible in the snapshot
+        ssrcMap.addSSRC("video", createSSRC(3L));
+        assertTrue(ssrcMap.remove("audio", audioSSRC));
+
+        assertSame(audioSSRC, snapshot.findSSRC("audio", 1L));
+        assertNull(snapshot.findSSRC("video", 3L));
+        assertEquals(1, snapshot.getSSRCsForMedia("video").size());
+
+        // ...and the other way around
+        MediaSSRCMap toBeRemoved = new MediaSSRCMap();
+        toBeRemoved.addSSRC("video", createSSRC(2L));
+
+        assertEquals(
+            1, snapshot.remove(toBeRemoved).getSSRCsForMedia("video").size());
+        assertNull(snapshot.findSSRC("video", 2L));
+
+        assertSame(videoSSRC, ssrcMap.findSSRC("video", 2L));
+        assertEquals(2, ssrcMap.getSSRCsForMedia("video").size());
+        assertNull(ssrcMap.findSSRC("audio", 1L));
+    }
+
+    /**
+     * Checks that the lists returned by the map are not affected by
+     * the modifications made while they are being iterated.
+     */
+    @Test
+    public void testListNotModified()
+    {
+        MediaSSRCMap ssrcMap = new MediaSSRCMap();
+
+        ssrcMap.addSSRC("video", createSSRC(1L));
+        ssrcMap.addSSRC("video", createSSRC(2L));
+
+        List<SourcePacketExtension> videoSSRCs
+            = ssrcMap.getSSRCsForMedia("video");
+
+        for (SourcePacketExtension ssrc : videoSSRCs)
+        {
+            assertTrue(ssrcMap.remove("video", ssrc));
+            ssrcMap.addSSRC("video", createSSRC(ssrc.getSSRC() + 10L));
+        }
+
+        assertEquals(2, videoSSRCs.size());
+        assertEquals(1L, videoSSRCs.get(0).getSSRC());
+
+        assertEquals(2, ssrcMap.getSSRCsForMedia("video").size());
+        assertNull(ssrcMap.findSSRC("video", 1L));
+        assertNotNull(ssrcMap.findSSRC("video", 12L));
+    }
+
+    private static SourcePacketExtension createSSRC(long ssrc)
+    {
+        return SSRCUtil.createSSRC(ssrc, new String[0][]);
+    }
+
     private void compareSSRCs(List<SourcePacketExtension> ssrcList1,
                               List<SourcePacketExtension> ssrcList2)
     {
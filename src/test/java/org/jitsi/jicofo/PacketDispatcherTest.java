@@ -0,0 +1,171 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.jicofo.util.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PacketDispatcher}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class PacketDispatcherTest
+{
+    /**
+     * Checks that the packets are routed to the handlers registered for
+     * the bare and the full JID of the sender and that the connection listener
+     * goes away together with the last handler.
+     */
+    @Test
+    public void testRouting()
+        throws InterruptedException
+    {
+        QueuePacketProcessorTest.DirectConnection connection
+            = new QueuePacketProcessorTest.DirectConnection();
+
+        RecordingListener room1 = new RecordingListener();
+        RecordingListener room2 = new RecordingListener();
+        RecordingListener jibri = new RecordingListener();
+        PacketFilter acceptAll = new PacketTypeFilter(Packet.class);
+
+        PacketDispatcher.addHandler(
+            connection, "Room1@conference.example.com", IQ.class,
+            room1, acceptAll);
+        PacketDispatcher.addHandler(
+            connection, "room2@conference.example.com", IQ.class,
+            room2, acceptAll);
+        PacketDispatcher.addHandler(
+            connection, "jibri@auth.example.com/jibri1", IQ.class,
+            jibri, acceptAll);
+
+        connection.receive(
+            QueuePacketProcessorTest.createIq(
+                "room1@conference.example.com/nick", 1));
+        connection.receive(
+            QueuePacketProcessorTest.createIq(
+                "room2@conference.example.com/nick", 2));
+        connection.receive(
+            QueuePacketProcessorTest.createIq(
+                "jibri@auth.example.com/jibri1", 3));
+        // Not registered
+        connection.receive(
+            QueuePacketProcessorTest.createIq(
+                "jibri@auth.example.com/jibri2", 4));
+        connection.receive(
+            QueuePacketProcessorTest.createIq(
+                "room3@conference.example.com/nick", 5));
+
+        assertEquals("1", room1.take().getPacketID());
+        assertEquals("2", room2.take().getPacketID());
+        assertEquals("3", jibri.take().getPacketID());
+
+        PacketDispatcher.removeHandler(
+            connection, "room1@conference.example.com", room1);
+        PacketDispatcher.removeHandler(
+            connection, "room2@conference.example.com", room2);
+
+        connection.receive(
+            QueuePacketProcessorTest.createIq(
+                "room1@conference.example.com/nick", 6));
+        connection.receive(
+            QueuePacketProcessorTest.createIq(
+                "jibri@auth.example.com/jibri1", 7));
+
+        assertEquals("7", jibri.take().getPacketID());
+        assertTrue(room1.packets.isEmpty());
+        assertTrue(room2.packets.isEmpty());
+        assertTrue(jibri.packets.isEmpty());
+
+        PacketDispatcher.removeHandler(
+            connection, "jibri@auth.example.com/jibri1", jibri);
+
+        // There are no listeners registered once all handlers are gone
+        connection.receive(
+            QueuePacketProcessorTest.createIq(
+                "jibri@auth.example.com/jibri1", 8));
+        assertNull(jibri.packets.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Checks that the packets of the types which are not handled by any of
+     * the handlers registered for the sender are not taken from
+     * the connection.
+     */
+    @Test
+    public void testPacketType()
+        throws InterruptedException
+    {
+        QueuePacketProcessorTest.DirectConnection connection
+            = new QueuePacketProcessorTest.DirectConnection();
+
+        RecordingListener room = new RecordingListener();
+        String roomJid = "room@conference.example.com";
+
+        PacketDispatcher.addHandler(
+            connection, roomJid, IQ.class,
+            room, new PacketTypeFilter(Packet.class));
+
+        Presence presence = new Presence(Presence.Type.available);
+        presence.setFrom(roomJid + "/nick");
+        presence.setPacketID("1");
+
+        connection.receive(presence);
+        connection.receive(
+            QueuePacketProcessorTest.createIq(roomJid + "/nick", 2));
+
+        // The presence is skipped, even though the filter accepts it
+        assertEquals("2", room.take().getPacketID());
+        assertNull(room.packets.poll(100, TimeUnit.MILLISECONDS));
+
+        PacketDispatcher.removeHandler(connection, roomJid, room);
+    }
+
+    private static class RecordingListener
+        implements PacketListener
+    {
+        final BlockingQueue<Packet> packets = new LinkedBlockingQueue<>();
+
+        @Override
+        public void processPacket(Packet packet)
+        {
+            packets.add(packet);
+        }
+
+        Packet take()
+            throws InterruptedException
+        {
+            Packet packet = packets.poll(5, TimeUnit.SECONDS);
+
+            assertNotNull(packet);
+            return packet;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.jicofo.util.*;
+import org.jitsi.protocol.xmpp.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the partitioned mode of {@link QueuePacketProcessor}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class QueuePacketProcessorTest
+{
+    /**
+     * Checks that the packets of each room are processed in the order of
+     * arrival when they are spread over multiple lanes.
+     */
+    @Test
+    public void testPerRoomOrdering()
+        throws InterruptedException
+    {
+        final int roomCount = 8;
+        final int packetsPerRoom = 50;
+
+        final Map<String, List<Integer>> processed = new HashMap<>();
+        final CountDownLatch done
+            = new CountDownLatch(roomCount * packetsPerRoom);
+
+        DirectConnection connection = new DirectConnection();
+        QueuePacketProcessor processor
+            = new QueuePacketProcessor(
+                    connection,
+                    new PacketListener()
+                    {
+                        @Override
+                        public void processPacket(Packet packet)
+                        {
+                            String room = packet.getFrom().split("/")[0];
+                            synchronized (processed)
+                            {
+                                List<Integer> seq = processed.get(room);
+                                if (seq == null)
+                                {
+                                    seq = new ArrayList<>();
+                                    processed.put(room, seq);
+                                }
+                                seq.add(Integer.valueOf(packet.getPacketID()));
+                            }
+                            done.countDown();
+                        }
+                    },
+                    new PacketTypeFilter(Packet.class),
+                    4, 1000,
+                    QueuePacketProcessor.OverflowPolicy.DROP_NEWEST,
+                    false);
+
+        processor.start();
+
+        for (int i = 0; i < packetsPerRoom; i++)
+        {
+            for (int r = 0; r < roomCount; r++)
+            {
+                connection.receive(
+                    createIq("room" + r + "@conference.example.com/nick", i));
+            }
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        processor.stop();
+
+        assertEquals(roomCount, processed.size());
+        for (List<Integer> seq : processed.values())
+        {
+            assertEquals(packetsPerRoom, seq.size());
+            for (int i = 0; i < packetsPerRoom; i++)
+            {
+                assertEquals(i, seq.get(i).intValue());
+            }
+        }
+    }
+
+    /**
+     * Checks that the packets which do not fit in the queue are dropped and
+     * the IQ requests are responded to with an error.
+     */
+    @Test
+    public void testOverflow()
+        throws InterruptedException
+    {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> processed = new CopyOnWriteArrayList<>();
+
+        DirectConnection connection = new DirectConnection();
+        QueuePacketProcessor processor
+            = new QueuePacketProcessor(
+                    connection,
+                    new PacketListener()
+                    {
+                        @Override
+                        public void processPacket(Packet packet)
+                        {
+                            blocked.countDown();
+                            try
+                            {
+                                release.await();
+                            }
+                            catch (InterruptedException e)
+                            {
+                                Thread.currentThread().interrupt();
+                            }
+                            processed.add(packet.getPacketID());
+                        }
+                    },
+                    new PacketTypeFilter(Packet.class),
+                    1, 1,
+                    QueuePacketProcessor.OverflowPolicy.DROP_NEWEST,
+                    true);
+
+        processor.start();
+
+        String from = "room@conference.example.com/nick";
+
+        // The first one blocks the lane, the second one waits in the queue
+        connection.receive(createIq(from, 0));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        connection.receive(createIq(from, 1));
+
+        // No room for this one
+        connection.receive(createIq(from, 2));
+
+        assertEquals(1L, processor.getStats().get("dropped_packets"));
+        assertEquals(1, connection.sent.size());
+
+        IQ error = (IQ) connection.sent.get(0);
+        assertEquals(IQ.Type.ERROR, error.getType());
+        assertEquals("2", error.getPacketID());
+
+        release.countDown();
+
+        long end = System.currentTimeMillis() + 5000;
+        while (processed.size() < 2 && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10);
+        }
+
+        assertEquals(Arrays.asList("0", "1"), processed);
+
+        processor.stop();
+    }
+
+    /**
+     * Checks that the dropped IQ requests are not responded to unless
+     * the processor has been told to do so.
+     */
+    @Test
+    public void testOverflowWithoutError()
+        throws InterruptedException
+    {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        DirectConnection connection = new DirectConnection();
+        QueuePacketProcessor processor
+            = new QueuePacketProcessor(
+                    connection,
+                    new PacketListener()
+                    {
+                        @Override
+                        public void processPacket(Packet packet)
+                        {
+                            blocked.countDown();
+                            try
+                            {
+                                release.await();
+                            }
+                            catch (InterruptedException e)
+                            {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    },
+                    new PacketTypeFilter(Packet.class),
+                    1, 1,
+                    QueuePacketProcessor.OverflowPolicy.DROP_OLDEST,
+                    false);
+
+        processor.start();
+
+        String from = "room@conference.example.com/nick";
+
+        connection.receive(createIq(from, 0));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        connection.receive(createIq(from, 1));
+        // Pushes out the one waiting in the queue
+        connection.receive(createIq(from, 2));
+
+        assertEquals(1L, processor.getStats().get("dropped_packets"));
+        assertTrue(connection.sent.isEmpty());
+
+        release.countDown();
+        processor.stop();
+    }
+
+    static IQ createIq(String from, int id)
+    {
+        IQ iq = new IQ()
+        {
+            @Override
+            public String getChildElementXML()
+            {
+                return null;
+            }
+        };
+        iq.setType(IQ.Type.SET);
+        iq.setFrom(from);
+        iq.setTo("focus@auth.example.com/focus");
+        iq.setPacketID(String.valueOf(id));
+        return iq;
+    }
+
+    /**
+     * The connection which passes received packets to the listeners on
+     * the calling thread and stores the packets sent.
+     */
+    static class DirectConnection
+        implements XmppConnection
+    {
+        private final Map<PacketListener, PacketFilter> handlers
+            = new ConcurrentHashMap<>();
+
+        final List<Packet> sent = new CopyOnWriteArrayList<>();
+
+        void receive(Packet packet)
+        {
+            for (Map.Entry<PacketListener, PacketFilter> handler
+                    : handlers.entrySet())
+            {
+                if (handler.getValue().accept(packet))
+                {
+                    handler.getKey().processPacket(packet);
+                }
+            }
+        }
+
+        @Override
+        public void sendPacket(Packet packet)
+        {
+            sent.add(packet);
+        }
+
+        @Override
+        public Packet sendPacketAndGetReply(Packet packet)
+        {
+            sent.add(packet);
+            return null;
+        }
+
+        @Override
+        public SettableFuture<Packet> sendPacketAndGetReplyAsync(Packet packet)
+        {
+            sent.add(packet);
+
+            SettableFuture<Packet> reply = new SettableFuture<>();
+            reply.set(null);
+            return reply;
+        }
+
+        @Override
+        public void addPacketHandler(PacketListener listener,
+                                     PacketFilter filter)
+        {
+            handlers.put(listener, filter);
+        }
+
+        @Override
+        public void removePacketHandler(PacketListener listener)
+        {
+            handlers.remove(listener);
+        }
+    }
+}
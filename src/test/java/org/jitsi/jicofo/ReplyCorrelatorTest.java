@@ -0,0 +1,191 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.jicofo.util.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ReplyCorrelator}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class ReplyCorrelatorTest
+{
+    private ScheduledExecutorService executor;
+
+    private ReplyCorrelator correlator;
+
+    @Before
+    public void setUp()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        correlator = new ReplyCorrelator(executor, 10);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Checks that the responses are matched with the requests by the packet
+     * ID and that the requests sent to us are not taken for the responses.
+     */
+    @Test
+    public void testReply()
+        throws Exception
+    {
+        SettableFuture<Packet> reply1 = correlator.register("id1", 5000);
+        SettableFuture<Packet> reply2 = correlator.register("id2", 5000);
+
+        assertEquals(2, correlator.getPendingCount());
+
+        assertFalse(correlator.accept(createIq("id1", IQ.Type.GET)));
+        assertFalse(correlator.accept(createIq("id3", IQ.Type.RESULT)));
+
+        IQ response = createIq("id2", IQ.Type.RESULT);
+        assertTrue(correlator.accept(response));
+        correlator.processPacket(response);
+
+        assertSame(response, reply2.get(1, TimeUnit.SECONDS));
+        assertFalse(reply1.isDone());
+        assertEquals(1, correlator.getPendingCount());
+
+        // Duplicated responses are ignored
+        assertFalse(correlator.accept(response));
+
+        IQ error = createIq("id1", IQ.Type.ERROR);
+        assertTrue(correlator.accept(error));
+        correlator.processPacket(error);
+
+        assertSame(error, reply1.get(1, TimeUnit.SECONDS));
+        assertEquals(0, correlator.getPendingCount());
+    }
+
+    /**
+     * Checks that the requests without a response are completed with
+     * <tt>null</tt> when they time out, but not before.
+     */
+    @Test
+    public void testTimeout()
+        throws Exception
+    {
+        long start = System.nanoTime();
+
+        SettableFuture<Packet> shortReply = correlator.register("short", 50);
+        SettableFuture<Packet> longReply = correlator.register("long", 60000);
+
+        assertNull(shortReply.get(5, TimeUnit.SECONDS));
+        assertTrue(
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+
+        assertFalse(longReply.isDone());
+        assertEquals(1, correlator.getPendingCount());
+
+        // Timed out requests do not accept the responses
+        assertFalse(correlator.accept(createIq("short", IQ.Type.RESULT)));
+
+        correlator.unregister("long");
+        assertEquals(0, correlator.getPendingCount());
+    }
+
+    /**
+     * Checks that the timeouts longer than a full turn of the wheel do not
+     * expire on the first turn.
+     */
+    @Test
+    public void testLongTimeout()
+        throws Exception
+    {
+        // 512 slots * 1 ms
+        ReplyCorrelator fastWheel = new ReplyCorrelator(executor, 1);
+
+        long start = System.nanoTime();
+        SettableFuture<Packet> reply = fastWheel.register("id", 1000);
+
+        assertNull(reply.get(5, TimeUnit.SECONDS));
+        assertTrue(
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1000);
+    }
+
+    /**
+     * Checks that a request registered with the ID of another request which
+     * is still waiting receives the same response, instead of failing.
+     */
+    @Test
+    public void testDuplicatedId()
+        throws Exception
+    {
+        SettableFuture<Packet> reply1 = correlator.register("id", 5000);
+        SettableFuture<Packet> reply2 = correlator.register("id", 5000);
+
+        assertFalse(reply2.isDone());
+        assertEquals(1, correlator.getPendingCount());
+
+        IQ response = createIq("id", IQ.Type.RESULT);
+        assertTrue(correlator.accept(response));
+        correlator.processPacket(response);
+
+        assertSame(response, reply1.get(1, TimeUnit.SECONDS));
+        assertSame(response, reply2.get(1, TimeUnit.SECONDS));
+        assertEquals(0, correlator.getPendingCount());
+    }
+
+    /**
+     * Checks that the correlator created without an executor advances the
+     * timeouts on a thread of it's own.
+     */
+    @Test
+    public void testOwnTimeoutThread()
+        throws Exception
+    {
+        ReplyCorrelator ownThread = new ReplyCorrelator();
+
+        SettableFuture<Packet> reply = ownThread.register("id", 50);
+
+        assertNull(reply.get(5, TimeUnit.SECONDS));
+        assertEquals(0, ownThread.getPendingCount());
+    }
+
+    private static IQ createIq(String packetId, IQ.Type type)
+    {
+        IQ iq = new IQ()
+        {
+            @Override
+            public String getChildElementXML()
+            {
+                return null;
+            }
+        };
+        iq.setPacketID(packetId);
+        iq.setType(type);
+        return iq;
+    }
+}
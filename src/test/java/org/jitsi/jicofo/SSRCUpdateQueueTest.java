@@ -0,0 +1,192 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import mock.muc.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SSRCUpdateQueue}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class SSRCUpdateQueueTest
+{
+    private ScheduledExecutorService executor;
+
+    private RecordingJingle jingle;
+
+    private SSRCUpdateQueue queue;
+
+    @Before
+    public void setUp()
+    {
+        MockMultiUserChat chat = new MockMultiUserChat(null, null);
+        Participant participant
+            = new Participant(
+                    new MockJitsiMeetConference(),
+                    chat.createMockRoomMember("testMember"),
+                    20);
+
+        participant.setJingleSession(
+                new JingleSession("sid", "room@conference/test", null));
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+        jingle = new RecordingJingle();
+        // The window is long enough for the test to flush manually
+        queue = new SSRCUpdateQueue(participant, jingle, executor, 60000);
+    }
+
+    @After
+    public void tearDown()
+    {
+        queue.dispose();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testAddThenRemoveCancelsOut()
+    {
+        queue.scheduleAdd(ssrcs(1L, 2L), new MediaSSRCGroupMap());
+        queue.scheduleAdd(ssrcs(3L), new MediaSSRCGroupMap());
+        queue.scheduleRemove(ssrcs(2L), new MediaSSRCGroupMap());
+
+        queue.flush();
+
+        assertEquals(Arrays.asList("add"), jingle.actions);
+        assertEquals(2, jingle.sent.get(0).getSSRCsForMedia("audio").size());
+        assertNull(jingle.sent.get(0).findSSRC("audio", 2L));
+
+        // Nothing left to send
+        queue.flush();
+        assertEquals(1, jingle.actions.size());
+    }
+
+    @Test
+    public void testRemoveThenAddKeepsOrder()
+    {
+        queue.scheduleRemove(ssrcs(1L), new MediaSSRCGroupMap());
+        queue.scheduleAdd(ssrcs(1L, 2L), new MediaSSRCGroupMap());
+        queue.scheduleAdd(ssrcs(2L), new MediaSSRCGroupMap());
+
+        queue.flush();
+
+        assertEquals(Arrays.asList("remove", "add"), jingle.actions);
+        assertEquals(1, jingle.sent.get(0).getSSRCsForMedia("audio").size());
+        assertEquals(2, jingle.sent.get(1).getSSRCsForMedia("audio").size());
+    }
+
+    @Test
+    public void testDispose()
+    {
+        queue.scheduleAdd(ssrcs(1L), new MediaSSRCGroupMap());
+        queue.dispose();
+        queue.flush();
+
+        assertTrue(jingle.actions.isEmpty());
+    }
+
+    private static MediaSSRCMap ssrcs(long... ssrcValues)
+    {
+        MediaSSRCMap ssrcMap = new MediaSSRCMap();
+        for (long ssrcValue : ssrcValues)
+        {
+            ssrcMap.addSSRC(
+                "audio", SSRCUtil.createSSRC(ssrcValue, new String[0][]));
+        }
+        return ssrcMap;
+    }
+
+    /**
+     * Records 'source-add' and 'source-remove' notifications.
+     */
+    private static class RecordingJingle
+        implements OperationSetJingle
+    {
+        final List<String> actions = new ArrayList<>();
+
+        final List<MediaSSRCMap> sent = new ArrayList<>();
+
+        @Override
+        public boolean initiateSession(boolean useBundle,
+                                       String address,
+                                       List<ContentPacketExtension> contents,
+                                       JingleRequestHandler requestHandler,
+                                       boolean[] startMuted)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean replaceTransport(boolean useBundle,
+                                        JingleSession session,
+                                        List<ContentPacketExtension> contents,
+                                        boolean[] startMuted)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sendAddSourceIQ(MediaSSRCMap ssrcMap,
+                                    MediaSSRCGroupMap ssrcGroupMap,
+                                    JingleSession session)
+        {
+            actions.add("add");
+            sent.add(ssrcMap);
+        }
+
+        @Override
+        public void sendRemoveSourceIQ(MediaSSRCMap ssrcMap,
+                                       MediaSSRCGroupMap ssrcGroupMap,
+                                       JingleSession session)
+        {
+            actions.add("remove");
+            sent.add(ssrcMap);
+        }
+
+        @Override
+        public void terminateSession(JingleSession session,
+                                     Reason reason,
+                                     String message)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void terminateHandlersSessions(
+                JingleRequestHandler requestHandler)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
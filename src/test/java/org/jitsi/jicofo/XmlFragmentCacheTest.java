@@ -0,0 +1,81 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.protocol.xmpp.util.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link XmlFragmentCache} and
+ * {@link CachedRtpDescriptionPacketExtension}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class XmlFragmentCacheTest
+{
+    @Test
+    public void testSharedFragments()
+    {
+        XmlFragmentCache cache = new XmlFragmentCache();
+
+        SourcePacketExtension ssrc
+            = SSRCUtil.createSSRC(
+                    1234L, new String[][]{ { "cname", "a<b" } });
+
+        String xml = cache.toXML(ssrc);
+
+        assertEquals(ssrc.toXML(), xml);
+        // The same instance is rendered only once
+        assertSame(xml, cache.toXML(ssrc));
+        assertEquals(1, cache.size());
+
+        // An equal copy is a different fragment
+        SourcePacketExtension copy = ssrc.copy();
+
+        assertEquals(xml, cache.toXML(copy));
+        assertEquals(2, cache.size());
+
+        CachedRtpDescriptionPacketExtension desc1
+            = new CachedRtpDescriptionPacketExtension("video", cache);
+        CachedRtpDescriptionPacketExtension desc2
+            = new CachedRtpDescriptionPacketExtension("video", cache);
+
+        desc1.addChildExtension(ssrc);
+        desc2.addChildExtension(ssrc);
+
+        String descXml = desc1.toXML();
+
+        assertEquals(descXml, desc2.toXML());
+        assertTrue(descXml.contains(" media='video'"));
+        assertTrue(descXml.contains(xml));
+        assertTrue(descXml.endsWith("</description>"));
+
+        // The description is still readable as an object
+        assertSame(
+            ssrc,
+            desc1.getFirstChildOfType(SourcePacketExtension.class));
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.jicofo.reservation;
+
+import com.sun.net.httpserver.*;
+
+import org.jitsi.impl.reservation.rest.*;
+import org.jitsi.jicofo.*;
+import org.jitsi.jicofo.util.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link RESTReservations} against a mock reservation system served
+ * over HTTP.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class RESTReservationsTest
+{
+    /**
+     * The mock API endpoint.
+     */
+    private HttpServer server;
+
+    /**
+     * The executor which runs the handlers of {@link #server}.
+     */
+    private ExecutorService serverExecutor;
+
+    /**
+     * The names of the conferences requested with POST, in order.
+     */
+    private final List<String> posts
+        = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * The IDs of the conferences deleted with DELETE, in order.
+     */
+    private final List<String> deletes
+        = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * When set, every POST waits on it before being responded to.
+     */
+    private volatile CountDownLatch postLatch;
+
+    /**
+     * Set to <tt>false</tt> if any POST has timed out on
+     * {@link #postLatch}.
+     */
+    private volatile boolean postsReleased = true;
+
+    /**
+     * When set, every DELETE waits on it before being responded to.
+     */
+    private volatile CountDownLatch deleteLatch;
+
+    /**
+     * Counted down when a DELETE is received.
+     */
+    private final CountDownLatch deleteReceived = new CountDownLatch(1);
+
+    private RESTReservations reservations;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/conference", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange)
+                throws IOException
+            {
+                handleRequest(exchange);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (reservations != null)
+        {
+            reservations.stop();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private String getBaseUrl()
+    {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void startReservations(long confirmedCacheTtl)
+    {
+        startReservations(
+            confirmedCacheTtl, RESTReservations.DEFAULT_API_TIMEOUT);
+    }
+
+    private void startReservations(long confirmedCacheTtl, int apiTimeout)
+    {
+        reservations
+            = new RESTReservations(
+                    getBaseUrl(),
+                    RESTReservations.DEFAULT_MAX_CONNECTIONS,
+                    confirmedCacheTtl,
+                    true,
+                    apiTimeout);
+        reservations.start(new FocusManager());
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleRequest(HttpExchange exchange)
+        throws IOException
+    {
+        String method = exchange.getRequestMethod();
+        String response;
+        int status = 200;
+
+        if ("POST".equals(method))
+        {
+            posts.add(readName(exchange.getRequestBody()));
+
+            CountDownLatch latch = postLatch;
+            if (latch != null)
+            {
+                latch.countDown();
+                try
+                {
+                    if (!latch.await(5, TimeUnit.SECONDS))
+                    {
+                        postsReleased = false;
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            status = 201;
+            response = "{\"id\": " + posts.size() + ", \"duration\": 900000}";
+        }
+        else if ("DELETE".equals(method))
+        {
+            deleteReceived.countDown();
+
+            CountDownLatch latch = deleteLatch;
+            if (latch != null)
+            {
+                await(latch);
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            deletes.add(path.substring(path.lastIndexOf('/') + 1));
+            response = "{}";
+        }
+        else
+        {
+            status = 404;
+            response = "{\"error\": \"404\", \"message\": \"not found\"}";
+        }
+
+        byte[] body = response.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static String readName(InputStream body)
+        throws IOException
+    {
+        BufferedReader reader
+            = new BufferedReader(new InputStreamReader(body, "UTF-8"));
+        StringBuilder form = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            form.append(line);
+        }
+
+        for (String pair : form.toString().split("&"))
+        {
+            if (pair.startsWith("name="))
+            {
+                return URLDecoder.decode(pair.substring(5), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    private static ReservationSystem.Result get(
+            SettableFuture<ReservationSystem.Result> future)
+        throws Exception
+    {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The requests for the same room made while the first one is in progress
+     * are merged into a single API call.
+     */
+    @Test
+    public void testSameRoomRequestsMerged()
+        throws Exception
+    {
+        startReservations(0);
+
+        // Holds the POST until the test lets it go
+        postLatch = new CountDownLatch(2);
+
+        String room = "testroom@conference.example.com";
+        SettableFuture<ReservationSystem.Result> first
+            = reservations.createConferenceAsync(null, room);
+        SettableFuture<ReservationSystem.Result> second
+            = reservations.createConferenceAsync(null, room);
+
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        postLatch.countDown();
+
+        assertEquals(ReservationSystem.RESULT_OK, get(first).getCode());
+        assertEquals(ReservationSystem.RESULT_OK, get(second).getCode());
+        assertEquals(1, posts.size());
+    }
+
+    /**
+     * The requests for different rooms are executed at the same time. Each
+     * POST is held until the other one has arrived, which never happens if
+     * the requests are serialized.
+     */
+    @Test
+    public void testRoomsRequestedConcurrently()
+        throws Exception
+    {
+        startReservations(0);
+
+        postLatch = new CountDownLatch(2);
+
+        SettableFuture<ReservationSystem.Result> room1
+            = reservations.createConferenceAsync(
+                    null, "room1@conference.example.com");
+        SettableFuture<ReservationSystem.Result> room2
+            = reservations.createConferenceAsync(
+                    null, "room2@conference.example.com");
+
+        assertEquals(ReservationSystem.RESULT_OK, get(room1).getCode());
+        assertEquals(ReservationSystem.RESULT_OK, get(room2).getCode());
+        assertEquals(2, posts.size());
+        assertTrue("The requests were serialized", postsReleased);
+    }
+
+    /**
+     * By default the reservation is deleted as soon as the conference ends
+     * and the next conference in the room makes a new reservation.
+     */
+    @Test
+    public void testDeletedWhenCacheDisabled()
+        throws Exception
+    {
+        startReservations(RESTReservations.DEFAULT_CONFIRMED_CACHE_TTL);
+
+        String room = "testroom@conference.example.com";
+
+        assertEquals(
+            ReservationSystem.RESULT_OK,
+            reservations.createConference(null, room).getCode());
+
+        reservations.onFocusDestroyed(room);
+
+        assertEquals(Arrays.asList("1"), deletes);
+
+        assertEquals(
+            ReservationSystem.RESULT_OK,
+            reservations.createConference(null, room).getCode());
+        assertEquals(2, posts.size());
+    }
+
+    /**
+     * With the cache enabled the reservation of the conference which has
+     * ended is reused, if the room is created again before it expires.
+     */
+    @Test
+    public void testReusedWhenCacheEnabled()
+        throws Exception
+    {
+        startReservations(60000);
+
+        String room = "testroom@conference.example.com";
+
+        assertEquals(
+            ReservationSystem.RESULT_OK,
+            reservations.createConference(null, room).getCode());
+
+        reservations.onFocusDestroyed(room);
+
+        assertEquals(
+            ReservationSystem.RESULT_OK,
+            reservations.createConference(null, room).getCode());
+
+        assertEquals(1, posts.size());
+        assertTrue(deletes.isEmpty());
+    }
+
+    /**
+     * The conference requested while the reservation of the previous one in
+     * the same room is being deleted is reserved only after the DELETE has
+     * completed, so that the DELETE can not remove the new reservation.
+     */
+    @Test
+    public void testCreateWaitsForDelete()
+        throws Exception
+    {
+        startReservations(0);
+
+        final String room = "testroom@conference.example.com";
+
+        assertEquals(
+            ReservationSystem.RESULT_OK,
+            reservations.createConference(null, room).getCode());
+
+        deleteLatch = new CountDownLatch(1);
+
+        Thread destroyThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                reservations.onFocusDestroyed(room);
+            }
+        });
+        destroyThread.start();
+
+        assertTrue(deleteReceived.await(5, TimeUnit.SECONDS));
+
+        SettableFuture<ReservationSystem.Result> recreated
+            = reservations.createConferenceAsync(null, room);
+
+        Thread.sleep(200);
+        assertFalse(recreated.isDone());
+        assertEquals(1, posts.size());
+
+        deleteLatch.countDown();
+        destroyThread.join(5000);
+
+        assertEquals(ReservationSystem.RESULT_OK, get(recreated).getCode());
+        assertEquals(Arrays.asList("1"), deletes);
+        assertEquals(2, posts.size());
+    }
+
+    /**
+     * The blocking request gives up if the reservation system does not
+     * respond.
+     */
+    @Test
+    public void testCreateTimeout()
+        throws Exception
+    {
+        startReservations(0, 100);
+
+        // Never released before the request times out
+        postLatch = new CountDownLatch(2);
+
+        long start = System.currentTimeMillis();
+        ReservationSystem.Result result
+            = reservations.createConference(
+                    null, "testroom@conference.example.com");
+
+        assertEquals(ReservationSystem.RESULT_INTERNAL_ERROR, result.getCode());
+        assertTrue(System.currentTimeMillis() - start < 3000);
+
+        postLatch.countDown();
+    }
+}